@@ -0,0 +1,84 @@
+package org.fyp.tmssep490be.config;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+/**
+ * Bọc DataSource bằng JDK proxy để đếm số câu lệnh JDBC (Hibernate lẫn JdbcTemplate) và thời gian chờ
+ * lấy connection từ pool vào QueryStats của thread hiện tại. Mọi lời gọi khác được chuyển thẳng xuống đối tượng gốc.
+ */
+final class QueryCountingDataSource {
+
+    // Đánh dấu DataSource đã được bọc
+    interface Wrapped {
+    }
+
+    private QueryCountingDataSource() {
+    }
+
+    static DataSource wrap(DataSource target) {
+        if (target instanceof Wrapped) {
+            return target;
+        }
+        // Giữ Closeable để Spring vẫn đóng pool (Hikari) khi tắt ứng dụng
+        Class<?>[] interfaces = target instanceof Closeable
+                ? new Class<?>[] { DataSource.class, Closeable.class, Wrapped.class }
+                : new Class<?>[] { DataSource.class, Wrapped.class };
+        return (DataSource) Proxy.newProxyInstance(QueryCountingDataSource.class.getClassLoader(), interfaces,
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getConnection")) {
+                        long start = System.nanoTime();
+                        Connection connection = (Connection) invoke(target, method, args);
+                        QueryStats.recordConnection(System.nanoTime() - start);
+                        return wrapConnection(connection);
+                    }
+                    return invoke(target, method, args);
+                });
+    }
+
+    private static Connection wrapConnection(Connection target) {
+        return (Connection) Proxy.newProxyInstance(QueryCountingDataSource.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    Object result = invoke(target, method, args);
+                    String name = method.getName();
+                    if (result instanceof Statement statement
+                            && (name.equals("createStatement") || name.equals("prepareStatement") || name.equals("prepareCall"))) {
+                        String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : null;
+                        return wrapStatement(statement, sql);
+                    }
+                    return result;
+                });
+    }
+
+    private static Statement wrapStatement(Statement target, String preparedSql) {
+        Class<?> type = target instanceof CallableStatement ? CallableStatement.class
+                : target instanceof PreparedStatement ? PreparedStatement.class
+                : Statement.class;
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getName().startsWith("execute")) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : preparedSql;
+                QueryStats.recordStatement(sql);
+            }
+            return invoke(target, method, args);
+        };
+        return (Statement) Proxy.newProxyInstance(QueryCountingDataSource.class.getClassLoader(),
+                new Class<?>[] { type }, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.fyp.tmssep490be.config;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.jpa.boot.spi.JpaSettings;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.lang.NonNull;
+import org.springframework.scheduling.support.ScheduledTaskObservationContext;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Đo truy cập DB theo từng HTTP request và từng lần chạy @Scheduled job:
+ * - DataSource được bọc để đếm câu lệnh JDBC và thời gian chờ connection;
+ * - Hibernate POST_LOAD listener đếm số entity được load;
+ * - filter (request) và observation handler của scheduled task (job) mở / đóng QueryStats và ghi metrics.
+ * Mặc định tắt, bật bằng tms.query-metrics.enabled=true.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "tms.query-metrics", name = "enabled", havingValue = "true")
+public class QueryMetricsConfiguration {
+
+    @Bean
+    public static BeanPostProcessor queryCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(@NonNull Object bean, @NonNull String beanName) {
+                return bean instanceof DataSource dataSource ? QueryCountingDataSource.wrap(dataSource) : bean;
+            }
+        };
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer entityLoadCountingCustomizer() {
+        return properties -> properties.put(JpaSettings.INTEGRATOR_PROVIDER,
+                (IntegratorProvider) () -> List.of(new EntityLoadCountingIntegrator()));
+    }
+
+    @Bean
+    public FilterRegistrationBean<QueryMetricsFilter> queryMetricsFilter(QueryMetricsRecorder recorder) {
+        FilterRegistrationBean<QueryMetricsFilter> registration = new FilterRegistrationBean<>(new QueryMetricsFilter(recorder));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+
+    @Bean
+    public ObservationHandler<ScheduledTaskObservationContext> scheduledQueryMetricsHandler(QueryMetricsRecorder recorder) {
+        return new ObservationHandler<>() {
+            @Override
+            public void onStart(@NonNull ScheduledTaskObservationContext context) {
+                QueryStats stats = QueryStats.begin();
+                if (stats != null) {
+                    context.put(QueryStats.class, stats);
+                }
+            }
+
+            @Override
+            public void onStop(@NonNull ScheduledTaskObservationContext context) {
+                QueryStats stats = context.get(QueryStats.class);
+                if (stats != null) {
+                    QueryStats.end(stats);
+                    recorder.record(QueryMetricsRecorder.SCOPE_SCHEDULED,
+                            context.getTargetClass().getSimpleName() + "." + context.getMethod().getName(), stats);
+                }
+            }
+
+            @Override
+            public boolean supportsContext(@NonNull Observation.Context context) {
+                return context instanceof ScheduledTaskObservationContext;
+            }
+        };
+    }
+
+    static class EntityLoadCountingIntegrator implements Integrator {
+
+        @Override
+        public void integrate(Metadata metadata, BootstrapContext bootstrapContext,
+                              SessionFactoryImplementor sessionFactory) {
+            sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class)
+                    .appendListeners(EventType.POST_LOAD, (PostLoadEventListener) event -> QueryStats.recordEntityLoad());
+        }
+
+        @Override
+        public void disintegrate(SessionFactoryImplementor sessionFactory,
+                                 SessionFactoryServiceRegistry serviceRegistry) {
+        }
+    }
+}
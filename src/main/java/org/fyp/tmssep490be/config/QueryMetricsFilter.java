@@ -0,0 +1,43 @@
+package org.fyp.tmssep490be.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.lang.NonNull;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Mở QueryStats cho mỗi HTTP request (đặt trước Spring Security để tính cả truy vấn xác thực)
+ * và ghi metrics theo URI pattern khi request kết thúc.
+ */
+@RequiredArgsConstructor
+public class QueryMetricsFilter extends OncePerRequestFilter {
+
+    private final QueryMetricsRecorder recorder;
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        QueryStats stats = QueryStats.begin();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (stats != null) {
+                QueryStats.end(stats);
+                recorder.record(QueryMetricsRecorder.SCOPE_HTTP, requestName(request), stats);
+            }
+        }
+    }
+
+    // Dùng pattern của handler (vd. /api/v1/classes/{id}) để giữ số tag có hạn
+    private String requestName(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return request.getMethod() + " " + (pattern != null ? pattern : "UNMAPPED");
+    }
+}
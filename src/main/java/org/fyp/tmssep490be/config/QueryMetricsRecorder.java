@@ -0,0 +1,89 @@
+package org.fyp.tmssep490be.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ghi QueryStats của một request / job thành Micrometer metrics và cảnh báo khi vượt ngân sách câu lệnh
+ * hoặc khi cùng một câu SQL bị lặp nhiều lần (dấu hiệu N+1).
+ *
+ * Metrics (tag scope = http|scheduled, name = "METHOD /uri-pattern" hoặc "Job.method"):
+ * tms.db.statements, tms.db.connection.wait, tms.db.entity.loads,
+ * tms.db.statement.budget.exceeded, tms.db.repeated.statements.
+ */
+@Component
+@Slf4j
+public class QueryMetricsRecorder {
+
+    public static final String SCOPE_HTTP = "http";
+    public static final String SCOPE_SCHEDULED = "scheduled";
+
+    private static final int MAX_LOGGED_SQL_LENGTH = 300;
+
+    private final MeterRegistry meterRegistry;
+    private final int requestStatementBudget;
+    private final int jobStatementBudget;
+    private final int repeatedStatementThreshold;
+
+    public QueryMetricsRecorder(
+            MeterRegistry meterRegistry,
+            @Value("${tms.query-metrics.request-statement-budget:50}") int requestStatementBudget,
+            @Value("${tms.query-metrics.job-statement-budget:2000}") int jobStatementBudget,
+            @Value("${tms.query-metrics.repeated-statement-threshold:10}") int repeatedStatementThreshold) {
+        this.meterRegistry = meterRegistry;
+        this.requestStatementBudget = requestStatementBudget;
+        this.jobStatementBudget = jobStatementBudget;
+        this.repeatedStatementThreshold = repeatedStatementThreshold;
+    }
+
+    public void record(String scope, String name, QueryStats stats) {
+        Tags tags = Tags.of("scope", scope, "name", name);
+
+        DistributionSummary.builder("tms.db.statements")
+                .description("JDBC statements executed per request / job run")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(stats.getStatements());
+        Timer.builder("tms.db.connection.wait")
+                .description("Time spent waiting for pooled connections per request / job run")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(stats.getConnectionWaitNanos(), TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("tms.db.entity.loads")
+                .description("Hibernate entity loads per request / job run")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(stats.getEntityLoads());
+
+        int budget = SCOPE_HTTP.equals(scope) ? requestStatementBudget : jobStatementBudget;
+        if (budget > 0 && stats.getStatements() > budget) {
+            Counter.builder("tms.db.statement.budget.exceeded").tags(tags).register(meterRegistry).increment();
+            log.warn("[{}] {} executed {} JDBC statements (budget {}), {} entity loads, {} ms waiting for connections",
+                    scope, name, stats.getStatements(), budget, stats.getEntityLoads(),
+                    TimeUnit.NANOSECONDS.toMillis(stats.getConnectionWaitNanos()));
+        }
+
+        Map.Entry<String, Integer> repeated = stats.mostRepeatedStatement();
+        if (repeatedStatementThreshold > 0 && repeated != null && repeated.getValue() >= repeatedStatementThreshold) {
+            Counter.builder("tms.db.repeated.statements").tags(tags).register(meterRegistry).increment();
+            log.warn("[{}] Possible N+1 in {}: same statement executed {} times: {}",
+                    scope, name, repeated.getValue(), abbreviate(repeated.getKey()));
+        }
+    }
+
+    private String abbreviate(String sql) {
+        String singleLine = sql.replaceAll("\\s+", " ").trim();
+        return singleLine.length() <= MAX_LOGGED_SQL_LENGTH
+                ? singleLine
+                : singleLine.substring(0, MAX_LOGGED_SQL_LENGTH) + "...";
+    }
+}
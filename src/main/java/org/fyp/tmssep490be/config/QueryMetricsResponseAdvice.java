@@ -0,0 +1,52 @@
+package org.fyp.tmssep490be.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gắn số câu lệnh JDBC, số entity được load và thời gian chờ connection của request vào response header
+ * ngay trước khi body được ghi (bật bằng tms.query-metrics.response-headers, mặc định tắt).
+ * Không gắn cho API public (landing page).
+ */
+@ControllerAdvice
+public class QueryMetricsResponseAdvice implements ResponseBodyAdvice<Object> {
+
+    public static final String STATEMENT_COUNT_HEADER = "X-Query-Count";
+    public static final String ENTITY_LOAD_HEADER = "X-Entity-Load-Count";
+    public static final String CONNECTION_WAIT_HEADER = "X-Connection-Wait-Ms";
+
+    private static final String PUBLIC_API_PREFIX = "/api/v1/public/";
+
+    private final boolean enabled;
+
+    public QueryMetricsResponseAdvice(@Value("${tms.query-metrics.response-headers:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public boolean supports(@NonNull MethodParameter returnType, @NonNull Class converterType) {
+        return enabled;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, @NonNull MethodParameter returnType, @NonNull MediaType selectedContentType,
+                                  @NonNull Class selectedConverterType, @NonNull ServerHttpRequest request,
+                                  @NonNull ServerHttpResponse response) {
+        QueryStats stats = QueryStats.current();
+        if (stats != null && !request.getURI().getPath().startsWith(PUBLIC_API_PREFIX)) {
+            response.getHeaders().set(STATEMENT_COUNT_HEADER, String.valueOf(stats.getStatements()));
+            response.getHeaders().set(ENTITY_LOAD_HEADER, String.valueOf(stats.getEntityLoads()));
+            response.getHeaders().set(CONNECTION_WAIT_HEADER,
+                    String.valueOf(TimeUnit.NANOSECONDS.toMillis(stats.getConnectionWaitNanos())));
+        }
+        return body;
+    }
+}
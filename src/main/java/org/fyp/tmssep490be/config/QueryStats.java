@@ -0,0 +1,99 @@
+package org.fyp.tmssep490be.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bộ đếm truy cập DB của một đơn vị công việc (một HTTP request hoặc một lần chạy @Scheduled job),
+ * gắn với thread đang xử lý. Chỉ thread sở hữu ghi vào nên không cần đồng bộ.
+ */
+public final class QueryStats {
+
+    private static final ThreadLocal<QueryStats> CURRENT = new ThreadLocal<>();
+
+    // Giới hạn số câu SQL khác nhau được theo dõi để phát hiện lặp (N+1)
+    private static final int MAX_TRACKED_SQL = 200;
+
+    private int statements;
+    private int connections;
+    private long connectionWaitNanos;
+    private int entityLoads;
+    private final Map<String, Integer> executionsBySql = new HashMap<>();
+
+    private QueryStats() {
+    }
+
+    /**
+     * Mở scope mới cho thread hiện tại; trả null nếu thread đã có scope (scope ngoài tiếp tục đếm).
+     */
+    public static QueryStats begin() {
+        if (CURRENT.get() != null) {
+            return null;
+        }
+        QueryStats stats = new QueryStats();
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    public static QueryStats current() {
+        return CURRENT.get();
+    }
+
+    public static void end(QueryStats stats) {
+        if (stats != null && CURRENT.get() == stats) {
+            CURRENT.remove();
+        }
+    }
+
+    static void recordStatement(String sql) {
+        QueryStats stats = CURRENT.get();
+        if (stats == null) {
+            return;
+        }
+        stats.statements++;
+        if (sql != null && (stats.executionsBySql.size() < MAX_TRACKED_SQL || stats.executionsBySql.containsKey(sql))) {
+            stats.executionsBySql.merge(sql, 1, Integer::sum);
+        }
+    }
+
+    static void recordConnection(long waitNanos) {
+        QueryStats stats = CURRENT.get();
+        if (stats == null) {
+            return;
+        }
+        stats.connections++;
+        stats.connectionWaitNanos += waitNanos;
+    }
+
+    static void recordEntityLoad() {
+        QueryStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.entityLoads++;
+        }
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public long getConnectionWaitNanos() {
+        return connectionWaitNanos;
+    }
+
+    public int getEntityLoads() {
+        return entityLoads;
+    }
+
+    /**
+     * Câu SQL được thực thi nhiều lần nhất trong scope (dấu hiệu N+1), null nếu chưa có câu nào.
+     */
+    public Map.Entry<String, Integer> mostRepeatedStatement() {
+        return executionsBySql.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .orElse(null);
+    }
+}
@@ -0,0 +1,37 @@
+package org.fyp.tmssep490be.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Pool worker cho các job chia partition (JobCoordinator.runPartitioned).
+ * Số thread của bộ lập lịch (@Scheduled) cấu hình riêng qua spring.task.scheduling.pool.size.
+ */
+@Configuration
+public class SchedulerConfig {
+
+    @Value("${tms.scheduler.workers.pool-size:4}")
+    private int workerPoolSize;
+
+    @Value("${tms.scheduler.workers.queue-capacity:100}")
+    private int workerQueueCapacity;
+
+    // Hàng đợi đầy thì thread của job tự chạy partition (backpressure, không bỏ partition nào)
+    @Bean(name = "jobWorkerExecutor")
+    public ThreadPoolTaskExecutor jobWorkerExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workerPoolSize);
+        executor.setMaxPoolSize(workerPoolSize);
+        executor.setQueueCapacity(workerQueueCapacity);
+        executor.setThreadNamePrefix("JobWorker-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,23 @@
+package org.fyp.tmssep490be.config;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Đăng ký hàm SQL tms_search_text (schema.sql: lower + unaccent, IMMUTABLE) để dùng trong JPQL.
+ * Kiểu trả về String nên dùng được với LIKE, và câu SQL sinh ra giữ nguyên biểu thức
+ * tms_search_text(cột) để khớp với các index GIN pg_trgm. Nạp qua META-INF/services.
+ */
+public class SearchFunctionContributor implements FunctionContributor {
+
+    public static final String SEARCH_TEXT = "tms_search_text";
+
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        functionContributions.getFunctionRegistry().registerPattern(
+                SEARCH_TEXT,
+                SEARCH_TEXT + "(?1)",
+                functionContributions.getTypeConfiguration().getBasicTypeRegistry().resolve(StandardBasicTypes.STRING));
+    }
+}
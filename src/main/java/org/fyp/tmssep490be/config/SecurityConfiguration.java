@@ -1,5 +1,6 @@
 package org.fyp.tmssep490be.config;
 
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.fyp.tmssep490be.security.JwtAuthenticationFilter;
 import org.fyp.tmssep490be.security.JwtAuthenticationEntryPoint;
@@ -50,6 +51,8 @@ public class SecurityConfiguration {
                                                                 "/topic/**", // WebSocket topic subscriptions
                                                                 "/app/**" // WebSocket application destinations
                                                 ).permitAll()
+                                                // Async dispatch (controller trả CompletableFuture) đã được xác thực ở lần dispatch đầu
+                                                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                                                 // Health check endpoints
                                                 .requestMatchers(HttpMethod.GET, "/actuator/health").permitAll()
                                                 // Tất cả endpoints khác yêu cầu authentication
@@ -2,21 +2,27 @@ package org.fyp.tmssep490be.config;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.repositories.UserBranchesRepository;
 import org.fyp.tmssep490be.security.JwtTokenProvider;
+import org.fyp.tmssep490be.security.VerifiedJwt;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
-import java.util.Arrays;
+import java.security.Principal;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Component
@@ -24,7 +30,11 @@ import java.util.stream.Collectors;
 @Slf4j
 public class WebSocketAuthInterceptor implements ChannelInterceptor {
 
+    // Topic broadcast theo role: /topic/roles/{ROLE} hoặc /topic/branches/{branchId}/roles/{ROLE}
+    private static final Pattern ROLE_TOPIC = Pattern.compile("^/topic/(?:branches/(\\d+)/)?roles/([A-Z_]+)$");
+
     private final JwtTokenProvider jwtTokenProvider;
+    private final UserBranchesRepository userBranchesRepository;
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
@@ -38,13 +48,14 @@ public class WebSocketAuthInterceptor implements ChannelInterceptor {
                 String token = authHeader.substring(7);
                 
                 try {
-                    if (jwtTokenProvider.validateAccessToken(token)) {
-                        Long userId = jwtTokenProvider.getUserIdFromJwt(token);
-                        String email = jwtTokenProvider.getEmailFromJwt(token);
+                    VerifiedJwt verifiedJwt = jwtTokenProvider.verify(token);
+                    if (verifiedJwt != null && verifiedJwt.isAccessToken()) {
+                        Long userId = verifiedJwt.userId();
+                        String email = verifiedJwt.subject();
                         
                         // Extract roles from token
-                        String rolesStr = jwtTokenProvider.getTokenType(token); // This is a simplified version
-                        List<SimpleGrantedAuthority> authorities = Arrays.stream(rolesStr.split(","))
+                        List<String> roles = verifiedJwt.roles() != null ? verifiedJwt.roles() : List.of();
+                        List<SimpleGrantedAuthority> authorities = roles.stream()
                                 .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
                                 .collect(Collectors.toList());
                         
@@ -72,7 +83,40 @@ public class WebSocketAuthInterceptor implements ChannelInterceptor {
                 log.debug("No JWT token found in WebSocket connection - anonymous access");
             }
         }
-        
+
+        if (accessor != null && StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
+            authorizeRoleTopic(accessor.getDestination(), accessor.getUser());
+        }
+
         return message;
     }
+
+    // Chỉ user có role (và thuộc chi nhánh, nếu topic theo chi nhánh) mới được subscribe topic broadcast
+    private void authorizeRoleTopic(String destination, Principal user) {
+        if (destination == null) {
+            return;
+        }
+        Matcher matcher = ROLE_TOPIC.matcher(destination);
+        if (!matcher.matches()) {
+            return;
+        }
+
+        if (!(user instanceof Authentication authentication)) {
+            throw new AccessDeniedException("Anonymous WebSocket session cannot subscribe to " + destination);
+        }
+        String requiredRole = "ROLE_" + matcher.group(2);
+        boolean hasRole = authentication.getAuthorities().stream()
+                .anyMatch(authority -> requiredRole.equals(authority.getAuthority()));
+        if (!hasRole) {
+            throw new AccessDeniedException("Missing role for " + destination);
+        }
+
+        if (matcher.group(1) != null) {
+            Long userId = Long.valueOf(authentication.getName());
+            Long branchId = Long.valueOf(matcher.group(1));
+            if (!userBranchesRepository.existsByUserAccountIdAndBranchId(userId, branchId)) {
+                throw new AccessDeniedException("User is not assigned to branch " + branchId);
+            }
+        }
+    }
 }
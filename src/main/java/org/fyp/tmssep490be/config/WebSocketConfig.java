@@ -1,11 +1,18 @@
 package org.fyp.tmssep490be.config;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -14,6 +21,24 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private final WebSocketAuthInterceptor webSocketAuthInterceptor;
 
+    @Value("${tms.websocket.outbound.pool-size:4}")
+    private int outboundPoolSize;
+
+    @Value("${tms.websocket.outbound.queue-capacity:1000}")
+    private int outboundQueueCapacity;
+
+    @Value("${tms.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${tms.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${tms.notification.fanout.pool-size:2}")
+    private int fanoutPoolSize;
+
+    @Value("${tms.notification.fanout.queue-capacity:100}")
+    private int fanoutQueueCapacity;
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         // Register WebSocket endpoint with SockJS fallback
@@ -39,8 +64,39 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     }
 
     @Override
-    public void configureClientInboundChannel(org.springframework.messaging.simp.config.ChannelRegistration registration) {
+    public void configureClientInboundChannel(ChannelRegistration registration) {
         // Add JWT authentication interceptor for WebSocket connections
         registration.interceptors(webSocketAuthInterceptor);
     }
+
+    // Kênh gửi ra client: pool và hàng đợi có giới hạn thay vì mặc định (queue không giới hạn)
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(outboundPoolSize)
+                .maxPoolSize(outboundPoolSize * 2)
+                .queueCapacity(outboundQueueCapacity);
+    }
+
+    // Client chậm: giới hạn thời gian gửi và buffer mỗi session, vượt quá thì đóng session đó
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs);
+        registration.setSendBufferSizeLimit(sendBufferSizeLimit);
+    }
+
+    // Executor cho NotificationFanoutService; hàng đợi đầy thì thread gọi tự gửi (backpressure)
+    @Bean(name = "notificationFanoutExecutor")
+    public ThreadPoolTaskExecutor notificationFanoutExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(fanoutPoolSize);
+        executor.setMaxPoolSize(fanoutPoolSize);
+        executor.setQueueCapacity(fanoutQueueCapacity);
+        executor.setThreadNamePrefix("NotificationFanout-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        executor.initialize();
+        return executor;
+    }
 }
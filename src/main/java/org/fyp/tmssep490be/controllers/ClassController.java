@@ -36,6 +36,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -292,6 +293,25 @@ public class ClassController {
                                                 .build());
         }
 
+        // Phòng trống cho tất cả các thứ có buổi học của lớp trong một lần gọi
+        @GetMapping("/{classId}/resources/by-day")
+        @PreAuthorize("hasRole('ACADEMIC_AFFAIR')")
+        public ResponseEntity<ResponseObject<Map<Short, List<org.fyp.tmssep490be.dtos.classcreation.AvailableResourceDTO>>>> getAvailableResourcesByDay(
+                        @PathVariable Long classId,
+                        @AuthenticationPrincipal UserPrincipal currentUser) {
+                log.info("User {} requesting available resources by day for class {}", currentUser.getId(), classId);
+
+                Map<Short, List<org.fyp.tmssep490be.dtos.classcreation.AvailableResourceDTO>> resources = classService
+                                .getAvailableResourcesByDayOfWeek(classId, currentUser.getId());
+
+                return ResponseEntity.ok(
+                                ResponseObject.<Map<Short, List<org.fyp.tmssep490be.dtos.classcreation.AvailableResourceDTO>>>builder()
+                                                .success(true)
+                                                .message("Available resources retrieved successfully")
+                                                .data(resources)
+                                                .build());
+        }
+
         @PostMapping("/{classId}/resources")
         @PreAuthorize("hasRole('ACADEMIC_AFFAIR')")
         public ResponseEntity<ResponseObject<org.fyp.tmssep490be.dtos.classcreation.AssignResourcesResponse>> assignResources(
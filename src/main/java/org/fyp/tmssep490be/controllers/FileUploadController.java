@@ -14,8 +14,10 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/v1/upload")
@@ -56,19 +58,19 @@ public class FileUploadController {
 
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(summary = "Upload file", description = "Upload images (JPG, PNG, WebP) or documents (PDF, Word, Excel, PowerPoint) to S3. Max 20MB.")
-    public ResponseEntity<ResponseObject<Map<String, String>>> uploadFile(
+    public CompletableFuture<ResponseEntity<ResponseObject<Map<String, String>>>> uploadFile(
             @RequestParam("file") MultipartFile file) {
 
         // Validate file
         validateFile(file);
 
         log.info("Uploading file: {} ({})", file.getOriginalFilename(), file.getSize());
-        String fileUrl = storageService.uploadFile(file);
-        return ResponseEntity.ok(ResponseObject.<Map<String, String>>builder()
-                .success(true)
-                .message("File uploaded successfully")
-                .data(Map.of("url", fileUrl))
-                .build());
+        return storageService.uploadFileAsync(file)
+                .thenApply(fileUrl -> ResponseEntity.ok(ResponseObject.<Map<String, String>>builder()
+                        .success(true)
+                        .message("File uploaded successfully")
+                        .data(Map.of("url", fileUrl))
+                        .build()));
     }
 
     @DeleteMapping
@@ -95,6 +97,19 @@ public class FileUploadController {
                 .build());
     }
 
+    @PostMapping("/presigned/batch")
+    @Operation(summary = "Get presigned URLs in batch", description = "Generate presigned URLs for many files at once (original URL -> presigned URL)")
+    public ResponseEntity<ResponseObject<Map<String, String>>> getPresignedUrls(
+            @RequestBody List<String> fileUrls) {
+        log.info("Generating presigned URLs for {} files", fileUrls.size());
+        Map<String, String> presignedUrls = storageService.generatePresignedUrls(fileUrls);
+        return ResponseEntity.ok(ResponseObject.<Map<String, String>>builder()
+                .success(true)
+                .message("Presigned URLs generated")
+                .data(presignedUrls)
+                .build());
+    }
+
     private void validateFile(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             throw new CustomException(ErrorCode.INVALID_INPUT, "File không được để trống");
@@ -10,7 +10,9 @@ import org.fyp.tmssep490be.dtos.publicapi.PublicSubjectCatalogDTO;
 import org.fyp.tmssep490be.dtos.publicapi.PublicSubjectDTO;
 import org.fyp.tmssep490be.dtos.publicapi.PublicSubjectSimpleDTO;
 import org.fyp.tmssep490be.dtos.publicapi.PublicScheduleDTO;
+import org.fyp.tmssep490be.services.PublicCatalogCache;
 import org.fyp.tmssep490be.services.PublicSubjectService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -28,55 +30,55 @@ import java.util.List;
 public class PublicSubjectController {
 
     private final PublicSubjectService publicSubjectService;
+    private final PublicCatalogCache publicCatalogCache;
 
-    @GetMapping("/branches")
+    // Các response được serialize sẵn trong PublicCatalogCache và trả kèm ETag/Last-Modified (304 khi không đổi)
+
+    @GetMapping(value = "/branches", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get public branches", description = "Get all active branches for consultation form dropdown")
-    public ResponseEntity<ResponseObject<List<PublicBranchDTO>>> getPublicBranches() {
-        log.info("Public API: Getting branches for consultation form");
-        List<PublicBranchDTO> branches = publicSubjectService.getPublicBranches();
-        return ResponseEntity.ok(ResponseObject.<List<PublicBranchDTO>>builder()
+    public ResponseEntity<byte[]> getPublicBranches() {
+        log.debug("Public API: Getting branches for consultation form");
+        return publicCatalogCache.respond("branches", () -> ResponseObject.<List<PublicBranchDTO>>builder()
                 .success(true)
                 .message("Branches retrieved successfully")
-                .data(branches)
+                .data(publicSubjectService.getPublicBranches())
                 .build());
     }
 
-    @GetMapping("/subjects-list")
+    @GetMapping(value = "/subjects-list", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get simple subjects list", description = "Get simple active subjects list for consultation form dropdown")
-    public ResponseEntity<ResponseObject<List<PublicSubjectSimpleDTO>>> getSimpleSubjectsList() {
-        log.info("Public API: Getting simple subjects list for consultation form");
-        List<PublicSubjectSimpleDTO> subjects = publicSubjectService.getSimpleSubjectList();
-        return ResponseEntity.ok(ResponseObject.<List<PublicSubjectSimpleDTO>>builder()
+    public ResponseEntity<byte[]> getSimpleSubjectsList() {
+        log.debug("Public API: Getting simple subjects list for consultation form");
+        return publicCatalogCache.respond("subjects-list", () -> ResponseObject.<List<PublicSubjectSimpleDTO>>builder()
                 .success(true)
                 .message("Subjects list retrieved successfully")
-                .data(subjects)
+                .data(publicSubjectService.getSimpleSubjectList())
                 .build());
     }
 
-    @GetMapping("/subjects")
+    @GetMapping(value = "/subjects", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get subject catalog", description = "Get all active subjects grouped by curriculum for landing page")
-    public ResponseEntity<ResponseObject<PublicSubjectCatalogDTO>> getSubjectCatalog() {
-        log.info("Public API: Getting subject catalog for landing page");
-        PublicSubjectCatalogDTO catalog = publicSubjectService.getSubjectCatalog();
-        return ResponseEntity.ok(ResponseObject.<PublicSubjectCatalogDTO>builder()
+    public ResponseEntity<byte[]> getSubjectCatalog() {
+        log.debug("Public API: Getting subject catalog for landing page");
+        return publicCatalogCache.respond("subjects", () -> ResponseObject.<PublicSubjectCatalogDTO>builder()
                 .success(true)
                 .message("Subject catalog retrieved successfully")
-                .data(catalog)
+                .data(publicSubjectService.getSubjectCatalog())
                 .build());
     }
 
-    @GetMapping("/subjects/{id}")
+    @GetMapping(value = "/subjects/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get subject detail", description = "Get active subject detail by ID for public course detail page")
-    public ResponseEntity<ResponseObject<PublicSubjectDTO>> getSubjectDetail(@PathVariable Long id) {
-        log.info("Public API: Getting subject detail for ID: {}", id);
+    public ResponseEntity<?> getSubjectDetail(@PathVariable Long id) {
+        log.debug("Public API: Getting subject detail for ID: {}", id);
         try {
-            PublicSubjectDTO subject = publicSubjectService.getSubjectDetail(id);
-            return ResponseEntity.ok(ResponseObject.<PublicSubjectDTO>builder()
+            return publicCatalogCache.respond("subjects/" + id, () -> ResponseObject.<PublicSubjectDTO>builder()
                     .success(true)
                     .message("Subject detail retrieved successfully")
-                    .data(subject)
+                    .data(publicSubjectService.getSubjectDetail(id))
                     .build());
         } catch (RuntimeException e) {
+            // Lỗi không được cache
             log.warn("Subject not found or not available: {}", id);
             return ResponseEntity.ok(ResponseObject.<PublicSubjectDTO>builder()
                     .success(false)
@@ -85,15 +87,14 @@ public class PublicSubjectController {
         }
     }
 
-    @GetMapping("/schedules")
+    @GetMapping(value = "/schedules", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Get upcoming schedules", description = "Get upcoming class schedules for public schedule page")
-    public ResponseEntity<ResponseObject<List<PublicScheduleDTO>>> getUpcomingSchedules() {
-        log.info("Public API: Getting upcoming schedules for public schedule page");
-        List<PublicScheduleDTO> schedules = publicSubjectService.getUpcomingSchedules();
-        return ResponseEntity.ok(ResponseObject.<List<PublicScheduleDTO>>builder()
+    public ResponseEntity<byte[]> getUpcomingSchedules() {
+        log.debug("Public API: Getting upcoming schedules for public schedule page");
+        return publicCatalogCache.respond("schedules", () -> ResponseObject.<List<PublicScheduleDTO>>builder()
                 .success(true)
                 .message("Schedules retrieved successfully")
-                .data(schedules)
+                .data(publicSubjectService.getUpcomingSchedules())
                 .build());
     }
 }
@@ -140,6 +140,22 @@ public class StudentController {
                 .build());
     }
 
+    @GetMapping("/suggestions")
+    @PreAuthorize("hasRole('ACADEMIC_AFFAIR')")
+    public ResponseEntity<ResponseObject<List<StudentSuggestionDTO>>> suggestStudents(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "10") int limit,
+            @AuthenticationPrincipal UserPrincipal currentUser
+    ) {
+        List<StudentSuggestionDTO> suggestions = studentService.suggestStudents(q, limit, currentUser.getId());
+
+        return ResponseEntity.ok(ResponseObject.<List<StudentSuggestionDTO>>builder()
+                .success(true)
+                .message("Student suggestions retrieved successfully")
+                .data(suggestions)
+                .build());
+    }
+
     @GetMapping("/{studentId}")
     @PreAuthorize("hasRole('ACADEMIC_AFFAIR')")
     public ResponseEntity<ResponseObject<StudentDetailDTO>> getStudentDetail(
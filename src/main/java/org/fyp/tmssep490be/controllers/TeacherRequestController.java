@@ -419,15 +419,18 @@ public class TeacherRequestController {
 
     //Endpoint để gợi ý giáo viên dạy thay cho REPLACEMENT request
     //  (cho academic staff - từ sessionId khi tạo request mới)
+    //Các endpoint gợi ý dạy thay nhận page/size (size = 0: trả về tất cả)
     @GetMapping("/sessions/{sessionId}/replacement/candidates/staff")
     @PreAuthorize("hasRole('ACADEMIC_AFFAIR')")
     public ResponseEntity<ResponseObject<List<ReplacementCandidateDTO>>> suggestReplacementCandidatesForStaffBySession(
             @PathVariable Long sessionId,
             @RequestParam Long teacherId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "0") int size,
             @AuthenticationPrincipal UserPrincipal userPrincipal) {
 
         List<ReplacementCandidateDTO> candidates = teacherRequestService.suggestReplacementCandidatesForStaffBySession(
-                sessionId, teacherId, userPrincipal.getId());
+                sessionId, teacherId, userPrincipal.getId(), page, size);
 
         return ResponseEntity.ok(ResponseObject.<List<ReplacementCandidateDTO>>builder()
                 .success(true)
@@ -444,12 +447,14 @@ public class TeacherRequestController {
     public ResponseEntity<ResponseObject<List<ReplacementCandidateDTO>>> suggestReplacementCandidates(
             @PathVariable Long sessionId,
             @RequestParam(required = false) Long teacherId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "0") int size,
             @AuthenticationPrincipal UserPrincipal userPrincipal) {
 
         // Nếu có teacherId trong query param, đây là request từ academic staff
         if (teacherId != null) {
             List<ReplacementCandidateDTO> candidates = teacherRequestService.suggestReplacementCandidatesForStaffBySession(
-                    sessionId, teacherId, userPrincipal.getId());
+                    sessionId, teacherId, userPrincipal.getId(), page, size);
             return ResponseEntity.ok(ResponseObject.<List<ReplacementCandidateDTO>>builder()
                     .success(true)
                     .message("Replacement candidates loaded successfully")
@@ -459,7 +464,7 @@ public class TeacherRequestController {
 
         // Nếu không có teacherId, đây là request từ teacher
         List<ReplacementCandidateDTO> candidates = teacherRequestService.suggestReplacementCandidates(
-                sessionId, userPrincipal.getId());
+                sessionId, userPrincipal.getId(), page, size);
 
         return ResponseEntity.ok(ResponseObject.<List<ReplacementCandidateDTO>>builder()
                 .success(true)
@@ -474,10 +479,12 @@ public class TeacherRequestController {
     @PreAuthorize("hasRole('ACADEMIC_AFFAIR')")
     public ResponseEntity<ResponseObject<List<ReplacementCandidateDTO>>> suggestReplacementCandidatesForStaff(
             @PathVariable Long requestId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "0") int size,
             @AuthenticationPrincipal UserPrincipal userPrincipal) {
 
         List<ReplacementCandidateDTO> candidates = teacherRequestService.suggestReplacementCandidatesForStaff(
-                requestId, userPrincipal.getId());
+                requestId, userPrincipal.getId(), page, size);
 
         return ResponseEntity.ok(ResponseObject.<List<ReplacementCandidateDTO>>builder()
                 .success(true)
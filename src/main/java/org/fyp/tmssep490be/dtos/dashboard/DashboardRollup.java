@@ -0,0 +1,138 @@
+package org.fyp.tmssep490be.dtos.dashboard;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.fyp.tmssep490be.entities.enums.ClassStatus;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Số liệu đã tổng hợp sẵn theo (chi nhánh, ngày) / (giáo viên, chi nhánh) cho các dashboard.
+ * Mỗi dashboard chỉ đọc vài dòng rollup này thay vì findAll() toàn bộ class/enrollment/session.
+ * Tham số branchIds = null nghĩa là lấy tất cả chi nhánh.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DashboardRollup {
+
+    private LocalDate fromDate;
+    private LocalDate toDate;
+
+    @Builder.Default
+    private List<ClassStatusCount> classStatusCounts = new ArrayList<>();
+
+    @Builder.Default
+    private List<DailyBranchMetric> dailyMetrics = new ArrayList<>();
+
+    @Builder.Default
+    private List<TeacherWorkloadMetric> teacherWorkloads = new ArrayList<>();
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ClassStatusCount {
+        private Long branchId;
+        private ClassStatus status;
+        private long count;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DailyBranchMetric {
+        private Long branchId;
+        private LocalDate date;
+        private long newEnrollments;
+        private long attendanceRecords;
+        private long presentRecords;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TeacherWorkloadMetric {
+        private Long teacherId;
+        private Long branchId;
+        private long teachingSlots;
+        private double teachingHours;
+    }
+
+    // Số lớp ONGOING + SCHEDULED, gom theo chi nhánh
+    public Map<Long, Long> activeClassesByBranch(Collection<Long> branchIds) {
+        Map<Long, Long> result = new HashMap<>();
+        for (ClassStatusCount row : classStatusCounts) {
+            if (!inScope(row.getBranchId(), branchIds)) {
+                continue;
+            }
+            if (row.getStatus() == ClassStatus.ONGOING || row.getStatus() == ClassStatus.SCHEDULED) {
+                result.merge(row.getBranchId(), row.getCount(), Long::sum);
+            }
+        }
+        return result;
+    }
+
+    public long activeClasses(Collection<Long> branchIds) {
+        return activeClassesByBranch(branchIds).values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public long newEnrollments(Collection<Long> branchIds, LocalDate from, LocalDate to) {
+        long total = 0L;
+        for (DailyBranchMetric row : dailyMetrics) {
+            if (inScope(row.getBranchId(), branchIds) && inRange(row.getDate(), from, to)) {
+                total += row.getNewEnrollments();
+            }
+        }
+        return total;
+    }
+
+    // Tỷ lệ PRESENT (%) theo ngày, chỉ chứa các ngày có bản ghi điểm danh
+    public Map<LocalDate, Double> attendanceRateByDate(Collection<Long> branchIds) {
+        Map<LocalDate, long[]> totals = new HashMap<>();
+        for (DailyBranchMetric row : dailyMetrics) {
+            if (!inScope(row.getBranchId(), branchIds) || row.getAttendanceRecords() == 0) {
+                continue;
+            }
+            long[] acc = totals.computeIfAbsent(row.getDate(), d -> new long[2]);
+            acc[0] += row.getPresentRecords();
+            acc[1] += row.getAttendanceRecords();
+        }
+        Map<LocalDate, Double> result = new HashMap<>();
+        totals.forEach((date, acc) -> result.put(date, (acc[0] * 100.0) / acc[1]));
+        return result;
+    }
+
+    public long teachingTeachers(Collection<Long> branchIds) {
+        return teacherWorkloads.stream()
+                .filter(row -> inScope(row.getBranchId(), branchIds))
+                .map(TeacherWorkloadMetric::getTeacherId)
+                .distinct()
+                .count();
+    }
+
+    public double teachingHours(Collection<Long> branchIds) {
+        return teacherWorkloads.stream()
+                .filter(row -> inScope(row.getBranchId(), branchIds))
+                .mapToDouble(TeacherWorkloadMetric::getTeachingHours)
+                .sum();
+    }
+
+    private static boolean inScope(Long branchId, Collection<Long> branchIds) {
+        return branchIds == null || branchIds.contains(branchId);
+    }
+
+    private static boolean inRange(LocalDate date, LocalDate from, LocalDate to) {
+        return date != null && !date.isBefore(from) && !date.isAfter(to);
+    }
+}
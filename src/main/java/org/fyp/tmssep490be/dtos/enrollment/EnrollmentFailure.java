@@ -0,0 +1,17 @@
+package org.fyp.tmssep490be.dtos.enrollment;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Học viên không được ghi danh trong một lần ghi danh theo lô và lý do
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EnrollmentFailure {
+    private Long studentId;
+    private String errorCode;
+    private String message;
+}
@@ -17,4 +17,5 @@ public class EnrollmentResult {
     private int sessionsGeneratedPerStudent;
     private int totalStudentSessionsCreated;
     private List<String> warnings;
+    private List<EnrollmentFailure> failures;
 }
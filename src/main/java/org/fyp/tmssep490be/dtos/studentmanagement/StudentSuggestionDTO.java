@@ -0,0 +1,16 @@
+package org.fyp.tmssep490be.dtos.studentmanagement;
+
+import lombok.*;
+
+// Một dòng gợi ý trong ô tìm kiếm học viên (typeahead)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StudentSuggestionDTO {
+    private Long id;
+    private String studentCode;
+    private String fullName;
+    private String email;
+    private String phone;
+}
@@ -3,6 +3,7 @@ package org.fyp.tmssep490be.entities;
 import jakarta.persistence.*;
 import lombok.*;
 import org.fyp.tmssep490be.entities.enums.BranchStatus;
+import org.fyp.tmssep490be.services.PublicCatalogListener;
 
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
@@ -18,6 +19,7 @@ import java.util.Set;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@EntityListeners(PublicCatalogListener.class)
 public class Branch {
 
     @Id
@@ -2,6 +2,7 @@ package org.fyp.tmssep490be.entities;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.fyp.tmssep490be.services.PublicCatalogListener;
 
 import java.time.OffsetDateTime;
 import java.util.HashSet;
@@ -16,7 +17,7 @@ import java.util.Set;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@EntityListeners(org.springframework.data.jpa.domain.support.AuditingEntityListener.class)
+@EntityListeners({org.springframework.data.jpa.domain.support.AuditingEntityListener.class, PublicCatalogListener.class})
 public class CLO {
 
     @Id
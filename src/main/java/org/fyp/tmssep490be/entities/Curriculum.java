@@ -3,6 +3,7 @@ package org.fyp.tmssep490be.entities;
 import jakarta.persistence.*;
 import lombok.*;
 import org.fyp.tmssep490be.entities.enums.CurriculumStatus;
+import org.fyp.tmssep490be.services.PublicCatalogListener;
 
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
@@ -19,7 +20,7 @@ import java.util.Set;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, PublicCatalogListener.class})
 public class Curriculum {
 
     @Id
@@ -3,6 +3,8 @@ package org.fyp.tmssep490be.entities;
 import jakarta.persistence.*;
 import lombok.*;
 import org.fyp.tmssep490be.entities.enums.EnrollmentStatus;
+import org.fyp.tmssep490be.services.PublicCatalogListener;
+import org.fyp.tmssep490be.services.TimetableCacheListener;
 
 import java.time.OffsetDateTime;
 
@@ -13,6 +15,7 @@ import java.time.OffsetDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@EntityListeners({PublicCatalogListener.class, TimetableCacheListener.class})
 public class Enrollment {
 
     @Id
@@ -6,6 +6,7 @@ import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 import org.fyp.tmssep490be.entities.enums.LevelStatus;
+import org.fyp.tmssep490be.services.PublicCatalogListener;
 
 import java.time.OffsetDateTime;
 import java.util.HashSet;
@@ -20,7 +21,7 @@ import java.util.Set;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, PublicCatalogListener.class})
 public class Level {
 
     @Id
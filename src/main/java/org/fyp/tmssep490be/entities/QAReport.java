@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.*;
 import org.fyp.tmssep490be.entities.enums.QAReportType;
 import org.fyp.tmssep490be.entities.enums.QAReportStatus;
+import org.fyp.tmssep490be.services.TimetableCacheListener;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -15,7 +16,7 @@ import java.time.OffsetDateTime;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, TimetableCacheListener.class})
 public class QAReport {
 
     @Id
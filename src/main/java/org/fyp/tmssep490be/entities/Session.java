@@ -4,6 +4,8 @@ import jakarta.persistence.*;
 import lombok.*;
 import org.fyp.tmssep490be.entities.enums.SessionStatus;
 import org.fyp.tmssep490be.entities.enums.SessionType;
+import org.fyp.tmssep490be.services.ResourceOccupancyListener;
+import org.fyp.tmssep490be.services.TimetableCacheListener;
 
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
@@ -12,6 +14,7 @@ import java.util.Set;
 
 @Entity
 @Table(name = "session")
+@EntityListeners({ResourceOccupancyListener.class, TimetableCacheListener.class})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -100,4 +103,33 @@ public class Session {
 
     @Column(name = "updated_at")
     private OffsetDateTime updatedAt;
+
+    // Ngày đã lưu trong DB (lúc nạp / lần ghi trước): TimetableCacheListener so với date để biết buổi học bị dời ngày
+    @Transient
+    @Setter(AccessLevel.NONE)
+    private LocalDate persistedDate;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = OffsetDateTime.now();
+        }
+        if (updatedAt == null) {
+            updatedAt = OffsetDateTime.now();
+        }
+    }
+
+    // ClassStatusAutoUpdateJob chỉ xét lại lớp có buổi học đổi updated_at sau lần chạy trước
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = OffsetDateTime.now();
+    }
+
+    // Chạy sau các entity listener
+    @PostLoad
+    @PostPersist
+    @PostUpdate
+    protected void rememberPersistedDate() {
+        persistedDate = date;
+    }
 }
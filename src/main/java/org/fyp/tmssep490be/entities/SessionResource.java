@@ -2,11 +2,14 @@ package org.fyp.tmssep490be.entities;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.fyp.tmssep490be.services.ResourceOccupancyListener;
+import org.fyp.tmssep490be.services.TimetableCacheListener;
 
 import java.io.Serializable;
 
 @Entity
 @Table(name = "session_resource")
+@EntityListeners({ResourceOccupancyListener.class, TimetableCacheListener.class})
 @Getter
 @Setter
 @NoArgsConstructor
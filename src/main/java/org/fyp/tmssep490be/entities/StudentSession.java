@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.*;
 import org.fyp.tmssep490be.entities.enums.AttendanceStatus;
 import org.fyp.tmssep490be.entities.enums.HomeworkStatus;
+import org.fyp.tmssep490be.services.TimetableCacheListener;
 
 import java.io.Serializable;
 import java.time.OffsetDateTime;
@@ -15,6 +16,7 @@ import java.time.OffsetDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@EntityListeners(TimetableCacheListener.class)
 public class StudentSession implements Serializable {
 
     @EmbeddedId
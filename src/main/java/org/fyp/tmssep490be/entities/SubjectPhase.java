@@ -2,6 +2,7 @@ package org.fyp.tmssep490be.entities;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.fyp.tmssep490be.services.PublicCatalogListener;
 import java.time.OffsetDateTime;
 import java.util.HashSet;
 import java.util.Set;
@@ -15,7 +16,7 @@ import java.util.Set;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@EntityListeners(org.springframework.data.jpa.domain.support.AuditingEntityListener.class)
+@EntityListeners({org.springframework.data.jpa.domain.support.AuditingEntityListener.class, PublicCatalogListener.class})
 public class SubjectPhase {
 
     @Id
@@ -3,6 +3,7 @@ package org.fyp.tmssep490be.entities;
 import jakarta.persistence.*;
 import lombok.*;
 import org.fyp.tmssep490be.entities.enums.TeachingSlotStatus;
+import org.fyp.tmssep490be.services.TimetableCacheListener;
 
 import java.io.Serializable;
 
@@ -13,6 +14,7 @@ import java.io.Serializable;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@EntityListeners(TimetableCacheListener.class)
 public class TeachingSlot implements Serializable {
 
     @EmbeddedId
@@ -0,0 +1,8 @@
+package org.fyp.tmssep490be.entities.enums;
+
+public enum EmailOutboxStatus {
+    PENDING,
+    SENDING,
+    SENT,
+    FAILED
+}
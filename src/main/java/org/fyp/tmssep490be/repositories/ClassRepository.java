@@ -8,11 +8,15 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -23,6 +27,12 @@ public interface ClassRepository extends JpaRepository<ClassEntity, Long> {
         @Query("SELECT c FROM ClassEntity c WHERE c.id = :classId")
         Optional<ClassEntity> findByIdWithLock(@Param("classId") Long classId);
 
+        // [code, name, subject name] cho tiêu đề ma trận điểm danh
+        @Query("SELECT c.code, c.name, sj.name FROM ClassEntity c LEFT JOIN c.subject sj WHERE c.id = :classId")
+        List<Object[]> findClassHeaderById(@Param("classId") Long classId);
+
+        // Search không phân biệt hoa thường / dấu: id lớp khớp lấy từ UNION các subquery theo từng bảng
+        // (class, subject, branch), mỗi subquery dùng index GIN pg_trgm trên tms_search_text(cột) của bảng đó
         @Query("SELECT c FROM ClassEntity c " +
                         "INNER JOIN c.branch b " +
                         "INNER JOIN c.subject sj " +
@@ -31,12 +41,17 @@ public interface ClassRepository extends JpaRepository<ClassEntity, Long> {
                         "AND (:status IS NULL OR c.status = :status) " +
                         "AND (:subjectId IS NULL OR sj.id = :subjectId) " +
                         "AND (:modality IS NULL OR c.modality = :modality) " +
-                        "AND (:search IS NULL OR :search = '' OR " +
-                        "  LOWER(c.code) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-                        "  LOWER(c.name) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-                        "  LOWER(sj.name) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-                        "  LOWER(b.name) LIKE LOWER(CONCAT('%', :search, '%'))" +
-                        ")")
+                        "AND (:search IS NULL OR :search = '' OR c.id IN (" +
+                        "  SELECT cc.id FROM ClassEntity cc " +
+                        "  WHERE tms_search_text(cc.code) LIKE CONCAT('%', tms_search_text(CAST(:search AS String)), '%') " +
+                        "     OR tms_search_text(cc.name) LIKE CONCAT('%', tms_search_text(CAST(:search AS String)), '%') " +
+                        "  UNION " +
+                        "  SELECT cs.id FROM ClassEntity cs JOIN cs.subject ss " +
+                        "  WHERE tms_search_text(ss.name) LIKE CONCAT('%', tms_search_text(CAST(:search AS String)), '%') " +
+                        "  UNION " +
+                        "  SELECT cb.id FROM ClassEntity cb JOIN cb.branch bb " +
+                        "  WHERE tms_search_text(bb.name) LIKE CONCAT('%', tms_search_text(CAST(:search AS String)), '%')" +
+                        "))")
         Page<ClassEntity> findClassesForAcademicAffairs(
                         @Param("branchIds") List<Long> branchIds,
                         @Param("approvalStatus") ApprovalStatus approvalStatus,
@@ -120,6 +135,42 @@ public interface ClassRepository extends JpaRepository<ClassEntity, Long> {
         // Find classes by status (for cronjob)
         List<ClassEntity> findByStatus(ClassStatus status);
 
+        // ClassStatusAutoUpdateJob: SCHEDULED -> ONGOING khi đã đến ngày bắt đầu
+        @Modifying(clearAutomatically = true, flushAutomatically = true)
+        @Query(value = """
+                UPDATE "class"
+                SET status = 'ONGOING', updated_at = now()
+                WHERE status = 'SCHEDULED'
+                  AND start_date <= :today
+                """, nativeQuery = true)
+        int startScheduledClasses(@Param("today") LocalDate today);
+
+        // ClassStatusAutoUpdateJob: ONGOING -> COMPLETED khi đã qua plannedEndDate, còn ít nhất một buổi không huỷ
+        // và không còn buổi PLANNED. Ngoài lần quét toàn bộ, chỉ xét lớp vừa đến hạn hoặc lớp / buổi học
+        // có updated_at sau mốc :since
+        @Modifying(clearAutomatically = true, flushAutomatically = true)
+        @Query(value = """
+                UPDATE "class" c
+                SET status = 'COMPLETED',
+                    actual_end_date = COALESCE(c.actual_end_date, :today),
+                    updated_at = now()
+                WHERE c.status = 'ONGOING'
+                  AND c.planned_end_date < :today
+                  AND (:fullScan = TRUE
+                       OR c.planned_end_date >= CAST(:since AS DATE)
+                       OR c.updated_at >= :since
+                       OR EXISTS (SELECT 1 FROM session s WHERE s.class_id = c.id AND s.updated_at >= :since))
+                  AND EXISTS (SELECT 1 FROM session s WHERE s.class_id = c.id AND s.status <> 'CANCELLED')
+                  AND NOT EXISTS (SELECT 1 FROM session s WHERE s.class_id = c.id AND s.status = 'PLANNED')
+                """, nativeQuery = true)
+        int completeFinishedClasses(
+                        @Param("today") LocalDate today,
+                        @Param("since") OffsetDateTime since,
+                        @Param("fullScan") boolean fullScan);
+
+        // Lớp ONGOING đã qua plannedEndDate nhưng chưa thể hoàn thành (còn buổi PLANNED)
+        long countByStatusAndPlannedEndDateBefore(ClassStatus status, LocalDate date);
+
         // Find upcoming scheduled classes for public schedule page
         @Query("SELECT c FROM ClassEntity c " +
                         "LEFT JOIN FETCH c.subject s " +
@@ -156,4 +207,83 @@ public interface ClassRepository extends JpaRepository<ClassEntity, Long> {
                 @Param("fromDate") LocalDate fromDate,
                 @Param("toDate") LocalDate toDate);
 
+        // Rollup số lớp theo (chi nhánh, trạng thái) cho dashboard - vài chục dòng thay vì cả bảng class
+        @Query("SELECT c.branch.id, c.status, COUNT(c) FROM ClassEntity c " +
+                "GROUP BY c.branch.id, c.status")
+        List<Object[]> countClassesGroupByBranchAndStatus();
+
+        // Chỉ số QA cho một trang lớp trong một round trip:
+        // [class_id, total_sessions, completed_sessions, qa_report_count,
+        //  attendance_present, attendance_total, homework_completed, homework_total]
+        // Điểm danh theo quy tắc của màn QA: bỏ buổi CANCELLED và dòng học bù; EXCUSED tính có mặt nếu đã học bù PRESENT,
+        // tính vào mẫu số nếu đã có học bù hoặc buổi đã kết thúc trước :now.
+        @Query(value = """
+                WITH sess AS (
+                    SELECT s.class_id,
+                           COUNT(*) AS total_sessions,
+                           COUNT(*) FILTER (WHERE s.status = 'DONE') AS completed_sessions
+                    FROM session s
+                    WHERE s.class_id IN (:classIds)
+                    GROUP BY s.class_id
+                ),
+                qa AS (
+                    SELECT q.class_id, COUNT(*) AS qa_report_count
+                    FROM qa_report q
+                    WHERE q.class_id IN (:classIds)
+                    GROUP BY q.class_id
+                ),
+                att AS (
+                    SELECT s.class_id,
+                           COUNT(*) FILTER (WHERE ss.attendance_status = 'PRESENT'
+                                              OR (ss.attendance_status = 'EXCUSED' AND COALESCE(mk.completed, false))
+                           ) AS present_count,
+                           COUNT(*) FILTER (WHERE ss.attendance_status IN ('PRESENT', 'ABSENT')
+                                              OR (ss.attendance_status = 'EXCUSED'
+                                                  AND (mk.attempted IS NOT NULL
+                                                       OR s.date + COALESCE(tst.end_time, TIME '23:59:59.999999') < :now))
+                           ) AS total_count
+                    FROM session s
+                    JOIN student_session ss ON ss.session_id = s.id AND COALESCE(ss.is_makeup, false) = false
+                    LEFT JOIN time_slot_template tst ON tst.id = s.time_slot_template_id
+                    LEFT JOIN LATERAL (
+                        SELECT true AS attempted, BOOL_OR(m.attendance_status = 'PRESENT') AS completed
+                        FROM student_session m
+                        WHERE m.original_session_id = s.id
+                          AND m.student_id = ss.student_id
+                          AND m.is_makeup = true
+                        HAVING COUNT(*) > 0
+                    ) mk ON ss.attendance_status = 'EXCUSED'
+                    WHERE s.class_id IN (:classIds)
+                      AND s.status <> 'CANCELLED'
+                    GROUP BY s.class_id
+                ),
+                hw AS (
+                    SELECT s.class_id,
+                           COUNT(*) FILTER (WHERE ss.homework_status = 'COMPLETED') AS completed_count,
+                           COUNT(*) AS total_count
+                    FROM session s
+                    JOIN student_session ss ON ss.session_id = s.id
+                    WHERE s.class_id IN (:classIds)
+                      AND s.status <> 'CANCELLED'
+                      AND ss.homework_status IS NOT NULL
+                    GROUP BY s.class_id
+                )
+                SELECT c.id,
+                       COALESCE(sess.total_sessions, 0),
+                       COALESCE(sess.completed_sessions, 0),
+                       COALESCE(qa.qa_report_count, 0),
+                       COALESCE(att.present_count, 0),
+                       COALESCE(att.total_count, 0),
+                       COALESCE(hw.completed_count, 0),
+                       COALESCE(hw.total_count, 0)
+                FROM "class" c
+                LEFT JOIN sess ON sess.class_id = c.id
+                LEFT JOIN qa ON qa.class_id = c.id
+                LEFT JOIN att ON att.class_id = c.id
+                LEFT JOIN hw ON hw.class_id = c.id
+                WHERE c.id IN (:classIds)
+                """, nativeQuery = true)
+        List<Object[]> findQAMetricsByClassIds(
+                @Param("classIds") Collection<Long> classIds,
+                @Param("now") LocalDateTime now);
 }
@@ -0,0 +1,31 @@
+package org.fyp.tmssep490be.repositories;
+
+import org.fyp.tmssep490be.entities.EmailOutbox;
+import org.fyp.tmssep490be.entities.enums.EmailOutboxStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+
+    /**
+     * Lấy một lô email đến hạn gửi và khóa các dòng này (SKIP LOCKED để nhiều instance
+     * không lấy trùng). Dòng SENDING quá hạn lease (instance bị dừng giữa chừng) được lấy lại.
+     */
+    @Query(value = """
+            SELECT * FROM email_outbox eo
+            WHERE eo.status IN ('PENDING', 'SENDING')
+              AND eo.next_attempt_at <= :now
+            ORDER BY eo.next_attempt_at, eo.id
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<EmailOutbox> lockDueBatch(@Param("now") OffsetDateTime now, @Param("limit") int limit);
+
+    long countByStatus(EmailOutboxStatus status);
+}
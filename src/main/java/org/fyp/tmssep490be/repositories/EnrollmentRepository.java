@@ -5,10 +5,14 @@ import org.fyp.tmssep490be.entities.enums.EnrollmentStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -42,8 +46,52 @@ public interface EnrollmentRepository extends JpaRepository<Enrollment, Long> {
 
     boolean existsByClassIdAndStudentIdAndStatus(Long classId, Long studentId, EnrollmentStatus status);
 
+    @Query("SELECT e.studentId FROM Enrollment e WHERE e.classId = :classId AND e.status = :status AND e.studentId IN :studentIds")
+    List<Long> findStudentIdsByClassIdAndStatusAndStudentIdIn(
+            @Param("classId") Long classId,
+            @Param("status") EnrollmentStatus status,
+            @Param("studentIds") Collection<Long> studentIds);
+
     List<Enrollment> findByClassIdAndStatus(Long classId, EnrollmentStatus status);
 
+    // Trùng lịch khi ghi danh cả nhóm học viên: mỗi học viên lấy buổi trùng sớm nhất của lớp mới
+    // (buổi PLANNED từ fromDate) với buổi PLANNED của lớp khác đang theo học.
+    // Chạm mốc giờ cũng tính là trùng. [student_id, date, start_time, end_time, conflicting_class_code]
+    @Query(value = """
+            SELECT DISTINCT ON (e.student_id)
+                   e.student_id, ns.date, nts.start_time, nts.end_time, oc.code
+            FROM enrollment e
+            JOIN "class" oc ON oc.id = e.class_id
+            JOIN session os ON os.class_id = e.class_id AND os.status = 'PLANNED'
+            JOIN time_slot_template ots ON ots.id = os.time_slot_template_id
+            JOIN session ns ON ns.class_id = :classId
+                           AND ns.status = 'PLANNED'
+                           AND ns.date >= :fromDate
+                           AND ns.date = os.date
+            JOIN time_slot_template nts ON nts.id = ns.time_slot_template_id
+            WHERE e.student_id IN (:studentIds)
+              AND e.status = 'ENROLLED'
+              AND e.class_id <> :classId
+              AND nts.start_time <= ots.end_time
+              AND ots.start_time <= nts.end_time
+            ORDER BY e.student_id, ns.date, nts.start_time
+            """, nativeQuery = true)
+    List<Object[]> findScheduleConflictRows(
+            @Param("classId") Long classId,
+            @Param("studentIds") Collection<Long> studentIds,
+            @Param("fromDate") LocalDate fromDate);
+
+    // Học viên ENROLLED của lớp cho ma trận điểm danh: [student_id, student_code, full_name]
+    @Query(value = """
+            SELECT e.student_id, st.student_code, ua.full_name
+            FROM enrollment e
+            JOIN student st ON st.id = e.student_id
+            JOIN user_account ua ON ua.id = st.user_id
+            WHERE e.class_id = :classId
+              AND e.status = 'ENROLLED'
+            """, nativeQuery = true)
+    List<Object[]> findEnrolledStudentRowsByClassId(@Param("classId") Long classId);
+
     List<Enrollment> findByStudentIdAndStatus(Long studentId, EnrollmentStatus status);
 
     // Find enrollment by studentId, classId and status for request validation
@@ -157,4 +205,46 @@ public interface EnrollmentRepository extends JpaRepository<Enrollment, Long> {
             @Param("weekStart") java.time.LocalDate weekStart,
             @Param("weekEnd") java.time.LocalDate weekEnd,
             @Param("threshold") double lowAttendanceThreshold);
-}
\ No newline at end of file
+
+    // ========= SUPPORT FOR DASHBOARD ROLLUP =========
+
+    // Số lượt ghi danh mới (ENROLLED) theo (chi nhánh, ngày UTC) trong khoảng thời gian
+    @Query(value = """
+            SELECT c.branch_id AS branch_id,
+                   CAST(e.enrolled_at AT TIME ZONE 'UTC' AS DATE) AS enrolled_date,
+                   COUNT(*) AS enrollments
+            FROM enrollment e
+            JOIN class c ON e.class_id = c.id
+            WHERE e.status = 'ENROLLED'
+              AND e.enrolled_at BETWEEN :fromDateTime AND :toDateTime
+            GROUP BY c.branch_id, CAST(e.enrolled_at AT TIME ZONE 'UTC' AS DATE)
+            """, nativeQuery = true)
+    List<Object[]> countNewEnrollmentsGroupByBranchAndDate(
+            @Param("fromDateTime") java.time.OffsetDateTime fromDateTime,
+            @Param("toDateTime") java.time.OffsetDateTime toDateTime);
+
+    // Số học viên (distinct) đang học trong các lớp thuộc các chi nhánh
+    @Query("SELECT COUNT(DISTINCT e.studentId) FROM Enrollment e " +
+           "JOIN e.classEntity c " +
+           "WHERE c.branch.id IN :branchIds " +
+           "AND e.status = :status")
+    long countDistinctStudentsByBranchIdsAndStatus(
+            @Param("branchIds") List<Long> branchIds,
+            @Param("status") EnrollmentStatus status);
+
+    // EnrollmentAutoCompleteJob: ENROLLED -> COMPLETED trong các lớp đã COMPLETED.
+    // Ngoài lần quét toàn bộ, chỉ xét lớp / ghi danh có updated_at sau mốc :since
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query(value = """
+            UPDATE enrollment e
+            SET status = 'COMPLETED', updated_at = now()
+            FROM "class" c
+            WHERE c.id = e.class_id
+              AND e.status = 'ENROLLED'
+              AND c.status = 'COMPLETED'
+              AND (:fullScan = TRUE OR c.updated_at >= :since OR e.updated_at >= :since)
+            """, nativeQuery = true)
+    int completeEnrollmentsOfCompletedClasses(
+            @Param("since") OffsetDateTime since,
+            @Param("fullScan") boolean fullScan);
+}
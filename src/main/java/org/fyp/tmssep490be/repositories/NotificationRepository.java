@@ -17,19 +17,20 @@ import java.util.List;
 @Repository
 public interface NotificationRepository extends JpaRepository<Notification, Long> {
 
+    // Search không phân biệt hoa thường / dấu; thông báo của một người nhận đã được lọc qua index recipient_id
     @Query(value = "SELECT * FROM notification n WHERE n.recipient_id = :recipientId " +
            "AND (:status IS NULL OR n.status = CAST(:status AS VARCHAR)) " +
            "AND (:type IS NULL OR n.type = CAST(:type AS VARCHAR)) " +
            "AND (:search IS NULL OR " +
-           "LOWER(n.title) LIKE LOWER(CONCAT('%', CAST(:search AS VARCHAR), '%')) OR " +
-           "LOWER(n.message) LIKE LOWER(CONCAT('%', CAST(:search AS VARCHAR), '%'))) " +
+           "tms_search_text(n.title) LIKE '%' || tms_search_text(CAST(:search AS VARCHAR)) || '%' OR " +
+           "tms_search_text(n.message) LIKE '%' || tms_search_text(CAST(:search AS VARCHAR)) || '%') " +
            "ORDER BY n.created_at DESC",
            countQuery = "SELECT COUNT(*) FROM notification n WHERE n.recipient_id = :recipientId " +
            "AND (:status IS NULL OR n.status = CAST(:status AS VARCHAR)) " +
            "AND (:type IS NULL OR n.type = CAST(:type AS VARCHAR)) " +
            "AND (:search IS NULL OR " +
-           "LOWER(n.title) LIKE LOWER(CONCAT('%', CAST(:search AS VARCHAR), '%')) OR " +
-           "LOWER(n.message) LIKE LOWER(CONCAT('%', CAST(:search AS VARCHAR), '%')))",
+           "tms_search_text(n.title) LIKE '%' || tms_search_text(CAST(:search AS VARCHAR)) || '%' OR " +
+           "tms_search_text(n.message) LIKE '%' || tms_search_text(CAST(:search AS VARCHAR)) || '%')",
            nativeQuery = true)
     Page<Notification> findNotificationsWithFilters(
             @Param("recipientId") Long recipientId,
@@ -44,6 +45,28 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
 
     List<Notification> findByRecipientIdAndStatusOrderByCreatedAtDesc(Long recipientId, NotificationStatus status);
 
+    /**
+     * Thống kê notification của một user trong một query: mỗi dòng là (status, type, count,
+     * số tạo sau startOfDay, số tạo sau startOfWeek, số tạo sau startOfMonth).
+     */
+    @Query("""
+            SELECT n.status, n.type, COUNT(n),
+                   SUM(CASE WHEN n.createdAt > :startOfDay THEN 1 ELSE 0 END),
+                   SUM(CASE WHEN n.createdAt > :startOfWeek THEN 1 ELSE 0 END),
+                   SUM(CASE WHEN n.createdAt > :startOfMonth THEN 1 ELSE 0 END)
+            FROM Notification n
+            WHERE n.recipient.id = :recipientId
+            GROUP BY n.status, n.type
+            """)
+    List<Object[]> aggregateStatsByRecipientId(
+            @Param("recipientId") Long recipientId,
+            @Param("startOfDay") LocalDateTime startOfDay,
+            @Param("startOfWeek") LocalDateTime startOfWeek,
+            @Param("startOfMonth") LocalDateTime startOfMonth);
+
+    @Query("SELECT n.status, COUNT(n) FROM Notification n GROUP BY n.status")
+    List<Object[]> countGroupByStatus();
+
     @Modifying
     @Query("UPDATE Notification n SET n.status = :status, n.readAt = :readAt WHERE n.recipient.id = :recipientId AND n.status = :originalStatus")
     int markAllAsRead(@Param("recipientId") Long recipientId,
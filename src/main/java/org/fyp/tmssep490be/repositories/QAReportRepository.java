@@ -10,6 +10,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -61,6 +62,9 @@ public interface QAReportRepository extends JpaRepository<QAReport, Long> {
     @Query("SELECT COUNT(qar) FROM QAReport qar WHERE qar.session.id = :sessionId AND qar.status = org.fyp.tmssep490be.entities.enums.QAReportStatus.SUBMITTED")
     long countSubmittedReportsBySessionId(@Param("sessionId") Long sessionId);
 
+    @Query("SELECT DISTINCT qar.session.id FROM QAReport qar WHERE qar.session.id IN :sessionIds AND qar.status = org.fyp.tmssep490be.entities.enums.QAReportStatus.SUBMITTED")
+    List<Long> findSessionIdsWithSubmittedReports(@Param("sessionIds") Collection<Long> sessionIds);
+
     @Query("SELECT qar FROM QAReport qar " +
            "LEFT JOIN FETCH qar.reportedBy " +
            "WHERE qar.classEntity.id = :classId " +
@@ -2,10 +2,12 @@ package org.fyp.tmssep490be.repositories;
 
 import org.fyp.tmssep490be.entities.Score;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -23,4 +25,19 @@ public interface ScoreRepository extends JpaRepository<Score, Long> {
 
     @Query("SELECT sc FROM Score sc JOIN sc.assessment a WHERE a.classEntity.id = :classId")
     List<Score> findByAssessmentClassEntityId(@Param("classId") Long classId);
+
+    // Tạo bản ghi điểm rỗng cho mọi bài kiểm tra của lớp x nhóm học viên; bỏ qua cặp đã có điểm
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            INSERT INTO score (assessment_id, student_id, created_at, updated_at)
+            SELECT a.id, st.id, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP
+            FROM assessment a
+            CROSS JOIN student st
+            WHERE a.class_id = :classId
+              AND st.id IN (:studentIds)
+            ON CONFLICT (assessment_id, student_id) DO NOTHING
+            """, nativeQuery = true)
+    int insertMissingForClassStudents(
+            @Param("classId") Long classId,
+            @Param("studentIds") Collection<Long> studentIds);
 }
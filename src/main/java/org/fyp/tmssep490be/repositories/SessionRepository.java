@@ -10,6 +10,8 @@ import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,6 +22,18 @@ public interface SessionRepository extends JpaRepository<Session, Long> {
 
     List<Session> findByClassEntityIdOrderByDateAsc(Long classId);
 
+    /**
+     * Xóa toàn bộ buổi học của các lớp bằng một câu DELETE.
+     * Bảng con (session_resource, teaching_slot, student_session, qa_report) bị xóa theo ON DELETE CASCADE của DB.
+     */
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query(value = "DELETE FROM session WHERE class_id IN (:classIds)", nativeQuery = true)
+    int deleteAllByClassIdIn(@Param("classIds") Collection<Long> classIds);
+
+    // Cấp trước count id từ sequence của bảng session trong một lần gọi
+    @Query(value = "SELECT nextval('session_id_seq') FROM generate_series(1, :count)", nativeQuery = true)
+    List<Long> allocateIds(@Param("count") int count);
+
     List<Session> findByClassEntityIdAndDateGreaterThanEqualAndStatusOrderByDateAsc(
             Long classId,
             LocalDate date,
@@ -107,33 +121,68 @@ public interface SessionRepository extends JpaRepository<Session, Long> {
             @Param("classId") Long classId,
             @Param("branchId") Long branchId);
 
-    // Học viên chọn buổi học bù -> join với class để kiểm tra chi nhánh và hình
-    // thức điều kiện cùng môn
-    // Kiểm tra date trong vài tuần KỂ TỪ NGÀY BUỔI MISSED, trạng thái PLANNED, không phải
-    // buổi học bị bỏ
-    // Loại trừ buổi học bị mà học viên đã bỏ qua (excludeSessionId) tức là học viên
-    // đang chọn buổi bị missed thì phỉa bỏ ra
-    // CHỈ cho phép cùng chi nhánh (same-branch only) - không cho phép khác branch
-    // dù là ONLINE
-    // weeksLimit: số tuần tối đa để tìm buổi học bù kể từ ngày buổi missed
-    // endDate được tính sẵn từ Java (missedSessionDate + weeksLimit weeks)
+    // Chi nhánh có buổi dạy của giáo viên trong khoảng ngày (trục khung giờ của lịch tuần)
+    @Query("""
+            SELECT DISTINCT c.branch.id FROM TeachingSlot ts
+            JOIN ts.session s
+            JOIN s.classEntity c
+            WHERE ts.teacher.id = :teacherId
+              AND s.date BETWEEN :fromDate AND :toDate
+            """)
+    List<Long> findBranchIdsWithTeacherSessions(@Param("teacherId") Long teacherId,
+            @Param("fromDate") LocalDate fromDate,
+            @Param("toDate") LocalDate toDate);
+
+    // Các buổi PLANNED của một buổi trong giáo trình tại chi nhánh (chỉ mục học bù):
+    // [id, class_id, date, start_time, end_time]
+    // CHỈ cùng chi nhánh (same-branch only), khoảng ngày được lọc trong MakeupCandidateIndex
     @Query(value = """
-            SELECT s.* FROM session s
+            SELECT s.id, s.class_id, s.date, tst.start_time, tst.end_time
+            FROM session s
             JOIN class c ON s.class_id = c.id
+            LEFT JOIN time_slot_template tst ON tst.id = s.time_slot_template_id
             WHERE s.subject_session_id = :subjectSessionId
-              AND s.date >= :missedSessionDate
-              AND s.date <= :endDate
+              AND c.branch_id = :branchId
               AND s.status = 'PLANNED'
-              AND s.id != :excludeSessionId
-              AND c.branch_id = :targetBranchId
-            ORDER BY s.date ASC
+            ORDER BY s.date ASC, tst.start_time ASC
             """, nativeQuery = true)
-    List<Session> findMakeupSessionOptions(
+    List<Object[]> findMakeupCandidateRows(
             @Param("subjectSessionId") Long subjectSessionId,
-            @Param("excludeSessionId") Long excludeSessionId,
-            @Param("targetBranchId") Long targetBranchId,
-            @Param("missedSessionDate") LocalDate missedSessionDate,
-            @Param("endDate") LocalDate endDate);
+            @Param("branchId") Long branchId);
+
+    // Chi tiết các buổi học bù được chọn, load sẵn các quan hệ dùng trong MakeupOptionDTO
+    @Query("""
+            SELECT DISTINCT s FROM Session s
+            JOIN FETCH s.classEntity c
+            JOIN FETCH c.branch
+            LEFT JOIN FETCH s.timeSlotTemplate
+            LEFT JOIN FETCH s.subjectSession
+            LEFT JOIN FETCH s.sessionResources sr
+            LEFT JOIN FETCH sr.resource
+            LEFT JOIN FETCH s.teachingSlots ts
+            LEFT JOIN FETCH ts.teacher t
+            LEFT JOIN FETCH t.userAccount
+            WHERE s.id IN :sessionIds
+              AND s.status = 'PLANNED'
+            """)
+    List<Session> findMakeupOptionDetails(@Param("sessionIds") Collection<Long> sessionIds);
+
+    // Lịch học của học viên trong khoảng ngày (kiểm tra trùng lịch khi chọn buổi học bù):
+    // [date, start_time, end_time]
+    @Query(value = """
+            SELECT s.date, tst.start_time, tst.end_time
+            FROM student_session ss
+            JOIN session s ON s.id = ss.session_id
+            LEFT JOIN time_slot_template tst ON tst.id = s.time_slot_template_id
+            WHERE ss.student_id = :studentId
+              AND s.date BETWEEN :fromDate AND :toDate
+              AND s.status IN ('PLANNED', 'ONGOING')
+              AND ss.attendance_status <> 'CANCELLED'
+            """, nativeQuery = true)
+    List<Object[]> findStudentTimetableRows(
+            @Param("studentId") Long studentId,
+            @Param("fromDate") LocalDate fromDate,
+            @Param("toDate") LocalDate toDate);
 
     @Query("""
             SELECT s FROM Session s
@@ -204,6 +253,80 @@ public interface SessionRepository extends JpaRepository<Session, Long> {
             @Param("currentTime") LocalTime currentTime,
             @Param("status") SessionStatus status);
 
+    /**
+     * Id các buổi cần chốt điểm danh (PLANNED -> ABSENT):
+     * đã qua giờ kết thúc, hoặc đã qua ngày mà không có teacher note (kể cả buổi không có khung giờ)
+     */
+    @Query("""
+            SELECT s.id FROM Session s
+            LEFT JOIN s.timeSlotTemplate tst
+            WHERE s.status = :status
+              AND (
+                (tst.id IS NOT NULL AND (s.date < :today OR (s.date = :today AND tst.endTime < :currentTime)))
+                OR (s.date < :today AND (s.teacherNote IS NULL OR s.teacherNote = ''))
+              )
+            ORDER BY s.id
+            """)
+    List<Long> findEndedSessionIdsForAttendanceFinalization(
+            @Param("today") LocalDate today,
+            @Param("currentTime") LocalTime currentTime,
+            @Param("status") SessionStatus status);
+
+    /**
+     * Id các buổi đã kết thúc có teacher note (cùng điều kiện với updateEndedSessionsWithTeacherNoteToDone)
+     */
+    @Query("""
+            SELECT s.id FROM Session s
+            JOIN s.timeSlotTemplate tst
+            WHERE s.status = :status
+              AND s.teacherNote IS NOT NULL
+              AND s.teacherNote <> ''
+              AND (
+                s.date < :today
+                OR (s.date = :today AND tst.endTime < :currentTime)
+              )
+            ORDER BY s.id
+            """)
+    List<Long> findEndedSessionIdsWithTeacherNote(
+            @Param("today") LocalDate today,
+            @Param("currentTime") LocalTime currentTime,
+            @Param("status") SessionStatus status);
+
+    /**
+     * Id các buổi (status, date < beforeDate) chưa có QA report SUBMITTED - anti-join thay vì đếm từng buổi
+     */
+    @Query("""
+            SELECT s.id FROM Session s
+            WHERE s.status = :status
+              AND s.date < :beforeDate
+              AND NOT EXISTS (
+                SELECT 1 FROM QAReport q
+                WHERE q.session = s AND q.status = org.fyp.tmssep490be.entities.enums.QAReportStatus.SUBMITTED
+              )
+            ORDER BY s.id
+            """)
+    List<Long> findSessionIdsWithoutSubmittedQAReport(
+            @Param("status") SessionStatus status,
+            @Param("beforeDate") LocalDate beforeDate);
+
+    /**
+     * Id các buổi không có teacher note, date <= toDate, chưa có QA report SUBMITTED
+     */
+    @Query("""
+            SELECT s.id FROM Session s
+            WHERE s.status = :status
+              AND s.date <= :toDate
+              AND (s.teacherNote IS NULL OR s.teacherNote = '')
+              AND NOT EXISTS (
+                SELECT 1 FROM QAReport q
+                WHERE q.session = s AND q.status = org.fyp.tmssep490be.entities.enums.QAReportStatus.SUBMITTED
+              )
+            ORDER BY s.id
+            """)
+    List<Long> findSessionIdsWithoutTeacherNoteAndSubmittedQAReport(
+            @Param("status") SessionStatus status,
+            @Param("toDate") LocalDate toDate);
+
     /**
      * Find sessions that have ended more than 48 hours ago and don't have teacher note
      * Used to auto-complete sessions that teacher forgot to submit report
@@ -260,7 +383,7 @@ public interface SessionRepository extends JpaRepository<Session, Long> {
     @Modifying(clearAutomatically = true, flushAutomatically = true)
     @Query(value = """
             UPDATE session s
-            SET status = :newStatus
+            SET status = :newStatus, updated_at = now()
             FROM time_slot_template tst
             WHERE s.time_slot_template_id = tst.id
               AND s.status = CAST(:oldStatus AS VARCHAR)
@@ -325,11 +448,12 @@ public interface SessionRepository extends JpaRepository<Session, Long> {
      * Uses native query for efficiency
      */
     @Modifying(clearAutomatically = true, flushAutomatically = true)
-    @Query("UPDATE Session s SET s.status = :newStatus WHERE s.date < :today AND s.status = :oldStatus AND (s.teacherNote IS NULL OR s.teacherNote = '')")
+    @Query("UPDATE Session s SET s.status = :newStatus, s.updatedAt = :updatedAt WHERE s.date < :today AND s.status = :oldStatus AND (s.teacherNote IS NULL OR s.teacherNote = '')")
     int updatePastSessionsWithoutTeacherNoteToDone(
             @Param("today") LocalDate today,
             @Param("oldStatus") SessionStatus oldStatus,
-            @Param("newStatus") SessionStatus newStatus);
+            @Param("newStatus") SessionStatus newStatus,
+            @Param("updatedAt") OffsetDateTime updatedAt);
 
     @Modifying(clearAutomatically = true, flushAutomatically = true)
     @Query("UPDATE Session s SET s.status = :newStatus WHERE s.date < :today AND s.status = :oldStatus")
@@ -354,6 +478,17 @@ public interface SessionRepository extends JpaRepository<Session, Long> {
             "ORDER BY s.date ASC, tst.startTime ASC")
     List<Session> findAllByClassIdOrderByDateAndTime(@Param("classId") Long classId);
 
+    // Buổi học (không CANCELLED) của lớp cho ma trận điểm danh: [id, date, status, start_time, end_time]
+    @Query(value = """
+            SELECT s.id, s.date, s.status, tst.start_time, tst.end_time
+            FROM session s
+            LEFT JOIN time_slot_template tst ON tst.id = s.time_slot_template_id
+            WHERE s.class_id = :classId
+              AND s.status <> 'CANCELLED'
+            ORDER BY s.date ASC, tst.start_time ASC
+            """, nativeQuery = true)
+    List<Object[]> findAttendanceMatrixSessions(@Param("classId") Long classId);
+
     List<Session> findByClassEntityIdAndStatusIn(Long classId, List<SessionStatus> statuses);
 
     @Query("SELECT s FROM Session s WHERE s.classEntity.id = :classId AND s.date >= :date ORDER BY s.date ASC")
@@ -450,6 +585,39 @@ public interface SessionRepository extends JpaRepository<Session, Long> {
             @Param("endTime") LocalTime endTime,
             @Param("cancelledStatus") SessionStatus cancelledStatus);
 
+    // Buổi học cần nhắc điểm danh / báo cáo trong khoảng ngày: [session_id, date, end_time]
+    // Bỏ qua buổi CANCELLED và buổi đã có cả điểm danh lẫn báo cáo
+    @Query(value = """
+            SELECT s.id, s.date, tst.end_time
+            FROM session s
+            JOIN time_slot_template tst ON tst.id = s.time_slot_template_id
+            WHERE s.date BETWEEN :fromDate AND :toDate
+              AND s.status <> 'CANCELLED'
+              AND (
+                s.teacher_note IS NULL OR TRIM(s.teacher_note) = ''
+                OR NOT EXISTS (
+                  SELECT 1 FROM student_session ss
+                  WHERE ss.session_id = s.id
+                    AND ss.attendance_status <> 'PLANNED'
+                )
+              )
+            """, nativeQuery = true)
+    List<Object[]> findAttendanceReminderCandidates(
+            @Param("fromDate") LocalDate fromDate,
+            @Param("toDate") LocalDate toDate);
+
+    // Nạp buổi học kèm lớp, khung giờ và giáo viên để gửi nhắc nhở
+    @Query("""
+            SELECT DISTINCT s FROM Session s
+            LEFT JOIN FETCH s.classEntity
+            LEFT JOIN FETCH s.timeSlotTemplate
+            LEFT JOIN FETCH s.teachingSlots ts
+            LEFT JOIN FETCH ts.teacher t
+            LEFT JOIN FETCH t.userAccount
+            WHERE s.id IN :sessionIds
+            """)
+    List<Session> findByIdInWithTeachers(@Param("sessionIds") Collection<Long> sessionIds);
+
     /**
      * Update time slot for sessions by day of week
      * Used in Step 3: Assign Time Slots
@@ -477,4 +645,48 @@ public interface SessionRepository extends JpaRepository<Session, Long> {
             """, nativeQuery = true)
     @Modifying
     int clearTimeSlotsForClass(@Param("classId") Long classId);
+
+    // Các lớp có buổi học (không bị hủy) theo từng ngày, giới hạn trong các chi nhánh (dashboard Center Head)
+    @Query("""
+            SELECT DISTINCT s.date, s.classEntity.id FROM Session s
+            WHERE s.classEntity.branch.id IN :branchIds
+              AND s.date BETWEEN :fromDate AND :toDate
+              AND s.status != org.fyp.tmssep490be.entities.enums.SessionStatus.CANCELLED
+            """)
+    List<Object[]> findClassIdsWithSessionsByDate(
+            @Param("branchIds") List<Long> branchIds,
+            @Param("fromDate") LocalDate fromDate,
+            @Param("toDate") LocalDate toDate);
+
+    List<Session> findByClassEntityIdIn(List<Long> classIds);
+
+    // Khung giờ bận của giáo viên từ các lớp được gán (phát hiện trùng lịch trong 1 query)
+    @Query("""
+            SELECT c.assignedTeacher.id, c.id, c.name, c.code, s.date, tst.startTime, tst.endTime
+            FROM Session s
+            JOIN s.classEntity c
+            JOIN s.timeSlotTemplate tst
+            WHERE c.assignedTeacher.id IN :teacherIds
+              AND c.status NOT IN :excludedClassStatuses
+              AND s.date BETWEEN :fromDate AND :toDate
+            """)
+    List<Object[]> findOccupiedSlotsByAssignedTeacherIds(
+            @Param("teacherIds") List<Long> teacherIds,
+            @Param("excludedClassStatuses") List<org.fyp.tmssep490be.entities.enums.ClassStatus> excludedClassStatuses,
+            @Param("fromDate") LocalDate fromDate,
+            @Param("toDate") LocalDate toDate);
+
+    // Khung giờ của các buổi thuộc các lớp chỉ định trong khoảng ngày
+    @Query("""
+            SELECT c.id, c.name, c.code, s.date, tst.startTime, tst.endTime
+            FROM Session s
+            JOIN s.classEntity c
+            JOIN s.timeSlotTemplate tst
+            WHERE c.id IN :classIds
+              AND s.date BETWEEN :fromDate AND :toDate
+            """)
+    List<Object[]> findOccupiedSlotsByClassIds(
+            @Param("classIds") List<Long> classIds,
+            @Param("fromDate") LocalDate fromDate,
+            @Param("toDate") LocalDate toDate);
 }
@@ -127,6 +127,22 @@ public interface SessionResourceRepository extends JpaRepository<SessionResource
       @Param("timeSlotIds") List<Long> timeSlotIds,
       @Param("excludeClassId") Long excludeClassId);
 
+  // Lịch chiếm dụng tài nguyên của một chi nhánh từ fromDate: [resourceId, date, startTime, endTime, classId]
+  @Query(value = """
+      SELECT sr.resource_id, s.date, tst.start_time, tst.end_time, s.class_id
+      FROM session_resource sr
+      JOIN resource r ON r.id = sr.resource_id
+      JOIN session s ON s.id = sr.session_id
+      JOIN time_slot_template tst ON tst.id = s.time_slot_template_id
+      WHERE r.branch_id = :branchId
+        AND s.date >= :fromDate
+        AND s.status IN (:statuses)
+      """, nativeQuery = true)
+  List<Object[]> findBranchResourceBookings(
+      @Param("branchId") Long branchId,
+      @Param("fromDate") LocalDate fromDate,
+      @Param("statuses") List<String> statuses);
+
   // Tìm tất cả session resources theo resource và ngày (để kiểm tra overlap
   // conflict)
   @Query("SELECT sr FROM SessionResource sr " +
@@ -10,6 +10,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,6 +21,12 @@ public interface StudentRepository extends JpaRepository<Student, Long> {
 
     Optional<Student> findByUserAccountId(Long userId);
 
+    // [email, userAccountId, studentId, studentCode] cho các email trong lô import
+    @Query("SELECT u.email, u.id, s.id, s.studentCode FROM Student s JOIN s.userAccount u WHERE u.email IN :emails")
+    List<Object[]> findStudentRefsByEmails(@Param("emails") Collection<String> emails);
+
+    // Search: mỗi nhánh của UNION chỉ lọc trên một bảng nên dùng được index GIN pg_trgm của bảng đó
+    // (OR trực tiếp giữa cột của student và user_account buộc Postgres lọc sau join, không dùng index)
     @Query("SELECT s FROM Student s " +
            "INNER JOIN s.userAccount u " +
            "INNER JOIN u.userBranches ub " +
@@ -31,12 +38,14 @@ public interface StudentRepository extends JpaRepository<Student, Long> {
            "  AND e.classId = :classId " +
            "  AND e.status = org.fyp.tmssep490be.entities.enums.EnrollmentStatus.ENROLLED" +
            ") " +
-           "AND (COALESCE(:search, '') = '' OR " +
-           "  LOWER(s.studentCode) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-           "  LOWER(u.fullName) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-           "  LOWER(u.email) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-           "  LOWER(COALESCE(u.phone, '')) LIKE LOWER(CONCAT('%', :search, '%'))" +
-           ")")
+           "AND (COALESCE(:search, '') = '' OR s.id IN (" +
+           "  SELECT sc.id FROM Student sc WHERE tms_search_text(sc.studentCode) LIKE CONCAT('%', tms_search_text(CAST(:search AS String)), '%') " +
+           "  UNION " +
+           "  SELECT su.id FROM Student su JOIN su.userAccount uu " +
+           "  WHERE tms_search_text(uu.fullName) LIKE CONCAT('%', tms_search_text(CAST(:search AS String)), '%') " +
+           "     OR tms_search_text(uu.email) LIKE CONCAT('%', tms_search_text(CAST(:search AS String)), '%') " +
+           "     OR tms_search_text(uu.phone) LIKE CONCAT('%', tms_search_text(CAST(:search AS String)), '%')" +
+           "))")
     List<Student> findAllAvailableStudentsForClass(
             @Param("classId") Long classId,
             @Param("branchId") Long branchId,
@@ -46,6 +55,8 @@ public interface StudentRepository extends JpaRepository<Student, Long> {
     /**
      * Find students with filters for AA student search (for on-behalf request creation)
      * Filters by branch access, search term, user status, and gender
+     * Search không phân biệt hoa thường / dấu tiếng Việt: id học viên khớp lấy từ UNION các subquery theo
+     * từng bảng (student, user_account), mỗi subquery dùng index GIN pg_trgm trên tms_search_text(cột)
      */
     @Query("SELECT DISTINCT s FROM Student s " +
            "INNER JOIN s.userAccount u " +
@@ -53,12 +64,14 @@ public interface StudentRepository extends JpaRepository<Student, Long> {
            "WHERE ub.branch.id IN :branchIds " +
            "AND (:status IS NULL OR u.status = :status) " +
            "AND (:gender IS NULL OR u.gender = :gender) " +
-           "AND (COALESCE(:search, '') = '' OR " +
-           "  LOWER(s.studentCode) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-           "  LOWER(u.fullName) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-           "  LOWER(u.email) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-           "  LOWER(COALESCE(u.phone, '')) LIKE LOWER(CONCAT('%', :search, '%'))" +
-           ")")
+           "AND (COALESCE(:search, '') = '' OR s.id IN (" +
+           "  SELECT sc.id FROM Student sc WHERE tms_search_text(sc.studentCode) LIKE CONCAT('%', tms_search_text(CAST(:search AS String)), '%') " +
+           "  UNION " +
+           "  SELECT su.id FROM Student su JOIN su.userAccount uu " +
+           "  WHERE tms_search_text(uu.fullName) LIKE CONCAT('%', tms_search_text(CAST(:search AS String)), '%') " +
+           "     OR tms_search_text(uu.email) LIKE CONCAT('%', tms_search_text(CAST(:search AS String)), '%') " +
+           "     OR tms_search_text(uu.phone) LIKE CONCAT('%', tms_search_text(CAST(:search AS String)), '%')" +
+           "))")
     Page<Student> findStudentsWithFilters(
             @Param("branchIds") List<Long> branchIds,
             @Param("search") String search,
@@ -67,4 +80,49 @@ public interface StudentRepository extends JpaRepository<Student, Long> {
             Pageable pageable
     );
 
+    /**
+     * Gợi ý học viên khi gõ ô tìm kiếm (typeahead), xếp hạng: trùng mã học viên, bắt đầu bằng từ khóa
+     * (mã hoặc họ tên), rồi theo word_similarity với họ tên. :term phải đã trim, dài ít nhất 2 ký tự.
+     * Học viên khớp lấy từ UNION các subquery theo từng bảng để mỗi nhánh dùng index trigram của bảng đó.
+     * [student_id, student_code, full_name, email, phone]
+     */
+    @Query(value = """
+            WITH q AS (SELECT tms_search_text(CAST(:term AS TEXT)) AS term),
+            -- Pattern viết thẳng từ tham số (không lấy từ q) để là hằng số khi quét index
+            matched AS (
+                SELECT sc.id FROM student sc
+                WHERE tms_search_text(sc.student_code) LIKE '%' || tms_search_text(CAST(:term AS TEXT)) || '%'
+                UNION
+                SELECT su.id FROM student su
+                JOIN user_account uu ON uu.id = su.user_id
+                WHERE tms_search_text(uu.full_name) LIKE '%' || tms_search_text(CAST(:term AS TEXT)) || '%'
+                   OR tms_search_text(uu.email) LIKE '%' || tms_search_text(CAST(:term AS TEXT)) || '%'
+                   OR tms_search_text(uu.phone) LIKE '%' || tms_search_text(CAST(:term AS TEXT)) || '%'
+            )
+            SELECT s.id, s.student_code, u.full_name, u.email, u.phone
+            FROM matched m
+            JOIN student s ON s.id = m.id
+            JOIN user_account u ON u.id = s.user_id
+            CROSS JOIN q
+            WHERE EXISTS (
+                SELECT 1 FROM user_branches ub
+                WHERE ub.user_id = u.id AND ub.branch_id IN (:branchIds)
+            )
+            ORDER BY
+                CASE
+                    WHEN tms_search_text(s.student_code) = q.term THEN 0
+                    WHEN tms_search_text(s.student_code) LIKE q.term || '%'
+                        OR tms_search_text(u.full_name) LIKE q.term || '%' THEN 1
+                    ELSE 2
+                END,
+                word_similarity(q.term, tms_search_text(u.full_name)) DESC,
+                s.student_code
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<Object[]> findStudentSuggestions(
+            @Param("branchIds") Collection<Long> branchIds,
+            @Param("term") String term,
+            @Param("limit") int limit
+    );
+
 }
\ No newline at end of file
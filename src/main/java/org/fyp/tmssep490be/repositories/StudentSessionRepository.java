@@ -3,11 +3,14 @@ package org.fyp.tmssep490be.repositories;
 import org.fyp.tmssep490be.entities.StudentSession;
 import org.fyp.tmssep490be.entities.enums.AttendanceStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -110,6 +113,13 @@ public interface StudentSessionRepository extends JpaRepository<StudentSession,
            "AND ss.attendanceStatus != 'CANCELLED'")
     Long countBySessionId(@Param("sessionId") Long sessionId);
 
+    // Số học viên theo từng buổi: [session_id, count]
+    @Query("SELECT ss.session.id, COUNT(ss) FROM StudentSession ss " +
+           "WHERE ss.session.id IN :sessionIds " +
+           "AND ss.attendanceStatus != 'CANCELLED' " +
+           "GROUP BY ss.session.id")
+    List<Object[]> countBySessionIds(@Param("sessionIds") Collection<Long> sessionIds);
+
     @Query("SELECT ss FROM StudentSession ss " +
            "JOIN FETCH ss.session s " +
            "JOIN FETCH s.classEntity c " +
@@ -140,6 +150,49 @@ public interface StudentSessionRepository extends JpaRepository<StudentSession,
             """)
     List<StudentSession> findBySessionIds(@Param("sessionIds") List<Long> sessionIds);
 
+    // Các buổi (trong sessionIds) đã có ít nhất một học viên được điểm danh
+    @Query("""
+            SELECT DISTINCT ss.session.id FROM StudentSession ss
+            WHERE ss.session.id IN :sessionIds
+              AND ss.attendanceStatus IS NOT NULL
+              AND ss.attendanceStatus <> org.fyp.tmssep490be.entities.enums.AttendanceStatus.PLANNED
+            """)
+    List<Long> findSessionIdsWithAttendanceRecorded(@Param("sessionIds") Collection<Long> sessionIds);
+
+    // Bản ghi điểm danh của các buổi (không CANCELLED) trong lớp:
+    // [session_id, student_id, attendance_status, homework_status, is_makeup]
+    @Query(value = """
+            SELECT ss.session_id, ss.student_id, ss.attendance_status, ss.homework_status, ss.is_makeup
+            FROM student_session ss
+            JOIN session s ON s.id = ss.session_id
+            WHERE s.class_id = :classId
+              AND s.status <> 'CANCELLED'
+            """, nativeQuery = true)
+    List<Object[]> findAttendanceTuplesByClassId(@Param("classId") Long classId);
+
+    // Bản ghi học bù cho các buổi gốc của lớp:
+    // [original_session_id, student_id, attendance_status, makeup_date, makeup_end_time]
+    @Query(value = """
+            SELECT ss.original_session_id, ss.student_id, ss.attendance_status, ms.date, mtst.end_time
+            FROM student_session ss
+            JOIN session os ON os.id = ss.original_session_id
+            JOIN session ms ON ms.id = ss.session_id
+            LEFT JOIN time_slot_template mtst ON mtst.id = ms.time_slot_template_id
+            WHERE os.class_id = :classId
+              AND os.status <> 'CANCELLED'
+              AND ss.is_makeup = true
+            """, nativeQuery = true)
+    List<Object[]> findMakeupTuplesByOriginalClassId(@Param("classId") Long classId);
+
+    // Lớp gốc của các học viên học bù trong buổi (ô học bù hiển thị trên ma trận điểm danh của lớp gốc)
+    @Query("""
+            SELECT DISTINCT os.classEntity.id FROM StudentSession ss
+            JOIN ss.originalSession os
+            WHERE ss.session.id = :sessionId
+              AND ss.isMakeup = true
+            """)
+    List<Long> findOriginalClassIdsOfMakeupsBySessionId(@Param("sessionId") Long sessionId);
+
     @Query("""
             SELECT ss FROM StudentSession ss
             JOIN ss.originalSession os
@@ -199,4 +252,46 @@ public interface StudentSessionRepository extends JpaRepository<StudentSession,
            "WHERE s.classEntity.id = :classId")
     List<StudentSession> findByClassIdWithSessionAndStudent(@Param("classId") Long classId);
 
+    // Rollup điểm danh theo (ngày, chi nhánh): tổng số bản ghi và số bản ghi PRESENT
+    @Query("SELECT s.date, c.branch.id, COUNT(ss), " +
+           "SUM(CASE WHEN ss.attendanceStatus = org.fyp.tmssep490be.entities.enums.AttendanceStatus.PRESENT THEN 1 ELSE 0 END) " +
+           "FROM StudentSession ss " +
+           "JOIN ss.session s " +
+           "JOIN s.classEntity c " +
+           "WHERE s.date BETWEEN :fromDate AND :toDate " +
+           "AND s.status != org.fyp.tmssep490be.entities.enums.SessionStatus.CANCELLED " +
+           "GROUP BY s.date, c.branch.id")
+    List<Object[]> countAttendanceGroupByDateAndBranch(
+            @Param("fromDate") LocalDate fromDate,
+            @Param("toDate") LocalDate toDate);
+
+    // Chốt điểm danh hàng loạt: chỉ đổi các bản ghi còn PLANNED, giữ nguyên PRESENT/ABSENT giáo viên đã ghi
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query("UPDATE StudentSession ss " +
+           "SET ss.attendanceStatus = org.fyp.tmssep490be.entities.enums.AttendanceStatus.ABSENT, " +
+           "    ss.recordedAt = :recordedAt, ss.updatedAt = :recordedAt " +
+           "WHERE ss.session.id IN :sessionIds " +
+           "AND ss.attendanceStatus = org.fyp.tmssep490be.entities.enums.AttendanceStatus.PLANNED")
+    int markPlannedAsAbsentBySessionIds(
+            @Param("sessionIds") Collection<Long> sessionIds,
+            @Param("recordedAt") OffsetDateTime recordedAt);
+
+    // Sinh student_session cho cả nhóm học viên x các buổi bằng một câu INSERT ... SELECT.
+    // Dòng đã tồn tại (ghi danh lại) được đưa về PLANNED như khi lưu entity trước đây.
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            INSERT INTO student_session (student_id, session_id, is_makeup, attendance_status, created_at, updated_at)
+            SELECT st.id, s.id, false, 'PLANNED', CURRENT_TIMESTAMP, CURRENT_TIMESTAMP
+            FROM student st
+            CROSS JOIN session s
+            WHERE st.id IN (:studentIds)
+              AND s.id IN (:sessionIds)
+            ON CONFLICT (student_id, session_id) DO UPDATE
+            SET attendance_status = 'PLANNED',
+                is_makeup = false,
+                updated_at = EXCLUDED.updated_at
+            """, nativeQuery = true)
+    int insertPlannedForStudents(
+            @Param("studentIds") Collection<Long> studentIds,
+            @Param("sessionIds") Collection<Long> sessionIds);
 }
@@ -7,6 +7,9 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -32,4 +35,50 @@ public interface TeacherRepository extends JpaRepository<Teacher, Long> {
         int countAssignedClassesByTeacherIdAndStatuses(
                         @Param("teacherId") Long teacherId,
                         @Param("statuses") List<ClassStatus> statuses);
+
+        // Giáo viên dạy thay: giáo viên ACTIVE thuộc các branch, không bị loại trừ và (nếu checkConflict)
+        // không có buổi PLANNED/ONGOING giao giờ với [startTime, endTime] trong ngày sessionDate.
+        // Sắp xếp: có skill khớp trước, nhiều skill hơn trước, rồi theo tên.
+        // Trả về [teacher_id, full_name, email, phone, note, skill_count, matched_skill_count]
+        @Query(value = """
+                        SELECT t.id, ua.full_name, ua.email, ua.phone, t.note,
+                               COUNT(tsk.skill) AS skill_count,
+                               COUNT(DISTINCT tsk.skill) FILTER (WHERE tsk.skill IN (:requiredSkills)) AS matched_skill_count
+                        FROM teacher t
+                        JOIN user_account ua ON ua.id = t.user_account_id
+                        LEFT JOIN teacher_skill tsk ON tsk.teacher_id = t.id
+                        WHERE ua.status = 'ACTIVE'
+                          AND EXISTS (
+                              SELECT 1 FROM user_branches ub
+                              WHERE ub.user_id = ua.id
+                                AND ub.branch_id IN (:branchIds))
+                          AND t.id NOT IN (:excludedTeacherIds)
+                          AND (:checkConflict = false OR NOT EXISTS (
+                              SELECT 1 FROM teaching_slot tsl
+                              JOIN session s ON s.id = tsl.session_id
+                              JOIN time_slot_template tst ON tst.id = s.time_slot_template_id
+                              WHERE tsl.teacher_id = t.id
+                                AND s.date = :sessionDate
+                                AND s.status IN ('PLANNED', 'ONGOING')
+                                AND s.id <> :excludeSessionId
+                                AND tst.start_time <= :endTime
+                                AND tst.end_time >= :startTime))
+                        GROUP BY t.id, ua.full_name, ua.email, ua.phone, t.note
+                        ORDER BY (COUNT(tsk.skill) FILTER (WHERE tsk.skill IN (:requiredSkills)) > 0) DESC,
+                                 COUNT(tsk.skill) DESC,
+                                 LOWER(COALESCE(ua.full_name, '')) ASC,
+                                 t.id ASC
+                        LIMIT :limit OFFSET :offset
+                        """, nativeQuery = true)
+        List<Object[]> findReplacementCandidateRows(
+                        @Param("branchIds") Collection<Long> branchIds,
+                        @Param("excludedTeacherIds") Collection<Long> excludedTeacherIds,
+                        @Param("requiredSkills") Collection<String> requiredSkills,
+                        @Param("checkConflict") boolean checkConflict,
+                        @Param("sessionDate") LocalDate sessionDate,
+                        @Param("startTime") LocalTime startTime,
+                        @Param("endTime") LocalTime endTime,
+                        @Param("excludeSessionId") Long excludeSessionId,
+                        @Param("limit") int limit,
+                        @Param("offset") int offset);
 }
@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -117,5 +118,13 @@ long countActiveRequestsByTeacherAndClass(@Param("teacherId") Long teacherId,
            "WHERE (tr.session.id = :sessionId OR tr.newSession.id = :sessionId) " +
            "AND tr.status = org.fyp.tmssep490be.entities.enums.RequestStatus.APPROVED")
     List<TeacherRequest> findBySessionIdAndApprovedStatus(@Param("sessionId") Long sessionId);
+
+    // Bản batch của findBySessionIdAndApprovedStatus cho lịch tuần: [session_id, new_session_id, request_type]
+    @Query("SELECT tr.session.id, ns.id, tr.requestType FROM TeacherRequest tr " +
+           "LEFT JOIN tr.newSession ns " +
+           "WHERE (tr.session.id IN :sessionIds OR ns.id IN :sessionIds) " +
+           "AND tr.status = org.fyp.tmssep490be.entities.enums.RequestStatus.APPROVED " +
+           "ORDER BY tr.id")
+    List<Object[]> findApprovedRequestTypesBySessionIds(@Param("sessionIds") Collection<Long> sessionIds);
 }
 
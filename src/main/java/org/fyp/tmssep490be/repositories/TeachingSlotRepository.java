@@ -93,4 +93,23 @@ public interface TeachingSlotRepository extends JpaRepository<TeachingSlot, Teac
     // Kiểm tra session đã có teaching slot chưa
     @Query("SELECT COUNT(ts) > 0 FROM TeachingSlot ts WHERE ts.session.id = :sessionId")
     boolean existsBySessionId(@Param("sessionId") Long sessionId);
+
+    // Rollup giờ dạy theo (giáo viên, chi nhánh) trong khoảng ngày, chỉ tính slot SCHEDULED/SUBSTITUTED
+    @Query(value = """
+        SELECT ts.teacher_id AS teacher_id,
+               c.branch_id AS branch_id,
+               COUNT(*) AS slot_count,
+               COALESCE(SUM(EXTRACT(EPOCH FROM (tst.end_time - tst.start_time)) / 3600.0), 0) AS teaching_hours
+        FROM teaching_slot ts
+        JOIN session s ON ts.session_id = s.id
+        JOIN class c ON s.class_id = c.id
+        LEFT JOIN time_slot_template tst ON s.time_slot_template_id = tst.id
+        WHERE s.date BETWEEN :fromDate AND :toDate
+          AND s.status <> 'CANCELLED'
+          AND ts.status IN ('SCHEDULED', 'SUBSTITUTED')
+        GROUP BY ts.teacher_id, c.branch_id
+        """, nativeQuery = true)
+    List<Object[]> sumTeachingHoursGroupByTeacherAndBranch(
+        @Param("fromDate") java.time.LocalDate fromDate,
+        @Param("toDate") java.time.LocalDate toDate);
 }
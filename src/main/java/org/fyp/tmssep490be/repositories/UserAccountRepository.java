@@ -10,6 +10,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -34,6 +35,12 @@ public interface UserAccountRepository extends JpaRepository<UserAccount, Long>
 
         boolean existsByEmail(String email);
 
+        @Query("SELECT u.email FROM UserAccount u WHERE u.email IN :emails")
+        List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+        @Query("SELECT u.phone FROM UserAccount u WHERE u.phone IN :phones")
+        List<String> findExistingPhones(@Param("phones") Collection<String> phones);
+
         @Query("SELECT DISTINCT u FROM UserAccount u " +
                         "JOIN u.userRoles ur " +
                         "JOIN u.userBranches ub " +
@@ -43,6 +50,16 @@ public interface UserAccountRepository extends JpaRepository<UserAccount, Long>
                         @Param("roleCode") String roleCode,
                         @Param("branchIds") List<Long> branchIds);
 
+        // Chỉ lấy id người nhận cho broadcast notification theo role (branchId = null: mọi chi nhánh)
+        @Query("SELECT DISTINCT u.id FROM UserAccount u " +
+                        "JOIN u.userRoles ur " +
+                        "WHERE ur.role.code = :roleCode " +
+                        "AND (:branchId IS NULL OR EXISTS (SELECT 1 FROM UserBranches ub " +
+                        "WHERE ub.userAccount = u AND ub.branch.id = :branchId))")
+        List<Long> findUserIdsByRoleCodeAndBranchId(
+                        @Param("roleCode") String roleCode,
+                        @Param("branchId") Long branchId);
+
         @Query("SELECT DISTINCT u FROM UserAccount u " +
                         "JOIN u.userRoles ur " +
                         "JOIN u.userBranches ub " +
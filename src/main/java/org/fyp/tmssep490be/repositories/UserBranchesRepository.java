@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -22,4 +23,7 @@ public interface UserBranchesRepository extends JpaRepository<UserBranches, User
 
     @Query("SELECT CASE WHEN COUNT(ub) > 0 THEN true ELSE false END FROM UserBranches ub WHERE ub.id.userId = :userId AND ub.id.branchId = :branchId")
     boolean existsByUserAccountIdAndBranchId(@Param("userId") Long userId, @Param("branchId") Long branchId);
+
+    @Query("SELECT ub.id.userId FROM UserBranches ub WHERE ub.id.branchId = :branchId AND ub.id.userId IN :userIds")
+    List<Long> findUserIdsInBranch(@Param("branchId") Long branchId, @Param("userIds") Collection<Long> userIds);
 }
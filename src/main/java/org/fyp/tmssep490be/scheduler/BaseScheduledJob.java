@@ -1,15 +1,58 @@
 package org.fyp.tmssep490be.scheduler;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.function.ToIntFunction;
 
 @Slf4j
 public abstract class BaseScheduledJob {
 
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
+    // Không có coordinator (vd: unit test) thì job chạy trực tiếp, partition chạy tuần tự
+    private JobCoordinator jobCoordinator;
+
+    @Autowired(required = false)
+    void setJobCoordinator(JobCoordinator jobCoordinator) {
+        this.jobCoordinator = jobCoordinator;
+    }
+
+    // Chỉ một instance chạy job tại một thời điểm (lease trong bảng job_lease), kết quả ghi vào job_run
+    protected boolean runExclusive(String jobName, Runnable work) {
+        if (jobCoordinator == null) {
+            work.run();
+            return true;
+        }
+        return jobCoordinator.runExclusive(jobName, work);
+    }
+
+    protected boolean runExclusive(String jobName, Duration minLease, Runnable work) {
+        if (jobCoordinator == null) {
+            work.run();
+            return true;
+        }
+        return jobCoordinator.runExclusive(jobName, minLease, work);
+    }
+
+    // Chạy các partition (theo branch / khoảng id) song song trên jobWorkerExecutor
+    protected <P> int runPartitioned(String label, List<P> partitions, ToIntFunction<P> work) {
+        if (jobCoordinator == null) {
+            return partitions.stream().mapToInt(work).sum();
+        }
+        return jobCoordinator.runPartitioned(label, partitions, work);
+    }
+
+    // Mốc của job tăng dần; null = quét toàn bộ
+    protected OffsetDateTime changedSince(String jobName) {
+        return jobCoordinator != null ? jobCoordinator.changedSince(jobName) : null;
+    }
+
     protected void logJobStart(String jobName) {
         log.info("╔═══════════════════════════════════════════════════════════════╗");
         log.info("║ {} STARTED at {}", padRight(jobName, 30), LocalDateTime.now().format(FORMATTER));
@@ -17,6 +60,9 @@ public abstract class BaseScheduledJob {
     }
 
     protected void logJobEnd(String jobName, int recordsProcessed) {
+        if (jobCoordinator != null) {
+            jobCoordinator.recordRows(recordsProcessed);
+        }
         log.info("╔═══════════════════════════════════════════════════════════════╗");
         log.info("║ {} COMPLETED: {} records processed", padRight(jobName, 30), recordsProcessed);
         log.info("║ Finished at: {}", LocalDateTime.now().format(FORMATTER));
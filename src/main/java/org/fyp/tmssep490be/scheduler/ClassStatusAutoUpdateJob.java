@@ -1,18 +1,16 @@
 package org.fyp.tmssep490be.scheduler;
 
 import lombok.RequiredArgsConstructor;
-import org.fyp.tmssep490be.entities.ClassEntity;
 import org.fyp.tmssep490be.entities.enums.ClassStatus;
-import org.fyp.tmssep490be.entities.enums.SessionStatus;
 import org.fyp.tmssep490be.repositories.ClassRepository;
-import org.fyp.tmssep490be.repositories.SessionRepository;
+import org.fyp.tmssep490be.services.PublicCatalogCache;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
-import java.util.List;
+import java.time.OffsetDateTime;
 
 /**
  * Scheduled job to automatically update class status based on dates and session completion.
@@ -21,8 +19,11 @@ import java.util.List;
  * - Updates SCHEDULED classes to ONGOING when startDate is reached
  * - Updates ONGOING classes to COMPLETED when:
  *   1. plannedEndDate has passed
- *   2. All sessions are DONE or CANCELLED (no PLANNED or ONGOING sessions remain)
+ *   2. All sessions are DONE or CANCELLED (no PLANNED sessions remain)
  * - Sets actualEndDate when class is marked as COMPLETED
+ * - Each transition is one set-based UPDATE. The completion check is incremental: only classes that
+ *   became due, or whose class / session rows changed since the last successful run, are re-checked
+ *   (full scan when there is no previous run and once a week)
  *
  * Runs daily at 2:00 AM (configurable via application.yml)
  */
@@ -36,80 +37,53 @@ import java.util.List;
 )
 public class ClassStatusAutoUpdateJob extends BaseScheduledJob {
 
+    private static final String JOB_NAME = "ClassStatusAutoUpdate";
+
     private final ClassRepository classRepository;
-    private final SessionRepository sessionRepository;
+    private final PublicCatalogCache publicCatalogCache;
 
     @Scheduled(cron = "${tms.scheduler.jobs.class-status-update.cron:0 0 2 * * ?}")
     @Transactional
     public void updateClassStatuses() {
+        runExclusive(JOB_NAME, this::doUpdateClassStatuses);
+    }
+
+    private void doUpdateClassStatuses() {
         try {
-            logJobStart("ClassStatusAutoUpdate");
+            logJobStart(JOB_NAME);
 
             LocalDate today = LocalDate.now();
-            int updatedToOngoingCount = 0;
-            int updatedToCompletedCount = 0;
+            OffsetDateTime since = changedSince(JOB_NAME);
+            boolean fullScan = since == null;
+            logJobInfo(fullScan ? "Full scan of ongoing classes" : "Classes and sessions changed since " + since);
 
-            // 1. Update SCHEDULED → ONGOING when startDate is reached
-            List<ClassEntity> scheduledClasses = classRepository
-                .findByStatus(ClassStatus.SCHEDULED)
-                .stream()
-                .filter(c -> c.getStartDate() != null && !c.getStartDate().isAfter(today))
-                .toList();
+            // 1. SCHEDULED → ONGOING when startDate is reached
+            int updatedToOngoingCount = classRepository.startScheduledClasses(today);
 
-            for (ClassEntity classEntity : scheduledClasses) {
-                classEntity.setStatus(ClassStatus.ONGOING);
-                classRepository.save(classEntity);
-                logJobInfo(String.format("Updated class '%s' (ID: %d) from SCHEDULED to ONGOING (startDate: %s)",
-                    classEntity.getCode(), classEntity.getId(), classEntity.getStartDate()));
-                updatedToOngoingCount++;
-            }
+            // 2. ONGOING → COMPLETED when plannedEndDate passed and all sessions are done
+            // (quét toàn bộ thì :since không được dùng, nhưng vẫn phải bind giá trị có kiểu)
+            int updatedToCompletedCount = classRepository.completeFinishedClasses(
+                    today, fullScan ? OffsetDateTime.now() : since, fullScan);
 
-            // 2. Update ONGOING → COMPLETED when plannedEndDate passed and all sessions are done
-            List<ClassEntity> ongoingClasses = classRepository
-                .findByStatus(ClassStatus.ONGOING)
-                .stream()
-                .filter(c -> c.getPlannedEndDate() != null && c.getPlannedEndDate().isBefore(today))
-                .toList();
-
-            for (ClassEntity classEntity : ongoingClasses) {
-                // Check if all non-cancelled sessions are DONE
-                Long totalNonCancelledSessions = sessionRepository.countNonCancelledSessionsByClassId(
-                    classEntity.getId());
-                Long doneSessions = sessionRepository.countByClassEntityIdAndStatus(
-                    classEntity.getId(), SessionStatus.DONE);
-
-                // If all non-cancelled sessions are done, mark class as COMPLETED
-                if (totalNonCancelledSessions != null && totalNonCancelledSessions > 0 
-                    && doneSessions != null 
-                    && doneSessions.equals(totalNonCancelledSessions)) {
-                    
-                    classEntity.setStatus(ClassStatus.COMPLETED);
-                    if (classEntity.getActualEndDate() == null) {
-                        classEntity.setActualEndDate(today);
-                    }
-                    classRepository.save(classEntity);
-                    logJobInfo(String.format("Updated class '%s' (ID: %d) from ONGOING to COMPLETED (plannedEndDate: %s, actualEndDate: %s)",
-                        classEntity.getCode(), classEntity.getId(), 
-                        classEntity.getPlannedEndDate(), classEntity.getActualEndDate()));
-                    updatedToCompletedCount++;
-                } else {
-                    logJobWarning(String.format("Class '%s' (ID: %d) has plannedEndDate passed but still has active sessions (total non-cancelled: %d, done: %d)",
-                        classEntity.getCode(), classEntity.getId(), totalNonCancelledSessions, doneSessions));
-                }
+            long overdueCount = classRepository.countByStatusAndPlannedEndDateBefore(ClassStatus.ONGOING, today);
+            if (overdueCount > 0) {
+                logJobWarning(String.format("%d ongoing classes have plannedEndDate passed but cannot be completed yet (PLANNED or no sessions)",
+                    overdueCount));
             }
 
             int totalUpdated = updatedToOngoingCount + updatedToCompletedCount;
             if (totalUpdated > 0) {
+                // Bulk update không đi qua JPA listener của ClassEntity
+                publicCatalogCache.invalidateAll();
                 logJobInfo(String.format("Updated %d classes to ONGOING", updatedToOngoingCount));
                 logJobInfo(String.format("Updated %d classes to COMPLETED", updatedToCompletedCount));
             }
 
-            logJobEnd("ClassStatusAutoUpdate", totalUpdated);
+            logJobEnd(JOB_NAME, totalUpdated);
 
         } catch (Exception e) {
-            logJobError("ClassStatusAutoUpdate", e);
+            logJobError(JOB_NAME, e);
             throw e;
         }
     }
 }
-
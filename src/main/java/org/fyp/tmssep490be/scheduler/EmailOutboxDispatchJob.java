@@ -0,0 +1,41 @@
+package org.fyp.tmssep490be.scheduler;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.services.EmailOutboxService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// Job: Email Outbox Dispatch
+// Gửi các email đang chờ trong bảng email_outbox theo lô (xem EmailOutboxService).
+//
+// Chạy liên tục với khoảng nghỉ cố định giữa hai lần (mặc định 5 giây).
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(
+        prefix = "tms.email.outbox",
+        name = "enabled",
+        havingValue = "true",
+        matchIfMissing = true
+)
+public class EmailOutboxDispatchJob extends BaseScheduledJob {
+
+    private final EmailOutboxService emailOutboxService;
+
+    @Scheduled(
+            fixedDelayString = "${tms.email.outbox.poll-interval-ms:5000}",
+            initialDelayString = "${tms.email.outbox.initial-delay-ms:10000}"
+    )
+    public void dispatchPendingEmails() {
+        try {
+            int sent = emailOutboxService.dispatchPending();
+            if (sent > 0) {
+                log.info("EmailOutboxDispatchJob: sent {} emails", sent);
+            }
+        } catch (Exception e) {
+            logJobError("EmailOutboxDispatchJob", e);
+        }
+    }
+}
@@ -1,18 +1,15 @@
 package org.fyp.tmssep490be.scheduler;
 
 import lombok.RequiredArgsConstructor;
-import org.fyp.tmssep490be.entities.ClassEntity;
-import org.fyp.tmssep490be.entities.Enrollment;
-import org.fyp.tmssep490be.entities.enums.ClassStatus;
-import org.fyp.tmssep490be.entities.enums.EnrollmentStatus;
-import org.fyp.tmssep490be.repositories.ClassRepository;
 import org.fyp.tmssep490be.repositories.EnrollmentRepository;
+import org.fyp.tmssep490be.services.PublicCatalogCache;
+import org.fyp.tmssep490be.services.WeeklyTimetableCache;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
+import java.time.OffsetDateTime;
 
 /**
  * Scheduled job to automatically complete enrollments when their class is completed.
@@ -20,6 +17,9 @@ import java.util.List;
  * Functionality:
  * - Updates ENROLLED enrollments to COMPLETED when class status is COMPLETED
  * - Only processes enrollments for classes that are actually COMPLETED
+ * - Incremental: one set-based UPDATE limited to classes / enrollments changed since the last
+ *   successful run (see JobCoordinator.changedSince); a full scan runs when there is no previous run
+ *   and once a week
  *
  * Runs daily at 2:30 AM (configurable via application.yml)
  */
@@ -33,54 +33,42 @@ import java.util.List;
 )
 public class EnrollmentAutoCompleteJob extends BaseScheduledJob {
 
-    private final ClassRepository classRepository;
+    private static final String JOB_NAME = "EnrollmentAutoComplete";
+
     private final EnrollmentRepository enrollmentRepository;
+    private final PublicCatalogCache publicCatalogCache;
+    private final WeeklyTimetableCache timetableCache;
 
     @Scheduled(cron = "${tms.scheduler.jobs.enrollment-auto-complete.cron:0 30 2 * * ?}")
     @Transactional
     public void autoCompleteEnrollments() {
-        try {
-            logJobStart("EnrollmentAutoComplete");
-
-            // Find all COMPLETED classes
-            List<ClassEntity> completedClasses = classRepository.findByStatus(ClassStatus.COMPLETED);
-
-            if (completedClasses.isEmpty()) {
-                logJobEnd("EnrollmentAutoComplete", "No completed classes found");
-                return;
-            }
-
-            int totalCompleted = 0;
+        runExclusive(JOB_NAME, this::doAutoCompleteEnrollments);
+    }
 
-            for (ClassEntity classEntity : completedClasses) {
-                // Find all ENROLLED enrollments for this class
-                List<Enrollment> enrolledStudents = enrollmentRepository.findByClassIdAndStatus(
-                    classEntity.getId(), EnrollmentStatus.ENROLLED);
+    private void doAutoCompleteEnrollments() {
+        try {
+            logJobStart(JOB_NAME);
 
-                if (enrolledStudents.isEmpty()) {
-                    continue;
-                }
+            OffsetDateTime since = changedSince(JOB_NAME);
+            boolean fullScan = since == null;
+            logJobInfo(fullScan ? "Full scan of completed classes" : "Classes and enrollments changed since " + since);
 
-                int completedCount = 0;
-                for (Enrollment enrollment : enrolledStudents) {
-                    enrollment.setStatus(EnrollmentStatus.COMPLETED);
-                    enrollmentRepository.save(enrollment);
-                    completedCount++;
-                }
+            // Quét toàn bộ thì :since không được dùng, nhưng vẫn phải bind giá trị có kiểu
+            int completedCount = enrollmentRepository.completeEnrollmentsOfCompletedClasses(
+                    fullScan ? OffsetDateTime.now() : since, fullScan);
 
-                if (completedCount > 0) {
-                    logJobInfo(String.format("Completed %d enrollments for class '%s' (ID: %d)",
-                        completedCount, classEntity.getCode(), classEntity.getId()));
-                    totalCompleted += completedCount;
-                }
+            if (completedCount > 0) {
+                // Bulk update không đi qua JPA listener của Enrollment
+                publicCatalogCache.invalidateAll();
+                timetableCache.invalidateAll();
+                logJobInfo(String.format("Completed %d enrollments in completed classes", completedCount));
             }
 
-            logJobEnd("EnrollmentAutoComplete", totalCompleted);
+            logJobEnd(JOB_NAME, completedCount);
 
         } catch (Exception e) {
-            logJobError("EnrollmentAutoComplete", e);
+            logJobError(JOB_NAME, e);
             throw e;
         }
     }
 }
-
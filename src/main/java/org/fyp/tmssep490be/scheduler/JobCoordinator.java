@@ -0,0 +1,333 @@
+package org.fyp.tmssep490be.scheduler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * Điều phối các job trong package scheduler khi chạy nhiều instance.
+ *
+ * - Mỗi job giữ một lease trong bảng job_lease (INSERT ... ON CONFLICT có điều kiện): chỉ instance
+ *   lấy được lease mới chạy, các instance khác bỏ qua lần chạy đó. Lease được giữ tối thiểu
+ *   lease-min-seconds sau khi chạy xong để instance có đồng hồ lệch vài giây không chạy lại,
+ *   và hết hạn sau lease-max-seconds nếu instance giữ lease bị dừng giữa chừng.
+ * - Mỗi lần chạy ghi một dòng job_run (thời lượng, số bản ghi xử lý, số partition lỗi, lỗi).
+ *   Nếu job chạy trong transaction, kết quả được ghi sau khi transaction commit/rollback.
+ * - runPartitioned chia job lớn thành các partition chạy song song trên jobWorkerExecutor.
+ * - changedSince trả mốc cho job tăng dần, lấy từ lần chạy SUCCESS gần nhất trong job_run.
+ */
+@Component
+@Slf4j
+public class JobCoordinator {
+
+    static final String STATUS_RUNNING = "RUNNING";
+    static final String STATUS_SUCCESS = "SUCCESS";
+    static final String STATUS_PARTIAL = "PARTIAL";
+    static final String STATUS_FAILED = "FAILED";
+
+    private static final String ACQUIRE_LEASE_SQL = """
+            INSERT INTO job_lease (job_name, owner, locked_at, lease_until)
+            VALUES (?, ?, now(), now() + make_interval(secs => ?))
+            ON CONFLICT (job_name) DO UPDATE
+            SET owner = EXCLUDED.owner, locked_at = EXCLUDED.locked_at, lease_until = EXCLUDED.lease_until
+            WHERE job_lease.lease_until <= now() OR job_lease.owner = EXCLUDED.owner
+            """;
+
+    private static final String RELEASE_LEASE_SQL = """
+            UPDATE job_lease
+            SET lease_until = GREATEST(now(), locked_at + make_interval(secs => ?))
+            WHERE job_name = ? AND owner = ?
+            """;
+
+    private static final String START_RUN_SQL = """
+            INSERT INTO job_run (job_name, owner, status, started_at)
+            VALUES (?, ?, 'RUNNING', now())
+            RETURNING id
+            """;
+
+    private static final String FINISH_RUN_SQL = """
+            UPDATE job_run
+            SET status = ?, finished_at = now(), duration_ms = ?, rows_processed = ?,
+                failed_partitions = ?, error_message = ?
+            WHERE id = ?
+            """;
+
+    private static final String LAST_SUCCESS_SQL = """
+            SELECT max(started_at) FROM job_run
+            WHERE job_name = ? AND status = 'SUCCESS'
+            """;
+
+    private static final String PURGE_RUNS_SQL = """
+            DELETE FROM job_run
+            WHERE job_name = ? AND started_at < now() - make_interval(days => ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate requiresNewTemplate;
+    private final Executor workerExecutor;
+    private final String owner;
+
+    // Job đang chạy trên instance này (chặn chạy chồng, vd: lần chạy lúc khởi động trùng giờ cron)
+    private final Set<String> runningJobs = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<JobRun> currentRun = new ThreadLocal<>();
+
+    @Value("${tms.scheduler.lease.enabled:true}")
+    private boolean leaseEnabled;
+
+    @Value("${tms.scheduler.lease.min-seconds:60}")
+    private long leaseMinSeconds;
+
+    @Value("${tms.scheduler.lease.max-seconds:7200}")
+    private long leaseMaxSeconds;
+
+    @Value("${tms.scheduler.history.retention-days:90}")
+    private int historyRetentionDays;
+
+    @Value("${tms.scheduler.incremental.overlap-minutes:60}")
+    private long incrementalOverlapMinutes;
+
+    @Value("${tms.scheduler.incremental.full-scan-day:SUNDAY}")
+    private DayOfWeek incrementalFullScanDay;
+
+    public JobCoordinator(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Qualifier("jobWorkerExecutor") Executor workerExecutor) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.workerExecutor = workerExecutor;
+        this.requiresNewTemplate = new TransactionTemplate(transactionManager);
+        this.requiresNewTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.owner = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    public boolean runExclusive(String jobName, Runnable work) {
+        return runExclusive(jobName, Duration.ofSeconds(leaseMinSeconds), work);
+    }
+
+    /**
+     * Chạy job nếu instance này lấy được lease của job.
+     *
+     * @param minLease thời gian giữ lease tối thiểu tính từ lúc bắt đầu chạy; job chạy dày (mỗi phút)
+     *                 truyền giá trị lớn hơn chu kỳ để instance đang giữ lease tiếp tục chạy các lần sau
+     * @return false nếu bỏ qua vì instance khác (hoặc chính instance này) đang giữ job
+     */
+    public boolean runExclusive(String jobName, Duration minLease, Runnable work) {
+        if (currentRun.get() != null) {
+            // Gọi lồng bên trong một job đang giữ lease
+            work.run();
+            return true;
+        }
+        if (!runningJobs.add(jobName)) {
+            log.info("{}: already running on this instance, skipping", jobName);
+            return false;
+        }
+
+        boolean acquired;
+        try {
+            acquired = !leaseEnabled || tryAcquireLease(jobName);
+        } catch (RuntimeException e) {
+            runningJobs.remove(jobName);
+            log.error("{}: could not acquire job lease, skipping this run: {}", jobName, e.getMessage(), e);
+            return false;
+        }
+        if (!acquired) {
+            runningJobs.remove(jobName);
+            log.info("{}: lease is held by another instance, skipping", jobName);
+            return false;
+        }
+
+        JobRun run = new JobRun(jobName, minLease, startRun(jobName));
+        currentRun.set(run);
+        try {
+            work.run();
+        } catch (RuntimeException | Error e) {
+            run.error = e;
+            throw e;
+        } finally {
+            currentRun.remove();
+            completeAfterTransaction(run);
+        }
+        return true;
+    }
+
+    /**
+     * Chạy các partition song song trên jobWorkerExecutor, mỗi partition tự quản lý transaction của mình.
+     * Partition lỗi được log và đếm vào job_run.failed_partitions, các partition còn lại vẫn chạy;
+     * chỉ khi mọi partition đều lỗi mới ném exception.
+     *
+     * @return tổng số bản ghi các partition thành công trả về
+     */
+    public <P> int runPartitioned(String label, List<P> partitions, ToIntFunction<P> work) {
+        if (partitions.isEmpty()) {
+            return 0;
+        }
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>(partitions.size());
+        for (P partition : partitions) {
+            futures.add(CompletableFuture.supplyAsync(() -> work.applyAsInt(partition), workerExecutor));
+        }
+
+        int total = 0;
+        int failed = 0;
+        Throwable firstFailure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                total += futures.get(i).join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                failed++;
+                if (firstFailure == null) {
+                    firstFailure = cause;
+                }
+                log.error("{}: partition {}/{} failed: {}", label, i + 1, partitions.size(), cause.getMessage(), cause);
+            }
+        }
+
+        JobRun run = currentRun.get();
+        if (run != null) {
+            run.failedPartitions.addAndGet(failed);
+        }
+        if (failed == partitions.size()) {
+            throw new IllegalStateException(label + ": all " + failed + " partitions failed", firstFailure);
+        }
+        return total;
+    }
+
+    /**
+     * Mốc cho job chỉ xử lý bản ghi thay đổi từ lần chạy trước: thời điểm bắt đầu lần chạy SUCCESS gần nhất,
+     * lùi thêm overlap-minutes để không bỏ sót transaction commit sau mốc nhưng có updated_at trước mốc.
+     *
+     * @return null nếu job phải quét toàn bộ: chưa có lần chạy thành công (hoặc lịch sử đã bị purge),
+     *         hoặc hôm nay là full-scan-day (bắt các thay đổi không cập nhật updated_at)
+     */
+    public OffsetDateTime changedSince(String jobName) {
+        if (LocalDate.now().getDayOfWeek() == incrementalFullScanDay) {
+            return null;
+        }
+        OffsetDateTime lastSuccess = jdbcTemplate.queryForObject(LAST_SUCCESS_SQL, OffsetDateTime.class, jobName);
+        return lastSuccess != null ? lastSuccess.minusMinutes(incrementalOverlapMinutes) : null;
+    }
+
+    // Gọi từ BaseScheduledJob.logJobEnd
+    void recordRows(int rows) {
+        JobRun run = currentRun.get();
+        if (run != null) {
+            run.rows = rows;
+        }
+    }
+
+    private boolean tryAcquireLease(String jobName) {
+        Integer updated = requiresNewTemplate.execute(status ->
+                jdbcTemplate.update(ACQUIRE_LEASE_SQL, jobName, owner, leaseMaxSeconds));
+        return updated != null && updated > 0;
+    }
+
+    // Lỗi ghi lịch sử không được làm hỏng job
+    private Long startRun(String jobName) {
+        try {
+            return requiresNewTemplate.execute(status ->
+                    jdbcTemplate.queryForObject(START_RUN_SQL, Long.class, jobName, owner));
+        } catch (RuntimeException e) {
+            log.warn("{}: could not record job run start: {}", jobName, e.getMessage());
+            return null;
+        }
+    }
+
+    private void completeAfterTransaction(JobRun run) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()
+                && TransactionSynchronizationManager.isActualTransactionActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    complete(run, status != STATUS_COMMITTED);
+                }
+            });
+        } else {
+            complete(run, false);
+        }
+    }
+
+    private void complete(JobRun run, boolean rolledBack) {
+        long durationMs = (System.nanoTime() - run.startedNanos) / 1_000_000;
+        String status;
+        String errorMessage = null;
+        if (run.error != null || rolledBack) {
+            status = STATUS_FAILED;
+            errorMessage = run.error != null ? String.valueOf(run.error.getMessage()) : "Transaction rolled back";
+        } else {
+            status = run.failedPartitions.get() > 0 ? STATUS_PARTIAL : STATUS_SUCCESS;
+        }
+
+        try {
+            if (run.id != null) {
+                finishRun(run, status, durationMs, errorMessage);
+            }
+            if (leaseEnabled) {
+                releaseLease(run);
+            }
+        } catch (RuntimeException e) {
+            log.warn("{}: could not record job run result: {}", run.jobName, e.getMessage());
+        } finally {
+            runningJobs.remove(run.jobName);
+        }
+
+        // Gần hết lease thì instance khác có thể lấy lease và chạy trùng: cần tăng lease hoặc chia nhỏ job
+        if (durationMs > leaseMaxSeconds * 800) {
+            log.warn("{} took {} ms, more than 80% of lease-max-seconds ({} s)", run.jobName, durationMs, leaseMaxSeconds);
+        }
+        log.info("{} finished with status {} in {} ms (rows: {}, failed partitions: {})",
+                run.jobName, status, durationMs, run.rows, run.failedPartitions.get());
+    }
+
+    private void finishRun(JobRun run, String status, long durationMs, String errorMessage) {
+        requiresNewTemplate.executeWithoutResult(tx -> {
+            jdbcTemplate.update(FINISH_RUN_SQL, status, durationMs, run.rows, run.failedPartitions.get(),
+                    errorMessage, run.id);
+            jdbcTemplate.update(PURGE_RUNS_SQL, run.jobName, historyRetentionDays);
+        });
+    }
+
+    private void releaseLease(JobRun run) {
+        requiresNewTemplate.executeWithoutResult(tx ->
+                jdbcTemplate.update(RELEASE_LEASE_SQL, run.minLease.toSeconds(), run.jobName, owner));
+    }
+
+    private static final class JobRun {
+        private final String jobName;
+        private final Duration minLease;
+        private final Long id;
+        private final long startedNanos = System.nanoTime();
+        private final AtomicInteger failedPartitions = new AtomicInteger();
+        private volatile Integer rows;
+        private volatile Throwable error;
+
+        private JobRun(String jobName, Duration minLease, Long id) {
+            this.jobName = jobName;
+            this.minLease = minLease;
+            this.id = id;
+        }
+    }
+}
@@ -53,6 +53,10 @@ public class PendingRequestReminderJob extends BaseScheduledJob {
     @Scheduled(cron = "${tms.scheduler.jobs.pending-request-reminder.cron:0 0 9 * * MON-FRI}")
     @Transactional
     public void sendPendingRequestReminders() {
+        runExclusive("PendingRequestReminderJob", this::doSendPendingRequestReminders);
+    }
+
+    private void doSendPendingRequestReminders() {
         String jobName = "PendingRequestReminderJob";
         logJobStart(jobName);
 
@@ -69,6 +69,10 @@ public class RequestExpiryJob extends BaseScheduledJob {
     @Scheduled(cron = "${tms.scheduler.jobs.request-expiry.cron:0 0 3 * * ?}")
     @Transactional
     public void expireOldStudentRequests() {
+        runExclusive("RequestExpiry", this::doExpireOldStudentRequests);
+    }
+
+    private void doExpireOldStudentRequests() {
         try {
             LocalDate today = LocalDate.now();
 
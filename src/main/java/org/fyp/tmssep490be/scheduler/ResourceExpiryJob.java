@@ -40,6 +40,10 @@ public class ResourceExpiryJob extends BaseScheduledJob {
     @Scheduled(cron = "${tms.scheduler.jobs.resource-expiry.cron:0 0 4 * * ?}")
     @Transactional
     public void handleResourceExpiry() {
+        runExclusive("ResourceExpiry", this::doHandleResourceExpiry);
+    }
+
+    private void doHandleResourceExpiry() {
         try {
             logJobStart("ResourceExpiry");
 
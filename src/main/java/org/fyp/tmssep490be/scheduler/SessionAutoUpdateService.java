@@ -4,9 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.fyp.tmssep490be.entities.QAReport;
 import org.fyp.tmssep490be.entities.Session;
-import org.fyp.tmssep490be.entities.StudentSession;
 import org.fyp.tmssep490be.entities.UserAccount;
-import org.fyp.tmssep490be.entities.enums.AttendanceStatus;
 import org.fyp.tmssep490be.entities.enums.QAReportStatus;
 import org.fyp.tmssep490be.entities.enums.QAReportType;
 import org.fyp.tmssep490be.entities.enums.SessionStatus;
@@ -14,20 +12,27 @@ import org.fyp.tmssep490be.repositories.QAReportRepository;
 import org.fyp.tmssep490be.repositories.SessionRepository;
 import org.fyp.tmssep490be.repositories.StudentSessionRepository;
 import org.fyp.tmssep490be.repositories.UserAccountRepository;
+import org.fyp.tmssep490be.services.AttendanceMatrixEngine;
+import org.fyp.tmssep490be.services.WeeklyTimetableCache;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 
 //Service to automatically update session status and attendance for ALL sessions in the system
 //This is a general cronjob, not specific to teachers or students
@@ -41,47 +46,24 @@ public class SessionAutoUpdateService extends BaseScheduledJob {
     private final StudentSessionRepository studentSessionRepository;
     private final QAReportRepository qaReportRepository;
     private final UserAccountRepository userAccountRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final AttendanceMatrixEngine attendanceMatrixEngine;
+    private final WeeklyTimetableCache timetableCache;
+
+    // Số buổi xử lý trong một transaction (mỗi chunk commit riêng để backlog lớn không giữ lock quá lâu)
+    @Value("${tms.scheduler.jobs.session-auto-update.chunk-size:500}")
+    private int chunkSize;
 
     /**
      * Update past sessions to DONE status when application is ready.
      * This ensures seed data has been loaded before checking for past sessions.
      */
     @EventListener(ApplicationReadyEvent.class)
-    @Transactional
     public void updateOnStartup() {
         log.info("Application ready: Checking for past sessions that need to be updated to DONE status");
         try {
-            // First, update attendance for all ended sessions to ensure attendance rate is correct
-            // Note: Only updates PLANNED status. PRESENT and ABSENT remain unchanged (already recorded by teacher)
-            LocalDate today = LocalDate.now();
-            LocalTime currentTime = LocalTime.now();
-            List<Session> allEndedSessions = sessionRepository.findAllEndedSessions(
-                today, currentTime, SessionStatus.PLANNED);
-            
-            int updatedAttendanceCount = 0;
-            List<StudentSession> attendanceToUpdate = new ArrayList<>();
-            
-            for (Session session : allEndedSessions) {
-                List<StudentSession> studentSessions = studentSessionRepository.findBySessionId(session.getId());
-                for (StudentSession studentSession : studentSessions) {
-                    // Only update if status is PLANNED (not yet recorded)
-                    // If already PRESENT or ABSENT, keep it as is (teacher already recorded)
-                    if (studentSession.getAttendanceStatus() == AttendanceStatus.PLANNED) {
-                        studentSession.setAttendanceStatus(AttendanceStatus.ABSENT);
-                        studentSession.setRecordedAt(OffsetDateTime.now());
-                        attendanceToUpdate.add(studentSession);
-                        updatedAttendanceCount++;
-                    }
-                }
-            }
-            
-            if (!attendanceToUpdate.isEmpty()) {
-                studentSessionRepository.saveAll(attendanceToUpdate);
-                log.info("On startup: Auto-marked {} attendance records as ABSENT for ended sessions", updatedAttendanceCount);
-            }
-            
-            // Then update session status to DONE
-                    updatePastSessionsToDone();
+            // updatePastSessionsToDone() chốt điểm danh PLANNED -> ABSENT trước khi chuyển trạng thái buổi học
+            updatePastSessionsToDone();
             // Also create QA reports for existing DONE sessions that don't have reports
             createQAReportsForDoneSessionsWithoutReports();
         } catch (Exception e) {
@@ -94,168 +76,77 @@ public class SessionAutoUpdateService extends BaseScheduledJob {
      //Also marks students with PLANNED attendance as ABSENT
      //Creates QA reports for sessions that are automatically marked as DONE
      //Runs daily at 1:00 AM
+     //Attendance and QA reports are processed in chunks of session ids, each chunk in its own transaction
     @Scheduled(cron = "0 0 1 * * ?") // Every day at 1:00 AM
-    @Transactional
     public void updatePastSessionsToDone() {
+        runExclusive("SessionAutoUpdate", this::doUpdatePastSessionsToDone);
+    }
+
+    private void doUpdatePastSessionsToDone() {
         try {
             logJobStart("SessionAutoUpdate");
-            
+            long startedAt = System.currentTimeMillis();
+
             LocalDate today = LocalDate.now();
             LocalTime currentTime = LocalTime.now();
 
             // First, auto-update attendance from PLANNED to ABSENT for all ended sessions
+            // (ended by end time, or date passed without teacher note)
             // This ensures attendance rate is calculated correctly immediately
             // Note: Only updates PLANNED status. PRESENT and ABSENT remain unchanged (already recorded by teacher)
-            List<Session> allEndedSessions = sessionRepository.findAllEndedSessions(
+            List<Long> endedSessionIds = sessionRepository.findEndedSessionIdsForAttendanceFinalization(
                 today, currentTime, SessionStatus.PLANNED);
-            
-            int updatedAttendanceForEndedSessions = 0;
-            List<StudentSession> attendanceToUpdate = new ArrayList<>();
-            
-            for (Session session : allEndedSessions) {
-                List<StudentSession> studentSessions = studentSessionRepository.findBySessionId(session.getId());
-                for (StudentSession studentSession : studentSessions) {
-                    // Only update if status is PLANNED (not yet recorded)
-                    // If already PRESENT or ABSENT, keep it as is (teacher already recorded)
-                    if (studentSession.getAttendanceStatus() == AttendanceStatus.PLANNED) {
-                        studentSession.setAttendanceStatus(AttendanceStatus.ABSENT);
-                        studentSession.setRecordedAt(OffsetDateTime.now());
-                        attendanceToUpdate.add(studentSession);
-                        updatedAttendanceForEndedSessions++;
-            }
-                }
-            }
-            
-            if (!attendanceToUpdate.isEmpty()) {
-                studentSessionRepository.saveAll(attendanceToUpdate);
-                logJobInfo(String.format("Auto-marked %d attendance records as ABSENT for ended sessions", updatedAttendanceForEndedSessions));
+            int updatedAttendanceCount = finalizeAttendance(endedSessionIds);
+            if (updatedAttendanceCount > 0) {
+                logJobInfo(String.format("Auto-marked %d attendance records as ABSENT for %d ended sessions",
+                        updatedAttendanceCount, endedSessionIds.size()));
             }
 
             // Get a QA user to assign as reportedBy for auto-created reports
-            Optional<UserAccount> qaUserOpt = userAccountRepository.findUsersByRole("QA").stream()
-                    .findFirst();
-            
+            Optional<UserAccount> qaUserOpt = findQAUser();
             if (qaUserOpt.isEmpty()) {
                 logJobInfo("No QA user found. Skipping QA report creation.");
             }
 
             // Find sessions that have ended (passed end time) and have teacher note
-            List<Session> endedSessionsWithNote = sessionRepository.findEndedSessionsWithTeacherNote(
+            List<Long> endedSessionIdsWithNote = sessionRepository.findEndedSessionIdsWithTeacherNote(
                 today, currentTime, SessionStatus.PLANNED);
-            
+
             int updatedSessionCount = 0;
-            int updatedAttendanceCount = 0;
             int createdQAReportCount = 0;
-            List<StudentSession> studentSessionsToSave = new ArrayList<>();
-            List<QAReport> qaReportsToSave = new ArrayList<>();
 
-            if (!endedSessionsWithNote.isEmpty()) {
-                logJobInfo(String.format("Found %d ended sessions with teacher note (date < %s OR (date = %s AND endTime < %s))", 
-                    endedSessionsWithNote.size(), today, today, currentTime));
+            if (!endedSessionIdsWithNote.isEmpty()) {
+                logJobInfo(String.format("Found %d ended sessions with teacher note (date < %s OR (date = %s AND endTime < %s))",
+                    endedSessionIdsWithNote.size(), today, today, currentTime));
 
                 // Update sessions to DONE status (only those with teacher note and ended)
-                updatedSessionCount = sessionRepository.updateEndedSessionsWithTeacherNoteToDone(
-                    today, currentTime, SessionStatus.PLANNED, SessionStatus.DONE);
-                
-                // Update attendance and create QA reports for affected sessions
-                for (Session session : endedSessionsWithNote) {
-                    // Refresh session to get updated status
-                    Session refreshedSession = sessionRepository.findById(session.getId())
-                            .orElse(session);
-                    
-                // Auto-mark students with PLANNED attendance as ABSENT
-                    List<StudentSession> studentSessions = studentSessionRepository.findBySessionId(refreshedSession.getId());
-                for (StudentSession studentSession : studentSessions) {
-                    if (studentSession.getAttendanceStatus() == AttendanceStatus.PLANNED) {
-                        studentSession.setAttendanceStatus(AttendanceStatus.ABSENT);
-                        studentSession.setRecordedAt(OffsetDateTime.now());
-                        studentSessionsToSave.add(studentSession);
-                        updatedAttendanceCount++;
-                    }
-                }
-                    
-                    // Create QA report if session is now DONE and doesn't have a submitted QA report yet
-                    if (refreshedSession.getStatus() == SessionStatus.DONE && qaUserOpt.isPresent()) {
-                        long existingSubmittedReports = qaReportRepository.countSubmittedReportsBySessionId(refreshedSession.getId());
-                        
-                        if (existingSubmittedReports == 0) {
-                            QAReport autoReport = QAReport.builder()
-                                    .classEntity(refreshedSession.getClassEntity())
-                                    .session(refreshedSession)
-                                    .reportedBy(qaUserOpt.get())
-                                    .reportType(QAReportType.CLASSROOM_OBSERVATION)
-                                    .status(QAReportStatus.SUBMITTED)
-                                    .content(String.format("Buổi học đã tự động được đánh dấu hoàn thành do đã qua ngày. Session ID: %d, Date: %s", 
-                                            refreshedSession.getId(), refreshedSession.getDate()))
-                                    .build();
-                            qaReportsToSave.add(autoReport);
-                            createdQAReportCount++;
-                        }
-                    }
+                updatedSessionCount = executeCounting(status -> sessionRepository.updateEndedSessionsWithTeacherNoteToDone(
+                    today, currentTime, SessionStatus.PLANNED, SessionStatus.DONE));
+
+                // Create QA reports for sessions that don't have a submitted QA report yet
+                if (qaUserOpt.isPresent()) {
+                    createdQAReportCount = createQAReports(endedSessionIdsWithNote, qaUserOpt.get(), session -> String.format(
+                            "Buổi học đã tự động được đánh dấu hoàn thành do đã qua ngày. Session ID: %d, Date: %s",
+                            session.getId(), session.getDate()));
                 }
             } else {
                 logJobInfo("No ended sessions with teacher note to update");
             }
-            
-            // Batch save all updated student sessions
-            if (!studentSessionsToSave.isEmpty()) {
-                studentSessionRepository.saveAll(studentSessionsToSave);
-            }
-
-            // Batch save all created QA reports
-            if (!qaReportsToSave.isEmpty()) {
-                qaReportRepository.saveAll(qaReportsToSave);
-            }
 
             if (updatedSessionCount > 0) {
                 logJobInfo(String.format("Updated %d sessions to DONE status (with teacher note)", updatedSessionCount));
             }
-            if (updatedAttendanceCount > 0) {
-                logJobInfo(String.format("Auto-marked %d attendance records as ABSENT (sessions with note)", updatedAttendanceCount));
-            }
             if (createdQAReportCount > 0) {
                 logJobInfo(String.format("Created %d QA reports for auto-completed sessions", createdQAReportCount));
             }
 
             // Also handle sessions that have passed their date (date < today) without teacher note
-            List<Session> pastSessionsWithoutNote = sessionRepository.findPastSessionsWithoutTeacherNote(
-                    today, SessionStatus.PLANNED);
-
-            int updatedWithoutNoteCount = 0;
-            if (!pastSessionsWithoutNote.isEmpty()) {
-                logJobInfo(String.format("Found %d sessions that have passed their date without teacher note", 
-                        pastSessionsWithoutNote.size()));
-
-                updatedWithoutNoteCount = sessionRepository.updatePastSessionsWithoutTeacherNoteToDone(
-                        today, SessionStatus.PLANNED, SessionStatus.DONE);
-
-                int updatedAttendanceWithoutNoteCount = 0;
-                List<StudentSession> studentSessionsWithoutNoteToSave = new ArrayList<>();
-
-                for (Session session : pastSessionsWithoutNote) {
-                    Session refreshedSession = sessionRepository.findById(session.getId())
-                            .orElse(session);
-
-                    // Auto-mark students with PLANNED attendance as ABSENT
-                    List<StudentSession> studentSessions = studentSessionRepository.findBySessionId(refreshedSession.getId());
-                    for (StudentSession studentSession : studentSessions) {
-                        if (studentSession.getAttendanceStatus() == AttendanceStatus.PLANNED) {
-                            studentSession.setAttendanceStatus(AttendanceStatus.ABSENT);
-                            studentSession.setRecordedAt(OffsetDateTime.now());
-                            studentSessionsWithoutNoteToSave.add(studentSession);
-                            updatedAttendanceWithoutNoteCount++;
-                        }
-                    }
-                    // Note: Do NOT create QA report here - only when 48h has passed after session end
-                }
-
-                // Batch save all updated student sessions
-                if (!studentSessionsWithoutNoteToSave.isEmpty()) {
-                    studentSessionRepository.saveAll(studentSessionsWithoutNoteToSave);
-                }
-
+            // Attendance of these sessions was already finalized above
+            // Note: Do NOT create QA report here - only when 48h has passed after session end
+            int updatedWithoutNoteCount = executeCounting(status -> sessionRepository.updatePastSessionsWithoutTeacherNoteToDone(
+                    today, SessionStatus.PLANNED, SessionStatus.DONE, OffsetDateTime.now()));
+            if (updatedWithoutNoteCount > 0) {
                 logJobInfo(String.format("Updated %d sessions to DONE status (passed date without teacher note)", updatedWithoutNoteCount));
-                logJobInfo(String.format("Auto-marked %d attendance records as ABSENT (sessions without note)", updatedAttendanceWithoutNoteCount));
             } else {
                 logJobInfo("No sessions that have passed their date without teacher note to update");
             }
@@ -266,45 +157,31 @@ public class SessionAutoUpdateService extends BaseScheduledJob {
             // Ví dụ: hôm nay là 22/12 -> twoDaysAgoDate = 20/12 -> tìm sessions có date <= 20/12
             LocalDate twoDaysAgoDate = today.minusDays(2);
 
-            List<Session> sessionsWithoutNoteAfter2Days = sessionRepository.findSessionsWithoutTeacherNoteAfter2Days(
-                    twoDaysAgoDate, SessionStatus.DONE);
-
-            if (!sessionsWithoutNoteAfter2Days.isEmpty()) {
-                logJobInfo(String.format("Found %d DONE sessions that have passed 2 days after their date without teacher note - creating QA reports", 
-                        sessionsWithoutNoteAfter2Days.size()));
+            if (qaUserOpt.isPresent()) {
+                // Chỉ lấy các buổi chưa có QA report SUBMITTED (anti-join trên DB)
+                List<Long> sessionIdsAfter2Days = sessionRepository.findSessionIdsWithoutTeacherNoteAndSubmittedQAReport(
+                        SessionStatus.DONE, twoDaysAgoDate);
 
-                int createdQAReportAfter2DaysCount = 0;
-                List<QAReport> qaReportsAfter2DaysToSave = new ArrayList<>();
+                if (!sessionIdsAfter2Days.isEmpty()) {
+                    logJobInfo(String.format("Found %d DONE sessions that have passed 2 days after their date without teacher note - creating QA reports",
+                            sessionIdsAfter2Days.size()));
 
-                for (Session session : sessionsWithoutNoteAfter2Days) {
-                    // Check if QA report already exists
-                    long existingSubmittedReports = qaReportRepository.countSubmittedReportsBySessionId(session.getId());
-                    
-                    if (existingSubmittedReports == 0 && qaUserOpt.isPresent()) {
-                        QAReport autoReport = QAReport.builder()
-                                .classEntity(session.getClassEntity())
-                                .session(session)
-                                .reportedBy(qaUserOpt.get())
-                                .reportType(QAReportType.CLASSROOM_OBSERVATION)
-                                .status(QAReportStatus.SUBMITTED)
-                                .content(String.format(
-                                        "Buổi học đã tự động được đánh dấu hoàn thành sau 2 ngày kể từ ngày buổi học. " +
-                                        "Chưa có báo cáo từ giáo viên. Session ID: %d, Date: %s",
-                                        session.getId(),
-                                        session.getDate()))
-                                .build();
-                        qaReportsAfter2DaysToSave.add(autoReport);
-                        createdQAReportAfter2DaysCount++;
-                    }
-                }
-
-                // Batch save all created QA reports
-                if (!qaReportsAfter2DaysToSave.isEmpty()) {
-                    qaReportRepository.saveAll(qaReportsAfter2DaysToSave);
+                    int createdQAReportAfter2DaysCount = createQAReports(sessionIdsAfter2Days, qaUserOpt.get(), session -> String.format(
+                            "Buổi học đã tự động được đánh dấu hoàn thành sau 2 ngày kể từ ngày buổi học. " +
+                            "Chưa có báo cáo từ giáo viên. Session ID: %d, Date: %s",
+                            session.getId(),
+                            session.getDate()));
                     logJobInfo(String.format("Created %d QA reports for sessions without teacher note after 2 days", createdQAReportAfter2DaysCount));
                 }
             }
 
+            // Điểm danh / trạng thái buổi học đổi bằng bulk query: bỏ các snapshot ma trận điểm danh và lịch tuần
+            attendanceMatrixEngine.invalidateAll();
+            timetableCache.invalidateAll();
+
+            logJobInfo(String.format("Finished in %d ms (%d attendance records, %d QA reports)",
+                    System.currentTimeMillis() - startedAt, updatedAttendanceCount, createdQAReportCount));
+
             int totalUpdatedSessions = updatedSessionCount + updatedWithoutNoteCount;
             logJobEnd("SessionAutoUpdate", totalUpdatedSessions);
 
@@ -314,7 +191,73 @@ public class SessionAutoUpdateService extends BaseScheduledJob {
         }
     }
 
-    @Transactional
+    // Chốt điểm danh PLANNED -> ABSENT theo từng chunk session id (partition theo khoảng id),
+    // các chunk chạy song song trên worker pool, mỗi chunk một UPDATE và một commit
+    private int finalizeAttendance(List<Long> sessionIds) {
+        if (sessionIds.isEmpty()) {
+            return 0;
+        }
+
+        List<List<Long>> chunks = chunk(sessionIds);
+        int totalUpdated = runPartitioned("SessionAutoUpdate: attendance", chunks,
+                ids -> executeCounting(status -> studentSessionRepository.markPlannedAsAbsentBySessionIds(ids, OffsetDateTime.now())));
+        if (chunks.size() > 1) {
+            logJobInfo(String.format("Attendance finalization: %d chunks, %d sessions, %d records marked ABSENT",
+                    chunks.size(), sessionIds.size(), totalUpdated));
+        }
+        return totalUpdated;
+    }
+
+    // Tạo QA report tự động cho các buổi chưa có report SUBMITTED, các chunk chạy song song, mỗi chunk: 1 query kiểm tra + 1 query load + batch insert
+    private int createQAReports(List<Long> sessionIds, UserAccount qaUser, Function<Session, String> contentBuilder) {
+        List<List<Long>> chunks = chunk(sessionIds);
+        int totalCreated = runPartitioned("SessionAutoUpdate: QA reports", chunks, ids ->
+            executeCounting(status -> {
+                Set<Long> reportedSessionIds = new HashSet<>(qaReportRepository.findSessionIdsWithSubmittedReports(ids));
+                List<QAReport> qaReportsToSave = new ArrayList<>();
+                for (Session session : sessionRepository.findAllById(ids)) {
+                    if (reportedSessionIds.contains(session.getId())) {
+                        continue;
+                    }
+                    qaReportsToSave.add(QAReport.builder()
+                            .classEntity(session.getClassEntity())
+                            .session(session)
+                            .reportedBy(qaUser)
+                            .reportType(QAReportType.CLASSROOM_OBSERVATION)
+                            .status(QAReportStatus.SUBMITTED)
+                            .content(contentBuilder.apply(session))
+                            .build());
+                }
+                if (!qaReportsToSave.isEmpty()) {
+                    qaReportRepository.saveAll(qaReportsToSave);
+                }
+                return qaReportsToSave.size();
+            }));
+        if (chunks.size() > 1) {
+            logJobInfo(String.format("QA reports: %d chunks, %d reports created", chunks.size(), totalCreated));
+        }
+        return totalCreated;
+    }
+
+    private Optional<UserAccount> findQAUser() {
+        return userAccountRepository.findUsersByRole("QA").stream()
+                .findFirst();
+    }
+
+    private List<List<Long>> chunk(List<Long> ids) {
+        int size = Math.max(1, chunkSize);
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += size) {
+            chunks.add(ids.subList(from, Math.min(from + size, ids.size())));
+        }
+        return chunks;
+    }
+
+    private int executeCounting(TransactionCallback<Integer> action) {
+        Integer result = transactionTemplate.execute(action);
+        return result != null ? result : 0;
+    }
+
     public void updatePastSessionsToDoneNow() {
         updatePastSessionsToDone();
         createQAReportsForDoneSessionsWithoutReports();
@@ -396,22 +339,10 @@ public class SessionAutoUpdateService extends BaseScheduledJob {
     }
 
     private void updateAttendanceAndCreateQAReport(Session session) {
-        Optional<UserAccount> qaUserOpt = userAccountRepository.findUsersByRole("QA").stream()
-                .findFirst();
+        Optional<UserAccount> qaUserOpt = findQAUser();
 
         // Update attendance
-        List<StudentSession> studentSessions = studentSessionRepository.findBySessionId(session.getId());
-        List<StudentSession> attendanceToUpdate = new ArrayList<>();
-        for (StudentSession studentSession : studentSessions) {
-            if (studentSession.getAttendanceStatus() == AttendanceStatus.PLANNED) {
-                studentSession.setAttendanceStatus(AttendanceStatus.ABSENT);
-                studentSession.setRecordedAt(OffsetDateTime.now());
-                attendanceToUpdate.add(studentSession);
-            }
-        }
-        if (!attendanceToUpdate.isEmpty()) {
-            studentSessionRepository.saveAll(attendanceToUpdate);
-        }
+        markPlannedAsAbsent(session);
 
         // Create QA report
         if (qaUserOpt.isPresent()) {
@@ -432,22 +363,10 @@ public class SessionAutoUpdateService extends BaseScheduledJob {
     }
 
     private void updateAttendanceAndCreateQAReportWithoutNote(Session session) {
-        Optional<UserAccount> qaUserOpt = userAccountRepository.findUsersByRole("QA").stream()
-                .findFirst();
+        Optional<UserAccount> qaUserOpt = findQAUser();
 
         // Update attendance
-        List<StudentSession> studentSessions = studentSessionRepository.findBySessionId(session.getId());
-        List<StudentSession> attendanceToUpdate = new ArrayList<>();
-        for (StudentSession studentSession : studentSessions) {
-            if (studentSession.getAttendanceStatus() == AttendanceStatus.PLANNED) {
-                studentSession.setAttendanceStatus(AttendanceStatus.ABSENT);
-                studentSession.setRecordedAt(OffsetDateTime.now());
-                attendanceToUpdate.add(studentSession);
-            }
-        }
-        if (!attendanceToUpdate.isEmpty()) {
-            studentSessionRepository.saveAll(attendanceToUpdate);
-        }
+        markPlannedAsAbsent(session);
 
         // Create QA report with special message
         if (qaUserOpt.isPresent()) {
@@ -475,72 +394,50 @@ public class SessionAutoUpdateService extends BaseScheduledJob {
 
     private void updateAttendanceForEndedSession(Session session) {
         // Only update attendance from PLANNED to ABSENT, keep status as PLANNED
-        List<StudentSession> studentSessions = studentSessionRepository.findBySessionId(session.getId());
-        List<StudentSession> attendanceToUpdate = new ArrayList<>();
-        for (StudentSession studentSession : studentSessions) {
-            if (studentSession.getAttendanceStatus() == AttendanceStatus.PLANNED) {
-                studentSession.setAttendanceStatus(AttendanceStatus.ABSENT);
-                studentSession.setRecordedAt(OffsetDateTime.now());
-                attendanceToUpdate.add(studentSession);
-            }
-        }
-        if (!attendanceToUpdate.isEmpty()) {
-            studentSessionRepository.saveAll(attendanceToUpdate);
-        }
+        markPlannedAsAbsent(session);
+    }
+
+    // Bulk update không qua JPA listener: tự bỏ snapshot điểm danh của lớp và của lớp gốc các học viên học bù
+    private void markPlannedAsAbsent(Session session) {
+        studentSessionRepository.markPlannedAsAbsentBySessionIds(List.of(session.getId()), OffsetDateTime.now());
+        attendanceMatrixEngine.invalidate(session.getClassEntity().getId());
+        studentSessionRepository.findOriginalClassIdsOfMakeupsBySessionId(session.getId())
+                .forEach(attendanceMatrixEngine::invalidate);
     }
 
     /**
      * Create QA reports for sessions that are already DONE but don't have submitted QA reports yet.
      * This handles cases where sessions were set to DONE in seed data or by other means.
      */
-    @Transactional
     public void createQAReportsForDoneSessionsWithoutReports() {
         try {
             LocalDate today = LocalDate.now();
             
-            // Find all DONE sessions that are in the past
-            List<Session> pastDoneSessions = sessionRepository.findPastSessionsByStatusAndDate(
+            // Find all past DONE sessions without submitted QA reports (single anti-join query)
+            List<Long> doneSessionIdsWithoutReports = sessionRepository.findSessionIdsWithoutSubmittedQAReport(
                     SessionStatus.DONE, today);
             
-            // Filter to only those without submitted QA reports
-            List<Session> doneSessionsWithoutReports = pastDoneSessions.stream()
-                    .filter(s -> qaReportRepository.countSubmittedReportsBySessionId(s.getId()) == 0)
-                    .toList();
-            
-            if (doneSessionsWithoutReports.isEmpty()) {
+            if (doneSessionIdsWithoutReports.isEmpty()) {
                 log.debug("No DONE sessions without QA reports found");
                 return;
             }
             
-            log.info("Found {} DONE sessions without submitted QA reports", doneSessionsWithoutReports.size());
+            log.info("Found {} DONE sessions without submitted QA reports", doneSessionIdsWithoutReports.size());
             
             // Get a QA user to assign as reportedBy
-            Optional<UserAccount> qaUserOpt = userAccountRepository.findUsersByRole("QA").stream()
-                    .findFirst();
+            Optional<UserAccount> qaUserOpt = findQAUser();
             
             if (qaUserOpt.isEmpty()) {
                 log.warn("No QA user found. Cannot create QA reports for DONE sessions.");
                 return;
             }
             
-            List<QAReport> qaReportsToSave = new ArrayList<>();
+            int createdCount = createQAReports(doneSessionIdsWithoutReports, qaUserOpt.get(), session -> String.format(
+                    "Buổi học đã tự động được đánh dấu hoàn thành. Session ID: %d, Date: %s",
+                    session.getId(), session.getDate()));
             
-            for (Session session : doneSessionsWithoutReports) {
-                QAReport autoReport = QAReport.builder()
-                        .classEntity(session.getClassEntity())
-                        .session(session)
-                        .reportedBy(qaUserOpt.get())
-                        .reportType(QAReportType.CLASSROOM_OBSERVATION)
-                        .status(QAReportStatus.SUBMITTED)
-                        .content(String.format("Buổi học đã tự động được đánh dấu hoàn thành. Session ID: %d, Date: %s", 
-                                session.getId(), session.getDate()))
-                        .build();
-                qaReportsToSave.add(autoReport);
-            }
-            
-            if (!qaReportsToSave.isEmpty()) {
-                qaReportRepository.saveAll(qaReportsToSave);
-                log.info("Created {} QA reports for DONE sessions without reports", qaReportsToSave.size());
+            if (createdCount > 0) {
+                log.info("Created {} QA reports for DONE sessions without reports", createdCount);
             }
             
         } catch (Exception e) {
@@ -549,4 +446,3 @@ public class SessionAutoUpdateService extends BaseScheduledJob {
         }
     }
 }
-
@@ -57,6 +57,10 @@ public class StudentFeedbackCreationJob extends BaseScheduledJob {
     @Scheduled(cron = "${tms.scheduler.jobs.student-feedback-creation.cron:0 0 1 * * ?}")
     @Transactional
     public void generateFeedbackPlaceholders() {
+        runExclusive("StudentFeedbackCreationJob", this::doGenerateFeedbackPlaceholders);
+    }
+
+    private void doGenerateFeedbackPlaceholders() {
         logJobStart("StudentFeedbackCreationJob");
 
         LocalDate targetDate = LocalDate.now().minusDays(1);
@@ -45,6 +45,10 @@ public class SubjectActivationJob extends BaseScheduledJob {
     @Scheduled(cron = "${tms.scheduler.jobs.subject-activation.cron:0 0 1 * * ?}")
     @Transactional
     public void activateSubjects() {
+        runExclusive("SubjectActivation", this::doActivateSubjects);
+    }
+
+    private void doActivateSubjects() {
         try {
             logJobStart("SubjectActivation");
 
@@ -70,6 +70,10 @@ public class TeacherRequestExpiryJob extends BaseScheduledJob {
     @Scheduled(cron = "${tms.scheduler.jobs.teacher-request-expiry.cron:0 30 3 * * ?}")
     @Transactional
     public void expireOldTeacherRequests() {
+        runExclusive("TeacherRequestExpiry", this::doExpireOldTeacherRequests);
+    }
+
+    private void doExpireOldTeacherRequests() {
         try {
             logJobStart("TeacherRequestExpiry");
 
@@ -53,6 +53,10 @@ public class UnassignedClassAlertJob extends BaseScheduledJob {
     @Scheduled(cron = "${tms.scheduler.jobs.unassigned-class-alert.cron:0 0 8 * * ?}")
     @Transactional(readOnly = true)
     public void checkUnassignedClasses() {
+        runExclusive("UnassignedClassAlertJob", this::doCheckUnassignedClasses);
+    }
+
+    private void doCheckUnassignedClasses() {
         String jobName = "UnassignedClassAlertJob";
         logJobStart(jobName);
 
@@ -85,6 +85,10 @@ public class WeeklyAttendanceReportJob extends BaseScheduledJob {
     @Scheduled(cron = "${tms.scheduler.jobs.weekly-attendance-report.cron:0 0 18 * * SUN}")
     @Transactional
     public void generateWeeklyAttendanceReport() {
+        runExclusive("WeeklyAttendanceReportJob", this::doGenerateWeeklyAttendanceReport);
+    }
+
+    private void doGenerateWeeklyAttendanceReport() {
         String jobName = "WeeklyAttendanceReportJob";
         logJobStart(jobName);
 
@@ -286,7 +290,7 @@ public class WeeklyAttendanceReportJob extends BaseScheduledJob {
                 html.append("</ul>");
             }
 
-            emailService.sendEmailAsync(email, subject, html.toString());
+            emailService.queueEmail(email, subject, html.toString());
         } catch (Exception e) {
             logJobWarning("Failed to send weekly attendance report email: " + e.getMessage());
         }
@@ -16,6 +16,7 @@ import org.springframework.transaction.annotation.Transactional;
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserAccountRepository userAccountRepository;
+    private final UserPrincipalCache userPrincipalCache;
 
     @Override
     @Transactional(readOnly = true)
@@ -31,12 +32,19 @@ public class CustomUserDetailsService implements UserDetailsService {
 
     @Transactional(readOnly = true)
     public UserDetails loadUserById(Long userId) {
+        UserPrincipal cached = userPrincipalCache.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+
         log.debug("Loading user by ID: {}", userId);
 
         UserAccount user = userAccountRepository.findById(userId)
                 .orElseThrow(() -> new UsernameNotFoundException(
                         "User not found with id: " + userId));
 
-        return UserPrincipal.create(user);
+        UserPrincipal principal = UserPrincipal.create(user);
+        userPrincipalCache.put(principal);
+        return principal;
     }
 }
@@ -4,8 +4,8 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -17,12 +17,22 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import java.io.IOException;
 
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtTokenProvider jwtTokenProvider;
     private final CustomUserDetailsService customUserDetailsService;
+    // true: dựng principal từ claims trong token (thay đổi role/trạng thái chỉ có hiệu lực khi token hết hạn)
+    private final boolean tokenEmbeddedPrincipal;
+
+    public JwtAuthenticationFilter(
+            JwtTokenProvider jwtTokenProvider,
+            CustomUserDetailsService customUserDetailsService,
+            @Value("${tms.security.token-embedded-principal:false}") boolean tokenEmbeddedPrincipal) {
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.customUserDetailsService = customUserDetailsService;
+        this.tokenEmbeddedPrincipal = tokenEmbeddedPrincipal;
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
@@ -30,11 +40,16 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                                     FilterChain filterChain) throws ServletException, IOException {
         try {
             String jwt = getJwtFromRequest(request);
+            // Verify chữ ký một lần, các claim sau đó đọc từ kết quả đã xác thực
+            VerifiedJwt verifiedJwt = StringUtils.hasText(jwt) ? jwtTokenProvider.verify(jwt) : null;
 
-            if (StringUtils.hasText(jwt) && jwtTokenProvider.validateAccessToken(jwt)) {
-                Long userId = jwtTokenProvider.getUserIdFromJwt(jwt);
+            if (verifiedJwt != null && verifiedJwt.isAccessToken()) {
+                Long userId = verifiedJwt.userId();
 
-                UserDetails userDetails = customUserDetailsService.loadUserById(userId);
+                UserDetails userDetails = tokenEmbeddedPrincipal ? jwtTokenProvider.getPrincipal(verifiedJwt) : null;
+                if (userDetails == null) {
+                    userDetails = customUserDetailsService.loadUserById(userId);
+                }
                 UsernamePasswordAuthenticationToken authentication =
                         new UsernamePasswordAuthenticationToken(
                                 userDetails,
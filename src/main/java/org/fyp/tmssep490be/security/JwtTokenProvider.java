@@ -4,14 +4,23 @@ import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 import io.jsonwebtoken.security.SignatureException;
 import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.entities.enums.UserStatus;
+import org.fyp.tmssep490be.utils.BoundedTtlCache;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Date;
+import java.util.List;
 import java.util.stream.Collectors;
 
 @Component
@@ -19,16 +28,24 @@ import java.util.stream.Collectors;
 public class JwtTokenProvider {
 
     private final SecretKey secretKey;
+    // JwtParser immutable, thread-safe: dựng một lần thay vì mỗi lần đọc claims
+    private final JwtParser jwtParser;
     private final long accessTokenValidityInMs;
     private final long refreshTokenValidityInMs;
+    // Token đã verify, giữ đến khi token hết hạn (TTL trần là thời hạn dài nhất của token)
+    private final BoundedTtlCache<String, VerifiedJwt> verifiedTokens;
 
     public JwtTokenProvider(
             @Value("${spring.security.jwt.secret:ThisIsAVerySecretKeyForJWTTokenGenerationPleaseChangeInProduction123456789}") String secret,
             @Value("${spring.security.jwt.access-token-expiration:900000}") long accessTokenValidityInMs,
-            @Value("${spring.security.jwt.refresh-token-expiration:604800000}") long refreshTokenValidityInMs) {
+            @Value("${spring.security.jwt.refresh-token-expiration:604800000}") long refreshTokenValidityInMs,
+            @Value("${tms.security.verified-token-cache.max-size:10000}") int verifiedCacheMaxSize) {
         this.secretKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        this.jwtParser = Jwts.parser().verifyWith(secretKey).build();
         this.accessTokenValidityInMs = accessTokenValidityInMs;
         this.refreshTokenValidityInMs = refreshTokenValidityInMs;
+        this.verifiedTokens = new BoundedTtlCache<>(
+                Math.max(accessTokenValidityInMs, refreshTokenValidityInMs), verifiedCacheMaxSize);
     }
 
     // Generate access token from authentication
@@ -47,6 +64,8 @@ public class JwtTokenProvider {
                 .claim("userId", userPrincipal.getId())
                 .claim("email", userPrincipal.getEmail())
                 .claim("roles", roles)
+                .claim("fullName", userPrincipal.getFullName())
+                .claim("status", userPrincipal.getStatus() != null ? userPrincipal.getStatus().name() : null)
                 .claim("type", "access")
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
@@ -84,91 +103,90 @@ public class JwtTokenProvider {
                 .compact();
     }
 
+    /**
+     * Kiểm tra chữ ký và hạn dùng một lần rồi trả về claims đã xác thực; null nếu token không hợp lệ.
+     * Token đã xác thực được giữ trong cache (key là SHA-256 của token) tới khi token hết hạn,
+     * nên các request / lệnh CONNECT dùng lại token không phải verify HMAC lại.
+     */
+    public VerifiedJwt verify(String token) {
+        try {
+            return parse(token);
+        } catch (SignatureException ex) {
+            log.error("Invalid JWT signature");
+        } catch (MalformedJwtException ex) {
+            log.error("Invalid JWT token");
+        } catch (ExpiredJwtException ex) {
+            log.debug("Expired JWT token - will trigger refresh"); // Normal behavior
+        } catch (UnsupportedJwtException ex) {
+            log.error("Unsupported JWT token");
+        } catch (IllegalArgumentException ex) {
+            log.error("JWT claims string is empty");
+        } catch (JwtException ex) {
+            log.error("Invalid JWT token: {}", ex.getMessage());
+        }
+        return null;
+    }
+
     public Long getUserIdFromJwt(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(secretKey)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return parse(token).userId();
+    }
+
+    // Dựng UserPrincipal từ claims đã ký trong access token (không cần query DB).
+    // Trả về null nếu token không chứa đủ claims (vd: token cấp từ refresh) để caller fallback về DB/cache.
+    public UserPrincipal getPrincipalFromJwt(String token) {
+        return getPrincipal(parse(token));
+    }
+
+    public UserPrincipal getPrincipal(VerifiedJwt jwt) {
+        if (jwt.status() == null || jwt.roles() == null) {
+            return null;
+        }
+
+        List<GrantedAuthority> authorities = jwt.roles().stream()
+                .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
+                .collect(Collectors.toList());
 
-        return claims.get("userId", Long.class);
+        return new UserPrincipal(
+                jwt.userId(),
+                jwt.email(),
+                null,
+                jwt.fullName(),
+                UserStatus.valueOf(jwt.status()),
+                authorities
+        );
     }
 
     public String getEmailFromJwt(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(secretKey)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return parse(token).subject();
+    }
 
-        return claims.getSubject();
+    // Danh sách role (không có tiền tố ROLE_) trong access token, rỗng nếu token không có claim roles
+    public List<String> getRolesFromJwt(String token) {
+        List<String> roles = parse(token).roles();
+        return roles != null ? roles : List.of();
     }
 
     public String getTokenType(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(secretKey)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-
-        return claims.get("type", String.class);
+        return parse(token).type();
     }
 
     public Date getExpirationDate(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(secretKey)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-
-        return claims.getExpiration();
+        Instant expiresAt = parse(token).expiresAt();
+        return expiresAt != null ? Date.from(expiresAt) : null;
     }
 
     public boolean validateToken(String token) {
-        try {
-            Jwts.parser()
-                    .verifyWith(secretKey)
-                    .build()
-                    .parseSignedClaims(token);
-            return true;
-        } catch (SignatureException ex) {
-            log.error("Invalid JWT signature");
-        } catch (MalformedJwtException ex) {
-            log.error("Invalid JWT token");
-        } catch (ExpiredJwtException ex) {
-            log.debug("Expired JWT token - will trigger refresh"); // Normal behavior
-        } catch (UnsupportedJwtException ex) {
-            log.error("Unsupported JWT token");
-        } catch (IllegalArgumentException ex) {
-            log.error("JWT claims string is empty");
-        }
-        return false;
+        return verify(token) != null;
     }
 
     public boolean validateAccessToken(String token) {
-        if (!validateToken(token)) {
-            return false;
-        }
-        try {
-            String tokenType = getTokenType(token);
-            return "access".equals(tokenType);
-        } catch (Exception e) {
-            log.error("Error validating access token type", e);
-            return false;
-        }
+        VerifiedJwt jwt = verify(token);
+        return jwt != null && jwt.isAccessToken();
     }
 
     public boolean validateRefreshToken(String token) {
-        if (!validateToken(token)) {
-            return false;
-        }
-        try {
-            String tokenType = getTokenType(token);
-            return "refresh".equals(tokenType);
-        } catch (Exception e) {
-            log.error("Error validating refresh token type", e);
-            return false;
-        }
+        VerifiedJwt jwt = verify(token);
+        return jwt != null && jwt.isRefreshToken();
     }
 
     public long getAccessTokenExpirationInSeconds() {
@@ -192,18 +210,59 @@ public class JwtTokenProvider {
 
     // Validate password reset token and return userId
     public Long validatePasswordResetToken(String token) {
-        try {
-            if (!validateToken(token)) {
-                return null;
-            }
-            String tokenType = getTokenType(token);
-            if (!"password-reset".equals(tokenType)) {
-                return null;
-            }
-            return getUserIdFromJwt(token);
-        } catch (Exception e) {
-            log.error("Error validating password reset token", e);
+        VerifiedJwt jwt = verify(token);
+        if (jwt == null || !"password-reset".equals(jwt.type())) {
             return null;
         }
+        return jwt.userId();
+    }
+
+    // Lấy từ cache nếu token đã được verify và chưa hết hạn, ngược lại parse một lần (ném JwtException nếu không hợp lệ)
+    private VerifiedJwt parse(String token) {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("JWT token is empty");
+        }
+        String key = hash(token);
+        VerifiedJwt cached = verifiedTokens.get(key);
+        if (cached != null && !cached.isExpiredAt(Instant.now())) {
+            return cached;
+        }
+
+        Claims claims = jwtParser.parseSignedClaims(token).getPayload();
+        VerifiedJwt jwt = toVerifiedJwt(claims);
+        if (jwt.expiresAt() != null) {
+            verifiedTokens.put(key, jwt, jwt.expiresAt().toEpochMilli());
+        }
+        return jwt;
+    }
+
+    private VerifiedJwt toVerifiedJwt(Claims claims) {
+        String roles = claims.get("roles", String.class);
+        List<String> roleNames = roles == null ? null : Arrays.stream(roles.split(","))
+                .map(String::trim)
+                .filter(role -> !role.isEmpty())
+                .map(role -> role.startsWith("ROLE_") ? role.substring(5) : role)
+                .collect(Collectors.toList());
+
+        return new VerifiedJwt(
+                claims.get("type", String.class),
+                claims.get("userId", Long.class),
+                claims.getSubject(),
+                claims.get("email", String.class),
+                claims.get("fullName", String.class),
+                claims.get("status", String.class),
+                roleNames,
+                claims.getExpiration() != null ? claims.getExpiration().toInstant() : null
+        );
+    }
+
+    // Không giữ token gốc trong bộ nhớ, chỉ giữ SHA-256 của nó
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 }
@@ -0,0 +1,56 @@
+package org.fyp.tmssep490be.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.utils.BoundedTtlCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Cache UserPrincipal theo userId (có giới hạn kích thước và TTL) để JwtAuthenticationFilter
+ * không phải load UserAccount + roles từ DB ở mỗi request.
+ *
+ * Khi đổi mật khẩu, đổi trạng thái hoặc đổi role phải gọi {@link #evict(Long)}.
+ */
+@Component
+@Slf4j
+public class UserPrincipalCache {
+
+    private final BoundedTtlCache<Long, UserPrincipal> entries;
+
+    public UserPrincipalCache(
+            @Value("${tms.security.principal-cache.ttl-seconds:60}") long ttlSeconds,
+            @Value("${tms.security.principal-cache.max-size:10000}") int maxSize) {
+        this.entries = new BoundedTtlCache<>(ttlSeconds * 1000, maxSize);
+    }
+
+    public UserPrincipal get(Long userId) {
+        return entries.get(userId);
+    }
+
+    public void put(UserPrincipal principal) {
+        entries.put(principal.getId(), principal);
+    }
+
+    // Xóa ngay, và xóa lại sau commit để request song song không cache lại dữ liệu cũ
+    public void evict(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        entries.remove(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    entries.remove(userId);
+                }
+            });
+        }
+        log.debug("Evicted cached principal for user {}", userId);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+}
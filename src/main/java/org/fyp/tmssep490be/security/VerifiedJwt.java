@@ -0,0 +1,37 @@
+package org.fyp.tmssep490be.security;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Claims của một JWT đã kiểm tra chữ ký và hạn dùng (immutable, dùng chung giữa các thread).
+ *
+ * @param roles role không có tiền tố ROLE_; null nếu token không có claim roles
+ * @param status trạng thái user lúc cấp token; null với token cấp từ refresh
+ */
+public record VerifiedJwt(
+        String type,
+        Long userId,
+        String subject,
+        String email,
+        String fullName,
+        String status,
+        List<String> roles,
+        Instant expiresAt) {
+
+    public VerifiedJwt {
+        roles = roles != null ? List.copyOf(roles) : null;
+    }
+
+    public boolean isAccessToken() {
+        return "access".equals(type);
+    }
+
+    public boolean isRefreshToken() {
+        return "refresh".equals(type);
+    }
+
+    public boolean isExpiredAt(Instant now) {
+        return expiresAt != null && !expiresAt.isAfter(now);
+    }
+}
@@ -275,30 +275,24 @@ public class ApprovalService {
         try {
             Long branchId = classEntity.getBranch().getId();
 
-            List<UserAccount> centerHeadUsers = userAccountRepository.findByRoleCodeAndBranches(
-                    "CENTER_HEAD", List.of(branchId));
-
-            if (!centerHeadUsers.isEmpty()) {
-                String title = String.format("Lớp học chờ duyệt: %s", classEntity.getCode());
-                String message = String.format(
-                        "Lớp học %s (%s) đã được tạo và chờ được duyệt. Khai giảng: %s, Chi nhánh: %s",
-                        classEntity.getCode(),
-                        classEntity.getSubject() != null ? classEntity.getSubject().getName() : "N/A",
-                        classEntity.getStartDate() != null ? classEntity.getStartDate().toString() : "Chưa xác định",
-                        classEntity.getBranch().getName());
-
-                List<Long> recipientIds = centerHeadUsers.stream()
-                        .map(UserAccount::getId)
-                        .collect(Collectors.toList());
-
-                notificationService.sendBulkNotifications(
-                        recipientIds,
-                        NotificationType.REQUEST,
-                        title,
-                        message);
+            String title = String.format("Lớp học chờ duyệt: %s", classEntity.getCode());
+            String message = String.format(
+                    "Lớp học %s (%s) đã được tạo và chờ được duyệt. Khai giảng: %s, Chi nhánh: %s",
+                    classEntity.getCode(),
+                    classEntity.getSubject() != null ? classEntity.getSubject().getName() : "N/A",
+                    classEntity.getStartDate() != null ? classEntity.getStartDate().toString() : "Chưa xác định",
+                    classEntity.getBranch().getName());
+
+            int centerHeadCount = notificationService.sendRoleBroadcast(
+                    "CENTER_HEAD",
+                    branchId,
+                    NotificationType.REQUEST,
+                    title,
+                    message);
 
+            if (centerHeadCount > 0) {
                 log.info("Sent notification to {} CENTER_HEAD users for class submission {}",
-                        centerHeadUsers.size(), classEntity.getId());
+                        centerHeadCount, classEntity.getId());
             } else {
                 log.warn("No CENTER_HEAD users found for branch {}", branchId);
             }
@@ -0,0 +1,374 @@
+package org.fyp.tmssep490be.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.entities.enums.AttendanceStatus;
+import org.fyp.tmssep490be.entities.enums.HomeworkStatus;
+import org.fyp.tmssep490be.entities.enums.SessionStatus;
+import org.fyp.tmssep490be.repositories.ClassRepository;
+import org.fyp.tmssep490be.repositories.EnrollmentRepository;
+import org.fyp.tmssep490be.repositories.SessionRepository;
+import org.fyp.tmssep490be.repositories.StudentSessionRepository;
+import org.fyp.tmssep490be.utils.BoundedTtlCache;
+import org.fyp.tmssep490be.utils.NativeRowUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dữ liệu điểm danh của một lớp ở dạng cột: mỗi ô (học viên, buổi học) nằm ở vị trí
+ * studentOrdinal * sessionCount + sessionOrdinal của các mảng byte/long.
+ *
+ * Mỗi lớp được nạp bằng 4 query projection (không load entity) và giữ trong bộ nhớ theo TTL.
+ * Ma trận điểm danh, tỷ lệ chuyên cần của lớp và số buổi vắng đều tính từ cùng một snapshot.
+ * Snapshot không chứa gì phụ thuộc thời điểm hiện tại (buổi tương lai, quá hạn học bù...),
+ * các giá trị đó được tính khi đọc. AttendanceService gọi {@link #invalidate(Long)} khi ghi điểm danh.
+ */
+@Component
+@Slf4j
+public class AttendanceMatrixEngine {
+
+    private static final byte NONE = -1;
+
+    private static final AttendanceStatus[] ATTENDANCE_VALUES = AttendanceStatus.values();
+    private static final HomeworkStatus[] HOMEWORK_VALUES = HomeworkStatus.values();
+
+    // Cờ của từng ô
+    private static final byte FLAG_MAKEUP_RECORD = 1;
+    private static final byte FLAG_MAKEUP_COMPLETED = 1 << 1;
+    private static final byte FLAG_MAKEUP_ATTEMPTED = 1 << 2;
+
+    private final ClassRepository classRepository;
+    private final SessionRepository sessionRepository;
+    private final StudentSessionRepository studentSessionRepository;
+    private final EnrollmentRepository enrollmentRepository;
+
+    private final BoundedTtlCache<Long, ClassAttendance> cache;
+
+    public AttendanceMatrixEngine(
+            ClassRepository classRepository,
+            SessionRepository sessionRepository,
+            StudentSessionRepository studentSessionRepository,
+            EnrollmentRepository enrollmentRepository,
+            @Value("${tms.attendance-matrix.ttl-seconds:120}") long ttlSeconds,
+            @Value("${tms.attendance-matrix.max-size:500}") int maxSize) {
+        this.classRepository = classRepository;
+        this.sessionRepository = sessionRepository;
+        this.studentSessionRepository = studentSessionRepository;
+        this.enrollmentRepository = enrollmentRepository;
+        this.cache = new BoundedTtlCache<>(ttlSeconds * 1000, maxSize);
+    }
+
+    // Học viên ENROLLED của lớp (hàng của ma trận)
+    public record EnrolledStudent(int ordinal, Long studentId, String studentCode, String fullName) {
+    }
+
+    public ClassAttendance forClass(Long classId) {
+        return cache.get(classId, () -> load(classId));
+    }
+
+    // Bỏ snapshot ngay và khi transaction kết thúc, để không giữ lại snapshot nạp trước khi commit
+    public void invalidate(Long classId) {
+        if (classId == null) {
+            return;
+        }
+        cache.remove(classId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.remove(classId);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    private ClassAttendance load(Long classId) {
+        List<Object[]> header = classRepository.findClassHeaderById(classId);
+        List<Object[]> sessionRows = sessionRepository.findAttendanceMatrixSessions(classId);
+        List<Object[]> enrolledRows = enrollmentRepository.findEnrolledStudentRowsByClassId(classId);
+        List<Object[]> attendanceRows = sessionRows.isEmpty()
+                ? List.of() : studentSessionRepository.findAttendanceTuplesByClassId(classId);
+        List<Object[]> makeupRows = sessionRows.isEmpty()
+                ? List.of() : studentSessionRepository.findMakeupTuplesByOriginalClassId(classId);
+
+        ClassAttendance snapshot = new ClassAttendance(header.isEmpty() ? null : header.get(0),
+                sessionRows, enrolledRows, attendanceRows, makeupRows);
+        log.debug("Loaded attendance matrix for class {}: {} sessions x {} students",
+                classId, snapshot.sessionCount, snapshot.studentCount);
+        return snapshot;
+    }
+
+    /**
+     * Snapshot điểm danh của một lớp, chỉ đọc sau khi dựng xong.
+     */
+    public static final class ClassAttendance {
+
+        private final String classCode;
+        private final String className;
+        private final String subjectName;
+
+        // Cột: buổi học theo thứ tự ngày, giờ bắt đầu
+        private final int sessionCount;
+        private final long[] sessionIds;
+        private final LocalDate[] sessionDates;
+        private final LocalTime[] sessionStartTimes;
+        private final LocalTime[] sessionEndTimes;
+        private final SessionStatus[] sessionStatuses;
+        private final Map<Long, Integer> sessionOrdinals;
+
+        // Hàng: mọi học viên có bản ghi trong lớp (kể cả không còn ENROLLED, dùng cho tỷ lệ của lớp)
+        private final int studentCount;
+        private final Map<Long, Integer> studentOrdinals;
+        private final List<EnrolledStudent> enrolledStudents;
+
+        // Ô: studentOrdinal * sessionCount + sessionOrdinal
+        private final byte[] attendance;
+        private final byte[] homework;
+        private final byte[] flags;
+        // Thời điểm kết thúc sớm nhất của buổi học bù ABSENT (epoch second), Long.MAX_VALUE nếu không có
+        private final long[] failedMakeupEnd;
+
+        private ClassAttendance(Object[] header, List<Object[]> sessionRows, List<Object[]> enrolledRows,
+                List<Object[]> attendanceRows, List<Object[]> makeupRows) {
+            this.classCode = header != null ? (String) header[0] : null;
+            this.className = header != null ? (String) header[1] : null;
+            this.subjectName = header != null ? (String) header[2] : null;
+
+            sessionCount = sessionRows.size();
+            sessionIds = new long[sessionCount];
+            sessionDates = new LocalDate[sessionCount];
+            sessionStartTimes = new LocalTime[sessionCount];
+            sessionEndTimes = new LocalTime[sessionCount];
+            sessionStatuses = new SessionStatus[sessionCount];
+            sessionOrdinals = new HashMap<>(sessionCount * 2);
+            for (int i = 0; i < sessionCount; i++) {
+                Object[] row = sessionRows.get(i);
+                sessionIds[i] = ((Number) row[0]).longValue();
+                sessionDates[i] = NativeRowUtils.toLocalDate(row[1]);
+                sessionStatuses[i] = SessionStatus.valueOf((String) row[2]);
+                sessionStartTimes[i] = NativeRowUtils.toLocalTime(row[3]);
+                sessionEndTimes[i] = NativeRowUtils.toLocalTime(row[4]);
+                sessionOrdinals.put(sessionIds[i], i);
+            }
+
+            studentOrdinals = new HashMap<>();
+            List<EnrolledStudent> enrolled = new ArrayList<>(enrolledRows.size());
+            for (Object[] row : enrolledRows) {
+                Long studentId = ((Number) row[0]).longValue();
+                int ordinal = studentOrdinals.computeIfAbsent(studentId, k -> studentOrdinals.size());
+                enrolled.add(new EnrolledStudent(ordinal, studentId, (String) row[1], (String) row[2]));
+            }
+            enrolledStudents = List.copyOf(enrolled);
+            for (Object[] row : attendanceRows) {
+                studentOrdinals.computeIfAbsent(((Number) row[1]).longValue(), k -> studentOrdinals.size());
+            }
+            studentCount = studentOrdinals.size();
+
+            int cells = studentCount * sessionCount;
+            attendance = new byte[cells];
+            homework = new byte[cells];
+            flags = new byte[cells];
+            failedMakeupEnd = new long[cells];
+            Arrays.fill(attendance, NONE);
+            Arrays.fill(homework, NONE);
+            Arrays.fill(failedMakeupEnd, Long.MAX_VALUE);
+
+            for (Object[] row : attendanceRows) {
+                int cell = cellOf(((Number) row[1]).longValue(), ((Number) row[0]).longValue());
+                if (cell < 0) {
+                    continue;
+                }
+                attendance[cell] = row[2] != null ? (byte) AttendanceStatus.valueOf((String) row[2]).ordinal() : NONE;
+                homework[cell] = row[3] != null ? (byte) HomeworkStatus.valueOf((String) row[3]).ordinal() : NONE;
+                if (Boolean.TRUE.equals(row[4])) {
+                    flags[cell] |= FLAG_MAKEUP_RECORD;
+                }
+            }
+
+            for (Object[] row : makeupRows) {
+                if (row[0] == null || row[1] == null) {
+                    continue;
+                }
+                int cell = cellOf(((Number) row[1]).longValue(), ((Number) row[0]).longValue());
+                if (cell < 0) {
+                    continue;
+                }
+                flags[cell] |= FLAG_MAKEUP_ATTEMPTED;
+                String status = (String) row[2];
+                if (AttendanceStatus.PRESENT.name().equals(status)) {
+                    flags[cell] |= FLAG_MAKEUP_COMPLETED;
+                } else if (AttendanceStatus.ABSENT.name().equals(status) && row[3] != null) {
+                    long makeupEnd = epochSecond(endOf(NativeRowUtils.toLocalDate(row[3]), NativeRowUtils.toLocalTime(row[4])));
+                    failedMakeupEnd[cell] = Math.min(failedMakeupEnd[cell], makeupEnd);
+                }
+            }
+        }
+
+        public String getClassCode() {
+            return classCode;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getSubjectName() {
+            return subjectName;
+        }
+
+        public int sessionCount() {
+            return sessionCount;
+        }
+
+        public Long sessionId(int session) {
+            return sessionIds[session];
+        }
+
+        public LocalDate sessionDate(int session) {
+            return sessionDates[session];
+        }
+
+        public LocalTime sessionStartTime(int session) {
+            return sessionStartTimes[session];
+        }
+
+        public LocalTime sessionEndTime(int session) {
+            return sessionEndTimes[session];
+        }
+
+        public SessionStatus sessionStatus(int session) {
+            return sessionStatuses[session];
+        }
+
+        public List<EnrolledStudent> enrolledStudents() {
+            return enrolledStudents;
+        }
+
+        public boolean hasRecord(int student, int session) {
+            return attendance[student * sessionCount + session] != NONE;
+        }
+
+        public AttendanceStatus attendanceStatus(int student, int session) {
+            byte value = attendance[student * sessionCount + session];
+            return value == NONE ? null : ATTENDANCE_VALUES[value];
+        }
+
+        public HomeworkStatus homeworkStatus(int student, int session) {
+            byte value = homework[student * sessionCount + session];
+            return value == NONE ? null : HOMEWORK_VALUES[value];
+        }
+
+        public boolean isMakeupRecord(int student, int session) {
+            return (flags[student * sessionCount + session] & FLAG_MAKEUP_RECORD) != 0;
+        }
+
+        // Đã có ít nhất một buổi học bù PRESENT cho buổi gốc này
+        public boolean hasMakeupCompleted(int student, int session) {
+            return (flags[student * sessionCount + session] & FLAG_MAKEUP_COMPLETED) != 0;
+        }
+
+        public boolean hasMakeupAttempt(int student, int session) {
+            return (flags[student * sessionCount + session] & FLAG_MAKEUP_ATTEMPTED) != 0;
+        }
+
+        // Có buổi học bù ABSENT đã kết thúc trước thời điểm now
+        public boolean hasMakeupFailedBefore(int student, int session, LocalDateTime now) {
+            return epochSecond(now) > failedMakeupEnd[student * sessionCount + session];
+        }
+
+        // Buổi chưa diễn ra: sau hôm nay, hoặc hôm nay mà vẫn PLANNED
+        public boolean isFutureSession(int session, LocalDate today) {
+            return sessionDates[session].isAfter(today)
+                    || (sessionDates[session].equals(today) && sessionStatuses[session] == SessionStatus.PLANNED);
+        }
+
+        public boolean isSessionEnded(int session, LocalDateTime now) {
+            return now.isAfter(endOf(sessionDates[session], sessionEndTimes[session]));
+        }
+
+        /**
+         * Tỷ lệ chuyên cần của lớp trên các bản ghi gốc (không tính bản ghi học bù):
+         * PRESENT tính có mặt; ABSENT tính vào mẫu số; EXCUSED có học bù PRESENT tính như PRESENT,
+         * có học bù nhưng vắng tính vào mẫu số, chưa học bù thì chỉ tính vào mẫu số khi buổi gốc đã kết thúc.
+         */
+        public double classAttendanceRate(LocalDateTime now) {
+            long totalPresent = 0;
+            long totalRecorded = 0;
+            for (int student = 0; student < studentCount; student++) {
+                for (int session = 0; session < sessionCount; session++) {
+                    int cell = student * sessionCount + session;
+                    if (attendance[cell] == NONE || (flags[cell] & FLAG_MAKEUP_RECORD) != 0) {
+                        continue;
+                    }
+                    AttendanceStatus status = ATTENDANCE_VALUES[attendance[cell]];
+                    if (status == AttendanceStatus.PRESENT) {
+                        totalPresent++;
+                        totalRecorded++;
+                    } else if (status == AttendanceStatus.ABSENT) {
+                        totalRecorded++;
+                    } else if (status == AttendanceStatus.EXCUSED) {
+                        if ((flags[cell] & FLAG_MAKEUP_COMPLETED) != 0) {
+                            totalPresent++;
+                            totalRecorded++;
+                        } else if ((flags[cell] & FLAG_MAKEUP_ATTEMPTED) != 0 || isSessionEnded(session, now)) {
+                            totalRecorded++;
+                        }
+                    }
+                }
+            }
+            return totalRecorded == 0 ? 0.0 : (double) totalPresent / totalRecorded;
+        }
+
+        // Số buổi đến hết ngày upTo
+        public int sessionCountUpTo(LocalDate upTo) {
+            int count = 0;
+            for (LocalDate date : sessionDates) {
+                if (!date.isAfter(upTo)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        // Số buổi ABSENT của học viên đến hết ngày upTo
+        public int absentCountUpTo(int student, LocalDate upTo) {
+            int absent = 0;
+            byte absentValue = (byte) AttendanceStatus.ABSENT.ordinal();
+            for (int session = 0; session < sessionCount; session++) {
+                if (!sessionDates[session].isAfter(upTo) && attendance[student * sessionCount + session] == absentValue) {
+                    absent++;
+                }
+            }
+            return absent;
+        }
+
+        private int cellOf(long studentId, long sessionId) {
+            Integer student = studentOrdinals.get(studentId);
+            Integer session = sessionOrdinals.get(sessionId);
+            return student == null || session == null ? -1 : student * sessionCount + session;
+        }
+
+        private static LocalDateTime endOf(LocalDate date, LocalTime endTime) {
+            return LocalDateTime.of(date, endTime != null ? endTime : LocalTime.MAX);
+        }
+
+        private static long epochSecond(LocalDateTime dateTime) {
+            return dateTime.toEpochSecond(ZoneOffset.UTC);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package org.fyp.tmssep490be.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Bảng nhắc nhở điểm danh / báo cáo buổi học, sắp theo thời điểm đến hạn.
+ *
+ * Mỗi buổi học có một nhắc "sắp kết thúc" (trước giờ kết thúc warningMinutesBeforeEnd phút)
+ * và các mốc sau khi kết thúc (1, 3, 12, 24, 36, 48 giờ). TeacherAttendanceReminderJob nạp lịch
+ * định kỳ bằng một query rồi mỗi tick chỉ lấy các nhắc đã đến hạn ({@link #pollDue}),
+ * thay vì quét lại toàn bộ buổi học trong ngày cho từng mốc.
+ * AttendanceService huỷ nhắc khi giáo viên đã điểm danh / nộp báo cáo.
+ */
+@Component
+@Slf4j
+public class AttendanceReminderSchedule {
+
+    // Mốc nhắc "sắp kết thúc": chỉ nhắc điểm danh
+    public static final int ENDING_SOON = 0;
+
+    // Các mốc sau khi buổi học kết thúc (giờ)
+    public static final int[] HOURS_AFTER_END = { 1, 3, 12, 24, 36, 48 };
+
+    private final int warningMinutesBeforeEnd;
+
+    private final NavigableMap<LocalDateTime, Set<Reminder>> dueTable = new TreeMap<>();
+    private final Map<Long, List<Reminder>> remindersBySession = new HashMap<>();
+    private final Map<Long, LocalDateTime> endAtBySession = new HashMap<>();
+
+    public AttendanceReminderSchedule(
+            @Value("${tms.scheduler.jobs.teacher-attendance-reminder.warning-minutes-before-end:10}") int warningMinutesBeforeEnd) {
+        this.warningMinutesBeforeEnd = warningMinutesBeforeEnd;
+    }
+
+    /**
+     * Một lần nhắc cho một buổi học.
+     * hoursAfterEnd = ENDING_SOON là nhắc trước khi kết thúc, còn lại là số giờ sau khi kết thúc.
+     */
+    public record Reminder(Long sessionId, int hoursAfterEnd, LocalDateTime sessionEndAt, LocalDateTime dueAt) {
+    }
+
+    public int getWarningMinutesBeforeEnd() {
+        return warningMinutesBeforeEnd;
+    }
+
+    /**
+     * Lên lịch các mốc nhắc cho buổi học kết thúc lúc endAt. Gọi lại với cùng endAt không làm gì;
+     * endAt khác (buổi học bị đổi giờ) thì thay toàn bộ lịch cũ. Chỉ giữ các mốc có dueAt >= notBefore.
+     */
+    public synchronized void schedule(Long sessionId, LocalDateTime endAt, LocalDateTime notBefore) {
+        if (endAt.equals(endAtBySession.get(sessionId))) {
+            return;
+        }
+        removeSession(sessionId);
+
+        List<Reminder> reminders = new ArrayList<>(HOURS_AFTER_END.length + 1);
+        addIfDue(reminders, new Reminder(sessionId, ENDING_SOON, endAt, endAt.minusMinutes(warningMinutesBeforeEnd)),
+                notBefore);
+        for (int hours : HOURS_AFTER_END) {
+            addIfDue(reminders, new Reminder(sessionId, hours, endAt, endAt.plusHours(hours)), notBefore);
+        }
+
+        endAtBySession.put(sessionId, endAt);
+        if (!reminders.isEmpty()) {
+            remindersBySession.put(sessionId, reminders);
+        }
+    }
+
+    // Lấy ra (và xoá khỏi bảng) các nhắc có dueAt <= now, theo thứ tự đến hạn
+    public synchronized List<Reminder> pollDue(LocalDateTime now) {
+        NavigableMap<LocalDateTime, Set<Reminder>> due = dueTable.headMap(now, true);
+        if (due.isEmpty()) {
+            return List.of();
+        }
+        List<Reminder> result = new ArrayList<>();
+        Iterator<Set<Reminder>> iterator = due.values().iterator();
+        while (iterator.hasNext()) {
+            for (Reminder reminder : iterator.next()) {
+                result.add(reminder);
+                List<Reminder> sessionReminders = remindersBySession.get(reminder.sessionId());
+                if (sessionReminders != null) {
+                    sessionReminders.remove(reminder);
+                    if (sessionReminders.isEmpty()) {
+                        remindersBySession.remove(reminder.sessionId());
+                    }
+                }
+            }
+            iterator.remove();
+        }
+        return result;
+    }
+
+    // Còn nhắc đến hạn (dueAt <= now) chưa lấy ra
+    public synchronized boolean hasDue(LocalDateTime now) {
+        return !dueTable.isEmpty() && !dueTable.firstKey().isAfter(now);
+    }
+
+    /**
+     * Bỏ lịch của các buổi đã kết thúc trước cutoff. Nhắc còn sót của các buổi này (instance không giữ lease
+     * nên không lấy ra) đã quá mốc cuối, instance giữ lease đã xử lý khi chúng đến hạn.
+     */
+    public synchronized void evictEndedBefore(LocalDateTime cutoff) {
+        endAtBySession.entrySet().removeIf(entry -> {
+            if (!entry.getValue().isBefore(cutoff)) {
+                return false;
+            }
+            removeReminders(entry.getKey());
+            return true;
+        });
+    }
+
+    // Nhắc đã lấy ra nhưng transaction gửi bị rollback (notification / email outbox không được ghi): đưa lại vào lịch
+    public void requeueOnRollback(List<Reminder> reminders) {
+        if (reminders.isEmpty() || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    requeue(reminders);
+                }
+            }
+        });
+    }
+
+    // Giáo viên đã điểm danh: không cần nhắc "sắp kết thúc" nữa (các mốc sau vẫn kiểm tra báo cáo)
+    public void cancelEndingSoon(Long sessionId) {
+        afterCommit(() -> removeReminder(sessionId, ENDING_SOON));
+    }
+
+    // Đã điểm danh và nộp báo cáo: huỷ mọi mốc còn lại của buổi học
+    public void cancel(Long sessionId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                removeReminders(sessionId);
+            }
+        });
+    }
+
+    public synchronized int size() {
+        return remindersBySession.values().stream().mapToInt(List::size).sum();
+    }
+
+    // Bỏ qua nhắc của buổi học đã đổi giờ hoặc đã bị bỏ khỏi lịch trong lúc gửi
+    private synchronized void requeue(List<Reminder> reminders) {
+        for (Reminder reminder : reminders) {
+            if (!reminder.sessionEndAt().equals(endAtBySession.get(reminder.sessionId()))) {
+                continue;
+            }
+            List<Reminder> sessionReminders = remindersBySession.computeIfAbsent(reminder.sessionId(),
+                    k -> new ArrayList<>());
+            if (!sessionReminders.contains(reminder)) {
+                sessionReminders.add(reminder);
+                dueTable.computeIfAbsent(reminder.dueAt(), k -> new LinkedHashSet<>()).add(reminder);
+            }
+        }
+    }
+
+    private void addIfDue(List<Reminder> reminders, Reminder reminder, LocalDateTime notBefore) {
+        if (reminder.dueAt().isBefore(notBefore)) {
+            return;
+        }
+        reminders.add(reminder);
+        dueTable.computeIfAbsent(reminder.dueAt(), k -> new LinkedHashSet<>()).add(reminder);
+    }
+
+    private synchronized void removeReminder(Long sessionId, int hoursAfterEnd) {
+        List<Reminder> reminders = remindersBySession.get(sessionId);
+        if (reminders == null) {
+            return;
+        }
+        reminders.removeIf(reminder -> {
+            if (reminder.hoursAfterEnd() != hoursAfterEnd) {
+                return false;
+            }
+            removeFromDueTable(reminder);
+            return true;
+        });
+        if (reminders.isEmpty()) {
+            remindersBySession.remove(sessionId);
+        }
+    }
+
+    // Giữ endAt để lần nạp lại sau không lên lịch lại buổi học đã huỷ nhắc
+    private void removeReminders(Long sessionId) {
+        List<Reminder> reminders = remindersBySession.remove(sessionId);
+        if (reminders != null) {
+            reminders.forEach(this::removeFromDueTable);
+        }
+    }
+
+    private void removeSession(Long sessionId) {
+        removeReminders(sessionId);
+        endAtBySession.remove(sessionId);
+    }
+
+    private void removeFromDueTable(Reminder reminder) {
+        Set<Reminder> bucket = dueTable.get(reminder.dueAt());
+        if (bucket != null) {
+            bucket.remove(reminder);
+            if (bucket.isEmpty()) {
+                dueTable.remove(reminder.dueAt());
+            }
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.fyp.tmssep490be.repositories.EnrollmentRepository;
 import org.fyp.tmssep490be.repositories.SessionRepository;
 import org.fyp.tmssep490be.repositories.StudentSessionRepository;
 import org.fyp.tmssep490be.repositories.TeachingSlotRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -34,12 +35,45 @@ public class AttendanceService {
 
     private static final double ATTENDANCE_WARNING_THRESHOLD = 0.2; // 20%
 
+    private static final String ATTENDANCE_VALUES_ROW =
+            "(CAST(? AS BIGINT), CAST(? AS VARCHAR), CAST(? AS VARCHAR), CAST(? AS TEXT))";
+
+    // Cập nhật điểm danh của cả buổi trong một câu lệnh; phần SELECT đọc snapshot trước UPDATE
+    // nên chỉ đếm các học viên không nằm trong request để ghép với số liệu tính từ request
+    private static final String SAVE_ATTENDANCE_SQL = """
+            WITH input (student_id, attendance_status, homework_status, note) AS (
+                VALUES %s
+            ),
+            updated AS (
+                UPDATE student_session ss
+                SET attendance_status = i.attendance_status,
+                    homework_status = i.homework_status,
+                    note = i.note,
+                    recorded_at = ?,
+                    updated_at = ?
+                FROM input i
+                WHERE ss.session_id = ?
+                  AND ss.student_id = i.student_id
+                RETURNING ss.student_id
+            )
+            SELECT (SELECT COUNT(*) FROM updated) AS updated_count,
+                   COUNT(ss.student_id) AS other_count,
+                   COUNT(ss.student_id) FILTER (WHERE ss.attendance_status = 'PRESENT') AS other_present
+            FROM student_session ss
+            WHERE ss.session_id = ?
+              AND ss.student_id NOT IN (SELECT student_id FROM input)
+            """;
+
     private final TeachingSlotRepository teachingSlotRepository;
     private final StudentSessionRepository studentSessionRepository;
     private final SessionRepository sessionRepository;
     private final EnrollmentRepository enrollmentRepository;
     private final NotificationService notificationService;
     private final EmailService emailService;
+    private final AttendanceReminderSchedule attendanceReminderSchedule;
+    private final JdbcTemplate jdbcTemplate;
+    private final AttendanceMatrixEngine attendanceMatrixEngine;
+    private final WeeklyTimetableCache timetableCache;
 
     public List<SessionTodayDTO> getSessionsForDate(Long teacherId, LocalDate date) {
         List<TeachingSlot> slots = teachingSlotRepository.findByTeacherIdAndDate(teacherId, date);
@@ -194,21 +228,18 @@ public class AttendanceService {
             throw new CustomException(ErrorCode.SESSION_ALREADY_DONE);
         }
 
-        OffsetDateTime now = OffsetDateTime.now();
+        // Một học viên xuất hiện nhiều lần thì lấy bản ghi cuối
+        Map<Long, AttendanceRecordDTO> recordsByStudent = new LinkedHashMap<>();
         for (AttendanceRecordDTO record : request.getRecords()) {
-            StudentSession.StudentSessionId id = new StudentSession.StudentSessionId(record.getStudentId(), sessionId);
-            StudentSession studentSession = studentSessionRepository.findById(id)
-                    .orElseThrow(() -> new ResourceNotFoundException("Student is not part of this session"));
-            studentSession.setAttendanceStatus(record.getAttendanceStatus());
-
-            // Teacher tự chọn homework status, không cần kiểm tra buổi trước
-            studentSession.setHomeworkStatus(record.getHomeworkStatus());
-            studentSession.setNote(record.getNote());
-            studentSession.setRecordedAt(now);
+            recordsByStudent.put(record.getStudentId(), record);
         }
 
-        List<StudentSession> updatedSessions = studentSessionRepository.findBySessionId(sessionId);
-        AttendanceSummaryDTO summary = buildSummary(updatedSessions);
+        AttendanceSummaryDTO summary = bulkUpdateAttendance(sessionId, recordsByStudent.values());
+
+        // Đã điểm danh: bỏ nhắc "buổi học sắp kết thúc"
+        attendanceReminderSchedule.cancelEndingSoon(sessionId);
+        invalidateAttendanceMatrices(session);
+        timetableCache.invalidateSession(sessionId);
 
         // Lưu ý: logic cảnh báo điểm danh (checkAndSendAttendanceWarnings)
         // trước đây chạy ngay trong transaction saveAttendance.
@@ -231,10 +262,10 @@ public class AttendanceService {
         if (!canEditAttendance(session)) {
             throw new CustomException(ErrorCode.SESSION_ALREADY_DONE);
         }
-        List<StudentSession> studentSessions = studentSessionRepository.findBySessionId(sessionId);
+        int totalStudents = studentSessionRepository.countBySessionId(sessionId).intValue();
         AttendanceSummaryDTO summary = AttendanceSummaryDTO.builder()
-                .totalStudents(studentSessions.size())
-                .presentCount(studentSessions.size())
+                .totalStudents(totalStudents)
+                .presentCount(totalStudents)
                 .absentCount(0)
                 .build();
         return MarkAllResponseDTO.builder()
@@ -251,11 +282,11 @@ public class AttendanceService {
         if (!canEditAttendance(session)) {
             throw new CustomException(ErrorCode.SESSION_ALREADY_DONE);
         }
-        List<StudentSession> studentSessions = studentSessionRepository.findBySessionId(sessionId);
+        int totalStudents = studentSessionRepository.countBySessionId(sessionId).intValue();
         AttendanceSummaryDTO summary = AttendanceSummaryDTO.builder()
-                .totalStudents(studentSessions.size())
+                .totalStudents(totalStudents)
                 .presentCount(0)
-                .absentCount(studentSessions.size())
+                .absentCount(totalStudents)
                 .build();
         return MarkAllResponseDTO.builder()
                 .sessionId(sessionId)
@@ -323,6 +354,15 @@ public class AttendanceService {
         List<StudentSession> studentSessions = studentSessionRepository.findBySessionId(sessionId);
         AttendanceSummaryDTO summary = buildSummary(studentSessions, session);
 
+        // Đã nộp báo cáo và đã điểm danh: huỷ các mốc nhắc còn lại
+        boolean attendanceRecorded = studentSessions.stream()
+                .anyMatch(ss -> ss.getAttendanceStatus() != null && ss.getAttendanceStatus() != AttendanceStatus.PLANNED);
+        if (attendanceRecorded) {
+            attendanceReminderSchedule.cancel(sessionId);
+        }
+        invalidateAttendanceMatrices(session);
+        timetableCache.invalidateSession(sessionId);
+
         return SessionReportResponseDTO.builder()
                 .sessionId(session.getId())
                 .classId(session.getClassEntity().getId())
@@ -342,226 +382,57 @@ public class AttendanceService {
     }
 
     public AttendanceMatrixDTO getClassAttendanceMatrix(Long teacherId, Long classId) {
-        List<Session> sessions = sessionRepository.findAllByClassIdOrderByDateAndTime(classId).stream()
-                .filter(session -> session.getStatus() != SessionStatus.CANCELLED)
-                .toList();
-        if (sessions.isEmpty()) {
+        AttendanceMatrixEngine.ClassAttendance matrix = attendanceMatrixEngine.forClass(classId);
+        int sessionCount = matrix.sessionCount();
+        if (sessionCount == 0) {
             throw new ResourceNotFoundException("Class has no sessions");
         }
 
-        boolean ownsAtLeastOne = sessions.stream()
-                .anyMatch(session -> teachingSlotRepository.existsByIdSessionIdAndIdTeacherIdAndStatusIn(
-                        session.getId(),
-                        teacherId,
-                        OWNERSHIP_STATUSES
-                ));
-
-        if (!ownsAtLeastOne) {
+        if (!teachingSlotRepository.existsByTeacherIdAndClassEntityId(teacherId, classId)) {
             throw new AccessDeniedException("Teacher does not own this class");
         }
 
-        List<Enrollment> enrollments = enrollmentRepository.findByClassIdAndStatus(classId, EnrollmentStatus.ENROLLED);
-        Set<Long> enrolledStudentIds = enrollments.stream()
-                .map(Enrollment::getStudentId)
-                .collect(Collectors.toSet());
-
-        List<Long> sessionIds = sessions.stream().map(Session::getId).toList();
-
-        // Map các bản ghi điểm danh theo session gốc trong lớp
-        Map<Long, List<StudentSession>> sessionStudentMap = studentSessionRepository.findBySessionIds(sessionIds)
-                .stream()
-                .filter(ss -> enrolledStudentIds.contains(ss.getStudent().getId()))
-                .collect(Collectors.groupingBy(ss -> ss.getSession().getId()));
-
-        // Map thông tin học bù theo (originalSessionId, studentId) để tính cờ xanh/đỏ
-        // - makeupCompletedMap: đã có ít nhất một buổi học bù PRESENT (chấm xanh)
-        // - makeupFailedPastMap: có buổi học bù ABSENT và buổi bù đó đã kết thúc (dùng để tô đỏ ngay cả khi buổi gốc chưa diễn ra)
-        Map<Long, Map<Long, Boolean>> makeupCompletedMap = new HashMap<>();
-        Map<Long, Map<Long, Boolean>> makeupFailedPastMap = new HashMap<>();
-        LocalDateTime nowForMakeup = LocalDateTime.now();
-
-        studentSessionRepository.findMakeupSessionsByOriginalSessionIds(sessionIds)
-                .forEach(ss -> {
-                    Session originalSession = ss.getOriginalSession();
-                    Session makeupSession = ss.getSession();
-                    if (originalSession == null || ss.getStudent() == null) {
-                        return;
-                    }
-                    Long originalSessionId = originalSession.getId();
-                    Long studentId = ss.getStudent().getId();
-                    if (originalSessionId == null || studentId == null) {
-                        return;
-                    }
-
-                    // Đánh dấu đã hoàn thành học bù (PRESENT)
-                    boolean isCompleted = ss.getAttendanceStatus() == AttendanceStatus.PRESENT;
-                    makeupCompletedMap
-                            .computeIfAbsent(originalSessionId, k -> new HashMap<>())
-                            .merge(studentId, isCompleted, (oldVal, newVal) -> oldVal || newVal);
-
-                    // Đánh dấu "học bù thất bại" nếu buổi học bù ABSENT và đã qua thời gian kết thúc buổi bù
-                    if (ss.getAttendanceStatus() == AttendanceStatus.ABSENT
-                            && makeupSession != null
-                            && makeupSession.getDate() != null) {
-                        LocalDate makeupDate = makeupSession.getDate();
-                        LocalDateTime makeupEndDateTime;
-                        if (makeupSession.getTimeSlotTemplate() != null
-                                && makeupSession.getTimeSlotTemplate().getEndTime() != null) {
-                            LocalTime endTime = makeupSession.getTimeSlotTemplate().getEndTime();
-                            makeupEndDateTime = LocalDateTime.of(makeupDate, endTime);
-                        } else {
-                            makeupEndDateTime = LocalDateTime.of(makeupDate, LocalTime.MAX);
-                        }
-
-                        if (nowForMakeup.isAfter(makeupEndDateTime)) {
-                            makeupFailedPastMap
-                                    .computeIfAbsent(originalSessionId, k -> new HashMap<>())
-                                    .merge(studentId, true, (oldVal, newVal) -> oldVal || newVal);
-                        }
-                    }
-                });
-
-        Map<Long, StudentAttendanceMatrixDTO.StudentAttendanceMatrixDTOBuilder> rowBuilders = new LinkedHashMap<>();
-        Map<Long, Map<Long, StudentAttendanceMatrixDTO.Cell.CellBuilder>> cellBuilders = new HashMap<>();
-
-        for (Enrollment enrollment : enrollments) {
-            Long studentId = enrollment.getStudentId();
-            rowBuilders.put(studentId, StudentAttendanceMatrixDTO.builder()
-                    .studentId(studentId)
-                    .studentCode(enrollment.getStudent().getStudentCode())
-                    .fullName(enrollment.getStudent().getUserAccount().getFullName())
-                    .cells(new ArrayList<>()));
-            cellBuilders.put(studentId, new HashMap<>());
-        }
-
-        for (Session session : sessions) {
-            List<StudentSession> studentSessions = sessionStudentMap.getOrDefault(session.getId(), List.of());
-            for (StudentSession ss : studentSessions) {
-                Long studentId = ss.getStudent().getId();
-                if (!enrolledStudentIds.contains(studentId)) {
-                    continue;
-                }
+        LocalDate today = LocalDate.now();
+        LocalDateTime now = LocalDateTime.now();
 
-                AttendanceStatus displayStatus = resolveMatrixDisplayStatus(ss, session);
-
-                 boolean isMakeup = Boolean.TRUE.equals(ss.getIsMakeup());
-
-                 // Mặc định không hiển thị chấm
-                 boolean hasMakeupCompleted = false;
-                 boolean hasMakeupPlanned = false;
-
-                 // Chỉ áp dụng logic chấm cho buổi gốc có phép (E), không phải bản ghi học bù
-                 if (!isMakeup && ss.getAttendanceStatus() == AttendanceStatus.EXCUSED) {
-                     // Kiểm tra xem đã có buổi học bù PRESENT hay chưa
-                     boolean completed = makeupCompletedMap
-                             .getOrDefault(session.getId(), Map.of())
-                             .getOrDefault(studentId, false);
-
-                     hasMakeupCompleted = completed;
-
-                     // Kiểm tra xem có buổi học bù ABSENT và đã qua thời gian kết thúc hay chưa
-                     boolean hasMakeupFailedPast = makeupFailedPastMap
-                             .getOrDefault(session.getId(), Map.of())
-                             .getOrDefault(studentId, false);
-
-                     // Tính xem đã qua thời gian kết thúc buổi học gốc chưa
-                     LocalDate sessionDate = session.getDate();
-                     LocalDateTime now = LocalDateTime.now();
-
-                     LocalDateTime sessionEndDateTime;
-                     if (session.getTimeSlotTemplate() != null && session.getTimeSlotTemplate().getEndTime() != null) {
-                         LocalTime endTime = session.getTimeSlotTemplate().getEndTime();
-                         sessionEndDateTime = LocalDateTime.of(sessionDate, endTime);
-                     } else {
-                         sessionEndDateTime = LocalDateTime.of(sessionDate, LocalTime.MAX);
-                     }
-
-                     boolean isAfterSessionEnd = now.isAfter(sessionEndDateTime);
-
-                     // Tô đỏ khi:
-                     // - Đã qua giờ kết thúc buổi gốc và chưa có buổi bù PRESENT, hoặc
-                     // - Có buổi học bù ABSENT đã kết thúc (ví dụ học bù trước buổi gốc nhưng không đi)
-                     if (!completed && (isAfterSessionEnd || hasMakeupFailedPast)) {
-                         hasMakeupPlanned = true;
-                     }
-                 }
-
-                cellBuilders.get(studentId)
-                        .put(session.getId(), StudentAttendanceMatrixDTO.Cell.builder()
-                                .sessionId(session.getId())
-                                .attendanceStatus(displayStatus)
-                                .homeworkStatus(ss.getHomeworkStatus())
-                                .makeup(isMakeup)
-                                .hasMakeupPlanned(hasMakeupPlanned)
-                                .hasMakeupCompleted(hasMakeupCompleted));
+        List<SessionMatrixInfoDTO> sessionDtos = new ArrayList<>(sessionCount);
+        for (int session = 0; session < sessionCount; session++) {
+            sessionDtos.add(SessionMatrixInfoDTO.builder()
+                    .sessionId(matrix.sessionId(session))
+                    .date(matrix.sessionDate(session))
+                    .startTime(matrix.sessionStartTime(session))
+                    .endTime(matrix.sessionEndTime(session))
+                    .status(matrix.sessionStatus(session).name())
+                    .build());
+        }
+
+        List<StudentAttendanceMatrixDTO> studentDtos = new ArrayList<>(matrix.enrolledStudents().size());
+        for (AttendanceMatrixEngine.EnrolledStudent student : matrix.enrolledStudents()) {
+            List<StudentAttendanceMatrixDTO.Cell> cells = new ArrayList<>(sessionCount);
+            for (int session = 0; session < sessionCount; session++) {
+                cells.add(toMatrixCell(matrix, student.ordinal(), session, today, now));
             }
-        }
-
-        List<SessionMatrixInfoDTO> sessionDtos = sessions.stream()
-                .map(session -> SessionMatrixInfoDTO.builder()
-                        .sessionId(session.getId())
-                        .date(session.getDate())
-                        .startTime(session.getTimeSlotTemplate() != null ? session.getTimeSlotTemplate().getStartTime() : null)
-                        .endTime(session.getTimeSlotTemplate() != null ? session.getTimeSlotTemplate().getEndTime() : null)
-                        .status(session.getStatus().name())
-                        .build())
-                .toList();
-
-        List<StudentAttendanceMatrixDTO> studentDtos = rowBuilders.values().stream()
-                .map(builder -> {
-                    Long studentId = builder.build().getStudentId();
-                    Map<Long, StudentAttendanceMatrixDTO.Cell.CellBuilder> cellsBySession = cellBuilders.getOrDefault(studentId, Map.of());
-                    List<StudentAttendanceMatrixDTO.Cell> cells = sessions.stream()
-                            .map(session -> {
-                                StudentAttendanceMatrixDTO.Cell.CellBuilder cellBuilder = cellsBySession.get(session.getId());
-                                if (cellBuilder != null) {
-                                    return cellBuilder.build();
-                                } else {
-                                    boolean isFutureSession = session.getDate().isAfter(LocalDate.now()) ||
-                                            (session.getDate().equals(LocalDate.now()) &&
-                                                    session.getStatus() == SessionStatus.PLANNED);
-
-                                    AttendanceStatus displayStatus = isFutureSession
-                                            ? AttendanceStatus.PLANNED
-                                            : AttendanceStatus.ABSENT;
-
-                                    return StudentAttendanceMatrixDTO.Cell.builder()
-                                            .sessionId(session.getId())
-                                            .attendanceStatus(displayStatus)
-                                            .homeworkStatus(null)
-                                            .makeup(false)
-                                            .hasMakeupPlanned(false)
-                                            .hasMakeupCompleted(false)
-                                            .build();
-                                }
-                            })
-                            .toList();
-
-                    double studentAttendanceRate = calculateStudentAttendanceRate(cells);
-
-                    return StudentAttendanceMatrixDTO.builder()
-                            .studentId(studentId)
-                            .studentCode(builder.build().getStudentCode())
-                            .fullName(builder.build().getFullName())
-                            .attendanceRate(studentAttendanceRate)
-                            .cells(cells)
-                            .build();
-                })
-                .sorted(Comparator.comparing(StudentAttendanceMatrixDTO::getStudentCode, Comparator.nullsLast(String::compareTo)))
-                .toList();
 
-        ClassEntity classEntity = sessions.get(0).getClassEntity();
+            studentDtos.add(StudentAttendanceMatrixDTO.builder()
+                    .studentId(student.studentId())
+                    .studentCode(student.studentCode())
+                    .fullName(student.fullName())
+                    .attendanceRate(calculateStudentAttendanceRate(cells))
+                    .cells(cells)
+                    .build());
+        }
+        studentDtos.sort(Comparator.comparing(StudentAttendanceMatrixDTO::getStudentCode, Comparator.nullsLast(String::compareTo)));
 
         // Tỷ lệ chuyên cần của cả lớp cần thống nhất với các màn hình khác
         // (Teacher classes, QA, báo cáo, Student portal...), nên dùng chung
-        // hàm calculateClassAttendanceRate dựa trên StudentSession thực tế.
-        double classAttendanceRate = calculateClassAttendanceRate(classId);
+        // cách tính của calculateClassAttendanceRate trên cùng snapshot.
+        double classAttendanceRate = matrix.classAttendanceRate(now);
 
         return AttendanceMatrixDTO.builder()
                 .classId(classId)
-                .classCode(classEntity.getCode())
-                .className(classEntity.getName())
-                .subjectName(classEntity.getSubject() != null ? classEntity.getSubject().getName() : null)
+                .classCode(matrix.getClassCode())
+                .className(matrix.getClassName())
+                .subjectName(matrix.getSubjectName())
                 .attendanceRate(classAttendanceRate)
                 .sessions(sessionDtos)
                 .students(studentDtos)
@@ -618,18 +489,101 @@ public class AttendanceService {
         return status;
     }
 
-    private AttendanceStatus resolveMatrixDisplayStatus(StudentSession studentSession, Session session) {
-        AttendanceStatus status = studentSession.getAttendanceStatus();
-
+    private StudentAttendanceMatrixDTO.Cell toMatrixCell(AttendanceMatrixEngine.ClassAttendance matrix,
+            int student, int session, LocalDate today, LocalDateTime now) {
+        Long sessionId = matrix.sessionId(session);
+        AttendanceStatus status = matrix.attendanceStatus(student, session);
+        if (!matrix.hasRecord(student, session)) {
+            return StudentAttendanceMatrixDTO.Cell.builder()
+                    .sessionId(sessionId)
+                    .attendanceStatus(matrix.isFutureSession(session, today) ? AttendanceStatus.PLANNED : AttendanceStatus.ABSENT)
+                    .homeworkStatus(null)
+                    .makeup(false)
+                    .hasMakeupPlanned(false)
+                    .hasMakeupCompleted(false)
+                    .build();
+        }
+
+        AttendanceStatus displayStatus = status;
         if (status == null || status == AttendanceStatus.PLANNED) {
-            boolean isFutureSession = session.getDate().isAfter(LocalDate.now()) ||
-                    (session.getDate().equals(LocalDate.now()) &&
-                            session.getStatus() == SessionStatus.PLANNED);
+            displayStatus = matrix.isFutureSession(session, today) ? AttendanceStatus.PLANNED : AttendanceStatus.ABSENT;
+        }
+
+        boolean isMakeup = matrix.isMakeupRecord(student, session);
 
-            return isFutureSession ? AttendanceStatus.PLANNED : AttendanceStatus.ABSENT;
+        // Mặc định không hiển thị chấm
+        boolean hasMakeupCompleted = false;
+        boolean hasMakeupPlanned = false;
+
+        // Chỉ áp dụng logic chấm cho buổi gốc có phép (E), không phải bản ghi học bù
+        if (!isMakeup && status == AttendanceStatus.EXCUSED) {
+            hasMakeupCompleted = matrix.hasMakeupCompleted(student, session);
+
+            // Tô đỏ khi:
+            // - Đã qua giờ kết thúc buổi gốc và chưa có buổi bù PRESENT, hoặc
+            // - Có buổi học bù ABSENT đã kết thúc (ví dụ học bù trước buổi gốc nhưng không đi)
+            hasMakeupPlanned = !hasMakeupCompleted
+                    && (matrix.isSessionEnded(session, now) || matrix.hasMakeupFailedBefore(student, session, now));
         }
 
-        return status;
+        return StudentAttendanceMatrixDTO.Cell.builder()
+                .sessionId(sessionId)
+                .attendanceStatus(displayStatus)
+                .homeworkStatus(matrix.homeworkStatus(student, session))
+                .makeup(isMakeup)
+                .hasMakeupPlanned(hasMakeupPlanned)
+                .hasMakeupCompleted(hasMakeupCompleted)
+                .build();
+    }
+
+    /**
+     * Ghi điểm danh cho các học viên trong records bằng một câu UPDATE ... FROM (VALUES ...)
+     * và trả về tổng kết của cả buổi: phần trong request tính trong bộ nhớ, phần còn lại
+     * lấy từ cùng câu lệnh. Học viên không thuộc buổi học -> ResourceNotFoundException (rollback).
+     */
+    // Ma trận của lớp có buổi học và của lớp gốc của các học viên học bù trong buổi (cờ đã học bù)
+    private void invalidateAttendanceMatrices(Session session) {
+        attendanceMatrixEngine.invalidate(session.getClassEntity().getId());
+        studentSessionRepository.findOriginalClassIdsOfMakeupsBySessionId(session.getId())
+                .forEach(attendanceMatrixEngine::invalidate);
+    }
+
+    private AttendanceSummaryDTO bulkUpdateAttendance(Long sessionId, Collection<AttendanceRecordDTO> records) {
+        OffsetDateTime now = OffsetDateTime.now();
+        List<Object> params = new ArrayList<>(records.size() * 4 + 4);
+        int present = 0;
+        for (AttendanceRecordDTO record : records) {
+            params.add(record.getStudentId());
+            params.add(record.getAttendanceStatus() != null ? record.getAttendanceStatus().name() : null);
+            // Teacher tự chọn homework status, không cần kiểm tra buổi trước
+            params.add(record.getHomeworkStatus() != null ? record.getHomeworkStatus().name() : null);
+            params.add(record.getNote());
+            if (record.getAttendanceStatus() == AttendanceStatus.PRESENT) {
+                present++;
+            }
+        }
+        params.add(now);
+        params.add(now);
+        params.add(sessionId);
+        params.add(sessionId);
+
+        String sql = String.format(SAVE_ATTENDANCE_SQL,
+                String.join(", ", Collections.nCopies(records.size(), ATTENDANCE_VALUES_ROW)));
+        long[] counts = jdbcTemplate.queryForObject(sql, (rs, rowNum) -> new long[] {
+                rs.getLong("updated_count"), rs.getLong("other_count"), rs.getLong("other_present")
+        }, params.toArray());
+
+        if (counts == null || counts[0] != records.size()) {
+            throw new ResourceNotFoundException("Student is not part of this session");
+        }
+
+        int total = records.size() + (int) counts[1];
+        int totalPresent = present + (int) counts[2];
+        return AttendanceSummaryDTO.builder()
+                .totalStudents(total)
+                .presentCount(totalPresent)
+                .absentCount(total - totalPresent)
+                .build();
     }
 
     private AttendanceSummaryDTO buildSummary(Collection<StudentSession> studentSessions) {
@@ -750,108 +704,9 @@ public class AttendanceService {
     }
 
     public double calculateClassAttendanceRate(Long classId) {
-        // Chỉ tính các buổi đã điểm danh (đã học), không tính các buổi chưa học
-        List<Session> sessions = sessionRepository.findAllByClassIdOrderByDateAndTime(classId).stream()
-                .filter(session -> session.getStatus() != SessionStatus.CANCELLED)
-                .toList();
-
-        if (sessions.isEmpty()) {
-            return 0.0;
-        }
-
-        List<Long> sessionIds = sessions.stream().map(Session::getId).toList();
-
-        // Lấy tất cả bản ghi điểm danh thực sự có trong DB
-        List<StudentSession> allStudentSessions = studentSessionRepository.findBySessionIds(sessionIds);
-
-        // Bỏ qua các bản ghi học bù (isMakeup = true) để không làm tăng tỷ lệ của lớp học bù
-        List<StudentSession> primarySessions = allStudentSessions.stream()
-                .filter(ss -> !Boolean.TRUE.equals(ss.getIsMakeup()))
-                .toList();
-
-        // Map thông tin học bù để xác định EXCUSED có học bù hay không
-        // makeupCompletedMap: sessionId -> studentId -> hasCompletedMakeup (PRESENT)
-        // makeupAttemptedMap: sessionId -> Set<studentId> (có attempt bất kể PRESENT hay ABSENT)
-        Map<Long, Map<Long, Boolean>> makeupCompletedMap = new HashMap<>();
-        Map<Long, Set<Long>> makeupAttemptedMap = new HashMap<>();
-        studentSessionRepository.findMakeupSessionsByOriginalSessionIds(sessionIds)
-                .forEach(ss -> {
-                    Session originalSession = ss.getOriginalSession();
-                    if (originalSession == null || ss.getStudent() == null) {
-                        return;
-                    }
-                    Long originalSessionId = originalSession.getId();
-                    Long studentId = ss.getStudent().getId();
-                    if (originalSessionId == null || studentId == null) {
-                        return;
-                    }
-
-                    // Track attempt
-                    makeupAttemptedMap.computeIfAbsent(originalSessionId, k -> new HashSet<>()).add(studentId);
-
-                    makeupCompletedMap
-                            .computeIfAbsent(originalSessionId, k -> new HashMap<>())
-                            .merge(
-                                    studentId,
-                                    ss.getAttendanceStatus() == AttendanceStatus.PRESENT,
-                                    (oldVal, newVal) -> oldVal || newVal
-                            );
-                });
-
-        LocalDateTime now = LocalDateTime.now();
-        long totalPresent = 0;
-        long totalRecorded = 0;
-
-        for (StudentSession ss : primarySessions) {
-            AttendanceStatus status = ss.getAttendanceStatus();
-            Session session = ss.getSession();
-            
-            if (status == AttendanceStatus.PRESENT) {
-                totalPresent++;
-                totalRecorded++;
-            } else if (status == AttendanceStatus.ABSENT) {
-                totalRecorded++;
-            } else if (status == AttendanceStatus.EXCUSED) {
-                Long sessionId = session.getId();
-                Long studentId = ss.getStudent().getId();
-                boolean hasMakeupAttempt = makeupAttemptedMap
-                        .getOrDefault(sessionId, Set.of())
-                        .contains(studentId);
-                boolean hasMakeupCompleted = makeupCompletedMap
-                        .getOrDefault(sessionId, Map.of())
-                        .getOrDefault(studentId, false);
-
-                if (hasMakeupCompleted) {
-                    // EXCUSED + makeup PRESENT -> tính như PRESENT
-                    totalPresent++;
-                    totalRecorded++;
-                } else if (hasMakeupAttempt) {
-                    // EXCUSED + makeup ABSENT -> chỉ tính vào mẫu số
-                    totalRecorded++;
-                } else {
-                    // Chưa học bù - check deadline
-                    LocalDate sessionDate = session.getDate();
-                    LocalDateTime sessionEndDateTime;
-                    if (session.getTimeSlotTemplate() != null && session.getTimeSlotTemplate().getEndTime() != null) {
-                        java.time.LocalTime endTime = session.getTimeSlotTemplate().getEndTime();
-                        sessionEndDateTime = LocalDateTime.of(sessionDate, endTime);
-                    } else {
-                        sessionEndDateTime = LocalDateTime.of(sessionDate, java.time.LocalTime.MAX);
-                    }
-
-                    if (now.isAfter(sessionEndDateTime)) {
-                        // Qua deadline + không makeup -> tính vào mẫu số
-                        totalRecorded++;
-                    }
-                }
-            }
-        }
-
-        if (totalRecorded == 0) {
-            return 0.0;
-        }
-
-        return (double) totalPresent / totalRecorded;
+        // Chỉ tính các buổi đã điểm danh (đã học), không tính các buổi chưa học.
+        // Bỏ qua bản ghi học bù; EXCUSED có học bù PRESENT tính như PRESENT (xem ClassAttendance)
+        return attendanceMatrixEngine.forClass(classId).classAttendanceRate(LocalDateTime.now());
     }
 
     private boolean canEditAttendance(Session session) {
@@ -921,50 +776,34 @@ public class AttendanceService {
 
     // Helper: Kiểm tra và gửi cảnh báo điểm danh cho sinh viên vắng nhiều
     private void checkAndSendAttendanceWarnings(Long sessionId, Long classId) {
-        // Lấy danh sách tất cả session của lớp học đã hoàn thành
-        List<Session> completedSessions = sessionRepository.findByClassEntityIdOrderByDateAsc(classId)
-            .stream()
-            .filter(s -> s.getDate().isBefore(LocalDate.now()) || s.getDate().equals(LocalDate.now()))
-            .toList();
-        
-        if (completedSessions.isEmpty()) {
+        // Số buổi đã học và số buổi vắng lấy từ snapshot điểm danh của lớp
+        AttendanceMatrixEngine.ClassAttendance matrix = attendanceMatrixEngine.forClass(classId);
+        LocalDate today = LocalDate.now();
+        int totalSessions = matrix.sessionCountUpTo(today);
+        if (totalSessions == 0) {
             return;
         }
-        
-        int totalSessions = completedSessions.size();
-        List<Long> completedSessionIds = completedSessions.stream()
-            .map(Session::getId)
-            .toList();
-        
+
+        Map<Long, Integer> ordinalByStudent = matrix.enrolledStudents().stream()
+            .collect(Collectors.toMap(AttendanceMatrixEngine.EnrolledStudent::studentId,
+                AttendanceMatrixEngine.EnrolledStudent::ordinal));
+
         // Lấy tất cả enrollment của lớp
         List<Enrollment> enrollments = enrollmentRepository.findByClassIdAndStatus(classId, EnrollmentStatus.ENROLLED);
-        
-        // Lấy tất cả StudentSession của các buổi học đã hoàn thành
-        List<StudentSession> allStudentSessions = completedSessionIds.stream()
-            .flatMap(sid -> studentSessionRepository.findBySessionId(sid).stream())
-            .toList();
-        
-        // Group theo studentId
-        java.util.Map<Long, List<StudentSession>> studentSessionMap = allStudentSessions.stream()
-            .collect(java.util.stream.Collectors.groupingBy(ss -> ss.getStudent().getId()));
-        
+
         for (Enrollment enrollment : enrollments) {
-            Long studentId = enrollment.getStudent().getId();
-            
-            // Lấy danh sách StudentSession của sinh viên này
-            List<StudentSession> studentSessions = studentSessionMap.getOrDefault(studentId, List.of());
-            
-            // Đếm số buổi vắng của sinh viên
-            long absentCount = studentSessions.stream()
-                .filter(ss -> ss.getAttendanceStatus() == AttendanceStatus.ABSENT)
-                .count();
-            
-            // Tính tỷ lệ vắng
+            Integer ordinal = ordinalByStudent.get(enrollment.getStudentId());
+            if (ordinal == null) {
+                continue;
+            }
+
+            // Đếm số buổi vắng và tính tỷ lệ vắng
+            int absentCount = matrix.absentCountUpTo(ordinal, today);
             double absentRate = (double) absentCount / totalSessions;
             
             // Nếu vắng >= 20%, gửi cảnh báo
             if (absentRate >= ATTENDANCE_WARNING_THRESHOLD) {
-                sendAttendanceWarning(enrollment.getStudent(), classId, totalSessions, (int) absentCount, absentRate);
+                sendAttendanceWarning(enrollment.getStudent(), classId, totalSessions, absentCount, absentRate);
             }
         }
     }
@@ -18,6 +18,7 @@ import org.fyp.tmssep490be.exceptions.InvalidTokenException;
 import org.fyp.tmssep490be.repositories.UserAccountRepository;
 import org.fyp.tmssep490be.security.JwtTokenProvider;
 import org.fyp.tmssep490be.security.UserPrincipal;
+import org.fyp.tmssep490be.security.UserPrincipalCache;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -44,6 +45,7 @@ public class AuthService {
     private final UserAccountRepository userAccountRepository;
     private final PasswordEncoder passwordEncoder;
     private final EmailService emailService;
+    private final UserPrincipalCache userPrincipalCache;
 
     // Giới hạn tần suất gửi yêu cầu quên mật khẩu
     private final ConcurrentMap<String, Long> lastRequestTime = new ConcurrentHashMap<>();
@@ -203,6 +205,7 @@ public class AuthService {
         user.setPasswordHash(passwordEncoder.encode(request.getNewPassword()));
         user.setLastPasswordChangeAt(java.time.OffsetDateTime.now());
         userAccountRepository.save(user);
+        userPrincipalCache.evict(userId);
 
         log.info("Đổi mật khẩu thành công cho user: {}", userId);
 
@@ -213,7 +216,8 @@ public class AuthService {
     }
 
     // Gửi email đặt lại mật khẩu
-    @Transactional(readOnly = true)
+    // Không readOnly: email được ghi vào outbox (INSERT email_outbox) trong transaction này
+    @Transactional
     public ForgotPasswordResponse requestPasswordReset(ForgotPasswordRequest request) {
         String email = request.getEmail().toLowerCase();
         log.info("Yêu cầu quên mật khẩu cho email: {}", email);
@@ -290,6 +294,7 @@ public class AuthService {
             String encodedPassword = passwordEncoder.encode(request.getNewPassword());
             user.setPasswordHash(encodedPassword);
             userAccountRepository.save(user);
+            userPrincipalCache.evict(userId);
 
             log.info("Đặt lại mật khẩu thành công cho user {}", userId);
 
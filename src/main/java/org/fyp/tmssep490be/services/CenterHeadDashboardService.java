@@ -3,17 +3,13 @@ package org.fyp.tmssep490be.services;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.fyp.tmssep490be.dtos.dashboard.CenterHeadDashboardDTO;
+import org.fyp.tmssep490be.dtos.dashboard.DashboardRollup;
 import org.fyp.tmssep490be.entities.ClassEntity;
-import org.fyp.tmssep490be.entities.Enrollment;
 import org.fyp.tmssep490be.entities.Session;
 import org.fyp.tmssep490be.entities.Subject;
 import org.fyp.tmssep490be.entities.Teacher;
-import org.fyp.tmssep490be.entities.TeachingSlot;
-import org.fyp.tmssep490be.entities.enums.ClassStatus;
 import org.fyp.tmssep490be.entities.enums.EnrollmentStatus;
 import org.fyp.tmssep490be.entities.enums.RequestStatus;
-import org.fyp.tmssep490be.entities.enums.SessionStatus;
-import org.fyp.tmssep490be.entities.enums.TeachingSlotStatus;
 import org.fyp.tmssep490be.repositories.UserBranchesRepository;
 import org.fyp.tmssep490be.repositories.ClassRepository;
 import org.fyp.tmssep490be.repositories.EnrollmentRepository;
@@ -21,16 +17,13 @@ import org.fyp.tmssep490be.repositories.SessionRepository;
 import org.fyp.tmssep490be.repositories.StudentRequestRepository;
 import org.fyp.tmssep490be.repositories.TeacherRepository;
 import org.fyp.tmssep490be.repositories.TeacherRequestRepository;
-import org.fyp.tmssep490be.repositories.TeachingSlotRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Duration;
 import java.time.LocalDate;
-import java.time.LocalTime;
-import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -59,8 +52,8 @@ public class CenterHeadDashboardService {
     private final StudentRequestRepository studentRequestRepository;
     private final TeacherRequestRepository teacherRequestRepository;
     private final SessionRepository sessionRepository;
-    private final TeachingSlotRepository teachingSlotRepository;
     private final AttendanceService attendanceService;
+    private final DashboardMetricsService dashboardMetricsService;
 
     /**
      * Lấy dashboard cho Center Head.
@@ -104,15 +97,13 @@ public class CenterHeadDashboardService {
 
         // Không cần dùng ManagerDashboardService nữa vì đã tính lại tất cả metrics theo branchIds
 
+        // Rollup theo (chi nhánh, ngày) - thay cho findAll() trên class/enrollment/session
+        DashboardRollup rollup = dashboardMetricsService.loadRollup(effectiveFrom, effectiveTo);
+
         // Tính lại class summary dựa trên branchIds
         long activeClasses = 0L;
         if (!branchIds.isEmpty()) {
-            List<ClassEntity> allClasses = classRepository.findAll().stream()
-                    .filter(c -> c.getBranch() != null && branchIds.contains(c.getBranch().getId()))
-                    .toList();
-            activeClasses = allClasses.stream()
-                    .filter(c -> c.getStatus() == ClassStatus.ONGOING || c.getStatus() == ClassStatus.SCHEDULED)
-                    .count();
+            activeClasses = rollup.activeClasses(branchIds);
         }
 
         CenterHeadDashboardDTO.ClassSummary classSummary = CenterHeadDashboardDTO.ClassSummary.builder()
@@ -125,34 +116,12 @@ public class CenterHeadDashboardService {
         long activeStudents = 0L;
         long newEnrollmentsInRange = 0L;
         if (!branchIds.isEmpty()) {
-            // Đếm students có branch trong branchIds (students đang enrolled trong các lớp thuộc branchIds)
-            List<ClassEntity> classesInBranches = classRepository.findAll().stream()
-                    .filter(c -> c.getBranch() != null && branchIds.contains(c.getBranch().getId()))
-                    .toList();
-            Set<Long> classIds = classesInBranches.stream()
-                    .map(ClassEntity::getId)
-                    .collect(Collectors.toSet());
-            
             // Đếm students đang enrolled trong các lớp thuộc branchIds
-            List<Enrollment> enrollments = enrollmentRepository.findAll().stream()
-                    .filter(e -> classIds.contains(e.getClassId()) 
-                            && e.getStatus() == EnrollmentStatus.ENROLLED)
-                    .toList();
-            activeStudents = enrollments.stream()
-                    .map(Enrollment::getStudent)
-                    .map(s -> s != null ? s.getId() : null)
-                    .filter(java.util.Objects::nonNull)
-                    .distinct()
-                    .count();
-            
+            activeStudents = enrollmentRepository.countDistinctStudentsByBranchIdsAndStatus(
+                    branchIds, EnrollmentStatus.ENROLLED);
+
             // Đếm enrollments mới trong date range
-            OffsetDateTime fromDateTime = effectiveFrom.atStartOfDay().atOffset(java.time.ZoneOffset.UTC);
-            OffsetDateTime toDateTime = effectiveTo.atTime(23, 59, 59).atOffset(java.time.ZoneOffset.UTC);
-            newEnrollmentsInRange = enrollments.stream()
-                    .filter(e -> e.getEnrolledAt() != null
-                            && !e.getEnrolledAt().isBefore(fromDateTime)
-                            && !e.getEnrolledAt().isAfter(toDateTime))
-                    .count();
+            newEnrollmentsInRange = rollup.newEnrollments(branchIds, effectiveFrom, effectiveTo);
         }
 
         CenterHeadDashboardDTO.StudentSummary studentSummary = CenterHeadDashboardDTO.StudentSummary.builder()
@@ -232,38 +201,9 @@ public class CenterHeadDashboardService {
         long teachingTeachers = 0L;
         double totalTeachingHours = 0.0;
         if (!branchIds.isEmpty()) {
-            // Lấy tất cả sessions trong date range của các lớp thuộc branchIds
-            List<Session> sessionsInRange = sessionRepository.findAll().stream()
-                    .filter(s -> !s.getDate().isBefore(effectiveFrom) && !s.getDate().isAfter(effectiveTo)
-                            && s.getStatus() != SessionStatus.CANCELLED
-                            && s.getClassEntity() != null
-                            && s.getClassEntity().getBranch() != null
-                            && branchIds.contains(s.getClassEntity().getBranch().getId()))
-                    .collect(Collectors.toList());
-
-            // Tính số giáo viên đang dạy (có ít nhất 1 teaching slot trong date range)
-            Set<Long> teachingTeacherIds = new HashSet<>();
-            
-            for (Session session : sessionsInRange) {
-                List<TeachingSlot> teachingSlots = teachingSlotRepository.findBySessionIdWithTeacher(session.getId());
-                for (TeachingSlot slot : teachingSlots) {
-                    if (slot.getStatus() == TeachingSlotStatus.SCHEDULED || slot.getStatus() == TeachingSlotStatus.SUBSTITUTED) {
-                        teachingTeacherIds.add(slot.getTeacher().getId());
-                        
-                        // Tính giờ dạy
-                        if (session.getTimeSlotTemplate() != null) {
-                            LocalTime startTime = session.getTimeSlotTemplate().getStartTime();
-                            LocalTime endTime = session.getTimeSlotTemplate().getEndTime();
-                            if (startTime != null && endTime != null) {
-                                Duration duration = Duration.between(startTime, endTime);
-                                totalTeachingHours += duration.toHours() + (duration.toMinutesPart() / 60.0);
-                            }
-                        }
-                    }
-                }
-            }
-            
-            teachingTeachers = teachingTeacherIds.size();
+            // Giáo viên đang dạy = có ít nhất 1 teaching slot (SCHEDULED/SUBSTITUTED) trong date range
+            teachingTeachers = rollup.teachingTeachers(branchIds);
+            totalTeachingHours = rollup.teachingHours(branchIds);
         }
         
         long availableTeachers = Math.max(totalTeachers - teachingTeachers, 0L);
@@ -324,26 +264,25 @@ public class CenterHeadDashboardService {
         List<CenterHeadDashboardDTO.AttendanceTrendPoint> attendanceTrend = new ArrayList<>();
 
         if (!branchIds.isEmpty()) {
+            // Các lớp có session (không bị hủy) theo từng ngày của các lớp thuộc branchIds - 1 query cho cả khoảng
+            Map<LocalDate, Set<Long>> classIdsByDate = new HashMap<>();
+            for (Object[] row : sessionRepository.findClassIdsWithSessionsByDate(branchIds, effectiveFrom, effectiveTo)) {
+                classIdsByDate.computeIfAbsent((LocalDate) row[0], d -> new HashSet<>())
+                        .add(((Number) row[1]).longValue());
+            }
+            // Tỷ lệ chuyên cần của lớp không phụ thuộc ngày -> chỉ tính 1 lần cho mỗi lớp
+            Map<Long, Double> classRateCache = new HashMap<>();
+
             LocalDate currentDate = effectiveFrom;
             while (!currentDate.isAfter(effectiveTo)) {
-                // Lấy sessions trong ngày của các lớp thuộc branchIds
-                List<Session> sessionsOnDate = sessionRepository.findByDate(currentDate).stream()
-                        .filter(s -> s.getStatus() != SessionStatus.CANCELLED
-                                && s.getClassEntity() != null
-                                && s.getClassEntity().getBranch() != null
-                                && branchIds.contains(s.getClassEntity().getBranch().getId()))
-                        .collect(Collectors.toList());
-
-                if (!sessionsOnDate.isEmpty()) {
-                    // Lấy danh sách các lớp có session trong ngày
-                    Set<Long> classIds = sessionsOnDate.stream()
-                            .map(s -> s.getClassEntity().getId())
-                            .collect(Collectors.toSet());
+                Set<Long> classIds = classIdsByDate.getOrDefault(currentDate, Collections.emptySet());
 
+                if (!classIds.isEmpty()) {
                     // Tính tỷ lệ chuyên cần cho từng lớp và lấy trung bình
                     List<Double> classAttendanceRates = new ArrayList<>();
                     for (Long classId : classIds) {
-                        double classRate = attendanceService.calculateClassAttendanceRate(classId);
+                        double classRate = classRateCache.computeIfAbsent(classId,
+                                attendanceService::calculateClassAttendanceRate);
                         classAttendanceRates.add(classRate * 100.0); // Convert to percentage
                         
                         // Đánh dấu lớp có tỷ lệ < 70%
@@ -19,6 +19,7 @@ import org.fyp.tmssep490be.utils.ScheduleUtils;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -27,6 +28,7 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.OffsetDateTime;
+import java.time.temporal.TemporalAdjusters;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -56,6 +58,16 @@ public class ClassService {
         private final SessionResourceRepository sessionResourceRepository;
         private final ApprovalService approvalService;
         private final VietnamHolidayService vietnamHolidayService;
+        private final ResourceOccupancyIndex resourceOccupancyIndex;
+        private final WeeklyTimetableCache timetableCache;
+        private final JdbcTemplate jdbcTemplate;
+
+        private static final int SESSION_INSERT_BATCH_SIZE = 500;
+
+        private static final String INSERT_SESSION_SQL = """
+                        INSERT INTO session (id, class_id, subject_session_id, date, type, status, created_at, updated_at)
+                        VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+                        """;
 
         public Page<ClassListItemDTO> getClasses(
                         List<Long> branchIds,
@@ -964,7 +976,7 @@ public class ClassService {
 
                 // Generate sessions
                 List<Session> sessions = generateSessionsForClass(classEntity, subject);
-                List<Session> savedSessions = sessionRepository.saveAll(sessions);
+                List<Session> savedSessions = insertSessionsInBulk(sessions);
 
                 // Calculate end date
                 LocalDate endDate = calculateEndDate(savedSessions);
@@ -1008,6 +1020,8 @@ public class ClassService {
                 ClassEntity classEntity = classRepository.findById(classId)
                                 .orElseThrow(() -> new CustomException(ErrorCode.CLASS_NOT_FOUND));
 
+                Long previousBranchId = classEntity.getBranch().getId();
+
                 // Check if class can be edited (only DRAFT or REJECTED)
                 if (classEntity.getStatus() != ClassStatus.DRAFT) {
                         if (classEntity.getApprovalStatus() != ApprovalStatus.REJECTED) {
@@ -1091,14 +1105,18 @@ public class ClassService {
                 if (needRegenerateSessions) {
                         log.info("Schedule changed - regenerating sessions for class {}", classEntity.getId());
 
-                        // Delete old sessions
-                        List<Session> oldSessions = sessionRepository.findByClassEntityIdOrderByDateAsc(classId);
-                        sessionRepository.deleteAll(oldSessions);
-                        log.info("Deleted {} old sessions", oldSessions.size());
+                        // Delete old sessions (một câu DELETE, bảng con xóa theo ON DELETE CASCADE)
+                        int deletedCount = sessionRepository.deleteAllByClassIdIn(List.of(classId));
+                        resourceOccupancyIndex.invalidateBranch(previousBranchId);
+                        timetableCache.invalidateClass(classId);
+                        log.info("Deleted {} old sessions", deletedCount);
+
+                        // Bulk delete đã clear persistence context, nạp lại class
+                        classEntity = classRepository.findById(classId)
+                                        .orElseThrow(() -> new CustomException(ErrorCode.CLASS_NOT_FOUND));
 
                         // Generate new sessions
-                        sessions = generateSessionsForClass(classEntity, subject);
-                        sessions = sessionRepository.saveAll(sessions);
+                        sessions = insertSessionsInBulk(generateSessionsForClass(classEntity, subject));
                         log.info("Generated {} new sessions", sessions.size());
 
                         // Update end date
@@ -1210,6 +1228,9 @@ public class ClassService {
                         rotatedDays[i] = sortedDays[(rotationIndex + i) % sortedDays.length];
                 }
 
+                // Lịch nghỉ lễ theo năm, tính một lần cho cả khóa học
+                Map<Integer, Set<LocalDate>> holidaysByYear = new HashMap<>();
+
                 LocalDate currentDate = startDate;
                 for (int sessionIndex = 0; sessionIndex < subjectSessions.size(); sessionIndex++) {
                         SubjectSession subjectSession = subjectSessions.get(sessionIndex);
@@ -1217,7 +1238,8 @@ public class ClassService {
                         LocalDate sessionDate = findNextDateForDayOfWeek(currentDate, targetDayOfWeek);
 
                         // Skip holidays - find next available date with same day of week
-                        while (vietnamHolidayService.isHoliday(sessionDate)) {
+                        while (holidaysByYear.computeIfAbsent(sessionDate.getYear(),
+                                        vietnamHolidayService::getHolidaysInYear).contains(sessionDate)) {
                                 log.info("Session date {} is a holiday ({}), moving to next week",
                                                 sessionDate, vietnamHolidayService.getHolidayName(sessionDate));
                                 sessionDate = sessionDate.plusWeeks(1); // Move to same day next week
@@ -1247,11 +1269,40 @@ public class ClassService {
                 // Convert: if targetDayOfWeek == 0 (Sunday) -> 7, else keep as is
                 int javaDayOfWeek = targetDayOfWeek == 0 ? 7 : targetDayOfWeek.intValue();
                 DayOfWeek target = DayOfWeek.of(javaDayOfWeek);
-                LocalDate current = fromDate;
-                while (current.getDayOfWeek() != target) {
-                        current = current.plusDays(1);
+                return fromDate.with(TemporalAdjusters.nextOrSame(target));
+        }
+
+        /**
+         * Insert sessions mới bằng JDBC batch thay vì saveAll (Session dùng IDENTITY nên Hibernate
+         * không batch được insert). Id được cấp trước từ session_id_seq trong một query,
+         * sau đó insert theo lô SESSION_INSERT_BATCH_SIZE. Chỉ dùng cho buổi học chưa có
+         * tài nguyên / giáo viên / học viên (tạo mới hoặc sinh lại lịch).
+         */
+        private List<Session> insertSessionsInBulk(List<Session> sessions) {
+                if (sessions.isEmpty()) {
+                        return sessions;
+                }
+
+                List<Long> ids = sessionRepository.allocateIds(sessions.size());
+                for (int i = 0; i < sessions.size(); i++) {
+                        sessions.get(i).setId(ids.get(i));
                 }
-                return current;
+
+                jdbcTemplate.batchUpdate(INSERT_SESSION_SQL, sessions, SESSION_INSERT_BATCH_SIZE, (ps, session) -> {
+                        ps.setLong(1, session.getId());
+                        ps.setLong(2, session.getClassEntity().getId());
+                        if (session.getSubjectSession() != null) {
+                                ps.setLong(3, session.getSubjectSession().getId());
+                        } else {
+                                ps.setNull(3, java.sql.Types.BIGINT);
+                        }
+                        ps.setObject(4, session.getDate());
+                        ps.setString(5, session.getType().name());
+                        ps.setString(6, session.getStatus().name());
+                        ps.setObject(7, session.getCreatedAt());
+                        ps.setObject(8, session.getUpdatedAt());
+                });
+                return sessions;
         }
 
         private LocalDate calculateEndDate(List<Session> sessions) {
@@ -1477,6 +1528,7 @@ public class ClassService {
                                                 classId,
                                                 assignment.getDayOfWeek().intValue(),
                                                 assignment.getTimeSlotTemplateId());
+                                timetableCache.invalidateClass(classId);
 
                                 // Create assignment detail
                                 org.fyp.tmssep490be.dtos.classcreation.AssignTimeSlotsResponse.AssignmentDetail detail = org.fyp.tmssep490be.dtos.classcreation.AssignTimeSlotsResponse.AssignmentDetail
@@ -1515,6 +1567,9 @@ public class ClassService {
                         }
                 }
 
+                // Giờ học của các buổi đổi bằng native UPDATE: chỉ mục chiếm dụng phòng của chi nhánh phải nạp lại
+                resourceOccupancyIndex.invalidateBranch(classEntity.getBranch().getId());
+
                 // Build response
                 return org.fyp.tmssep490be.dtos.classcreation.AssignTimeSlotsResponse.builder()
                                 .success(totalSessionsUpdated > 0)
@@ -1554,13 +1609,49 @@ public class ClassService {
 
                 validateClassBranchAccess(classEntity, userId);
 
-                // Determine required resource type based on class modality
+                List<org.fyp.tmssep490be.entities.Resource> resources = findCandidateResources(classEntity);
+
+                // Get sessions for this class and dayOfWeek (null = all days) to calculate conflicts
+                List<org.fyp.tmssep490be.entities.Session> classSessions = findSessionsWithTimeSlot(classId).stream()
+                                .filter(s -> dayOfWeek == null || dayOfWeekOf(s) == dayOfWeek.intValue())
+                                .toList();
+
+                return rankAvailableResources(classEntity, resources, classSessions);
+        }
+
+        /**
+         * Phòng trống cho từng thứ trong tuần của lớp trong một lần gọi (wizard bước 4),
+         * thay vì gọi getAvailableResources cho từng thứ.
+         * Key: dayOfWeek (0 = Chủ nhật ... 6 = Thứ 7), chỉ gồm các thứ lớp có buổi học.
+         */
+        public Map<Short, List<org.fyp.tmssep490be.dtos.classcreation.AvailableResourceDTO>> getAvailableResourcesByDayOfWeek(
+                        Long classId, Long userId) {
+                log.info("Getting available resources for all days of class {} by user {}", classId, userId);
+
+                ClassEntity classEntity = classRepository.findById(classId)
+                                .orElseThrow(() -> new CustomException(ErrorCode.CLASS_NOT_FOUND));
+
+                validateClassBranchAccess(classEntity, userId);
+
+                List<org.fyp.tmssep490be.entities.Resource> resources = findCandidateResources(classEntity);
+                Map<Short, List<org.fyp.tmssep490be.entities.Session>> sessionsByDay = findSessionsWithTimeSlot(classId)
+                                .stream()
+                                .collect(Collectors.groupingBy(s -> (short) dayOfWeekOf(s), TreeMap::new,
+                                                Collectors.toList()));
+
+                Map<Short, List<org.fyp.tmssep490be.dtos.classcreation.AvailableResourceDTO>> result = new LinkedHashMap<>();
+                sessionsByDay.forEach((day, daySessions) -> result.put(day,
+                                rankAvailableResources(classEntity, resources, daySessions)));
+                return result;
+        }
+
+        // Tài nguyên của chi nhánh đúng loại (ROOM/VIRTUAL theo modality) và đủ sức chứa
+        private List<org.fyp.tmssep490be.entities.Resource> findCandidateResources(ClassEntity classEntity) {
                 org.fyp.tmssep490be.entities.enums.ResourceType requiredType = classEntity
                                 .getModality() == org.fyp.tmssep490be.entities.enums.Modality.ONLINE
                                                 ? org.fyp.tmssep490be.entities.enums.ResourceType.VIRTUAL
                                                 : org.fyp.tmssep490be.entities.enums.ResourceType.ROOM;
 
-                // Get resources for the branch and filter by resource type AND capacity
                 Integer requiredCapacity = classEntity.getMaxCapacity() != null ? classEntity.getMaxCapacity() : 0;
                 List<org.fyp.tmssep490be.entities.Resource> resources = resourceRepository
                                 .findByBranchIdOrderByNameAsc(classEntity.getBranch().getId())
@@ -1571,45 +1662,33 @@ public class ClassService {
 
                 log.info("Found {} resources of type {} for class modality {}",
                                 resources.size(), requiredType, classEntity.getModality());
+                return resources;
+        }
 
-                // Get sessions for this class and dayOfWeek to calculate conflicts
-                List<org.fyp.tmssep490be.entities.Session> classSessions = sessionRepository
-                                .findByClassEntityId(classId)
-                                .stream()
-                                .filter(s -> s.getDate() != null &&
-                                                (s.getDate().getDayOfWeek().getValue() % 7) == dayOfWeek.intValue())
-                                .filter(s -> s.getTimeSlotTemplate() != null)
+        private List<org.fyp.tmssep490be.entities.Session> findSessionsWithTimeSlot(Long classId) {
+                return sessionRepository.findByClassEntityId(classId).stream()
+                                .filter(s -> s.getDate() != null && s.getTimeSlotTemplate() != null)
                                 .toList();
+        }
 
-                int totalSessions = classSessions.size();
-                Map<Long, Integer> conflictMap = new HashMap<>();
+        // 0 = Chủ nhật ... 6 = Thứ 7
+        private int dayOfWeekOf(org.fyp.tmssep490be.entities.Session session) {
+                return session.getDate().getDayOfWeek().getValue() % 7;
+        }
 
-                if (totalSessions > 0) {
-                        List<Long> resourceIds = resources.stream().map(org.fyp.tmssep490be.entities.Resource::getId)
-                                        .toList();
-                        List<LocalDate> dates = classSessions.stream()
-                                        .map(org.fyp.tmssep490be.entities.Session::getDate)
-                                        .distinct().toList();
-                        List<Long> timeSlotIds = classSessions.stream()
-                                        .map(s -> s.getTimeSlotTemplate().getId())
-                                        .distinct()
-                                        .toList();
-
-                        List<Object[]> conflictResults = sessionResourceRepository
-                                        .batchCountConflictsByResourcesAcrossAllClasses(
-                                                        resourceIds, dates, timeSlotIds, classId);
-
-                        for (Object[] result : conflictResults) {
-                                Long rId = ((Number) result[0]).longValue();
-                                Integer count = ((Number) result[1]).intValue();
-                                conflictMap.put(rId, count);
-                        }
-                }
+        // Chỉ giữ tài nguyên trống 100% cho các buổi, sắp theo sức chứa gần nhất rồi theo tên
+        private List<org.fyp.tmssep490be.dtos.classcreation.AvailableResourceDTO> rankAvailableResources(
+                        ClassEntity classEntity,
+                        List<org.fyp.tmssep490be.entities.Resource> resources,
+                        List<org.fyp.tmssep490be.entities.Session> classSessions) {
+                int totalSessions = classSessions.size();
+                Integer requiredCapacity = classEntity.getMaxCapacity() != null ? classEntity.getMaxCapacity() : 0;
+                Map<Long, Integer> conflictMap = totalSessions > 0
+                                ? countResourceConflicts(classEntity, resources, classSessions)
+                                : Map.of();
 
                 log.info("Calculated conflicts for {} resources across {} sessions", resources.size(), totalSessions);
 
-                // Filter to only show 100% available resources (no conflicts)
-                // and sort by capacity closest to class capacity
                 return resources.stream()
                                 // Only show resources with 0 conflicts (100% available)
                                 .filter(r -> conflictMap.getOrDefault(r.getId(), 0) == 0)
@@ -1633,6 +1712,51 @@ public class ClassService {
                                 .toList();
         }
 
+        // Đếm trùng lịch từ ResourceOccupancyIndex của chi nhánh (không query);
+        // buổi học cũ hơn phạm vi chỉ mục thì dùng query đếm trùng như trước
+        private Map<Long, Integer> countResourceConflicts(ClassEntity classEntity,
+                        List<org.fyp.tmssep490be.entities.Resource> resources,
+                        List<org.fyp.tmssep490be.entities.Session> classSessions) {
+                Map<Long, Integer> conflictMap = new HashMap<>();
+                if (resources.isEmpty()) {
+                        return conflictMap;
+                }
+
+                List<ResourceOccupancyIndex.Slot> slots = classSessions.stream()
+                                .map(s -> new ResourceOccupancyIndex.Slot(s.getDate(),
+                                                s.getTimeSlotTemplate().getStartTime(),
+                                                s.getTimeSlotTemplate().getEndTime()))
+                                .distinct()
+                                .toList();
+
+                ResourceOccupancyIndex.BranchOccupancy occupancy = resourceOccupancyIndex
+                                .forBranch(classEntity.getBranch().getId());
+                if (occupancy.covers(slots)) {
+                        for (org.fyp.tmssep490be.entities.Resource resource : resources) {
+                                int conflicts = occupancy.countConflicts(resource.getId(), slots, classEntity.getId());
+                                if (conflicts > 0) {
+                                        conflictMap.put(resource.getId(), conflicts);
+                                }
+                        }
+                        return conflictMap;
+                }
+
+                List<Long> resourceIds = resources.stream().map(org.fyp.tmssep490be.entities.Resource::getId).toList();
+                List<LocalDate> dates = classSessions.stream()
+                                .map(org.fyp.tmssep490be.entities.Session::getDate)
+                                .distinct().toList();
+                List<Long> timeSlotIds = classSessions.stream()
+                                .map(s -> s.getTimeSlotTemplate().getId())
+                                .distinct()
+                                .toList();
+
+                for (Object[] result : sessionResourceRepository.batchCountConflictsByResourcesAcrossAllClasses(
+                                resourceIds, dates, timeSlotIds, classEntity.getId())) {
+                        conflictMap.put(((Number) result[0]).longValue(), ((Number) result[1]).intValue());
+                }
+                return conflictMap;
+        }
+
         /**
          * Assign a specific resource to a single session (used for conflict resolution)
          */
@@ -1733,6 +1857,10 @@ public class ClassService {
                                         assignment.getDayOfWeek(), assignedCount, assignment.getResourceId());
                 }
 
+                // session_resource đổi bằng native DELETE/INSERT, không qua ResourceOccupancyListener / TimetableCacheListener
+                resourceOccupancyIndex.invalidateBranch(classEntity.getBranch().getId());
+                timetableCache.invalidateClass(classId);
+
                 long processingTime = System.currentTimeMillis() - startTime;
                 log.info("Resource assignment completed: {}/{} sessions in {}ms",
                                 totalSuccessCount, totalSessions, processingTime);
@@ -1880,6 +2008,10 @@ public class ClassService {
                         resourcesCleared = sessionResourceRepository.deleteAllByClassId(classId);
                         log.info("Reset from Step 4: cleared {} resources for class {}", resourcesCleared, classId);
                 }
+                if (timeSlotsCleared > 0 || resourcesCleared > 0) {
+                        resourceOccupancyIndex.invalidateBranch(classEntity.getBranch().getId());
+                        timetableCache.invalidateClass(classId);
+                }
 
                 return Map.of(
                                 "classId", classId,
@@ -0,0 +1,99 @@
+package org.fyp.tmssep490be.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.dtos.dashboard.DashboardRollup;
+import org.fyp.tmssep490be.entities.enums.ClassStatus;
+import org.fyp.tmssep490be.repositories.ClassRepository;
+import org.fyp.tmssep490be.repositories.EnrollmentRepository;
+import org.fyp.tmssep490be.repositories.StudentSessionRepository;
+import org.fyp.tmssep490be.repositories.TeachingSlotRepository;
+import org.fyp.tmssep490be.utils.NativeRowUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tổng hợp số liệu dashboard theo (chi nhánh, ngày) bằng các truy vấn GROUP BY.
+ *
+ * Rollup được tính trực tiếp trên DB ở mỗi lần đọc nên luôn khớp với các thao tác
+ * ghi (điểm danh, ghi danh, tạo/hủy buổi học) mà không cần bảng đồng bộ riêng;
+ * số dòng trả về chỉ phụ thuộc số chi nhánh x số ngày, không phụ thuộc kích thước bảng.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DashboardMetricsService {
+
+    private final ClassRepository classRepository;
+    private final EnrollmentRepository enrollmentRepository;
+    private final StudentSessionRepository studentSessionRepository;
+    private final TeachingSlotRepository teachingSlotRepository;
+
+    @Transactional(readOnly = true)
+    public DashboardRollup loadRollup(LocalDate fromDate, LocalDate toDate) {
+        List<DashboardRollup.ClassStatusCount> classStatusCounts = new ArrayList<>();
+        for (Object[] row : classRepository.countClassesGroupByBranchAndStatus()) {
+            classStatusCounts.add(DashboardRollup.ClassStatusCount.builder()
+                    .branchId(((Number) row[0]).longValue())
+                    .status((ClassStatus) row[1])
+                    .count(((Number) row[2]).longValue())
+                    .build());
+        }
+
+        // key: branchId + date
+        Map<String, DashboardRollup.DailyBranchMetric> dailyMetrics = new HashMap<>();
+
+        OffsetDateTime fromDateTime = fromDate.atStartOfDay().atOffset(ZoneOffset.UTC);
+        OffsetDateTime toDateTime = toDate.atTime(23, 59, 59).atOffset(ZoneOffset.UTC);
+        for (Object[] row : enrollmentRepository.countNewEnrollmentsGroupByBranchAndDate(fromDateTime, toDateTime)) {
+            Long branchId = ((Number) row[0]).longValue();
+            LocalDate date = NativeRowUtils.toLocalDate(row[1]);
+            dailyMetric(dailyMetrics, branchId, date).setNewEnrollments(((Number) row[2]).longValue());
+        }
+
+        for (Object[] row : studentSessionRepository.countAttendanceGroupByDateAndBranch(fromDate, toDate)) {
+            LocalDate date = NativeRowUtils.toLocalDate(row[0]);
+            Long branchId = ((Number) row[1]).longValue();
+            DashboardRollup.DailyBranchMetric metric = dailyMetric(dailyMetrics, branchId, date);
+            metric.setAttendanceRecords(((Number) row[2]).longValue());
+            metric.setPresentRecords(row[3] != null ? ((Number) row[3]).longValue() : 0L);
+        }
+
+        List<DashboardRollup.TeacherWorkloadMetric> teacherWorkloads = new ArrayList<>();
+        for (Object[] row : teachingSlotRepository.sumTeachingHoursGroupByTeacherAndBranch(fromDate, toDate)) {
+            teacherWorkloads.add(DashboardRollup.TeacherWorkloadMetric.builder()
+                    .teacherId(((Number) row[0]).longValue())
+                    .branchId(((Number) row[1]).longValue())
+                    .teachingSlots(((Number) row[2]).longValue())
+                    .teachingHours(((Number) row[3]).doubleValue())
+                    .build());
+        }
+
+        log.debug("Dashboard rollup {} -> {}: {} class rows, {} daily rows, {} teacher rows",
+                fromDate, toDate, classStatusCounts.size(), dailyMetrics.size(), teacherWorkloads.size());
+
+        return DashboardRollup.builder()
+                .fromDate(fromDate)
+                .toDate(toDate)
+                .classStatusCounts(classStatusCounts)
+                .dailyMetrics(new ArrayList<>(dailyMetrics.values()))
+                .teacherWorkloads(teacherWorkloads)
+                .build();
+    }
+
+    private DashboardRollup.DailyBranchMetric dailyMetric(Map<String, DashboardRollup.DailyBranchMetric> metrics,
+                                                          Long branchId, LocalDate date) {
+        return metrics.computeIfAbsent(branchId + "|" + date, k -> DashboardRollup.DailyBranchMetric.builder()
+                .branchId(branchId)
+                .date(date)
+                .build());
+    }
+}
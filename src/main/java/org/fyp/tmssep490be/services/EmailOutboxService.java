@@ -0,0 +1,301 @@
+package org.fyp.tmssep490be.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.config.EmailConfig;
+import org.fyp.tmssep490be.entities.EmailOutbox;
+import org.fyp.tmssep490be.entities.enums.EmailOutboxStatus;
+import org.fyp.tmssep490be.repositories.EmailOutboxRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbox cho email: nghiệp vụ chỉ ghi một dòng email_outbox trong transaction hiện tại
+ * (rollback thì email cũng không được gửi), EmailOutboxDispatchJob gửi theo lô.
+ *
+ * Mỗi lô được gửi bằng một lần JavaMailSender.send(MimeMessage...) nên chỉ mở một kết nối SMTP.
+ * Tốc độ gửi bị giới hạn bởi rate limiter "email" của Resilience4j; email lỗi được thử lại
+ * với backoff tăng dần, quá số lần cho phép thì chuyển FAILED.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "tms.email.outbox", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class EmailOutboxService {
+
+    private static final int MAX_ERROR_LENGTH = 2000;
+    private static final TypeReference<Map<String, Object>> TEMPLATE_DATA_TYPE = new TypeReference<>() {
+    };
+
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final ObjectProvider<JavaMailSender> mailSenderProvider;
+    private final TemplateEngine templateEngine;
+    private final EmailConfig emailConfig;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final RateLimiter rateLimiter;
+
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final int maxAttempts;
+    private final long retryDelaySeconds;
+    private final long leaseSeconds;
+
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final Timer sendTimer;
+    private final Counter sentCounter;
+    private final Counter retryCounter;
+    private final Counter failedCounter;
+
+    public EmailOutboxService(
+            EmailOutboxRepository emailOutboxRepository,
+            @Qualifier("javaMailSender") ObjectProvider<JavaMailSender> mailSenderProvider,
+            @Qualifier("emailTemplateEngine") TemplateEngine templateEngine,
+            EmailConfig emailConfig,
+            ObjectMapper objectMapper,
+            TransactionTemplate transactionTemplate,
+            RateLimiterRegistry rateLimiterRegistry,
+            MeterRegistry meterRegistry,
+            @Value("${tms.email.outbox.batch-size:50}") int batchSize,
+            @Value("${tms.email.outbox.max-batches-per-run:20}") int maxBatchesPerRun,
+            @Value("${tms.email.outbox.max-attempts:5}") int maxAttempts,
+            @Value("${tms.email.outbox.retry-delay-seconds:60}") long retryDelaySeconds,
+            @Value("${tms.email.outbox.lease-seconds:300}") long leaseSeconds) {
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.mailSenderProvider = mailSenderProvider;
+        this.templateEngine = templateEngine;
+        this.emailConfig = emailConfig;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.rateLimiter = rateLimiterRegistry.rateLimiter("email");
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.maxAttempts = maxAttempts;
+        this.retryDelaySeconds = retryDelaySeconds;
+        this.leaseSeconds = leaseSeconds;
+
+        Gauge.builder("tms.email.outbox.pending", pendingCount, AtomicLong::get)
+                .description("Số email PENDING trong outbox")
+                .register(meterRegistry);
+        this.sendTimer = Timer.builder("tms.email.send.duration")
+                .description("Thời gian gửi một lô email qua SMTP")
+                .register(meterRegistry);
+        this.sentCounter = Counter.builder("tms.email.sent").register(meterRegistry);
+        this.retryCounter = Counter.builder("tms.email.failed").tag("outcome", "retry").register(meterRegistry);
+        this.failedCounter = Counter.builder("tms.email.failed").tag("outcome", "dropped").register(meterRegistry);
+    }
+
+    // Ghi email theo template vào outbox (tham gia transaction hiện tại nếu có)
+    public EmailOutbox enqueue(String to, String subject, String templateName, Map<String, Object> templateData) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(templateData);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Template data is not serializable for template " + templateName, e);
+        }
+        return emailOutboxRepository.save(EmailOutbox.builder()
+                .recipient(to)
+                .subject(subject)
+                .templateName(templateName)
+                .templateData(json)
+                .nextAttemptAt(OffsetDateTime.now())
+                .build());
+    }
+
+    // Ghi email HTML đã dựng sẵn vào outbox
+    public EmailOutbox enqueueHtml(String to, String subject, String htmlContent) {
+        return emailOutboxRepository.save(EmailOutbox.builder()
+                .recipient(to)
+                .subject(subject)
+                .htmlContent(htmlContent)
+                .nextAttemptAt(OffsetDateTime.now())
+                .build());
+    }
+
+    /**
+     * Gửi các email đến hạn, tối đa maxBatchesPerRun lô. Trả về số email gửi thành công.
+     */
+    public int dispatchPending() {
+        JavaMailSender mailSender = mailSenderProvider.getIfAvailable();
+        if (mailSender == null) {
+            return 0;
+        }
+
+        int sent = 0;
+        for (int i = 0; i < maxBatchesPerRun; i++) {
+            List<EmailOutbox> batch = claimBatch();
+            if (batch.isEmpty()) {
+                break;
+            }
+            BatchResult result = sendBatch(mailSender, batch);
+            sent += result.sent();
+            if (result.deferred() > 0 || batch.size() < batchSize) {
+                // Hết quota rate limit hoặc hết email đến hạn
+                break;
+            }
+        }
+        pendingCount.set(emailOutboxRepository.countByStatus(EmailOutboxStatus.PENDING));
+        return sent;
+    }
+
+    private record BatchResult(int sent, int deferred) {
+    }
+
+    // Khóa một lô và chuyển sang SENDING với hạn lease, commit ngay để không giữ lock trong lúc gửi SMTP
+    private List<EmailOutbox> claimBatch() {
+        List<EmailOutbox> batch = transactionTemplate.execute(status -> {
+            OffsetDateTime now = OffsetDateTime.now();
+            List<EmailOutbox> due = emailOutboxRepository.lockDueBatch(now, batchSize);
+            for (EmailOutbox email : due) {
+                email.setStatus(EmailOutboxStatus.SENDING);
+                email.setAttempts(email.getAttempts() + 1);
+                email.setNextAttemptAt(now.plusSeconds(leaseSeconds));
+            }
+            return emailOutboxRepository.saveAll(due);
+        });
+        return batch != null ? batch : List.of();
+    }
+
+    private BatchResult sendBatch(JavaMailSender mailSender, List<EmailOutbox> batch) {
+        Map<MimeMessage, EmailOutbox> messages = new LinkedHashMap<>();
+        Set<EmailOutbox> deferred = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<EmailOutbox, Exception> failures = new IdentityHashMap<>();
+
+        for (EmailOutbox email : batch) {
+            if (!deferred.isEmpty() || !rateLimiter.acquirePermission()) {
+                deferred.add(email);
+                continue;
+            }
+            try {
+                messages.put(buildMessage(mailSender, email), email);
+            } catch (Exception e) {
+                // Lỗi dựng nội dung (template/địa chỉ) không tự hết khi thử lại
+                email.setAttempts(maxAttempts);
+                failures.put(email, e);
+            }
+        }
+
+        if (!messages.isEmpty()) {
+            long start = System.nanoTime();
+            try {
+                mailSender.send(messages.keySet().toArray(new MimeMessage[0]));
+            } catch (MailSendException e) {
+                Map<Object, Exception> failedMessages = e.getFailedMessages();
+                if (failedMessages.isEmpty()) {
+                    messages.values().forEach(email -> failures.put(email, e));
+                } else {
+                    failedMessages.forEach((message, error) -> {
+                        EmailOutbox email = messages.get(message);
+                        if (email != null) {
+                            failures.put(email, error);
+                        }
+                    });
+                }
+            } catch (Exception e) {
+                messages.values().forEach(email -> failures.put(email, e));
+            } finally {
+                sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        int sent = 0;
+        OffsetDateTime now = OffsetDateTime.now();
+        for (EmailOutbox email : batch) {
+            if (deferred.contains(email)) {
+                // Chưa gửi: trả lại hàng đợi, không tính là một lần thử
+                email.setStatus(EmailOutboxStatus.PENDING);
+                email.setAttempts(email.getAttempts() - 1);
+                email.setNextAttemptAt(now);
+            } else if (failures.containsKey(email)) {
+                markFailedAttempt(email, failures.get(email), now);
+            } else {
+                email.setStatus(EmailOutboxStatus.SENT);
+                email.setSentAt(now);
+                email.setLastError(null);
+                sent++;
+            }
+        }
+        transactionTemplate.execute(status -> emailOutboxRepository.saveAll(batch));
+        sentCounter.increment(sent);
+
+        if (!failures.isEmpty() || !deferred.isEmpty()) {
+            log.warn("Email batch: {} sent, {} failed, {} deferred by rate limit",
+                    sent, failures.size(), deferred.size());
+        } else {
+            log.debug("Email batch: {} sent", sent);
+        }
+        return new BatchResult(sent, deferred.size());
+    }
+
+    private void markFailedAttempt(EmailOutbox email, Exception error, OffsetDateTime now) {
+        email.setLastError(truncate(error.getMessage()));
+        if (email.getAttempts() >= maxAttempts) {
+            email.setStatus(EmailOutboxStatus.FAILED);
+            failedCounter.increment();
+            log.error("Giving up email {} to {} after {} attempts: {}",
+                    email.getId(), email.getRecipient(), email.getAttempts(), error.getMessage());
+            return;
+        }
+        // Backoff: retryDelay, 2x, 4x, ...
+        long delay = retryDelaySeconds << Math.min(email.getAttempts() - 1, 10);
+        email.setStatus(EmailOutboxStatus.PENDING);
+        email.setNextAttemptAt(now.plusSeconds(delay));
+        retryCounter.increment();
+    }
+
+    private MimeMessage buildMessage(JavaMailSender mailSender, EmailOutbox email) throws Exception {
+        String html = email.getHtmlContent() != null ? email.getHtmlContent() : render(email);
+
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true, StandardCharsets.UTF_8.name());
+        helper.setFrom(String.format("%s <%s>", emailConfig.getFromName(), emailConfig.getFromEmail()));
+        helper.setTo(email.getRecipient());
+        helper.setSubject(email.getSubject());
+        helper.setText(html, true);
+        return mimeMessage;
+    }
+
+    // Template đã parse được cache trong emailTemplateResolver (cacheable), ở đây chỉ bind dữ liệu
+    private String render(EmailOutbox email) throws JsonProcessingException {
+        Context context = new Context();
+        if (email.getTemplateData() != null) {
+            context.setVariables(objectMapper.readValue(email.getTemplateData(), TEMPLATE_DATA_TYPE));
+        }
+        return templateEngine.process(email.getTemplateName(), context);
+    }
+
+    private String truncate(String message) {
+        if (message == null || message.length() <= MAX_ERROR_LENGTH) {
+            return message;
+        }
+        return message.substring(0, MAX_ERROR_LENGTH);
+    }
+}
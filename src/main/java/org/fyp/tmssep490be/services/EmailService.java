@@ -33,6 +33,10 @@ public class EmailService {
     @Autowired
     private EmailConfig emailConfig;
 
+    // null khi tms.email.outbox.enabled=false: gửi trực tiếp như cũ
+    @Autowired(required = false)
+    private EmailOutboxService emailOutboxService;
+
     @Value("${app.frontend.url:http://localhost:5173}")
     private String frontendUrl;
 
@@ -86,7 +90,29 @@ public class EmailService {
 
         sendEmailWithTemplateAsync(to, subject, "emails/new-useraccount-credentials", templateData);
     }
+    // Email HTML đã dựng sẵn: ghi vào outbox (cùng transaction của caller) nếu outbox đang bật
+    public void queueEmail(String to, String subject, String htmlContent) {
+        if (emailOutboxService == null) {
+            sendEmailAsync(to, subject, htmlContent);
+            return;
+        }
+        try {
+            emailOutboxService.enqueueHtml(to, subject, htmlContent);
+        } catch (Exception e) {
+            log.error("Failed to queue email for recipient {}: {}", to, e.getMessage(), e);
+        }
+    }
+
     public void sendEmailWithTemplateAsync(String to, String subject, String templateName, Map<String, Object> templateData) {
+        if (emailOutboxService != null) {
+            try {
+                emailOutboxService.enqueue(to, subject, templateName, templateData);
+            } catch (Exception e) {
+                log.error("Failed to queue email template {} for recipient {}: {}", templateName, to, e.getMessage(), e);
+            }
+            return;
+        }
+
         try {
             Context context = new Context();
             context.setVariables(templateData);
@@ -250,7 +276,6 @@ public class EmailService {
         sendEmailWithTemplateAsync(to, subject, "emails/attendance-warning", templateData);
     }
 
-    @Async
     public void sendSessionCancelledAsync(String to, String studentName, String className, 
                                           String subjectName, String sessionDate, String sessionTime,
                                           String originalTeacher, String replacementTeacher, String reason) {
@@ -270,7 +295,6 @@ public class EmailService {
         sendEmailWithTemplateAsync(to, subject, "emails/session-cancelled", templateData);
     }
 
-    @Async
     public void sendScheduleChangedAsync(String to, String studentName, String className,
                                          String subjectName, String oldDate, String oldTime,
                                          String oldRoom, String oldModality, String newDate,
@@ -9,7 +9,9 @@ import org.fyp.tmssep490be.entities.enums.*;
 import org.fyp.tmssep490be.exceptions.CustomException;
 import org.fyp.tmssep490be.exceptions.ErrorCode;
 import org.fyp.tmssep490be.repositories.*;
+import org.fyp.tmssep490be.utils.NativeRowUtils;
 import org.fyp.tmssep490be.utils.ScheduleUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
@@ -45,7 +47,12 @@ public class EnrollmentService {
     private final NotificationService notificationService;
     private final StudentService studentService;
     private final ScoreRepository scoreRepository;
-    private final AssessmentRepository assessmentRepository;
+    private final AttendanceMatrixEngine attendanceMatrixEngine;
+    private final WeeklyTimetableCache timetableCache;
+
+    // Số dòng tối đa của một lần preview import (response preview trả về toàn bộ các dòng)
+    @Value("${tms.import.preview-max-rows:1000}")
+    private int previewMaxRows;
 
     public ClassEnrollmentImportPreview previewClassEnrollmentImport(
             Long classId,
@@ -56,8 +63,30 @@ public class EnrollmentService {
         // 1. Validate class exists, đủ điều kiện enroll
         ClassEntity classEntity = validateClassForEnrollment(classId, enrolledBy);
 
-        // 2. Parse Excel file with class code validation
-        List<StudentEnrollmentData> parsedData = excelParserService.parseStudentEnrollment(file, classEntity.getCode());
+        // 2. Parse Excel file with class code validation (streaming)
+        // 3. Resolve từng lô student (FOUND/CREATE/ERROR) ngay khi đọc xong lô đó
+        // 4. Check schedule conflicts for FOUND students
+        List<Session> newClassSessions = sessionRepository
+                .findByClassEntityIdAndDateGreaterThanEqualAndStatusOrderByDateAsc(
+                        classEntity.getId(),
+                        LocalDate.now(),
+                        SessionStatus.PLANNED);
+        List<StudentEnrollmentData> parsedData = new ArrayList<>();
+        // Cái này để đảm bảo rằng một file excel không tồn tại 2 học viên cùng Emails (xuyên suốt các lô)
+        Set<String> seenEmails = new HashSet<>();
+
+        excelParserService.streamStudentEnrollment(file, classEntity.getCode(), ExcelParserService.DEFAULT_CHUNK_SIZE,
+                chunk -> {
+                    // Vượt giới hạn thì dừng đọc file ngay, không resolve thêm lô nào
+                    if (parsedData.size() + chunk.size() > previewMaxRows) {
+                        throw new CustomException(ErrorCode.TOO_MANY_STUDENTS_IN_FILE,
+                                String.format("File chứa hơn %d học viên, vượt quá giới hạn %d học viên cho một lần import",
+                                        previewMaxRows, previewMaxRows));
+                    }
+                    resolveStudents(chunk, classEntity, seenEmails);
+                    checkScheduleConflictsForPreview(chunk, classEntity, newClassSessions);
+                    parsedData.addAll(chunk);
+                });
 
         if (parsedData.isEmpty()) {
             throw new CustomException(ErrorCode.EXCEL_FILE_EMPTY);
@@ -65,12 +94,6 @@ public class EnrollmentService {
 
         log.info("Parsed {} students from Excel", parsedData.size());
 
-        // 3. Resolve từng student (FOUND/CREATE/ERROR)
-        resolveStudents(parsedData, classEntity);
-
-        // 4. Check schedule conflicts for FOUND students
-        checkScheduleConflictsForPreview(parsedData, classEntity);
-
         // 5. Get capacity info
         int currentEnrolled = enrollmentRepository.countByClassIdAndStatus(
                 classId, EnrollmentStatus.ENROLLED);
@@ -105,9 +128,8 @@ public class EnrollmentService {
         return classEntity;
     }
 
-    private void resolveStudents(List<StudentEnrollmentData> parsedData, ClassEntity classEntity) {
-        // Cái này để đảm bảo rằng một file excel không tồn tại 2 học viên cùng Emails
-        Set<String> seenEmails = new HashSet<>();
+    private void resolveStudents(List<StudentEnrollmentData> parsedData, ClassEntity classEntity, Set<String> seenEmails) {
+        List<StudentEnrollmentData> toResolve = new ArrayList<>();
 
         for (StudentEnrollmentData data : parsedData) {
             // Skip if already has error from parsing
@@ -167,49 +189,63 @@ public class EnrollmentService {
                 continue;
             }
             seenEmails.add(emailLower);
+            toResolve.add(data);
+        }
 
-            Optional<UserAccount> userByEmail = userAccountRepository.findByEmail(data.getEmail());
-            if (userByEmail.isPresent()) {
-                Optional<Student> student = studentRepository.findByUserAccountId(userByEmail.get().getId());
-                if (student.isPresent()) {
-                    // Check if student already enrolled in this class
-                    boolean alreadyEnrolled = enrollmentRepository.existsByClassIdAndStudentIdAndStatus(
-                            classEntity.getId(),
-                            student.get().getId(),
-                            EnrollmentStatus.ENROLLED
-                    );
-
-                    if (alreadyEnrolled) {
-                        data.setStatus(StudentResolutionStatus.ALREADY_ENROLLED);
-                        data.setResolvedStudentId(student.get().getId());
-                        data.setResolvedStudentCode(student.get().getStudentCode());
-                        data.setErrorMessage("Học viên đã đăng ký vào lớp này");
-                        log.debug("Student {} already enrolled in class {}",
-                                student.get().getId(), classEntity.getId());
-                        continue;
-                    }
+        if (toResolve.isEmpty()) {
+            return;
+        }
 
-                    data.setStatus(StudentResolutionStatus.FOUND);
-
-                    // Set resolved student ID và student code để UI hiển thị
-                    data.setResolvedStudentId(student.get().getId());
-                    data.setResolvedStudentCode(student.get().getStudentCode());
-                    
-                    // Check if student is in the class's branch
-                    boolean inBranch = userBranchesRepository.existsByUserAccountIdAndBranchId(
-                            userByEmail.get().getId(), 
-                            classEntity.getBranch().getId()
-                    );
-                    
-                    data.setNeedsBranchSync(!inBranch);
-                    if (!inBranch) {
-                        data.setNote("Học viên từ chi nhánh khác, sẽ được tự động thêm vào chi nhánh này");
-                    }
-                    
-                    log.debug("Found student by email: {} -> ID: {}, Code: {}, needsSync: {}", 
-                            data.getEmail(), student.get().getId(), student.get().getStudentCode(), !inBranch);
+        // Tra cứu theo lô thay vì 3-4 query cho mỗi dòng: email -> student, đã ghi danh lớp này chưa, đã thuộc chi nhánh chưa
+        Set<String> emails = toResolve.stream().map(StudentEnrollmentData::getEmail).collect(Collectors.toSet());
+        Map<String, Object[]> studentRefByEmail = new HashMap<>();
+        for (Object[] row : studentRepository.findStudentRefsByEmails(emails)) {
+            studentRefByEmail.put((String) row[0], row);
+        }
+
+        Set<Long> enrolledStudentIds = new HashSet<>();
+        Set<Long> userIdsInBranch = new HashSet<>();
+        if (!studentRefByEmail.isEmpty()) {
+            List<Long> studentIds = studentRefByEmail.values().stream().map(row -> (Long) row[2]).toList();
+            List<Long> userIds = studentRefByEmail.values().stream().map(row -> (Long) row[1]).toList();
+            enrolledStudentIds.addAll(enrollmentRepository.findStudentIdsByClassIdAndStatusAndStudentIdIn(
+                    classEntity.getId(), EnrollmentStatus.ENROLLED, studentIds));
+            userIdsInBranch.addAll(userBranchesRepository.findUserIdsInBranch(classEntity.getBranch().getId(), userIds));
+        }
+
+        for (StudentEnrollmentData data : toResolve) {
+            Object[] studentRef = studentRefByEmail.get(data.getEmail());
+            if (studentRef != null) {
+                Long userId = (Long) studentRef[1];
+                Long studentId = (Long) studentRef[2];
+                String studentCode = (String) studentRef[3];
+
+                // Check if student already enrolled in this class
+                if (enrolledStudentIds.contains(studentId)) {
+                    data.setStatus(StudentResolutionStatus.ALREADY_ENROLLED);
+                    data.setResolvedStudentId(studentId);
+                    data.setResolvedStudentCode(studentCode);
+                    data.setErrorMessage("Học viên đã đăng ký vào lớp này");
+                    log.debug("Student {} already enrolled in class {}", studentId, classEntity.getId());
                     continue;
                 }
+
+                data.setStatus(StudentResolutionStatus.FOUND);
+
+                // Set resolved student ID và student code để UI hiển thị
+                data.setResolvedStudentId(studentId);
+                data.setResolvedStudentCode(studentCode);
+
+                // Check if student is in the class's branch
+                boolean inBranch = userIdsInBranch.contains(userId);
+                data.setNeedsBranchSync(!inBranch);
+                if (!inBranch) {
+                    data.setNote("Học viên từ chi nhánh khác, sẽ được tự động thêm vào chi nhánh này");
+                }
+
+                log.debug("Found student by email: {} -> ID: {}, Code: {}, needsSync: {}",
+                        data.getEmail(), studentId, studentCode, !inBranch);
+                continue;
             }
 
             // Mark as CREATE (student mới)
@@ -322,33 +358,64 @@ public class EnrollmentService {
 
         log.info("Found {} future sessions for class", futureSessions.size());
 
-        // 3. Validate schedule conflicts for each student
-        Map<Long, Student> studentMap = studentRepository.findAllById(studentIds).stream()
+        // 3. Kiểm tra cả lô: đã ghi danh và trùng lịch, mỗi loại một query.
+        // Học viên không hợp lệ bị loại khỏi lô và trả về trong failures, những học viên còn lại vẫn được ghi danh.
+        List<Long> candidateIds = studentIds.stream().distinct().collect(Collectors.toList());
+        Map<Long, Student> studentMap = studentRepository.findAllById(candidateIds).stream()
                 .collect(Collectors.toMap(Student::getId, s -> s));
-        
-        for (Long studentId : studentIds) {
+        Set<Long> alreadyEnrolled = candidateIds.isEmpty()
+                ? Set.of()
+                : new HashSet<>(enrollmentRepository.findStudentIdsByClassIdAndStatusAndStudentIdIn(
+                        classId, EnrollmentStatus.ENROLLED, candidateIds));
+        Map<Long, Object[]> conflicts = findScheduleConflicts(classId, candidateIds);
+
+        List<Long> acceptedIds = new ArrayList<>();
+        List<EnrollmentFailure> failures = new ArrayList<>();
+        CustomException firstFailure = null;
+        for (Long studentId : candidateIds) {
             Student student = studentMap.get(studentId);
-            String studentEmail = student != null && student.getUserAccount() != null 
-                    ? student.getUserAccount().getEmail() 
-                    : studentId.toString();
-            
-            validateScheduleConflicts(studentId, classId, futureSessions, studentEmail);
+            CustomException failure = null;
+            if (student == null) {
+                failure = new CustomException(ErrorCode.STUDENT_NOT_FOUND);
+            } else if (alreadyEnrolled.contains(studentId)) {
+                log.warn("Student {} is already enrolled in class {}", studentId, classId);
+                failure = new CustomException(ErrorCode.ENROLLMENT_ALREADY_EXISTS);
+            } else if (conflicts.containsKey(studentId)) {
+                String studentEmail = student.getUserAccount() != null ? student.getUserAccount().getEmail() : null;
+                String errorMsg = buildScheduleConflictMessage(studentId, studentEmail, conflicts.get(studentId));
+                log.warn("Schedule conflict detected: {}", errorMsg);
+                failure = new CustomException(ErrorCode.ENROLLMENT_SCHEDULE_CONFLICT, errorMsg);
+            }
+
+            if (failure == null) {
+                acceptedIds.add(studentId);
+                continue;
+            }
+            if (firstFailure == null) {
+                firstFailure = failure;
+            }
+            failures.add(EnrollmentFailure.builder()
+                    .studentId(studentId)
+                    .errorCode(failure.getErrorCode().name())
+                    .message(failure.getMessage())
+                    .build());
         }
-        
-        log.info("Schedule conflict validation passed for all {} students", studentIds.size());
+
+        if (acceptedIds.isEmpty()) {
+            // Không học viên nào hợp lệ: báo lỗi như khi ghi danh từng người
+            throw firstFailure != null ? firstFailure : new CustomException(ErrorCode.NO_VALID_STUDENTS_TO_ENROLL);
+        }
+
+        log.info("Validation passed for {} students, {} rejected", acceptedIds.size(), failures.size());
 
         // 4. Batch insert enrollments
+        // Mid-course enrollment: track join_session_id
+        Long joinSessionId = LocalDate.now().isAfter(classEntity.getStartDate())
+                ? futureSessions.get(0).getId()
+                : null;
         List<Enrollment> enrollments = new ArrayList<>();
-        for (Long studentId : studentIds) {
-            // Check duplicate enrollment
-            boolean alreadyEnrolled = enrollmentRepository.existsByClassIdAndStudentIdAndStatus(
-                    classId, studentId, EnrollmentStatus.ENROLLED);
-            if (alreadyEnrolled) {
-                log.warn("Student {} is already enrolled in class {}", studentId, classId);
-                throw new CustomException(ErrorCode.ENROLLMENT_ALREADY_EXISTS);
-            }
-
-            Enrollment enrollment = Enrollment.builder()
+        for (Long studentId : acceptedIds) {
+            enrollments.add(Enrollment.builder()
                     .classId(classId)
                     .studentId(studentId)
                     .status(EnrollmentStatus.ENROLLED)
@@ -356,116 +423,50 @@ public class EnrollmentService {
                     .enrolledBy(enrolledBy)
                     .capacityOverride(capacityOverride)
                     .overrideReason(overrideReason)
-                    .build();
-
-            // Mid-course enrollment: track join_session_id
-            if (LocalDate.now().isAfter(classEntity.getStartDate())) {
-                Session firstFutureSession = futureSessions.get(0);
-                enrollment.setJoinSessionId(firstFutureSession.getId());
-                log.debug("Mid-course enrollment for student {}. Join session: {}",
-                        studentId, firstFutureSession.getId());
-            }
-
-            enrollments.add(enrollment);
+                    .joinSessionId(joinSessionId)
+                    .build());
         }
         enrollmentRepository.saveAll(enrollments);
 
-        log.info("Saved {} enrollment records", enrollments.size());
-
-        // 5. Auto-generate student_session records
-        List<StudentSession> studentSessions = new ArrayList<>();
+        log.info("Saved {} enrollment records (join session: {})", enrollments.size(), joinSessionId);
 
-        // Note: studentMap already fetched in step 3 for conflict validation, reuse it here
-        for (Enrollment enrollment : enrollments) {
-            Student student = studentMap.get(enrollment.getStudentId());
-            if (student == null) {
-                log.error("Student not found: {}", enrollment.getStudentId());
-                continue;
-            }
-
-            for (Session session : futureSessions) {
-                // IMPORTANT: When using @MapsId:
-                // 1. Create empty composite key object (JPA needs it to exist)
-                // 2. Set the relationships - @MapsId will auto-populate the key fields
-                StudentSession ss = new StudentSession();
-                ss.setId(new StudentSession.StudentSessionId()); // Empty id - JPA will populate it
-                ss.setStudent(student); // @MapsId("studentId") extracts from this
-                ss.setSession(session); // @MapsId("sessionId") extracts from this
-                ss.setAttendanceStatus(AttendanceStatus.PLANNED);
-                ss.setIsMakeup(false);
-                studentSessions.add(ss);
-            }
-        }
-        studentSessionRepository.saveAll(studentSessions);
+        // 5. Auto-generate student_session records: một câu INSERT ... SELECT cho cả lô
+        List<Long> sessionIds = futureSessions.stream().map(Session::getId).collect(Collectors.toList());
+        int studentSessionsCreated = studentSessionRepository.insertPlannedForStudents(acceptedIds, sessionIds);
 
         log.info("Generated {} student_session records ({} sessions per student)",
-                studentSessions.size(), futureSessions.size());
+                studentSessionsCreated, futureSessions.size());
 
-        // 5. Auto-generate score records for all assessments
-        List<Assessment> classAssessments = assessmentRepository.findByClassEntityId(classId);
-        log.info("Found {} assessments for class {}", classAssessments.size(), classId);
-        
-        if (!classAssessments.isEmpty()) {
-            List<Score> scores = new ArrayList<>();
-            
-            for (Enrollment enrollment : enrollments) {
-                Student student = studentMap.get(enrollment.getStudentId());
-                if (student == null) {
-                    log.error("Student not found for score creation: {}", enrollment.getStudentId());
-                    continue;
-                }
-                
-                for (Assessment assessment : classAssessments) {
-                    log.debug("Creating score record for student {} - assessment {}",
-                            student.getId(), assessment.getId());
-                    // Kiểm tra xem score đã tồn tại chưa (tránh duplicate nếu re-enroll)
-                    boolean scoreExists = scoreRepository.findByStudentIdAndAssessmentId(
-                            student.getId(), assessment.getId()).isPresent();
-                    
-                    if (!scoreExists) {
-                        Score score = Score.builder()
-                                .assessment(assessment)
-                                .student(student)
-                                .score(null)  // NULL = chưa chấm điểm
-                                .feedback(null)
-                                .gradedBy(null)
-                                .gradedAt(null)
-                                .createdAt(OffsetDateTime.now())
-                                .updatedAt(OffsetDateTime.now())
-                                .build();
-                        scores.add(score);
-                    }
-                }
-            }
-            
-            if (!scores.isEmpty()) {
-                scoreRepository.saveAll(scores);
-                log.info("Generated {} score records ({} assessments × {} students)",
-                        scores.size(), classAssessments.size(), enrollments.size());
-            } else {
-                log.info("No new score records created (all students already have scores)");
-            }
-        } else {
-            log.info("No assessments found for class {} - skipping score creation", classId);
-        }
+        // 6. Auto-generate score records cho mọi assessment của lớp (bỏ qua cặp đã có khi re-enroll)
+        int scoresCreated = scoreRepository.insertMissingForClassStudents(classId, acceptedIds);
+        log.info("Generated {} score records for {} students in class {}", scoresCreated, acceptedIds.size(), classId);
 
-        // 6. Send notifications cho students và Academic Affairs
+        // Danh sách học viên của lớp đã thay đổi; student_session thêm bằng native INSERT nên bỏ lịch tuần ở đây
+        attendanceMatrixEngine.invalidate(classId);
+        timetableCache.invalidateClass(classId);
+        acceptedIds.forEach(timetableCache::invalidateStudent);
+
+        // 7. Send notifications cho students và Academic Affairs
         sendEnrollmentNotifications(enrollments, classEntity, studentMap);
 
-        // 7. Send enrollment confirmation emails (async batch)
-        sendEnrollmentEmailsAsync(studentIds, classEntity);
+        // 8. Send enrollment confirmation emails (async batch)
+        sendEnrollmentEmailsAsync(acceptedIds, classEntity);
 
-        // 8. Return result
+        // 9. Return result
         List<String> warnings = new ArrayList<>();
-        if (LocalDate.now().isAfter(classEntity.getStartDate())) {
+        if (joinSessionId != null) {
             warnings.add("Mid-course enrollment: Students will only be enrolled in future sessions");
         }
+        if (!failures.isEmpty()) {
+            warnings.add(String.format("%d students were not enrolled, see failures for details", failures.size()));
+        }
 
         return EnrollmentResult.builder()
                 .enrolledCount(enrollments.size())
                 .sessionsGeneratedPerStudent(futureSessions.size())
-                .totalStudentSessionsCreated(studentSessions.size())
+                .totalStudentSessionsCreated(studentSessionsCreated)
                 .warnings(warnings)
+                .failures(failures)
                 .build();
     }
 
@@ -827,42 +828,30 @@ public class EnrollmentService {
         return studentCode;
     }
 
-    private void checkScheduleConflictsForPreview(List<StudentEnrollmentData> parsedData, ClassEntity classEntity) {
-        // Get future sessions của target class
-        List<Session> newClassSessions = sessionRepository
-                .findByClassEntityIdAndDateGreaterThanEqualAndStatusOrderByDateAsc(
-                        classEntity.getId(),
-                        LocalDate.now(),
-                        SessionStatus.PLANNED);
-        
+    private void checkScheduleConflictsForPreview(List<StudentEnrollmentData> parsedData, ClassEntity classEntity,
+                                                  List<Session> newClassSessions) {
         if (newClassSessions.isEmpty()) {
             return; // No sessions to check
         }
 
-        for (StudentEnrollmentData data : parsedData) {
-            // Only check FOUND students (existing students)
-            if (data.getStatus() != StudentResolutionStatus.FOUND) {
-                continue;
-            }
-            
-            if (data.getResolvedStudentId() == null) {
-                continue;
-            }
+        // Only check FOUND students (existing students), cả lô trong một query
+        List<StudentEnrollmentData> foundStudents = parsedData.stream()
+                .filter(data -> data.getStatus() == StudentResolutionStatus.FOUND)
+                .filter(data -> data.getResolvedStudentId() != null)
+                .collect(Collectors.toList());
+        Map<Long, Object[]> conflicts = findScheduleConflicts(classEntity.getId(),
+                foundStudents.stream().map(StudentEnrollmentData::getResolvedStudentId).collect(Collectors.toSet()));
 
-            try {
-                validateScheduleConflicts(
-                        data.getResolvedStudentId(), 
-                        classEntity.getId(), 
-                        newClassSessions, 
-                        data.getEmail()
-                );
-            } catch (CustomException e) {
-                // Catch conflict and mark as ERROR in preview (don't throw)
-                data.setStatus(StudentResolutionStatus.ERROR);
-                data.setErrorMessage(e.getMessage());
-                log.debug("Schedule conflict detected in preview for student {}: {}", 
-                        data.getEmail(), e.getMessage());
+        for (StudentEnrollmentData data : foundStudents) {
+            Object[] conflict = conflicts.get(data.getResolvedStudentId());
+            if (conflict == null) {
+                continue;
             }
+            // Mark as ERROR in preview (don't throw)
+            data.setStatus(StudentResolutionStatus.ERROR);
+            data.setErrorMessage(buildScheduleConflictMessage(data.getResolvedStudentId(), data.getEmail(), conflict));
+            log.debug("Schedule conflict detected in preview for student {}: {}",
+                    data.getEmail(), data.getErrorMessage());
         }
     }
 
@@ -873,75 +862,27 @@ public class EnrollmentService {
         return email.matches("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
     }
 
-    private boolean hasTimeOverlap(TimeSlotTemplate slot1, TimeSlotTemplate slot2) {
-        if (slot1 == null || slot2 == null) return false;
-        return !(slot1.getEndTime().isBefore(slot2.getStartTime()) || 
-                 slot2.getEndTime().isBefore(slot1.getStartTime()));
-    }
-
-    private void validateScheduleConflicts(Long studentId, Long newClassId, 
-                                          List<Session> newClassSessions, String studentEmail) {
-        // 1. Get active enrollments (excluding the target class itself)
-        List<Enrollment> activeEnrollments = enrollmentRepository
-                .findByStudentIdAndStatus(studentId, EnrollmentStatus.ENROLLED);
-        
-        if (activeEnrollments.isEmpty()) {
-            return; // No conflicts if no active enrollments
+    // Buổi trùng lịch sớm nhất của từng học viên với các lớp khác đang theo học (chỉ buổi từ hôm nay).
+    // studentId -> [student_id, date, start_time, end_time, conflicting_class_code]
+    private Map<Long, Object[]> findScheduleConflicts(Long classId, Collection<Long> studentIds) {
+        Map<Long, Object[]> conflicts = new HashMap<>();
+        if (studentIds.isEmpty()) {
+            return conflicts;
         }
-
-        // 2. Filter out the target class (for transfer scenarios)
-        List<Enrollment> otherEnrollments = activeEnrollments.stream()
-                .filter(e -> !e.getClassId().equals(newClassId))
-                .collect(Collectors.toList());
-        
-        if (otherEnrollments.isEmpty()) {
-            return; // No other active enrollments
+        for (Object[] row : enrollmentRepository.findScheduleConflictRows(classId, studentIds, LocalDate.now())) {
+            conflicts.put(((Number) row[0]).longValue(), row);
         }
+        return conflicts;
+    }
 
-        // 3. Get sessions from other classes
-        List<Long> otherClassIds = otherEnrollments.stream()
-                .map(Enrollment::getClassId)
-                .distinct()
-                .collect(Collectors.toList());
-        
-        List<Session> otherClassSessions = sessionRepository.findByClassEntityIdInAndStatus(
-                otherClassIds, SessionStatus.PLANNED);
-
-        // 4. Check for time overlaps
-        for (Session newSession : newClassSessions) {
-            LocalDate newDate = newSession.getDate();
-            TimeSlotTemplate newTimeSlot = newSession.getTimeSlotTemplate();
-            
-            if (newTimeSlot == null) continue; // Skip sessions without time slot
-            
-            for (Session existingSession : otherClassSessions) {
-                if (!existingSession.getDate().equals(newDate)) {
-                    continue; // Different date, no conflict
-                }
-                
-                TimeSlotTemplate existingTimeSlot = existingSession.getTimeSlotTemplate();
-                if (existingTimeSlot == null) continue;
-                
-                if (hasTimeOverlap(newTimeSlot, existingTimeSlot)) {
-                    // Found conflict
-                    String conflictingClass = existingSession.getClassEntity() != null 
-                            ? existingSession.getClassEntity().getCode() 
-                            : "Unknown";
-                    
-                    String errorMsg = String.format(
-                            "Học viên %s có lịch học trùng vào ngày %s (%s-%s) với lớp %s đang theo học",
-                            studentEmail != null ? studentEmail : studentId.toString(),
-                            newDate,
-                            newTimeSlot.getStartTime(),
-                            newTimeSlot.getEndTime(),
-                            conflictingClass
-                    );
-                    
-                    log.warn("Schedule conflict detected: {}", errorMsg);
-                    throw new CustomException(ErrorCode.ENROLLMENT_SCHEDULE_CONFLICT, errorMsg);
-                }
-            }
-        }
+    private String buildScheduleConflictMessage(Long studentId, String studentEmail, Object[] conflict) {
+        return String.format(
+                "Học viên %s có lịch học trùng vào ngày %s (%s-%s) với lớp %s đang theo học",
+                studentEmail != null ? studentEmail : studentId.toString(),
+                NativeRowUtils.toLocalDate(conflict[1]),
+                NativeRowUtils.toLocalTime(conflict[2]),
+                NativeRowUtils.toLocalTime(conflict[3]),
+                conflict[4] != null ? conflict[4] : "Unknown");
     }
 
     @Async("emailTaskExecutor")
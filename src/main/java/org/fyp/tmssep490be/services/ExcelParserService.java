@@ -1,7 +1,19 @@
 package org.fyp.tmssep490be.services;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.UnsupportedFileFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.fyp.tmssep490be.dtos.enrollment.StudentEnrollmentData;
 import org.fyp.tmssep490be.dtos.enrollment.StudentResolutionStatus;
@@ -10,13 +22,24 @@ import org.fyp.tmssep490be.exceptions.CustomException;
 import org.fyp.tmssep490be.exceptions.ErrorCode;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
+import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 @Slf4j
@@ -30,7 +53,8 @@ public class ExcelParserService {
     private static final int COLUMN_GENDER = 5;
     private static final int COLUMN_DOB = 6;
 
-    private static final int MAX_STUDENTS_PER_IMPORT = 100;
+    // Số dòng gom lại trước khi giao cho service xử lý (lookup DB theo lô)
+    public static final int DEFAULT_CHUNK_SIZE = 500;
     private static final String EMAIL_REGEX = "^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$";
 
     private static final DateTimeFormatter[] DATE_FORMATTERS = {
@@ -39,88 +63,90 @@ public class ExcelParserService {
             DateTimeFormatter.ofPattern("MM/dd/yyyy")
     };
 
-    public List<StudentEnrollmentData> parseStudentEnrollment(MultipartFile file, String expectedClassCode) {
-        List<StudentEnrollmentData> students = new ArrayList<>();
+    /**
+     * Một dòng đã đọc từ sheet: rowIndex (0-based) và giá trị các ô dạng chuỗi (null nếu ô trống).
+     */
+    public record SheetRow(int rowIndex, List<String> cells) {
 
-        try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-            Sheet sheet = workbook.getSheetAt(0);
+        public String get(int column) {
+            return column < cells.size() ? cells.get(column) : null;
+        }
+    }
 
-            // For generic templates: skip header row only (start from row 1)
-            // For class-specific templates: skip class info row (row 0) and header row (row
-            // 1), start from row 2
-            // Detect if this is a class-specific template by checking first cell content
-            Row firstRow = sheet.getRow(0);
-            boolean isClassSpecificTemplate = false;
-            String extractedClassCode = null;
+    public List<StudentEnrollmentData> parseStudentEnrollment(MultipartFile file, String expectedClassCode) {
+        List<StudentEnrollmentData> students = new ArrayList<>();
+        streamStudentEnrollment(file, expectedClassCode, DEFAULT_CHUNK_SIZE, students::addAll);
+        return students;
+    }
 
-            // Vào đây để check là template có phải của class hay không
-            if (firstRow != null && firstRow.getCell(0) != null) {
-                String firstCellValue = firstRow.getCell(0).getStringCellValue();
+    /**
+     * Đọc file enrollment theo kiểu streaming và giao từng lô chunkSize dòng cho chunkConsumer.
+     * Dòng lỗi được giữ lại (status ERROR + errorMessage) thay vì dừng cả file.
+     *
+     * @return tổng số dòng đã đọc
+     */
+    public int streamStudentEnrollment(MultipartFile file, String expectedClassCode, int chunkSize,
+                                       Consumer<List<StudentEnrollmentData>> chunkConsumer) {
+        // For generic templates: skip header row only (start from row 1)
+        // For class-specific templates: skip class info row (row 0) and header row (row
+        // 1), start from row 2
+        // Detect if this is a class-specific template by checking first cell content
+        int[] startRow = {1};
+
+        int total = streamChunks(file, chunkSize, chunkConsumer, row -> {
+            if (row.rowIndex() == 0) {
+                // Vào đây để check là template có phải của class hay không
+                String firstCellValue = row.get(0);
                 if (firstCellValue != null && firstCellValue.startsWith("Class:")) {
-                    isClassSpecificTemplate = true;
-                    
-                    // Extract class code from format: "Class: {code} | Name: {name} | Course: {course}"
-                    try {
-                        String[] parts = firstCellValue.split("\\|");
-                        if (parts.length >= 1) {
-                            String classPart = parts[0].trim(); // "Class: SE1801"
-                            if (classPart.startsWith("Class:")) {
-                                extractedClassCode = classPart.substring(6).trim(); // Remove "Class:" prefix
-                            }
-                        }
-                    } catch (Exception e) {
-                        log.warn("Failed to extract class code from template: {}", e.getMessage());
-                    }
-                    
-                    // Validate class code
-                    if (extractedClassCode != null && !extractedClassCode.equals(expectedClassCode)) {
-                        log.error("Class code mismatch. Expected: {}, Found in Excel: {}", expectedClassCode, extractedClassCode);
-                        throw new CustomException(ErrorCode.ENROLLMENT_FILE_CLASS_MISMATCH,
-                                String.format("File Excel này dành cho lớp '%s'. Vui lòng tải file mẫu đúng cho lớp '%s'.", 
-                                        extractedClassCode, expectedClassCode));
-                    }
+                    startRow[0] = 2;
+                    validateTemplateClassCode(firstCellValue, expectedClassCode);
                 }
             }
-
-            // Start parsing from appropriate row
-            int startRow = isClassSpecificTemplate ? 2 : 1;
-            for (int i = startRow; i <= sheet.getLastRowNum(); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null || isRowEmpty(row)) {
-                    continue;
-                }
-
-                try {
-                    StudentEnrollmentData data = parseRow(row, i);
-                    students.add(data);
-                } catch (Exception e) {
-                    log.warn("Error parsing row {}: {}", i + 1, e.getMessage());
-                    // Mark row có lỗi
-                    StudentEnrollmentData errorData = StudentEnrollmentData.builder()
-                            .status(StudentResolutionStatus.ERROR)
-                            .errorMessage("Row " + (i + 1) + ": " + e.getMessage())
-                            .build();
-                    students.add(errorData);
-                }
+            if (row.rowIndex() < startRow[0]) {
+                return null;
             }
 
-            if (students.isEmpty()) {
-                throw new CustomException(ErrorCode.EXCEL_FILE_EMPTY);
+            try {
+                return parseRow(row);
+            } catch (Exception e) {
+                log.warn("Error parsing row {}: {}", row.rowIndex() + 1, e.getMessage());
+                // Mark row có lỗi
+                return StudentEnrollmentData.builder()
+                        .status(StudentResolutionStatus.ERROR)
+                        .errorMessage("Row " + (row.rowIndex() + 1) + ": " + e.getMessage())
+                        .build();
             }
+        });
 
-            // Check max students limit
-            if (students.size() > MAX_STUDENTS_PER_IMPORT) {
-                throw new CustomException(ErrorCode.TOO_MANY_STUDENTS_IN_FILE,
-                        String.format("File chứa %d học viên, vượt quá giới hạn %d học viên cho một lần import",
-                                students.size(), MAX_STUDENTS_PER_IMPORT));
-            }
+        if (total == 0) {
+            throw new CustomException(ErrorCode.EXCEL_FILE_EMPTY);
+        }
+        return total;
+    }
 
-        } catch (IOException e) {
-            log.error("Failed to parse Excel file", e);
-            throw new CustomException(ErrorCode.EXCEL_PARSE_FAILED);
+    private void validateTemplateClassCode(String firstCellValue, String expectedClassCode) {
+        String extractedClassCode = null;
+
+        // Extract class code from format: "Class: {code} | Name: {name} | Course: {course}"
+        try {
+            String[] parts = firstCellValue.split("\\|");
+            if (parts.length >= 1) {
+                String classPart = parts[0].trim(); // "Class: SE1801"
+                if (classPart.startsWith("Class:")) {
+                    extractedClassCode = classPart.substring(6).trim(); // Remove "Class:" prefix
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to extract class code from template: {}", e.getMessage());
         }
 
-        return students;
+        // Validate class code
+        if (extractedClassCode != null && !extractedClassCode.equals(expectedClassCode)) {
+            log.error("Class code mismatch. Expected: {}, Found in Excel: {}", expectedClassCode, extractedClassCode);
+            throw new CustomException(ErrorCode.ENROLLMENT_FILE_CLASS_MISMATCH,
+                    String.format("File Excel này dành cho lớp '%s'. Vui lòng tải file mẫu đúng cho lớp '%s'.",
+                            extractedClassCode, expectedClassCode));
+        }
     }
 
     /**
@@ -133,54 +159,15 @@ public class ExcelParserService {
         return email.matches(EMAIL_REGEX);
     }
 
-    private boolean isRowEmpty(Row row) {
-        for (int i = 0; i < row.getLastCellNum(); i++) {
-            Cell cell = row.getCell(i);
-            if (cell != null && cell.getCellType() != CellType.BLANK) {
-                String value = getCellValueAsString(cell);
-                if (value != null && !value.isEmpty()) {
-                    return false;
-                }
-            }
-        }
-        return true;
-    }
-
-    private String getCellValueAsString(Cell cell) {
-        if (cell == null) {
-            return null;
-        }
-
-        return switch (cell.getCellType()) {
-            case STRING -> {
-                String value = cell.getStringCellValue().trim();
-                yield value.isEmpty() ? null : value;
-            }
-            case NUMERIC -> {
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    // Date cell
-                    LocalDate date = cell.getLocalDateTimeCellValue().toLocalDate();
-                    yield date.toString();
-                } else {
-                    // Numeric cell - convert to string without decimal
-                    yield String.valueOf((long) cell.getNumericCellValue());
-                }
-            }
-            case BOOLEAN -> String.valueOf(cell.getBooleanCellValue());
-            case BLANK -> null;
-            default -> cell.toString().trim();
-        };
-    }
-
-    private StudentEnrollmentData parseRow(Row row, int rowIndex) {
+    private StudentEnrollmentData parseRow(SheetRow row) {
         return StudentEnrollmentData.builder()
-                .fullName(getCellValueAsString(row.getCell(COLUMN_FULL_NAME)))
-                .email(getCellValueAsString(row.getCell(COLUMN_EMAIL)))
-                .phone(getCellValueAsString(row.getCell(COLUMN_PHONE)))
-                .facebookUrl(getCellValueAsString(row.getCell(COLUMN_FACEBOOK_URL)))
-                .address(getCellValueAsString(row.getCell(COLUMN_ADDRESS)))
-                .gender(parseGender(getCellValueAsString(row.getCell(COLUMN_GENDER))))
-                .dob(parseDob(getCellValueAsString(row.getCell(COLUMN_DOB))))
+                .fullName(row.get(COLUMN_FULL_NAME))
+                .email(row.get(COLUMN_EMAIL))
+                .phone(row.get(COLUMN_PHONE))
+                .facebookUrl(row.get(COLUMN_FACEBOOK_URL))
+                .address(row.get(COLUMN_ADDRESS))
+                .gender(parseGender(row.get(COLUMN_GENDER)))
+                .dob(parseDob(row.get(COLUMN_DOB)))
                 .build();
     }
 
@@ -220,60 +207,41 @@ public class ExcelParserService {
                 + ". Định dạng mong đợi: yyyy-MM-dd, dd/MM/yyyy, hoặc MM/dd/yyyy");
     }
 
-    private org.fyp.tmssep490be.dtos.studentmanagement.StudentImportData parseStudentImportRow(Row row, int rowIndex) {
+    private org.fyp.tmssep490be.dtos.studentmanagement.StudentImportData parseStudentImportRow(SheetRow row) {
         return org.fyp.tmssep490be.dtos.studentmanagement.StudentImportData.builder()
-                .fullName(getCellValueAsString(row.getCell(COLUMN_FULL_NAME)))
-                .email(getCellValueAsString(row.getCell(COLUMN_EMAIL)))
-                .phone(getCellValueAsString(row.getCell(COLUMN_PHONE)))
-                .facebookUrl(getCellValueAsString(row.getCell(COLUMN_FACEBOOK_URL)))
-                .address(getCellValueAsString(row.getCell(COLUMN_ADDRESS)))
-                .gender(parseGender(getCellValueAsString(row.getCell(COLUMN_GENDER))))
-                .dob(parseDob(getCellValueAsString(row.getCell(COLUMN_DOB))))
+                .fullName(row.get(COLUMN_FULL_NAME))
+                .email(row.get(COLUMN_EMAIL))
+                .phone(row.get(COLUMN_PHONE))
+                .facebookUrl(row.get(COLUMN_FACEBOOK_URL))
+                .address(row.get(COLUMN_ADDRESS))
+                .gender(parseGender(row.get(COLUMN_GENDER)))
+                .dob(parseDob(row.get(COLUMN_DOB)))
                 .build();
     }
 
     public List<org.fyp.tmssep490be.dtos.studentmanagement.StudentImportData> parseStudentImport(MultipartFile file) {
         List<org.fyp.tmssep490be.dtos.studentmanagement.StudentImportData> students = new ArrayList<>();
 
-        try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-            Sheet sheet = workbook.getSheetAt(0);
-
-            // Skip header row (row 0), start from row 1
-            for (int i = 1; i <= sheet.getLastRowNum(); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null || isRowEmpty(row)) {
-                    continue;
-                }
-
-                try {
-                    org.fyp.tmssep490be.dtos.studentmanagement.StudentImportData data = parseStudentImportRow(row, i);
-                    students.add(data);
-                } catch (Exception e) {
-                    log.warn("Error parsing row {}: {}", i + 1, e.getMessage());
-                    // Mark row có lỗi
-                    org.fyp.tmssep490be.dtos.studentmanagement.StudentImportData errorData =
-                            org.fyp.tmssep490be.dtos.studentmanagement.StudentImportData.builder()
-                                    .status(org.fyp.tmssep490be.dtos.studentmanagement.StudentImportData.StudentImportStatus.ERROR)
-                                    .errorMessage("Hàng " + (i + 1) + ": " + e.getMessage())
-                                    .build();
-                    students.add(errorData);
-                }
-            }
-
-            if (students.isEmpty()) {
-                throw new CustomException(ErrorCode.EXCEL_FILE_EMPTY);
+        // Skip header row (row 0), start from row 1
+        streamChunks(file, DEFAULT_CHUNK_SIZE, students::addAll, row -> {
+            if (row.rowIndex() < 1) {
+                return null;
             }
 
-            // Check max students limit
-            if (students.size() > MAX_STUDENTS_PER_IMPORT) {
-                throw new CustomException(ErrorCode.TOO_MANY_STUDENTS_IN_FILE,
-                        String.format("File chứa %d học viên, vượt quá giới hạn %d học viên cho một lần import",
-                                students.size(), MAX_STUDENTS_PER_IMPORT));
+            try {
+                return parseStudentImportRow(row);
+            } catch (Exception e) {
+                log.warn("Error parsing row {}: {}", row.rowIndex() + 1, e.getMessage());
+                // Mark row có lỗi
+                return org.fyp.tmssep490be.dtos.studentmanagement.StudentImportData.builder()
+                        .status(org.fyp.tmssep490be.dtos.studentmanagement.StudentImportData.StudentImportStatus.ERROR)
+                        .errorMessage("Hàng " + (row.rowIndex() + 1) + ": " + e.getMessage())
+                        .build();
             }
+        });
 
-        } catch (IOException e) {
-            log.error("Failed to parse Excel file", e);
-            throw new CustomException(ErrorCode.EXCEL_PARSE_FAILED);
+        if (students.isEmpty()) {
+            throw new CustomException(ErrorCode.EXCEL_FILE_EMPTY);
         }
 
         return students;
@@ -284,43 +252,41 @@ public class ExcelParserService {
 
     public List<org.fyp.tmssep490be.dtos.user.UserImportData> parseUserImport(MultipartFile file) {
         List<org.fyp.tmssep490be.dtos.user.UserImportData> users = new ArrayList<>();
+        streamUserImport(file, DEFAULT_CHUNK_SIZE, users::addAll);
+        return users;
+    }
 
-        try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-            Sheet sheet = workbook.getSheetAt(0);
-
-            // Bỏ qua dòng tiêu đề (dòng 0), bắt đầu từ dòng 1
-            for (int i = 1; i <= sheet.getLastRowNum(); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null || isRowEmpty(row)) {
-                    continue;
-                }
-
-                try {
-                    org.fyp.tmssep490be.dtos.user.UserImportData data = parseUserImportRow(row);
-                    users.add(data);
-                } catch (Exception e) {
-                    log.warn("Lỗi khi đọc dòng user {}: {}", i + 1, e.getMessage());
-                    org.fyp.tmssep490be.dtos.user.UserImportData errorData = org.fyp.tmssep490be.dtos.user.UserImportData.builder()
-                            .status("ERROR")
-                            .errorMessage("Hàng " + (i + 1) + ": " + e.getMessage())
-                            .build();
-                    users.add(errorData);
-                }
+    /**
+     * Đọc file import user theo kiểu streaming, giao từng lô chunkSize dòng cho chunkConsumer.
+     *
+     * @return tổng số dòng đã đọc
+     */
+    public int streamUserImport(MultipartFile file, int chunkSize,
+                                Consumer<List<org.fyp.tmssep490be.dtos.user.UserImportData>> chunkConsumer) {
+        // Bỏ qua dòng tiêu đề (dòng 0), bắt đầu từ dòng 1
+        int total = streamChunks(file, chunkSize, chunkConsumer, row -> {
+            if (row.rowIndex() < 1) {
+                return null;
             }
 
-            if (users.isEmpty()) {
-                throw new CustomException(ErrorCode.EXCEL_FILE_EMPTY);
+            try {
+                return parseUserImportRow(row);
+            } catch (Exception e) {
+                log.warn("Lỗi khi đọc dòng user {}: {}", row.rowIndex() + 1, e.getMessage());
+                return org.fyp.tmssep490be.dtos.user.UserImportData.builder()
+                        .status("ERROR")
+                        .errorMessage("Hàng " + (row.rowIndex() + 1) + ": " + e.getMessage())
+                        .build();
             }
+        });
 
-        } catch (IOException e) {
-            log.error("Thất bại khi đọc file Excel", e);
-            throw new CustomException(ErrorCode.EXCEL_PARSE_FAILED);
+        if (total == 0) {
+            throw new CustomException(ErrorCode.EXCEL_FILE_EMPTY);
         }
-
-        return users;
+        return total;
     }
 
-    private org.fyp.tmssep490be.dtos.user.UserImportData parseUserImportRow(Row row) {
+    private org.fyp.tmssep490be.dtos.user.UserImportData parseUserImportRow(SheetRow row) {
         // Giả định: 
         // 0: Họ và tên
         // 1: Email
@@ -330,16 +296,144 @@ public class ExcelParserService {
         // 5: Ngày sinh (DD/MM/YYYY, tùy chọn)
         
         return org.fyp.tmssep490be.dtos.user.UserImportData.builder()
-                .fullName(getCellValueAsString(row.getCell(0)))
-                .email(getCellValueAsString(row.getCell(1)))
-                .phone(getCellValueAsString(row.getCell(2)))
-                .role(getCellValueAsString(row.getCell(3)))
-                .branchCode(getCellValueAsString(row.getCell(4)))
-                .dob(getCellValueAsString(row.getCell(5)))
+                .fullName(row.get(0))
+                .email(row.get(1))
+                .phone(row.get(2))
+                .role(row.get(3))
+                .branchCode(row.get(4))
+                .dob(row.get(5))
                 .status("CREATE") // Trạng thái mặc định
                 .valid(true)
                 .build();
     }
+
+    // --- Streaming (SAX) ---
+
+    /**
+     * Map từng dòng không rỗng của sheet đầu tiên bằng rowMapper (trả về null để bỏ qua dòng),
+     * gom thành lô chunkSize phần tử rồi giao cho chunkConsumer.
+     *
+     * @return tổng số phần tử đã giao
+     */
+    public <T> int streamChunks(MultipartFile file, int chunkSize, Consumer<List<T>> chunkConsumer,
+                                Function<SheetRow, T> rowMapper) {
+        int size = Math.max(1, chunkSize);
+        List<T> chunk = new ArrayList<>(size);
+        int[] total = {0};
+
+        streamFirstSheet(file, row -> {
+            T item = rowMapper.apply(row);
+            if (item == null) {
+                return;
+            }
+            chunk.add(item);
+            total[0]++;
+            if (chunk.size() >= size) {
+                chunkConsumer.accept(new ArrayList<>(chunk));
+                chunk.clear();
+            }
+        });
+
+        if (!chunk.isEmpty()) {
+            chunkConsumer.accept(new ArrayList<>(chunk));
+        }
+        return total[0];
+    }
+
+    /**
+     * Đọc sheet đầu tiên bằng event API của POI (XSSFReader + SAX): mỗi dòng được giao cho rowHandler
+     * ngay khi đọc xong, không dựng XSSFWorkbook nên bộ nhớ không tăng theo số dòng.
+     * File upload được ghi ra file tạm để OPCPackage đọc trực tiếp từ đĩa.
+     */
+    public void streamFirstSheet(MultipartFile file, Consumer<SheetRow> rowHandler) {
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile("tms-import-", ".xlsx");
+            try (InputStream in = file.getInputStream()) {
+                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            try (OPCPackage pkg = OPCPackage.open(tempFile.toFile(), PackageAccess.READ)) {
+                XSSFReader reader = new XSSFReader(pkg);
+                SharedStrings sharedStrings = new ReadOnlySharedStringsTable(pkg);
+                StylesTable styles = reader.getStylesTable();
+
+                Iterator<InputStream> sheets = reader.getSheetsData();
+                if (!sheets.hasNext()) {
+                    throw new CustomException(ErrorCode.EXCEL_FILE_EMPTY);
+                }
+
+                try (InputStream sheet = sheets.next()) {
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(
+                            styles, sharedStrings, new RowCollector(rowHandler), new ImportDataFormatter(), false));
+                    parser.parse(new InputSource(sheet));
+                }
+            }
+        } catch (IOException | OpenXML4JException | SAXException | ParserConfigurationException
+                 | UnsupportedFileFormatException e) {
+            log.error("Failed to parse Excel file", e);
+            throw new CustomException(ErrorCode.EXCEL_PARSE_FAILED);
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    log.warn("Failed to delete temp import file {}", tempFile);
+                }
+            }
+        }
+    }
+
+    // Gom các ô của một dòng (ô trống bị SAX bỏ qua nên phải điền null theo cột), bỏ qua dòng rỗng
+    private static final class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final Consumer<SheetRow> rowHandler;
+        private final List<String> cells = new ArrayList<>();
+        private int lastColumn = -1;
+
+        private RowCollector(Consumer<SheetRow> rowHandler) {
+            this.rowHandler = rowHandler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells.clear();
+            lastColumn = -1;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            boolean empty = cells.stream().allMatch(value -> value == null);
+            if (!empty) {
+                rowHandler.accept(new SheetRow(rowNum, new ArrayList<>(cells)));
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : lastColumn + 1;
+            while (cells.size() < column) {
+                cells.add(null);
+            }
+            String value = formattedValue != null ? formattedValue.trim() : null;
+            cells.add(value == null || value.isEmpty() ? null : value);
+            lastColumn = column;
+        }
+    }
+
+    // Giữ cách đọc ô số như bản DOM trước đây: ô ngày -> yyyy-MM-dd, ô số -> số nguyên không phần thập phân
+    private static final class ImportDataFormatter extends DataFormatter {
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString, boolean use1904Windowing) {
+            if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+                return DateUtil.getLocalDateTime(value, use1904Windowing).toLocalDate().toString();
+            }
+            return String.valueOf((long) value);
+        }
+    }
+
     public java.io.ByteArrayInputStream generateUserImportTemplate() {
         try (Workbook workbook = new XSSFWorkbook()) {
             Sheet sheet = workbook.createSheet("Mẫu Import Người dùng");
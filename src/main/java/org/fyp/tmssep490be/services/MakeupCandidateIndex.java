@@ -0,0 +1,90 @@
+package org.fyp.tmssep490be.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.repositories.SessionRepository;
+import org.fyp.tmssep490be.utils.BoundedTtlCache;
+import org.fyp.tmssep490be.utils.NativeRowUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Chỉ mục buổi học bù: (chi nhánh, buổi trong giáo trình) -> các buổi PLANNED sắp theo ngày.
+ *
+ * Mỗi khoá được nạp bằng một query projection và giữ trong bộ nhớ theo TTL, tối đa max-size khoá
+ * (bỏ khoá lâu nhất chưa dùng). Chỉ mục chỉ dùng
+ * để chọn ứng viên; sĩ số được đếm lại mỗi lần hỏi, trạng thái buổi học được kiểm tra lại khi load
+ * chi tiết, và trùng lịch được kiểm tra lại khi học viên gửi yêu cầu học bù.
+ */
+@Component
+@Slf4j
+public class MakeupCandidateIndex {
+
+    private final SessionRepository sessionRepository;
+
+    private final BoundedTtlCache<Key, NavigableMap<LocalDate, List<Candidate>>> snapshots;
+
+    public MakeupCandidateIndex(
+            SessionRepository sessionRepository,
+            @Value("${tms.makeup-candidates.ttl-seconds:120}") long ttlSeconds,
+            @Value("${tms.makeup-candidates.max-size:2000}") int maxSize) {
+        this.sessionRepository = sessionRepository;
+        this.snapshots = new BoundedTtlCache<>(ttlSeconds * 1000, maxSize);
+    }
+
+    private record Key(Long branchId, Long subjectSessionId) {
+    }
+
+    // Một buổi có thể dùng để học bù
+    public record Candidate(Long sessionId, Long classId, LocalDate date, LocalTime startTime, LocalTime endTime) {
+
+        // Cùng ngày và giao nhau về giờ (chạm mốc cũng tính là trùng, như hasTimeOverlap)
+        public boolean overlaps(LocalDate otherDate, LocalTime otherStart, LocalTime otherEnd) {
+            if (!date.equals(otherDate) || startTime == null || endTime == null
+                    || otherStart == null || otherEnd == null) {
+                return false;
+            }
+            return !(endTime.isBefore(otherStart) || otherEnd.isBefore(startTime));
+        }
+    }
+
+    // Các buổi trong [fromDate, toDate] (theo thứ tự ngày, giờ bắt đầu), bỏ excludeSessionId
+    public List<Candidate> candidates(Long branchId, Long subjectSessionId,
+            LocalDate fromDate, LocalDate toDate, Long excludeSessionId) {
+        NavigableMap<LocalDate, List<Candidate>> byDate = snapshots.get(
+                new Key(branchId, subjectSessionId), () -> load(branchId, subjectSessionId));
+        List<Candidate> result = new ArrayList<>();
+        for (List<Candidate> sameDay : byDate.subMap(fromDate, true, toDate, true).values()) {
+            for (Candidate candidate : sameDay) {
+                if (!candidate.sessionId().equals(excludeSessionId)) {
+                    result.add(candidate);
+                }
+            }
+        }
+        return result;
+    }
+
+    private NavigableMap<LocalDate, List<Candidate>> load(Long branchId, Long subjectSessionId) {
+        NavigableMap<LocalDate, List<Candidate>> byDate = new TreeMap<>();
+        List<Object[]> rows = sessionRepository.findMakeupCandidateRows(subjectSessionId, branchId);
+        for (Object[] row : rows) {
+            Candidate candidate = new Candidate(
+                    ((Number) row[0]).longValue(),
+                    ((Number) row[1]).longValue(),
+                    NativeRowUtils.toLocalDate(row[2]),
+                    NativeRowUtils.toLocalTime(row[3]),
+                    NativeRowUtils.toLocalTime(row[4]));
+            byDate.computeIfAbsent(candidate.date(), k -> new ArrayList<>()).add(candidate);
+        }
+
+        log.debug("Loaded {} makeup candidates for branch {} subject session {}",
+                rows.size(), branchId, subjectSessionId);
+        return byDate;
+    }
+}
@@ -2,34 +2,20 @@ package org.fyp.tmssep490be.services;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.dtos.dashboard.DashboardRollup;
 import org.fyp.tmssep490be.dtos.dashboard.ManagerDashboardDTO;
 import org.fyp.tmssep490be.entities.Branch;
-import org.fyp.tmssep490be.entities.Session;
-import org.fyp.tmssep490be.entities.TeachingSlot;
-import org.fyp.tmssep490be.entities.enums.AttendanceStatus;
 import org.fyp.tmssep490be.entities.enums.BranchStatus;
-import org.fyp.tmssep490be.entities.enums.ClassStatus;
-import org.fyp.tmssep490be.entities.enums.EnrollmentStatus;
 import org.fyp.tmssep490be.entities.enums.RequestStatus;
-import org.fyp.tmssep490be.entities.enums.SessionStatus;
-import org.fyp.tmssep490be.entities.enums.TeachingSlotStatus;
 import org.fyp.tmssep490be.repositories.BranchRepository;
-import org.fyp.tmssep490be.repositories.ClassRepository;
-import org.fyp.tmssep490be.repositories.EnrollmentRepository;
-import org.fyp.tmssep490be.repositories.SessionRepository;
 import org.fyp.tmssep490be.repositories.StudentRepository;
 import org.fyp.tmssep490be.repositories.StudentRequestRepository;
-import org.fyp.tmssep490be.repositories.StudentSessionRepository;
 import org.fyp.tmssep490be.repositories.TeacherRequestRepository;
-import org.fyp.tmssep490be.repositories.TeachingSlotRepository;
 import org.fyp.tmssep490be.repositories.UserAccountRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Duration;
 import java.time.LocalDate;
-import java.time.LocalTime;
-import java.time.OffsetDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -42,15 +28,11 @@ import java.util.stream.Collectors;
 public class ManagerDashboardService {
 
     private final BranchRepository branchRepository;
-    private final ClassRepository classRepository;
     private final StudentRepository studentRepository;
     private final UserAccountRepository userAccountRepository;
     private final StudentRequestRepository studentRequestRepository;
     private final TeacherRequestRepository teacherRequestRepository;
-    private final EnrollmentRepository enrollmentRepository;
-    private final SessionRepository sessionRepository;
-    private final StudentSessionRepository studentSessionRepository;
-    private final TeachingSlotRepository teachingSlotRepository;
+    private final DashboardMetricsService dashboardMetricsService;
 
     @Transactional(readOnly = true)
     public ManagerDashboardDTO getDashboard(Long managerUserId, LocalDate fromDate, LocalDate toDate) {
@@ -81,10 +63,11 @@ public class ManagerDashboardService {
                 .inactive(inactiveBranches)
                 .build();
 
+        // Rollup theo (chi nhánh, ngày) - thay cho findAll() trên class/enrollment/session
+        DashboardRollup rollup = dashboardMetricsService.loadRollup(finalFromDate, finalToDate);
+
         // ===== Class summary =====
-        long ongoingClasses = classRepository.findByStatus(ClassStatus.ONGOING).size();
-        long scheduledClasses = classRepository.findByStatus(ClassStatus.SCHEDULED).size();
-        long activeClasses = ongoingClasses + scheduledClasses;
+        long activeClasses = rollup.activeClasses(null);
 
         ManagerDashboardDTO.ClassSummary classSummary = ManagerDashboardDTO.ClassSummary.builder()
                 .activeTotal(activeClasses)
@@ -96,14 +79,7 @@ public class ManagerDashboardService {
         long totalStudents = studentRepository.count();
 
         // Số lượt ghi danh mới trong khoảng thời gian
-        OffsetDateTime fromDateTime = finalFromDate.atStartOfDay().atOffset(java.time.ZoneOffset.UTC);
-        OffsetDateTime toDateTime = finalToDate.atTime(23, 59, 59).atOffset(java.time.ZoneOffset.UTC);
-        long newEnrollmentsInRange = enrollmentRepository.findAll().stream()
-                .filter(e -> e.getEnrolledAt() != null
-                        && !e.getEnrolledAt().isBefore(fromDateTime)
-                        && !e.getEnrolledAt().isAfter(toDateTime)
-                        && e.getStatus() == EnrollmentStatus.ENROLLED)
-                .count();
+        long newEnrollmentsInRange = rollup.newEnrollments(null, finalFromDate, finalToDate);
 
         ManagerDashboardDTO.StudentSummary studentSummary = ManagerDashboardDTO.StudentSummary.builder()
                 .activeTotal(totalStudents)
@@ -142,14 +118,10 @@ public class ManagerDashboardService {
                 .build();
 
         // ===== Classes per branch =====
+        Map<Long, Long> activeClassesByBranch = rollup.activeClassesByBranch(null);
         List<ManagerDashboardDTO.ClassesPerBranchItem> classesPerBranch = branches.stream()
                 .map(branch -> {
-                    long activeClassCount = branch.getClasses() == null
-                            ? 0
-                            : branch.getClasses().stream()
-                            .filter(c -> c.getStatus() == ClassStatus.ONGOING
-                                    || c.getStatus() == ClassStatus.SCHEDULED)
-                            .count();
+                    long activeClassCount = activeClassesByBranch.getOrDefault(branch.getId(), 0L);
 
                     return ManagerDashboardDTO.ClassesPerBranchItem.builder()
                             .branchId(branch.getId())
@@ -161,36 +133,9 @@ public class ManagerDashboardService {
                 .collect(Collectors.toList());
 
         // ===== Teaching workload =====
-        // Lấy tất cả sessions trong date range (không bị hủy)
-        List<Session> sessionsInRange = sessionRepository.findAll().stream()
-                .filter(s -> !s.getDate().isBefore(finalFromDate) && !s.getDate().isAfter(finalToDate)
-                        && s.getStatus() != SessionStatus.CANCELLED)
-                .collect(Collectors.toList());
-
-        // Tính số giáo viên đang dạy (có ít nhất 1 teaching slot trong date range)
-        Set<Long> teachingTeacherIds = new HashSet<>();
-        double totalTeachingHours = 0.0;
-
-        for (Session session : sessionsInRange) {
-            List<TeachingSlot> teachingSlots = teachingSlotRepository.findBySessionIdWithTeacher(session.getId());
-            for (TeachingSlot slot : teachingSlots) {
-                if (slot.getStatus() == TeachingSlotStatus.SCHEDULED || slot.getStatus() == TeachingSlotStatus.SUBSTITUTED) {
-                    teachingTeacherIds.add(slot.getTeacher().getId());
-                    
-                    // Tính giờ dạy
-                    if (session.getTimeSlotTemplate() != null) {
-                        LocalTime startTime = session.getTimeSlotTemplate().getStartTime();
-                        LocalTime endTime = session.getTimeSlotTemplate().getEndTime();
-                        if (startTime != null && endTime != null) {
-                            Duration duration = Duration.between(startTime, endTime);
-                            totalTeachingHours += duration.toHours() + (duration.toMinutesPart() / 60.0);
-                        }
-                    }
-                }
-            }
-        }
-
-        long teachingTeachers = teachingTeacherIds.size();
+        // Giáo viên đang dạy = có ít nhất 1 teaching slot (SCHEDULED/SUBSTITUTED) trong date range
+        long teachingTeachers = rollup.teachingTeachers(null);
+        double totalTeachingHours = rollup.teachingHours(null);
         long availableTeachers = Math.max(totalTeachers - teachingTeachers, 0L);
 
         double teachingPercent = totalTeachers > 0
@@ -211,39 +156,14 @@ public class ManagerDashboardService {
 
         // ===== Attendance trend =====
         List<ManagerDashboardDTO.AttendanceTrendPoint> attendanceTrend = new ArrayList<>();
+        Map<LocalDate, Double> attendanceRateByDate = rollup.attendanceRateByDate(null);
         LocalDate currentDate = finalFromDate;
         while (!currentDate.isAfter(finalToDate)) {
-            List<Session> sessionsOnDate = sessionRepository.findByDate(currentDate).stream()
-                    .filter(s -> s.getStatus() != SessionStatus.CANCELLED)
-                    .collect(Collectors.toList());
-
-            if (!sessionsOnDate.isEmpty()) {
-                long totalPresent = 0;
-                long totalStudentsOnDate = 0;
-
-                for (Session session : sessionsOnDate) {
-                    List<org.fyp.tmssep490be.entities.StudentSession> studentSessions =
-                            studentSessionRepository.findBySessionId(session.getId());
-                    for (org.fyp.tmssep490be.entities.StudentSession ss : studentSessions) {
-                        totalStudentsOnDate++;
-                        if (ss.getAttendanceStatus() == AttendanceStatus.PRESENT) {
-                            totalPresent++;
-                        }
-                    }
-                }
-
-                double attendanceRate = totalStudentsOnDate > 0 ? (totalPresent * 100.0) / totalStudentsOnDate : 0.0;
-                attendanceTrend.add(ManagerDashboardDTO.AttendanceTrendPoint.builder()
-                        .date(currentDate.toString())
-                        .attendanceRate(attendanceRate)
-                        .build());
-            } else {
-                // Vẫn thêm điểm với rate 0 để biểu đồ hiển thị
-                attendanceTrend.add(ManagerDashboardDTO.AttendanceTrendPoint.builder()
-                        .date(currentDate.toString())
-                        .attendanceRate(0.0)
-                        .build());
-            }
+            // Ngày không có bản ghi điểm danh vẫn thêm điểm với rate 0 để biểu đồ hiển thị
+            attendanceTrend.add(ManagerDashboardDTO.AttendanceTrendPoint.builder()
+                    .date(currentDate.toString())
+                    .attendanceRate(attendanceRateByDate.getOrDefault(currentDate, 0.0))
+                    .build());
 
             currentDate = currentDate.plusDays(1);
         }
@@ -257,15 +177,7 @@ public class ManagerDashboardService {
                 weekEnd = finalToDate;
             }
 
-            OffsetDateTime weekStartDateTime = weekStart.atStartOfDay().atOffset(java.time.ZoneOffset.UTC);
-            OffsetDateTime weekEndDateTime = weekEnd.atTime(23, 59, 59).atOffset(java.time.ZoneOffset.UTC);
-
-            long enrollmentsInWeek = enrollmentRepository.findAll().stream()
-                    .filter(e -> e.getEnrolledAt() != null
-                            && !e.getEnrolledAt().isBefore(weekStartDateTime)
-                            && !e.getEnrolledAt().isAfter(weekEndDateTime)
-                            && e.getStatus() == EnrollmentStatus.ENROLLED)
-                    .count();
+            long enrollmentsInWeek = rollup.newEnrollments(null, weekStart, weekEnd);
 
             String label = String.format("Tuần %d/%d", weekStart.get(java.time.temporal.WeekFields.ISO.weekOfYear()),
                     weekStart.getYear());
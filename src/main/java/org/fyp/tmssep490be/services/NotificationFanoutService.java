@@ -0,0 +1,96 @@
+package org.fyp.tmssep490be.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.dtos.notification.NotificationDTO;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Đẩy notification qua WebSocket sau khi transaction lưu notification đã commit.
+ *
+ * Việc gửi chạy trên notificationFanoutExecutor (pool và hàng đợi có giới hạn, đầy thì thread gọi
+ * tự gửi) nên request tạo thông báo cho cả chi nhánh không phải chờ broker xử lý từng người nhận.
+ * Notification có cùng nội dung cho cả một role được gửi một lần lên topic thay vì mỗi user một message.
+ */
+@Service
+@Slf4j
+public class NotificationFanoutService {
+
+    public static final String USER_QUEUE = "/queue/notifications";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final Executor executor;
+    private final int chunkSize;
+
+    public NotificationFanoutService(
+            SimpMessagingTemplate messagingTemplate,
+            @Qualifier("notificationFanoutExecutor") Executor executor,
+            @Value("${tms.notification.fanout.chunk-size:200}") int chunkSize) {
+        this.messagingTemplate = messagingTemplate;
+        this.executor = executor;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    // Topic cho broadcast theo role; branchId = null nghĩa là mọi chi nhánh
+    public static String roleTopic(String roleCode, Long branchId) {
+        return branchId != null
+                ? "/topic/branches/" + branchId + "/roles/" + roleCode
+                : "/topic/roles/" + roleCode;
+    }
+
+    // Mỗi notification gửi tới queue riêng của người nhận, chia thành từng nhóm chunkSize cho executor
+    public void sendToUsers(List<NotificationDTO> notifications) {
+        if (notifications == null || notifications.isEmpty()) {
+            return;
+        }
+        List<NotificationDTO> snapshot = List.copyOf(notifications);
+        afterCommit(() -> {
+            for (int from = 0; from < snapshot.size(); from += chunkSize) {
+                List<NotificationDTO> chunk = snapshot.subList(from, Math.min(from + chunkSize, snapshot.size()));
+                executor.execute(() -> chunk.forEach(this::sendToUser));
+            }
+        });
+    }
+
+    // Một message duy nhất cho mọi subscriber của topic
+    public void sendToTopic(String destination, NotificationDTO payload) {
+        afterCommit(() -> executor.execute(() -> {
+            try {
+                messagingTemplate.convertAndSend(destination, payload);
+                log.debug("Sent WebSocket notification to topic {}", destination);
+            } catch (Exception e) {
+                log.error("Failed to send WebSocket notification to topic {}: {}", destination, e.getMessage());
+            }
+        }));
+    }
+
+    private void sendToUser(NotificationDTO notification) {
+        try {
+            messagingTemplate.convertAndSendToUser(notification.getRecipientId().toString(), USER_QUEUE, notification);
+        } catch (Exception e) {
+            // Notification đã lưu DB, client sẽ thấy khi tải lại
+            log.error("Failed to send WebSocket notification to user {}: {}",
+                    notification.getRecipientId(), e.getMessage());
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
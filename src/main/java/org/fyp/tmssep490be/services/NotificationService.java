@@ -15,6 +15,9 @@ import org.fyp.tmssep490be.repositories.UserAccountRepository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
@@ -23,7 +26,6 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -34,6 +36,23 @@ public class NotificationService {
     private final NotificationRepository notificationRepository;
     private final UserAccountRepository userAccountRepository;
     private final SimpMessagingTemplate messagingTemplate;
+    private final NotificationUnreadCounter unreadCounter;
+    private final NotificationFanoutService notificationFanout;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    // Bật khi client đã subscribe topic theo role (/topic/roles/..., /topic/branches/{id}/roles/...)
+    @Value("${tms.notification.fanout.topic-broadcast:false}")
+    private boolean topicBroadcastEnabled;
+
+    private static final int INSERT_CHUNK_SIZE = 1000;
+
+    private static final String BULK_INSERT_SQL = """
+            INSERT INTO notification (recipient_id, type, title, message, status, created_at)
+            SELECT u.id, :type, :title, :message, 'UNREAD', CURRENT_TIMESTAMP
+            FROM user_account u
+            WHERE u.id IN (:recipientIds)
+            RETURNING id, recipient_id, created_at
+            """;
 
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public Notification createNotification(Long recipientId, NotificationType type, String title, String message) {
@@ -51,7 +70,8 @@ public class NotificationService {
                 .build();
 
         Notification saved = notificationRepository.save(notification);
-        
+        unreadCounter.increment(recipientId);
+
         // Broadcast notification via WebSocket in real-time
         sendWebSocketNotification(recipientId, NotificationDTO.fromEntity(saved));
         
@@ -91,6 +111,9 @@ public class NotificationService {
         }
 
         notificationRepository.delete(notification);
+        if (notification.isUnread()) {
+            unreadCounter.decrement(userId);
+        }
     }
 
     @Transactional(readOnly = true)
@@ -137,53 +160,65 @@ public class NotificationService {
         if (notification.isUnread()) {
             notification.markAsRead();
             notificationRepository.save(notification);
+            unreadCounter.decrement(userId);
         }
     }
 
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public int markAllAsRead(Long userId) {
         log.info("Đánh dấu đã đọc tất cả notifications cho user {}", userId);
-        return notificationRepository.markAllAsRead(userId, NotificationStatus.UNREAD,
+        int updated = notificationRepository.markAllAsRead(userId, NotificationStatus.UNREAD,
                 NotificationStatus.READ, LocalDateTime.now());
+        unreadCounter.reset(userId);
+        return updated;
     }
 
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public int archiveNotifications(Long userId, List<Long> notificationIds) {
         log.info("Lưu trữ {} notifications cho user {}", notificationIds.size(), userId);
-        return notificationRepository.archiveNotifications(userId, notificationIds);
+        int archived = notificationRepository.archiveNotifications(userId, notificationIds);
+        // Không biết trong số đó bao nhiêu notification đang UNREAD: đếm lại ở lần đọc sau
+        unreadCounter.evict(userId);
+        return archived;
     }
 
+    // Toàn bộ thống kê lấy từ một query GROUP BY (status, type).
+    // today/thisWeek/thisMonth chỉ tính notification UNREAD như trước.
     @Transactional(readOnly = true)
     public NotificationStatsDTO getUserNotificationStats(Long userId) {
-        Long unreadCount = notificationRepository.countByRecipientIdAndStatus(userId, NotificationStatus.UNREAD);
-        Long readCount = notificationRepository.countByRecipientIdAndStatus(userId, NotificationStatus.READ);
-        Long archivedCount = notificationRepository.countByRecipientIdAndStatus(userId, NotificationStatus.ARCHIVED);
-        Long totalCount = unreadCount + readCount + archivedCount;
-
         LocalDateTime startOfDay = LocalDateTime.now().with(LocalTime.MIN);
         LocalDateTime startOfWeek = LocalDateTime.now().minusDays(7);
         LocalDateTime startOfMonth = LocalDateTime.now().minusDays(30);
 
-        List<Notification> allUserNotifications = notificationRepository
-                .findByRecipientIdAndStatusOrderByCreatedAtDesc(userId, NotificationStatus.UNREAD);
-
-        Long todayCount = allUserNotifications.stream()
-                .filter(n -> n.getCreatedAt().isAfter(startOfDay))
-                .count();
-        Long thisWeekCount = allUserNotifications.stream()
-                .filter(n -> n.getCreatedAt().isAfter(startOfWeek))
-                .count();
-        Long thisMonthCount = allUserNotifications.stream()
-                .filter(n -> n.getCreatedAt().isAfter(startOfMonth))
-                .count();
+        Map<NotificationStatus, Long> countsByStatus = new EnumMap<>(NotificationStatus.class);
+        Map<String, Long> countsByType = new LinkedHashMap<>();
+        for (NotificationType type : NotificationType.values()) {
+            countsByType.put(type.name(), 0L);
+        }
+        long todayCount = 0L;
+        long thisWeekCount = 0L;
+        long thisMonthCount = 0L;
+
+        for (Object[] row : notificationRepository.aggregateStatsByRecipientId(userId, startOfDay, startOfWeek, startOfMonth)) {
+            NotificationStatus status = (NotificationStatus) row[0];
+            NotificationType type = (NotificationType) row[1];
+            long count = ((Number) row[2]).longValue();
+
+            countsByStatus.merge(status, count, Long::sum);
+            countsByType.merge(type.name(), count, Long::sum);
+            if (status == NotificationStatus.UNREAD) {
+                todayCount += toLong(row[3]);
+                thisWeekCount += toLong(row[4]);
+                thisMonthCount += toLong(row[5]);
+            }
+        }
 
-        Map<String, Long> countsByType = Arrays.stream(NotificationType.values())
-                .collect(Collectors.toMap(
-                        Enum::name,
-                        type -> notificationRepository.countByRecipientIdAndType(userId, type)));
+        Long unreadCount = countsByStatus.getOrDefault(NotificationStatus.UNREAD, 0L);
+        Long readCount = countsByStatus.getOrDefault(NotificationStatus.READ, 0L);
+        Long archivedCount = countsByStatus.getOrDefault(NotificationStatus.ARCHIVED, 0L);
 
         return NotificationStatsDTO.builder()
-                .totalCount(totalCount)
+                .totalCount(unreadCount + readCount + archivedCount)
                 .unreadCount(unreadCount)
                 .readCount(readCount)
                 .archivedCount(archivedCount)
@@ -196,64 +231,108 @@ public class NotificationService {
 
     @Transactional(readOnly = true)
     public NotificationStatsDTO getSystemNotificationStats() {
-        List<Notification> allNotifications = notificationRepository.findAll();
+        Map<NotificationStatus, Long> countsByStatus = new EnumMap<>(NotificationStatus.class);
+        for (Object[] row : notificationRepository.countGroupByStatus()) {
+            countsByStatus.put((NotificationStatus) row[0], ((Number) row[1]).longValue());
+        }
 
-        Long totalCount = (long) allNotifications.size();
-        Long unreadCount = allNotifications.stream().filter(n -> n.getStatus() == NotificationStatus.UNREAD).count();
-        Long readCount = allNotifications.stream().filter(n -> n.getStatus() == NotificationStatus.READ).count();
-        Long archivedCount = allNotifications.stream().filter(n -> n.getStatus() == NotificationStatus.ARCHIVED).count();
+        Long unreadCount = countsByStatus.getOrDefault(NotificationStatus.UNREAD, 0L);
+        Long readCount = countsByStatus.getOrDefault(NotificationStatus.READ, 0L);
+        Long archivedCount = countsByStatus.getOrDefault(NotificationStatus.ARCHIVED, 0L);
 
         return NotificationStatsDTO.builder()
-                .totalCount(totalCount)
+                .totalCount(unreadCount + readCount + archivedCount)
                 .unreadCount(unreadCount)
                 .readCount(readCount)
                 .archivedCount(archivedCount)
                 .build();
     }
 
-    @Transactional(readOnly = true)
+    // Badge: đọc từ bộ đếm trong bộ nhớ, chỉ COUNT DB khi chưa có hoặc đã hết hạn
+    // (SUPPORTS: không mở transaction/connection khi đọc trúng bộ đếm)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Long getUnreadCount(Long userId) {
-        return notificationRepository.countByRecipientIdAndStatus(userId, NotificationStatus.UNREAD);
+        return unreadCounter.get(userId,
+                () -> notificationRepository.countByRecipientIdAndStatus(userId, NotificationStatus.UNREAD));
     }
 
+    // Cùng một nội dung cho nhiều người: ghi bằng INSERT ... SELECT theo lô, đẩy WebSocket bất đồng bộ sau commit
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void sendBulkNotifications(List<Long> recipientIds, NotificationType type, String title, String message) {
-        log.info("Gửi bulk notifications cho {} users (IDs: {})", recipientIds.size(), recipientIds);
-
         if (recipientIds == null || recipientIds.isEmpty()) {
             log.warn("Danh sách recipient IDs rỗng hoặc null - không thể gửi notification");
             return;
         }
+        log.info("Gửi bulk notifications cho {} users", recipientIds.size());
 
-        List<UserAccount> recipients = userAccountRepository.findAllById(recipientIds);
-        log.info("Tìm thấy {} recipients từ {} IDs", recipients.size(), recipientIds.size());
-
-        if (recipients.isEmpty()) {
+        List<NotificationDTO> saved = insertNotifications(recipientIds, type, title, message);
+        if (saved.isEmpty()) {
             log.error("Không tìm thấy recipients nào với IDs: {}", recipientIds);
             return;
         }
-
-        List<Notification> notifications = recipients.stream()
-                .map(recipient -> Notification.builder()
-                        .recipient(recipient)
-                        .type(type)
-                        .title(title)
-                        .message(message)
-                        .status(NotificationStatus.UNREAD)
-                        .build())
-                .collect(Collectors.toList());
-
-        log.info("Tạo {} notifications để lưu", notifications.size());
-        List<Notification> saved = notificationRepository.saveAll(notifications);
         log.info("Đã lưu thành công {} notifications", saved.size());
-        
-        // Broadcast to each recipient via WebSocket
-        saved.forEach(notification -> {
-            sendWebSocketNotification(
-                notification.getRecipient().getId(), 
-                NotificationDTO.fromEntity(notification)
-            );
-        });
+
+        notificationFanout.sendToUsers(saved);
+    }
+
+    /**
+     * Gửi notification cho mọi user có role (trong chi nhánh branchId, null = mọi chi nhánh).
+     * Mỗi user vẫn có một dòng notification riêng; khi bật topic-broadcast, phần realtime chỉ là
+     * một message lên topic của role thay vì mỗi user một message. Trả về số người nhận.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int sendRoleBroadcast(String roleCode, Long branchId, NotificationType type, String title, String message) {
+        List<Long> recipientIds = userAccountRepository.findUserIdsByRoleCodeAndBranchId(roleCode, branchId);
+        if (recipientIds.isEmpty()) {
+            return 0;
+        }
+
+        List<NotificationDTO> saved = insertNotifications(recipientIds, type, title, message);
+        log.info("Đã lưu {} notifications cho role {} (branch {})", saved.size(), roleCode, branchId);
+
+        if (topicBroadcastEnabled) {
+            notificationFanout.sendToTopic(NotificationFanoutService.roleTopic(roleCode, branchId),
+                    NotificationDTO.builder()
+                            .type(type)
+                            .title(title)
+                            .message(message)
+                            .status(NotificationStatus.UNREAD)
+                            .unread(true)
+                            .createdAt(LocalDateTime.now())
+                            .build());
+        } else {
+            notificationFanout.sendToUsers(saved);
+        }
+        return saved.size();
+    }
+
+    // Bỏ qua recipient không tồn tại (như findAllById trước đây); mỗi lô một câu lệnh
+    private List<NotificationDTO> insertNotifications(List<Long> recipientIds, NotificationType type,
+                                                      String title, String message) {
+        List<Long> distinctIds = recipientIds.stream().filter(Objects::nonNull).distinct().toList();
+        List<NotificationDTO> saved = new ArrayList<>(distinctIds.size());
+
+        for (int from = 0; from < distinctIds.size(); from += INSERT_CHUNK_SIZE) {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("type", type.name())
+                    .addValue("title", title)
+                    .addValue("message", message)
+                    .addValue("recipientIds", distinctIds.subList(from, Math.min(from + INSERT_CHUNK_SIZE, distinctIds.size())));
+
+            saved.addAll(jdbcTemplate.query(BULK_INSERT_SQL, params, (rs, rowNum) -> NotificationDTO.builder()
+                    .id(rs.getLong("id"))
+                    .recipientId(rs.getLong("recipient_id"))
+                    .type(type)
+                    .title(title)
+                    .message(message)
+                    .status(NotificationStatus.UNREAD)
+                    .unread(true)
+                    .createdAt(rs.getTimestamp("created_at").toLocalDateTime())
+                    .build()));
+        }
+
+        saved.forEach(notification -> unreadCounter.increment(notification.getRecipientId()));
+        return saved;
     }
 
     @Transactional(propagation = Propagation.REQUIRES_NEW)
@@ -268,6 +347,10 @@ public class NotificationService {
         createNotification(studentId, NotificationType.FEEDBACK_REMINDER, title, message);
     }
     
+    private long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : 0L;
+    }
+
     /**
      * Send notification to specific user via WebSocket
      * Uses user-specific queue: /user/{userId}/queue/notifications
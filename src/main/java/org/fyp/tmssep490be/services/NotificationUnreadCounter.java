@@ -0,0 +1,79 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.utils.BoundedTtlCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bộ đếm notification UNREAD theo user, giữ trong bộ nhớ để badge không phải COUNT bảng notification
+ * ở mỗi lần tải trang. Lần đầu (hoặc khi hết TTL) mới đếm từ DB, sau đó NotificationService
+ * cập nhật bộ đếm khi tạo / đọc / lưu trữ notification. Thay đổi chỉ áp dụng sau khi transaction commit.
+ *
+ * TTL giới hạn độ lệch nếu notification bị sửa ngoài NotificationService hoặc ở instance khác.
+ */
+@Component
+public class NotificationUnreadCounter {
+
+    private final BoundedTtlCache<Long, AtomicLong> entries;
+
+    public NotificationUnreadCounter(
+            @Value("${tms.notification.unread-counter.ttl-seconds:300}") long ttlSeconds,
+            @Value("${tms.notification.unread-counter.max-size:10000}") int maxSize) {
+        this.entries = new BoundedTtlCache<>(ttlSeconds * 1000, maxSize);
+    }
+
+    // Số UNREAD của user; loader chỉ được gọi khi chưa có trong bộ nhớ hoặc đã hết hạn
+    public long get(Long userId, LongSupplier loader) {
+        return entries.get(userId, () -> new AtomicLong(loader.getAsLong())).get();
+    }
+
+    public void increment(Long userId) {
+        add(userId, 1);
+    }
+
+    public void decrement(Long userId) {
+        add(userId, -1);
+    }
+
+    // Chỉ cập nhật user đang có trong bộ nhớ; user chưa nạp sẽ đếm từ DB ở lần đọc sau
+    public void add(Long userId, long delta) {
+        afterCommit(() -> {
+            AtomicLong count = entries.get(userId);
+            if (count != null) {
+                count.updateAndGet(current -> Math.max(0, current + delta));
+            }
+        });
+    }
+
+    public void reset(Long userId) {
+        afterCommit(() -> {
+            AtomicLong count = entries.get(userId);
+            if (count != null) {
+                count.set(0);
+            }
+        });
+    }
+
+    // Không biết chính xác số UNREAD bị ảnh hưởng (vd: archive, delete): bỏ cache, lần sau đếm lại
+    public void evict(Long userId) {
+        afterCommit(() -> entries.remove(userId));
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
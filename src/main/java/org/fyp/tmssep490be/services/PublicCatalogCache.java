@@ -0,0 +1,93 @@
+package org.fyp.tmssep490be.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.utils.BoundedTtlCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.function.Supplier;
+
+/**
+ * Cache cho các endpoint public của landing page: mỗi khoá giữ một snapshot JSON đã serialize sẵn
+ * (bất biến) kèm ETag và Last-Modified, để trình duyệt nhận 304 và lượt truy cập lặp lại không chạm DB.
+ *
+ * PublicCatalogListener xoá cache khi branch, curriculum, subject, lớp hoặc ghi danh thay đổi;
+ * TTL là lưới an toàn cho các câu UPDATE hàng loạt không đi qua JPA. Số khoá có giới hạn vì khoá chi tiết
+ * môn học chứa id lấy từ URL public.
+ */
+@Component
+@Slf4j
+public class PublicCatalogCache {
+
+    private final ObjectMapper objectMapper;
+
+    private final BoundedTtlCache<String, Snapshot> snapshots;
+
+    public PublicCatalogCache(
+            ObjectMapper objectMapper,
+            @Value("${tms.public-catalog.ttl-seconds:600}") long ttlSeconds,
+            @Value("${tms.public-catalog.max-size:500}") int maxSize) {
+        this.objectMapper = objectMapper;
+        this.snapshots = new BoundedTtlCache<>(ttlSeconds * 1000, maxSize);
+    }
+
+    public record Snapshot(byte[] body, String etag, Instant lastModified) {
+    }
+
+    /**
+     * Snapshot của key; nạp bằng loader (kết quả được serialize thành JSON) khi chưa có hoặc đã hết hạn.
+     */
+    public Snapshot get(String key, Supplier<?> loader) {
+        return snapshots.get(key, () -> {
+            Snapshot fresh = serialize(loader.get());
+            log.debug("Rebuilt public catalog snapshot {} ({} bytes)", key, fresh.body().length);
+            return fresh;
+        });
+    }
+
+    /**
+     * Response 200 với body đã serialize; Spring tự trả 304 khi If-None-Match / If-Modified-Since khớp.
+     */
+    public ResponseEntity<byte[]> respond(String key, Supplier<?> loader) {
+        Snapshot snapshot = get(key, loader);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(CacheControl.noCache().cachePublic())
+                .eTag(snapshot.etag())
+                .lastModified(snapshot.lastModified())
+                .body(snapshot.body());
+    }
+
+    // Xoá ngay và khi transaction kết thúc, để không giữ snapshot nạp lại trước khi commit
+    public void invalidateAll() {
+        snapshots.clear();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    snapshots.clear();
+                }
+            });
+        }
+    }
+
+    private Snapshot serialize(Object value) {
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(value);
+            String etag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+            return new Snapshot(body, etag, Instant.now().truncatedTo(ChronoUnit.SECONDS));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize public catalog snapshot", e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.fyp.tmssep490be.services;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA listener cho các entity hiển thị trên landing page (branch, curriculum, subject, lớp, ghi danh):
+ * xoá PublicCatalogCache khi có thay đổi. Cache được lấy lười để tránh vòng phụ thuộc với EntityManagerFactory.
+ */
+@Component
+public class PublicCatalogListener {
+
+    private final ObjectProvider<PublicCatalogCache> catalogCache;
+
+    public PublicCatalogListener(ObjectProvider<PublicCatalogCache> catalogCache) {
+        this.catalogCache = catalogCache;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        PublicCatalogCache cache = catalogCache.getIfAvailable();
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+}
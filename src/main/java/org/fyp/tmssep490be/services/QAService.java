@@ -72,16 +72,11 @@ public class QAService {
                 .map(ClassEntity::getId)
                 .collect(Collectors.toList());
 
-        Map<Long, Double> attendanceRates = calculateAttendanceRatesForClasses(classIds);
-        Map<Long, Double> homeworkRates = calculateHomeworkRatesForClasses(classIds);
+        // Mọi chỉ số của cả trang trong một query gộp
+        Map<Long, ClassQAMetrics> metrics = loadQAMetrics(classIds);
 
         return classes.map(c -> {
-            long totalSessions = sessionRepository.countByClassEntityId(c.getId());
-            long completedSessions = sessionRepository.countByClassEntityIdAndStatus(c.getId(), SessionStatus.DONE);
-            long qaReportCount = qaReportRepository.countByClassEntityId(c.getId());
-
-            double attendanceRate = attendanceRates.getOrDefault(c.getId(), 0.0);
-            double homeworkRate = homeworkRates.getOrDefault(c.getId(), 0.0);
+            ClassQAMetrics m = metrics.getOrDefault(c.getId(), ClassQAMetrics.EMPTY);
 
             return QAClassListItemDTO.builder()
                     .classId(c.getId())
@@ -93,11 +88,11 @@ public class QAService {
                     .modality(c.getModality() != null ? c.getModality().name() : null)
                     .status(c.getStatus() != null ? c.getStatus().name() : null)
                     .startDate(c.getStartDate())
-                    .totalSessions((int) totalSessions)
-                    .completedSessions((int) completedSessions)
-                    .attendanceRate(attendanceRate)
-                    .homeworkCompletionRate(homeworkRate)
-                    .qaReportCount((int) qaReportCount)
+                    .totalSessions((int) m.totalSessions())
+                    .completedSessions((int) m.completedSessions())
+                    .attendanceRate(m.attendanceRate())
+                    .homeworkCompletionRate(m.homeworkRate())
+                    .qaReportCount((int) m.qaReportCount())
                     .build();
         });
     }
@@ -106,160 +101,35 @@ public class QAService {
         return userBranchesRepository.findBranchIdsByUserId(userId);
     }
 
-    private Map<Long, Double> calculateAttendanceRatesForClasses(List<Long> classIds) {
-        Map<Long, Double> rates = new HashMap<>();
-        if (classIds.isEmpty()) {
-            return rates;
-        }
-
-        try {
-            // Lấy tất cả session của các lớp
-            List<Session> sessions = new ArrayList<>();
-            for (Long classId : classIds) {
-                sessions.addAll(sessionRepository.findAllByClassIdOrderByDateAndTime(classId));
-            }
-            sessions = sessions.stream()
-                    .filter(s -> s.getStatus() != SessionStatus.CANCELLED)
-                    .toList();
-
-            List<Long> sessionIds = sessions.stream().map(Session::getId).toList();
-
-            // Map thông tin học bù
-            // makeupCompletedMap: sessionId -> studentId -> hasCompletedMakeup (PRESENT)
-            // makeupAttemptedMap: sessionId -> Set<studentId> (có attempt bất kể PRESENT hay ABSENT)
-            Map<Long, Map<Long, Boolean>> makeupCompletedMap = new HashMap<>();
-            Map<Long, Set<Long>> makeupAttemptedMap = new HashMap<>();
-            if (!sessionIds.isEmpty()) {
-                studentSessionRepository.findMakeupSessionsByOriginalSessionIds(sessionIds)
-                        .forEach(ss -> {
-                            Session originalSession = ss.getOriginalSession();
-                            if (originalSession == null || ss.getStudent() == null) {
-                                return;
-                            }
-                            Long originalSessionId = originalSession.getId();
-                            Long studentId = ss.getStudent().getId();
-                            if (originalSessionId == null || studentId == null) {
-                                return;
-                            }
-
-                            // Track attempt
-                            makeupAttemptedMap.computeIfAbsent(originalSessionId, k -> new HashSet<>()).add(studentId);
-                            
-                            // Track completion
-                            makeupCompletedMap
-                                    .computeIfAbsent(originalSessionId, k -> new HashMap<>())
-                                    .merge(
-                                            studentId,
-                                            ss.getAttendanceStatus() == AttendanceStatus.PRESENT,
-                                            (oldVal, newVal) -> oldVal || newVal
-                                    );
-                        });
-            }
-
-            // Tính tỷ lệ cho từng lớp
-            Map<Long, Long> presentCounts = new HashMap<>();
-            Map<Long, Long> totalCounts = new HashMap<>();
-            LocalDateTime now = LocalDateTime.now();
-
-            for (Session session : sessions) {
-                Long classId = session.getClassEntity().getId();
-                List<StudentSession> studentSessions = studentSessionRepository.findBySessionId(session.getId());
-
-                for (StudentSession ss : studentSessions) {
-                    // Bỏ qua học bù
-                    if (Boolean.TRUE.equals(ss.getIsMakeup())) {
-                        continue;
-                    }
-
-                    AttendanceStatus status = ss.getAttendanceStatus();
-                    if (status == AttendanceStatus.PRESENT) {
-                        presentCounts.put(classId, presentCounts.getOrDefault(classId, 0L) + 1);
-                        totalCounts.put(classId, totalCounts.getOrDefault(classId, 0L) + 1);
-                    } else if (status == AttendanceStatus.ABSENT) {
-                        totalCounts.put(classId, totalCounts.getOrDefault(classId, 0L) + 1);
-                    } else if (status == AttendanceStatus.EXCUSED) {
-                        Long sessionId = session.getId();
-                        Long studentId = ss.getStudent().getId();
-                        boolean hasMakeupAttempt = makeupAttemptedMap
-                                .getOrDefault(sessionId, Set.of())
-                                .contains(studentId);
-                        boolean hasMakeupCompleted = makeupCompletedMap
-                                .getOrDefault(sessionId, Map.of())
-                                .getOrDefault(studentId, false);
-
-                        if (hasMakeupCompleted) {
-                            // EXCUSED + makeup PRESENT -> tính như PRESENT
-                            presentCounts.put(classId, presentCounts.getOrDefault(classId, 0L) + 1);
-                            totalCounts.put(classId, totalCounts.getOrDefault(classId, 0L) + 1);
-                        } else if (hasMakeupAttempt) {
-                            // EXCUSED + makeup ABSENT -> tính vào mẫu số
-                            totalCounts.put(classId, totalCounts.getOrDefault(classId, 0L) + 1);
-                        } else {
-                            // Check deadline
-                            LocalDate sessionDate = session.getDate();
-                            LocalDateTime sessionEndDateTime;
-                            if (session.getTimeSlotTemplate() != null && session.getTimeSlotTemplate().getEndTime() != null) {
-                                java.time.LocalTime endTime = session.getTimeSlotTemplate().getEndTime();
-                                sessionEndDateTime = LocalDateTime.of(sessionDate, endTime);
-                            } else {
-                                sessionEndDateTime = LocalDateTime.of(sessionDate, java.time.LocalTime.MAX);
-                            }
-
-                            if (now.isAfter(sessionEndDateTime)) {
-                                // Qua deadline + không makeup -> tính vào mẫu số
-                                totalCounts.put(classId, totalCounts.getOrDefault(classId, 0L) + 1);
-                            }
-                        }
-                    }
-                }
-            }
-
-            for (Long classId : classIds) {
-                long presentCount = presentCounts.getOrDefault(classId, 0L);
-                long totalCount = totalCounts.getOrDefault(classId, 0L);
-                rates.put(classId, totalCount > 0 ? (presentCount * 100.0) / totalCount : 0.0);
-            }
-        } catch (Exception e) {
-            log.error("Error calculating attendance rates for classes {}: {}", classIds, e.getMessage());
-            classIds.forEach(classId -> rates.put(classId, 0.0));
-        }
-
-        return rates;
+    private record ClassQAMetrics(long totalSessions, long completedSessions, long qaReportCount,
+                                  double attendanceRate, double homeworkRate) {
+        static final ClassQAMetrics EMPTY = new ClassQAMetrics(0, 0, 0, 0.0, 0.0);
     }
 
-    private Map<Long, Double> calculateHomeworkRatesForClasses(List<Long> classIds) {
-        Map<Long, Double> rates = new HashMap<>();
+    private Map<Long, ClassQAMetrics> loadQAMetrics(List<Long> classIds) {
+        Map<Long, ClassQAMetrics> metrics = new HashMap<>();
         if (classIds.isEmpty()) {
-            return rates;
+            return metrics;
         }
 
         try {
-            List<Object[]> data = studentSessionRepository.getHomeworkSummaryByClassIds(classIds);
-            Map<Long, Long> completedCounts = new HashMap<>();
-            Map<Long, Long> totalCounts = new HashMap<>();
-
-            for (Object[] row : data) {
-                Long classId = (Long) row[0];
-                HomeworkStatus status = (HomeworkStatus) row[1];
-                Long count = (Long) row[2];
-
-                totalCounts.put(classId, totalCounts.getOrDefault(classId, 0L) + count);
-                if (status == HomeworkStatus.COMPLETED) {
-                    completedCounts.put(classId, completedCounts.getOrDefault(classId, 0L) + count);
-                }
-            }
-
-            for (Long classId : classIds) {
-                long completedCount = completedCounts.getOrDefault(classId, 0L);
-                long totalCount = totalCounts.getOrDefault(classId, 0L);
-                rates.put(classId, totalCount > 0 ? (completedCount * 100.0) / totalCount : 0.0);
+            for (Object[] row : classRepository.findQAMetricsByClassIds(classIds, LocalDateTime.now())) {
+                long presentCount = ((Number) row[4]).longValue();
+                long attendanceTotal = ((Number) row[5]).longValue();
+                long homeworkCompleted = ((Number) row[6]).longValue();
+                long homeworkTotal = ((Number) row[7]).longValue();
+                metrics.put(((Number) row[0]).longValue(), new ClassQAMetrics(
+                        ((Number) row[1]).longValue(),
+                        ((Number) row[2]).longValue(),
+                        ((Number) row[3]).longValue(),
+                        attendanceTotal > 0 ? (presentCount * 100.0) / attendanceTotal : 0.0,
+                        homeworkTotal > 0 ? (homeworkCompleted * 100.0) / homeworkTotal : 0.0));
             }
         } catch (Exception e) {
-            log.error("Error calculating homework rates for classes {}: {}", classIds, e.getMessage());
-            classIds.forEach(classId -> rates.put(classId, 0.0));
+            log.error("Error loading QA metrics for classes {}: {}", classIds, e.getMessage());
         }
 
-        return rates;
+        return metrics;
     }
 
     @Transactional(readOnly = true)
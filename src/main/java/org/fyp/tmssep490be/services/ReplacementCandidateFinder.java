@@ -0,0 +1,139 @@
+package org.fyp.tmssep490be.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.dtos.teacherrequest.ReplacementCandidateDTO;
+import org.fyp.tmssep490be.dtos.teacherrequest.ReplacementCandidateSkillDTO;
+import org.fyp.tmssep490be.entities.Session;
+import org.fyp.tmssep490be.entities.TimeSlotTemplate;
+import org.fyp.tmssep490be.entities.enums.Skill;
+import org.fyp.tmssep490be.repositories.TeacherRepository;
+import org.fyp.tmssep490be.repositories.TeacherSkillRepository;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Tìm giáo viên dạy thay cho một buổi học: lọc branch, trùng lịch, chấm điểm skill và phân trang
+ * trong một query, sau đó nạp skill của các giáo viên trong trang bằng một query nữa.
+ * Thứ tự giữ như trước: có skill khớp với buổi học, nhiều skill hơn, rồi theo tên.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReplacementCandidateFinder {
+
+    // Giá trị giữ chỗ cho IN (...) khi buổi học không yêu cầu skill nào
+    private static final String NO_SKILL = "";
+
+    private final TeacherRepository teacherRepository;
+    private final TeacherSkillRepository teacherSkillRepository;
+
+    /**
+     * @param page trang (bắt đầu từ 0)
+     * @param size số giáo viên mỗi trang; <= 0 là lấy tất cả
+     */
+    public List<ReplacementCandidateDTO> findCandidates(Session session, Collection<Long> branchIds,
+            Collection<Long> excludedTeacherIds, Set<Skill> requiredSkills, int page, int size) {
+        if (branchIds.isEmpty()) {
+            return List.of();
+        }
+
+        LocalDate sessionDate = session.getDate();
+        TimeSlotTemplate timeSlot = session.getTimeSlotTemplate();
+        // Không có ngày/khung giờ thì không kiểm tra trùng lịch (giá trị giữ chỗ không được dùng)
+        boolean checkConflict = sessionDate != null && timeSlot != null
+                && timeSlot.getStartTime() != null && timeSlot.getEndTime() != null;
+
+        List<String> skillNames = requiredSkills.isEmpty()
+                ? List.of(NO_SKILL)
+                : requiredSkills.stream().map(Enum::name).toList();
+        List<Long> excluded = excludedTeacherIds.isEmpty() ? List.of(-1L) : List.copyOf(excludedTeacherIds);
+        int limit = size > 0 ? size : Integer.MAX_VALUE;
+        int offset = size > 0 ? Math.max(page, 0) * size : 0;
+
+        List<Object[]> rows = teacherRepository.findReplacementCandidateRows(
+                branchIds,
+                excluded,
+                skillNames,
+                checkConflict,
+                checkConflict ? sessionDate : LocalDate.EPOCH,
+                checkConflict ? timeSlot.getStartTime() : LocalTime.MIN,
+                checkConflict ? timeSlot.getEndTime() : LocalTime.MIN,
+                session.getId(),
+                limit,
+                offset);
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+
+        List<Long> teacherIds = rows.stream().map(row -> ((Number) row[0]).longValue()).toList();
+        Map<Long, List<Object[]>> skillsByTeacher = new HashMap<>();
+        for (Object[] skillRow : teacherSkillRepository.findSkillDetailsByTeacherIds(teacherIds)) {
+            skillsByTeacher.computeIfAbsent(((Number) skillRow[0]).longValue(), k -> new ArrayList<>()).add(skillRow);
+        }
+
+        List<ReplacementCandidateDTO> candidates = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            Long teacherId = ((Number) row[0]).longValue();
+            int matchedSkills = ((Number) row[6]).intValue();
+            candidates.add(toCandidateDTO(row, skillsByTeacher.getOrDefault(teacherId, List.of()),
+                    requiredSkills.isEmpty() ? 0.0 : (double) matchedSkills / requiredSkills.size()));
+        }
+        log.debug("Found {} replacement candidates for session {} (page {}, size {})",
+                candidates.size(), session.getId(), page, size);
+        return candidates;
+    }
+
+    // row: [teacher_id, full_name, email, phone, note, skill_count, matched_skill_count]
+    // skillRows: [teacherId, skill, specialization, level, language]
+    private ReplacementCandidateDTO toCandidateDTO(Object[] row, List<Object[]> skillRows, double matchScore) {
+        List<ReplacementCandidateSkillDTO> skills = skillRows.stream()
+                .map(skillRow -> {
+                    Skill skill = (Skill) skillRow[1];
+                    String level = skillRow[3] != null ? skillRow[3].toString() : null;
+                    return ReplacementCandidateSkillDTO.builder()
+                            .id(skill != null ? (long) skill.ordinal() : null)
+                            .name(skill != null ? skill.name() : null)
+                            .skillName(skill != null ? skill.name() : null)
+                            .level(level)
+                            .skillLevel(level)
+                            .description((String) skillRow[2])
+                            .build();
+                })
+                .collect(Collectors.toList());
+
+        String skillSummary = skills.stream()
+                .map(ReplacementCandidateSkillDTO::getName)
+                .filter(name -> name != null && !name.isEmpty())
+                .collect(Collectors.joining(", "));
+
+        String specialization = skillRows.stream()
+                .map(skillRow -> (String) skillRow[2])
+                .filter(s -> s != null && !s.isEmpty())
+                .findFirst()
+                .orElse(null);
+
+        String fullName = (String) row[1];
+        return ReplacementCandidateDTO.builder()
+                .teacherId(((Number) row[0]).longValue())
+                .fullName(fullName)
+                .displayName(fullName)
+                .email((String) row[2])
+                .phone((String) row[3])
+                .note((String) row[4])
+                .skills(skills)
+                .skillSummary(skillSummary)
+                .specialization(specialization)
+                .matchScore(matchScore)
+                .build();
+    }
+}
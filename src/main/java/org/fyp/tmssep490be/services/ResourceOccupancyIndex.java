@@ -0,0 +1,186 @@
+package org.fyp.tmssep490be.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.repositories.SessionResourceRepository;
+import org.fyp.tmssep490be.utils.NativeRowUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chỉ mục lịch chiếm dụng tài nguyên (phòng/phòng ảo) theo chi nhánh:
+ * resource -> ngày -> các khung giờ đã có buổi học PLANNED/ONGOING dùng tài nguyên đó.
+ *
+ * Mỗi chi nhánh được nạp bằng một query (từ ngày coverageFrom trở đi) và giữ trong bộ nhớ;
+ * ResourceOccupancyListener đánh dấu chi nhánh cần nạp lại khi Session/SessionResource thay đổi.
+ * Các thay đổi bằng bulk query (không qua entity) phải tự gọi {@link #invalidateBranch(Long)}.
+ * TTL giới hạn độ lệch nếu dữ liệu bị sửa ở instance khác.
+ */
+@Component
+@Slf4j
+public class ResourceOccupancyIndex {
+
+    private static final List<String> OCCUPYING_STATUSES = List.of("PLANNED", "ONGOING");
+
+    private final SessionResourceRepository sessionResourceRepository;
+    private final long ttlMillis;
+    private final int lookbackDays;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final Map<Long, BranchOccupancy> snapshots = new ConcurrentHashMap<>();
+    private final Map<Long, Long> branchInvalidatedAt = new ConcurrentHashMap<>();
+    private final Map<Long, Long> branchByResource = new ConcurrentHashMap<>();
+    private final Map<Long, Long> branchByClass = new ConcurrentHashMap<>();
+    private volatile long allInvalidatedAt;
+
+    public ResourceOccupancyIndex(
+            SessionResourceRepository sessionResourceRepository,
+            @Value("${tms.resource-occupancy.ttl-seconds:300}") long ttlSeconds,
+            @Value("${tms.resource-occupancy.lookback-days:7}") int lookbackDays) {
+        this.sessionResourceRepository = sessionResourceRepository;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.lookbackDays = lookbackDays;
+    }
+
+    // Một buổi đã đặt tài nguyên
+    public record Booking(Long classId, LocalTime startTime, LocalTime endTime) {
+    }
+
+    // Một khung giờ cần kiểm tra (buổi học của lớp đang xếp phòng)
+    public record Slot(LocalDate date, LocalTime startTime, LocalTime endTime) {
+    }
+
+    /**
+     * Ảnh chụp lịch chiếm dụng của một chi nhánh, chỉ đọc sau khi dựng xong.
+     */
+    public static final class BranchOccupancy {
+
+        private final LocalDate coverageFrom;
+        private final long version;
+        private final long builtAt;
+        private final Map<Long, Map<LocalDate, List<Booking>>> bookingsByResource = new HashMap<>();
+
+        private BranchOccupancy(LocalDate coverageFrom, long version) {
+            this.coverageFrom = coverageFrom;
+            this.version = version;
+            this.builtAt = System.currentTimeMillis();
+        }
+
+        private void add(Long resourceId, LocalDate date, Booking booking) {
+            bookingsByResource
+                    .computeIfAbsent(resourceId, k -> new HashMap<>())
+                    .computeIfAbsent(date, k -> new ArrayList<>())
+                    .add(booking);
+        }
+
+        // Chỉ mục chỉ chứa dữ liệu từ coverageFrom; ngày sớm hơn phải hỏi DB
+        public boolean covers(Collection<Slot> slots) {
+            return slots.stream().noneMatch(slot -> slot.date().isBefore(coverageFrom));
+        }
+
+        // Số khung giờ trong slots bị lớp khác (khác excludeClassId) dùng tài nguyên này trùng giờ
+        public int countConflicts(Long resourceId, Collection<Slot> slots, Long excludeClassId) {
+            Map<LocalDate, List<Booking>> byDate = bookingsByResource.get(resourceId);
+            if (byDate == null) {
+                return 0;
+            }
+            int conflicts = 0;
+            for (Slot slot : slots) {
+                for (Booking booking : byDate.getOrDefault(slot.date(), List.of())) {
+                    if (!booking.classId().equals(excludeClassId)
+                            && booking.startTime().isBefore(slot.endTime())
+                            && slot.startTime().isBefore(booking.endTime())) {
+                        conflicts++;
+                        break;
+                    }
+                }
+            }
+            return conflicts;
+        }
+    }
+
+    public BranchOccupancy forBranch(Long branchId) {
+        BranchOccupancy snapshot = snapshots.get(branchId);
+        if (snapshot != null && isFresh(branchId, snapshot)) {
+            return snapshot;
+        }
+
+        // Lấy version trước khi query: invalidation xảy ra trong lúc nạp sẽ làm snapshot này cũ ngay
+        long version = clock.incrementAndGet();
+        LocalDate coverageFrom = LocalDate.now().minusDays(lookbackDays);
+        BranchOccupancy fresh = new BranchOccupancy(coverageFrom, version);
+
+        List<Object[]> rows = sessionResourceRepository.findBranchResourceBookings(
+                branchId, coverageFrom, OCCUPYING_STATUSES);
+        for (Object[] row : rows) {
+            Long resourceId = ((Number) row[0]).longValue();
+            Long classId = ((Number) row[4]).longValue();
+            fresh.add(resourceId, NativeRowUtils.toLocalDate(row[1]),
+                    new Booking(classId, NativeRowUtils.toLocalTime(row[2]), NativeRowUtils.toLocalTime(row[3])));
+            branchByResource.put(resourceId, branchId);
+            branchByClass.put(classId, branchId);
+        }
+        snapshots.put(branchId, fresh);
+        log.debug("Loaded resource occupancy for branch {}: {} bookings from {}", branchId, rows.size(), coverageFrom);
+        return fresh;
+    }
+
+    // Đánh dấu ngay và khi transaction kết thúc (commit hoặc rollback), để không giữ lại
+    // snapshot nạp trong lúc transaction còn dang dở
+    public void invalidateBranch(Long branchId) {
+        if (branchId == null) {
+            invalidateAll();
+            return;
+        }
+        runNowAndAfterCommit(() -> branchInvalidatedAt.put(branchId, clock.incrementAndGet()));
+    }
+
+    public void invalidateResource(Long resourceId) {
+        Long branchId = resourceId != null ? branchByResource.get(resourceId) : null;
+        invalidateBranch(branchId);
+    }
+
+    // Lớp chưa có trong snapshot nào (chưa biết chi nhánh) thì bỏ toàn bộ
+    public void invalidateClass(Long classId) {
+        Long branchId = classId != null ? branchByClass.get(classId) : null;
+        invalidateBranch(branchId);
+    }
+
+    public void invalidateAll() {
+        runNowAndAfterCommit(() -> allInvalidatedAt = clock.incrementAndGet());
+    }
+
+    private boolean isFresh(Long branchId, BranchOccupancy snapshot) {
+        if (snapshot.builtAt + ttlMillis < System.currentTimeMillis()) {
+            return false;
+        }
+        if (!snapshot.coverageFrom.equals(LocalDate.now().minusDays(lookbackDays))) {
+            return false;
+        }
+        long invalidatedAt = Math.max(allInvalidatedAt, branchInvalidatedAt.getOrDefault(branchId, 0L));
+        return snapshot.version > invalidatedAt;
+    }
+
+    private void runNowAndAfterCommit(Runnable action) {
+        action.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.run();
+                }
+            });
+        }
+    }
+}
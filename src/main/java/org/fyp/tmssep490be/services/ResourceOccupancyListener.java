@@ -0,0 +1,60 @@
+package org.fyp.tmssep490be.services;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.entities.ClassEntity;
+import org.fyp.tmssep490be.entities.Session;
+import org.fyp.tmssep490be.entities.SessionResource;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA listener cho Session và SessionResource: đánh dấu ResourceOccupancyIndex của chi nhánh liên quan
+ * cần nạp lại. Hibernate lấy listener từ Spring context; index được lấy lười để tránh vòng phụ thuộc
+ * với EntityManagerFactory. Listener không khởi tạo lazy association nào.
+ */
+@Component
+@Slf4j
+public class ResourceOccupancyListener {
+
+    private final ObjectProvider<ResourceOccupancyIndex> occupancyIndex;
+
+    public ResourceOccupancyListener(ObjectProvider<ResourceOccupancyIndex> occupancyIndex) {
+        this.occupancyIndex = occupancyIndex;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        ResourceOccupancyIndex index = occupancyIndex.getIfAvailable();
+        if (index == null) {
+            return;
+        }
+        try {
+            if (entity instanceof SessionResource sessionResource) {
+                index.invalidateResource(sessionResource.getId() != null ? sessionResource.getId().getResourceId() : null);
+            } else if (entity instanceof Session session) {
+                invalidateClassBranch(index, session.getClassEntity());
+            }
+        } catch (Exception e) {
+            log.warn("Could not resolve branch for occupancy invalidation, invalidating all: {}", e.getMessage());
+            index.invalidateAll();
+        }
+    }
+
+    // Listener chạy trong lúc flush: không khởi tạo proxy của lớp. Lớp đã nạp thì đọc id chi nhánh
+    // (id của proxy branch không cần nạp), còn lại tra chi nhánh theo id lớp trong index
+    private void invalidateClassBranch(ResourceOccupancyIndex index, ClassEntity classEntity) {
+        if (classEntity == null) {
+            index.invalidateAll();
+        } else if (Hibernate.isInitialized(classEntity) && classEntity.getBranch() != null) {
+            index.invalidateBranch(classEntity.getBranch().getId());
+        } else {
+            index.invalidateClass(classEntity.getId());
+        }
+    }
+}
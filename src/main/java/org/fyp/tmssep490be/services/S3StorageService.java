@@ -2,25 +2,41 @@ package org.fyp.tmssep490be.services;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.exceptions.CustomException;
+import org.fyp.tmssep490be.exceptions.ErrorCode;
+import org.fyp.tmssep490be.utils.BoundedTtlCache;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.S3CrtAsyncClientBuilder;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 import software.amazon.awssdk.transfer.s3.S3TransferManager;
-import software.amazon.awssdk.transfer.s3.model.CompletedFileUpload;
-import software.amazon.awssdk.transfer.s3.model.UploadFileRequest;
+import software.amazon.awssdk.transfer.s3.model.UploadRequest;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 @RequiredArgsConstructor
@@ -39,23 +55,73 @@ public class S3StorageService {
     @Value("${aws.s3.secret-key}")
     private String secretKey;
 
+    // Endpoint thay thế (MinIO, S3 giả lập khi test); để trống là dùng AWS
+    @Value("${aws.s3.endpoint:}")
+    private String endpoint;
+
+    @Value("${aws.s3.upload-threads:8}")
+    private int uploadThreads;
+
+    // Thời hạn chữ ký của presigned URL
+    @Value("${aws.s3.presign-duration-minutes:60}")
+    private long presignDurationMinutes;
+
+    // URL đã ký được dùng lại trong khoảng này (phải ngắn hơn thời hạn chữ ký)
+    @Value("${aws.s3.presign-cache-ttl-seconds:300}")
+    private long presignCacheTtlSeconds;
+
+    @Value("${aws.s3.presign-cache-max-size:5000}")
+    private int presignCacheMaxSize;
+
+    // Số URL tối đa trong một lần ký theo lô (POST /upload/presigned/batch)
+    @Value("${aws.s3.presign-batch-max-size:200}")
+    private int presignBatchMaxSize;
+
     private S3TransferManager transferManager;
     private S3AsyncClient s3AsyncClient;
+    private S3Presigner presigner;
+    // Đọc InputStream của file upload và đẩy vào multipart upload
+    private ExecutorService uploadExecutor;
+
+    // object key -> presigned URL; không giữ lâu hơn nửa thời hạn chữ ký
+    private BoundedTtlCache<String, String> presignedUrlCache;
 
     @PostConstruct
     public void init() {
+        StaticCredentialsProvider credentialsProvider = StaticCredentialsProvider.create(
+                AwsBasicCredentials.create(accessKey, secretKey));
+        boolean customEndpoint = endpoint != null && !endpoint.isBlank();
+
         // Create CRT-based S3 Async Client for high performance
-        this.s3AsyncClient = S3AsyncClient.crtBuilder()
+        S3CrtAsyncClientBuilder clientBuilder = S3AsyncClient.crtBuilder()
                 .region(Region.of(region))
-                .credentialsProvider(StaticCredentialsProvider.create(
-                        AwsBasicCredentials.create(accessKey, secretKey)))
-                .maxConcurrency(100)
-                .build();
+                .credentialsProvider(credentialsProvider)
+                .maxConcurrency(100);
+        if (customEndpoint) {
+            clientBuilder.endpointOverride(URI.create(endpoint)).forcePathStyle(true);
+        }
+        this.s3AsyncClient = clientBuilder.build();
 
         // Create Transfer Manager using the CRT client
         this.transferManager = S3TransferManager.builder()
                 .s3Client(s3AsyncClient)
                 .build();
+
+        // Presigner dùng chung (thread-safe), không tạo mới mỗi lần ký URL
+        S3Presigner.Builder presignerBuilder = S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentialsProvider);
+        if (customEndpoint) {
+            presignerBuilder.endpointOverride(URI.create(endpoint))
+                    .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build());
+        }
+        this.presigner = presignerBuilder.build();
+
+        this.uploadExecutor = Executors.newFixedThreadPool(Math.max(uploadThreads, 1));
+
+        this.presignedUrlCache = new BoundedTtlCache<>(
+                Math.min(presignCacheTtlSeconds * 1000, Duration.ofMinutes(presignDurationMinutes).toMillis() / 2),
+                presignCacheMaxSize);
     }
 
     @PreDestroy
@@ -66,73 +132,92 @@ public class S3StorageService {
         if (this.s3AsyncClient != null) {
             this.s3AsyncClient.close();
         }
+        if (this.presigner != null) {
+            this.presigner.close();
+        }
+        if (this.uploadExecutor != null) {
+            this.uploadExecutor.shutdown();
+        }
     }
 
-    public String uploadFile(MultipartFile file) {
+    /**
+     * Stream nội dung file thẳng lên S3 (multipart upload), không chép ra file tạm.
+     * Future hoàn thành với public URL của object khi upload xong, không giữ thread của request.
+     */
+    public CompletableFuture<String> uploadFileAsync(MultipartFile file) {
         String fileName = UUID.randomUUID().toString() + "_" + file.getOriginalFilename();
-        Path tempFile = null;
 
+        InputStream inputStream;
         try {
-            // Create a temporary file
-            tempFile = Files.createTempFile("s3-upload-", fileName);
-            file.transferTo(tempFile.toFile());
-
-            String contentType = file.getContentType();
-            if (contentType == null || contentType.equals("application/octet-stream")) {
-                String lowerCaseName = fileName.toLowerCase();
-                if (lowerCaseName.endsWith(".mp4"))
-                    contentType = "video/mp4";
-                else if (lowerCaseName.endsWith(".mov"))
-                    contentType = "video/quicktime";
-                else if (lowerCaseName.endsWith(".webm"))
-                    contentType = "video/webm";
-                else if (lowerCaseName.endsWith(".avi"))
-                    contentType = "video/x-msvideo";
-                else if (lowerCaseName.endsWith(".mkv"))
-                    contentType = "video/x-matroska";
-                else if (lowerCaseName.endsWith(".pdf"))
-                    contentType = "application/pdf";
-                else if (lowerCaseName.endsWith(".jpg") || lowerCaseName.endsWith(".jpeg"))
-                    contentType = "image/jpeg";
-                else if (lowerCaseName.endsWith(".png"))
-                    contentType = "image/png";
-            }
+            inputStream = file.getInputStream();
+        } catch (IOException e) {
+            log.error("Error opening upload stream: {} - {}", e.getClass().getSimpleName(), e.getMessage(), e);
+            return CompletableFuture.failedFuture(
+                    new RuntimeException("Failed to prepare file for upload: " + e.getMessage(), e));
+        }
 
-            PutObjectRequest putOb = PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(fileName)
-                    .contentType(contentType)
-                    .build();
+        PutObjectRequest putOb = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(fileName)
+                .contentType(resolveContentType(file.getContentType(), fileName))
+                .contentLength(file.getSize())
+                .build();
 
-            UploadFileRequest uploadFileRequest = UploadFileRequest.builder()
-                    .putObjectRequest(putOb)
-                    .source(tempFile.toFile())
-                    .build();
+        UploadRequest uploadRequest = UploadRequest.builder()
+                .putObjectRequest(putOb)
+                .requestBody(AsyncRequestBody.fromInputStream(inputStream, file.getSize(), uploadExecutor))
+                .build();
 
-            // Initiate the upload
-            CompletedFileUpload completedUpload = transferManager.uploadFile(uploadFileRequest).completionFuture()
-                    .join();
+        CompletableFuture<String> result;
+        try {
+            result = transferManager.upload(uploadRequest).completionFuture()
+                    .thenApply(completedUpload -> {
+                        log.info("File uploaded successfully. ETag: {}", completedUpload.response().eTag());
+                        // Construct public URL
+                        return String.format("https://%s.s3.%s.amazonaws.com/%s", bucketName, region, fileName);
+                    });
+        } catch (Exception e) {
+            result = CompletableFuture.failedFuture(e);
+        }
 
-            log.info("File uploaded successfully. ETag: {}", completedUpload.response().eTag());
+        return result
+                .whenComplete((url, error) -> closeQuietly(inputStream))
+                .exceptionally(error -> {
+                    Throwable cause = error.getCause() != null ? error.getCause() : error;
+                    log.error("Error uploading file to S3: {} - {}", cause.getClass().getSimpleName(), cause.getMessage(), cause);
+                    throw new RuntimeException("Failed to upload file to S3: " + cause.getMessage(), cause);
+                });
+    }
 
-            // Construct public URL
-            return String.format("https://%s.s3.%s.amazonaws.com/%s", bucketName, region, fileName);
+    private String resolveContentType(String contentType, String fileName) {
+        if (contentType != null && !contentType.equals("application/octet-stream")) {
+            return contentType;
+        }
+        String lowerCaseName = fileName.toLowerCase();
+        if (lowerCaseName.endsWith(".mp4"))
+            return "video/mp4";
+        else if (lowerCaseName.endsWith(".mov"))
+            return "video/quicktime";
+        else if (lowerCaseName.endsWith(".webm"))
+            return "video/webm";
+        else if (lowerCaseName.endsWith(".avi"))
+            return "video/x-msvideo";
+        else if (lowerCaseName.endsWith(".mkv"))
+            return "video/x-matroska";
+        else if (lowerCaseName.endsWith(".pdf"))
+            return "application/pdf";
+        else if (lowerCaseName.endsWith(".jpg") || lowerCaseName.endsWith(".jpeg"))
+            return "image/jpeg";
+        else if (lowerCaseName.endsWith(".png"))
+            return "image/png";
+        return contentType;
+    }
 
+    private void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
         } catch (IOException e) {
-            log.error("Error creating temp file or transferring content: {} - {}", e.getClass().getSimpleName(), e.getMessage(), e);
-            throw new RuntimeException("Failed to prepare file for upload: " + e.getMessage(), e);
-        } catch (Exception e) {
-            log.error("Error uploading file to S3: {} - {}", e.getClass().getSimpleName(), e.getMessage(), e);
-            throw new RuntimeException("Failed to upload file to S3: " + e.getMessage(), e);
-        } finally {
-            // Clean up temporary file
-            if (tempFile != null) {
-                try {
-                    Files.deleteIfExists(tempFile);
-                } catch (IOException e) {
-                    log.warn("Failed to delete temporary file: {}", tempFile, e);
-                }
-            }
+            log.warn("Failed to close upload stream", e);
         }
     }
 
@@ -159,6 +244,7 @@ public class S3StorageService {
                     .build();
 
             s3AsyncClient.deleteObject(deleteObjectRequest).join();
+            presignedUrlCache.remove(key);
             log.info("File deleted successfully from S3: {}", key);
 
         } catch (Exception e) {
@@ -173,51 +259,81 @@ public class S3StorageService {
         }
 
         try {
-            String key;
-            String prefix = String.format("https://%s.s3.%s.amazonaws.com/", bucketName, region);
-
-            // Check if input is already a full S3 URL or just a key
-            if (fileUrl.startsWith(prefix)) {
-                // It's a full URL, extract the key
-                key = fileUrl.substring(prefix.length());
-            } else if (fileUrl.startsWith("http://") || fileUrl.startsWith("https://")) {
+            String key = resolvePresignKey(fileUrl);
+            if (key == null) {
                 // It's an external URL, return as-is
                 return fileUrl;
-            } else {
-                // It's just a key (e.g., "uuid_filename.ext"), use it directly
-                key = fileUrl;
-            }
-
-            try (software.amazon.awssdk.services.s3.presigner.S3Presigner presigner = software.amazon.awssdk.services.s3.presigner.S3Presigner
-                    .builder()
-                    .region(Region.of(region))
-                    .credentialsProvider(StaticCredentialsProvider.create(
-                            AwsBasicCredentials.create(accessKey, secretKey)))
-                    .build()) {
-
-                software.amazon.awssdk.services.s3.model.GetObjectRequest getObjectRequest = software.amazon.awssdk.services.s3.model.GetObjectRequest
-                        .builder()
-                        .bucket(bucketName)
-                        .key(key)
-                        .responseContentDisposition("inline")
-                        .build();
-
-                software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest presignRequest = software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest
-                        .builder()
-                        .signatureDuration(java.time.Duration.ofMinutes(60))
-                        .getObjectRequest(getObjectRequest)
-                        .build();
-
-                software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest presignedRequest = presigner
-                        .presignGetObject(presignRequest);
-                return presignedRequest.url().toString();
             }
+            return presignKey(key);
         } catch (Exception e) {
             log.error("Error generating pre-signed URL for: {}", fileUrl, e);
             return fileUrl; // Fallback to original URL
         }
     }
 
+    /**
+     * Ký URL cho nhiều file một lần (vd. cây tài liệu của một môn học). Mỗi key chỉ ký một lần,
+     * kết quả giữ thứ tự đầu vào: URL gốc -> presigned URL.
+     */
+    public Map<String, String> generatePresignedUrls(Collection<String> fileUrls) {
+        if (fileUrls.size() > presignBatchMaxSize) {
+            throw new CustomException(ErrorCode.INVALID_INPUT,
+                    "Chỉ được lấy tối đa " + presignBatchMaxSize + " URL mỗi lần");
+        }
+        Map<String, String> result = new LinkedHashMap<>();
+        Map<String, String> signedByKey = new HashMap<>();
+        for (String fileUrl : fileUrls) {
+            if (fileUrl == null || fileUrl.isEmpty() || result.containsKey(fileUrl)) {
+                continue;
+            }
+            try {
+                String key = resolvePresignKey(fileUrl);
+                result.put(fileUrl, key == null ? fileUrl : signedByKey.computeIfAbsent(key, this::presignKey));
+            } catch (Exception e) {
+                log.error("Error generating pre-signed URL for: {}", fileUrl, e);
+                result.put(fileUrl, fileUrl);
+            }
+        }
+        return result;
+    }
+
+    // Key của object cần ký; null nếu là URL ngoài S3 (trả nguyên)
+    private String resolvePresignKey(String fileUrl) {
+        String prefix = String.format("https://%s.s3.%s.amazonaws.com/", bucketName, region);
+
+        // Check if input is already a full S3 URL or just a key
+        if (fileUrl.startsWith(prefix)) {
+            // It's a full URL, extract the key
+            return fileUrl.substring(prefix.length());
+        } else if (fileUrl.startsWith("http://") || fileUrl.startsWith("https://")) {
+            return null;
+        }
+        // It's just a key (e.g., "uuid_filename.ext"), use it directly
+        return fileUrl;
+    }
+
+    private String presignKey(String key) {
+        String cached = presignedUrlCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .responseContentDisposition("inline")
+                .build();
+
+        GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
+                .signatureDuration(Duration.ofMinutes(presignDurationMinutes))
+                .getObjectRequest(getObjectRequest)
+                .build();
+
+        String url = presigner.presignGetObject(presignRequest).url().toString();
+        presignedUrlCache.put(key, url);
+        return url;
+    }
+
     public String extractKeyFromUrl(String fileUrl) {
         if (fileUrl == null || fileUrl.isEmpty()) {
             return null;
@@ -10,6 +10,7 @@ import org.fyp.tmssep490be.exceptions.CustomException;
 import org.fyp.tmssep490be.exceptions.ErrorCode;
 import org.fyp.tmssep490be.exceptions.ResourceNotFoundException;
 import org.fyp.tmssep490be.repositories.*;
+import org.fyp.tmssep490be.utils.NativeRowUtils;
 import org.fyp.tmssep490be.utils.ScheduleUtils;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -52,6 +53,8 @@ public class StudentRequestService {
     private final UserAccountRepository userAccountRepository;
     private final NotificationService notificationService;
     private final EmailService emailService;
+    private final MakeupCandidateIndex makeupCandidateIndex;
+    private final AttendanceMatrixEngine attendanceMatrixEngine;
 
     public Page<StudentRequestResponseDTO> getMyRequests(Long userId, RequestFilterDTO filter) {
         log.debug("Getting requests for student user {}", userId);
@@ -931,6 +934,10 @@ public class StudentRequestService {
         log.info("Created makeup StudentSession for student {} session {}", 
                 request.getStudent().getId(), request.getMakeupSession().getId());
 
+        // Ô học bù nằm trên ma trận điểm danh của lớp gốc (cờ học bù) và của lớp học bù
+        attendanceMatrixEngine.invalidate(request.getTargetSession().getClassEntity().getId());
+        attendanceMatrixEngine.invalidate(request.getMakeupSession().getClassEntity().getId());
+
         // 4. Update target session attendance: ABSENT -> EXCUSED (if not already EXCUSED)
         StudentSession.StudentSessionId targetSsId = new StudentSession.StudentSessionId(
                 request.getStudent().getId(),
@@ -1204,25 +1211,15 @@ public class StudentRequestService {
         LocalDate missedDate = targetSession.getDate();
         LocalDate endDate = missedDate.plusWeeks(MAKEUP_WEEKS_LIMIT);
         
-        List<Session> makeupOptions = sessionRepository.findMakeupSessionOptions(
-                targetSession.getSubjectSession().getId(),
-                targetSessionId,
+        List<MakeupCandidateIndex.Candidate> candidates = makeupCandidateIndex.candidates(
                 targetSession.getClassEntity().getBranch().getId(),
+                targetSession.getSubjectSession().getId(),
                 missedDate,
-                endDate
+                endDate,
+                targetSessionId
         );
 
-        List<MakeupOptionDTO> rankedOptions = makeupOptions.stream()
-                .map(session -> mapToMakeupOptionDTO(session, targetSession, studentId))
-                .filter(Objects::nonNull) // Filter out sessions with conflicts
-                .sorted((a, b) -> {
-                    // Primary: Sort by total score (higher is better)
-                    int scoreCompare = b.getMatchScore().getTotalScore().compareTo(a.getMatchScore().getTotalScore());
-                    if (scoreCompare != 0) return scoreCompare;
-                    // Secondary: If scores are equal, prefer earlier date (closer to today)
-                    return a.getDate().compareTo(b.getDate());
-                })
-                .collect(Collectors.toList());
+        List<MakeupOptionDTO> rankedOptions = rankMakeupOptions(candidates, targetSession, studentId, missedDate, endDate);
 
         // Build target session info
         MakeupOptionsResponseDTO.TargetSessionInfo targetInfo = MakeupOptionsResponseDTO.TargetSessionInfo.builder()
@@ -1354,15 +1351,48 @@ public class StudentRequestService {
                 .build();
     }
 
-    private MakeupOptionDTO mapToMakeupOptionDTO(Session session, Session targetSession, Long studentId) {
-        // Check schedule conflict
-        List<Session> conflicts = sessionRepository.findSessionsForStudentByDate(studentId, session.getDate());
-        for (Session conflict : conflicts) {
-            if (hasTimeOverlap(conflict.getTimeSlotTemplate(), session.getTimeSlotTemplate())) {
-                return null; // Filter out conflicting sessions
-            }
+    /**
+     * Lọc trùng lịch trong bộ nhớ rồi chấm điểm các buổi ứng viên: lịch học của học viên,
+     * sĩ số và chi tiết buổi học mỗi thứ một query, không phụ thuộc số ứng viên.
+     */
+    private List<MakeupOptionDTO> rankMakeupOptions(List<MakeupCandidateIndex.Candidate> candidates,
+            Session targetSession, Long studentId, LocalDate fromDate, LocalDate toDate) {
+        if (candidates.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // Bỏ các buổi trùng lịch học hiện tại của học viên
+        List<Object[]> timetable = sessionRepository.findStudentTimetableRows(studentId, fromDate, toDate);
+        List<Long> freeSessionIds = candidates.stream()
+                .filter(candidate -> timetable.stream().noneMatch(row -> candidate.overlaps(
+                        NativeRowUtils.toLocalDate(row[0]),
+                        NativeRowUtils.toLocalTime(row[1]),
+                        NativeRowUtils.toLocalTime(row[2]))))
+                .map(MakeupCandidateIndex.Candidate::sessionId)
+                .toList();
+        if (freeSessionIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, Long> enrolledBySession = new HashMap<>();
+        for (Object[] row : studentSessionRepository.countBySessionIds(freeSessionIds)) {
+            enrolledBySession.put(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
         }
 
+        return sessionRepository.findMakeupOptionDetails(freeSessionIds).stream()
+                .map(session -> mapToMakeupOptionDTO(session, targetSession,
+                        enrolledBySession.getOrDefault(session.getId(), 0L)))
+                .sorted((a, b) -> {
+                    // Primary: Sort by total score (higher is better)
+                    int scoreCompare = b.getMatchScore().getTotalScore().compareTo(a.getMatchScore().getTotalScore());
+                    if (scoreCompare != 0) return scoreCompare;
+                    // Secondary: If scores are equal, prefer earlier date (closer to today)
+                    return a.getDate().compareTo(b.getDate());
+                })
+                .collect(Collectors.toList());
+    }
+
+    private MakeupOptionDTO mapToMakeupOptionDTO(Session session, Session targetSession, long enrolled) {
         // Calculate match score
         boolean modalityMatch = session.getClassEntity().getModality()
                 .equals(targetSession.getClassEntity().getModality());
@@ -1378,7 +1408,6 @@ public class StudentRequestService {
         score += dateProximityScore;
 
         // Capacity bonus
-        long enrolled = studentSessionRepository.countBySessionId(session.getId());
         int availableSlots = session.getClassEntity().getMaxCapacity() - (int) enrolled;
         boolean capacityOk = availableSlots > 0;
         score += Math.min(1, availableSlots / 5); // +1 per 5 slots
@@ -1693,6 +1722,7 @@ public class StudentRequestService {
         ss.setRecordedAt(OffsetDateTime.now());
 
         studentSessionRepository.save(ss);
+        attendanceMatrixEngine.invalidate(session.getClassEntity().getId());
     }
 
     public TransferEligibilityDTO getTransferEligibility(Long userId) {
@@ -2170,6 +2200,10 @@ public class StudentRequestService {
 
         log.info("Created {} StudentSessions for new class (sessions on/after {})", createdCount, joinDate);
         log.info("Transfer execution completed for request {}", request.getId());
+
+        // Ghi danh và buổi học của cả hai lớp đã đổi (kể cả bản ghi học bù của lớp cũ vừa xoá)
+        attendanceMatrixEngine.invalidate(currentClass.getId());
+        attendanceMatrixEngine.invalidate(targetClass.getId());
         
         // 6. Send notifications to student
         sendTransferExecutionNotifications(request);
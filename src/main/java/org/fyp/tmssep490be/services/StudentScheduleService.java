@@ -32,6 +32,7 @@ public class StudentScheduleService {
     private final TimeSlotTemplateRepository timeSlotTemplateRepository;
     private final EnrollmentRepository enrollmentRepository;
     private final ObjectMapper objectMapper;
+    private final WeeklyTimetableCache timetableCache;
 
     public LocalDate getCurrentWeekStart() {
         LocalDate today = LocalDate.now();
@@ -50,6 +51,11 @@ public class StudentScheduleService {
             throw new CustomException(ErrorCode.INVALID_INPUT);
         }
 
+        return timetableCache.get(WeeklyTimetableCache.Viewer.STUDENT, studentId, weekStart, classId, null,
+                () -> loadWeeklySchedule(studentId, weekStart, classId));
+    }
+
+    private WeeklyScheduleResponseDTO loadWeeklySchedule(Long studentId, LocalDate weekStart, Long classId) {
         // 2. Calculate week range
         LocalDate weekEnd = weekStart.plusDays(6);
 
@@ -328,6 +328,35 @@ public class StudentService {
         return students.map(this::convertToStudentListItemDTO);
     }
 
+    // Từ khóa ngắn hơn thì trigram index không lọc được, trả về rỗng thay vì quét cả bảng
+    static final int MIN_SUGGESTION_TERM_LENGTH = 2;
+    static final int MAX_SUGGESTIONS = 20;
+
+    // Gợi ý học viên theo từ khóa (không phân biệt hoa thường / dấu), đã xếp hạng, trong các chi nhánh của user
+    @Transactional(readOnly = true)
+    public List<StudentSuggestionDTO> suggestStudents(String term, int limit, Long userId) {
+        String normalizedTerm = term != null ? term.trim() : "";
+        if (normalizedTerm.length() < MIN_SUGGESTION_TERM_LENGTH) {
+            return List.of();
+        }
+
+        List<Long> userBranches = userBranchesRepository.findBranchIdsByUserId(userId);
+        if (userBranches.isEmpty()) {
+            return List.of();
+        }
+
+        int boundedLimit = Math.max(1, Math.min(limit, MAX_SUGGESTIONS));
+        return studentRepository.findStudentSuggestions(userBranches, normalizedTerm, boundedLimit).stream()
+                .map(row -> StudentSuggestionDTO.builder()
+                        .id(((Number) row[0]).longValue())
+                        .studentCode((String) row[1])
+                        .fullName((String) row[2])
+                        .email((String) row[3])
+                        .phone((String) row[4])
+                        .build())
+                .collect(Collectors.toList());
+    }
+
     /**
      * Map sort fields from DTO field names to entity paths
      */
@@ -920,27 +920,22 @@ public class SubjectService {
      */
     private void sendNotificationToManagers(Subject subject) {
         try {
-            List<UserAccount> managers = userAccountRepository.findUsersByRole("MANAGER");
-
-            if (!managers.isEmpty()) {
-                String title = "Môn học mới cần phê duyệt";
-                String message = String.format(
-                        "Môn học '%s' (%s) cần được phê duyệt.",
-                        subject.getName(),
-                        subject.getCode());
-
-                List<Long> managerIds = managers.stream()
-                        .map(UserAccount::getId)
-                        .collect(Collectors.toList());
-
-                notificationService.sendBulkNotifications(
-                        managerIds,
-                        NotificationType.REQUEST,
-                        title,
-                        message);
+            String title = "Môn học mới cần phê duyệt";
+            String message = String.format(
+                    "Môn học '%s' (%s) cần được phê duyệt.",
+                    subject.getName(),
+                    subject.getCode());
+
+            int managerCount = notificationService.sendRoleBroadcast(
+                    "MANAGER",
+                    null,
+                    NotificationType.REQUEST,
+                    title,
+                    message);
 
+            if (managerCount > 0) {
                 log.info("Sent notification to {} managers about subject {} submission",
-                        managers.size(), subject.getId());
+                        managerCount, subject.getId());
             } else {
                 log.warn("No managers found to notify about subject {} submission", subject.getId());
             }
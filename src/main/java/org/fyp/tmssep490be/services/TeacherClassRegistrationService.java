@@ -16,7 +16,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
-import java.time.LocalTime;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -43,6 +42,7 @@ public class TeacherClassRegistrationService {
     private final SessionRepository sessionRepository;
     private final NotificationService notificationService;
     private final TeacherSkillRepository teacherSkillRepository;
+    private final TeacherScheduleConflictService scheduleConflictService;
 
     // ==================== TEACHER APIs ====================
 
@@ -77,8 +77,19 @@ public class TeacherClassRegistrationService {
 
         OffsetDateTime now = OffsetDateTime.now();
 
+        // Sessions của tất cả lớp + lịch bận của giáo viên: mỗi loại 1 query
+        Map<Long, List<Session>> sessionsByClass = availableClasses.isEmpty()
+                ? Map.of()
+                : sessionRepository.findByClassEntityIdIn(availableClasses.stream().map(ClassEntity::getId).toList())
+                        .stream()
+                        .collect(Collectors.groupingBy(s -> s.getClassEntity().getId()));
+        List<Session> allTargetSessions = sessionsByClass.values().stream().flatMap(List::stream).toList();
+        TeacherScheduleConflictService.OccupancyIndex occupancy = scheduleConflictService.loadAssignedOccupancy(
+                List.of(teacher.getId()), allTargetSessions);
+
         return availableClasses.stream()
-                .map(c -> mapToAvailableClassDTO(c, teacher, teacherSpecializations, teacherLanguages, now))
+                .map(c -> mapToAvailableClassDTO(c, teacher, teacherSpecializations, teacherLanguages, now,
+                        sessionsByClass.getOrDefault(c.getId(), List.of()), occupancy))
                 // Filter: only show classes that are PENDING_OPEN or OPEN
                 .filter(dto -> dto.getRegistrationStatus() != RegistrationWindowStatus.CLOSED)
                 // Filter: only show classes that match teacher's language AND specialization
@@ -186,40 +197,23 @@ public class TeacherClassRegistrationService {
         List<ClassEntity> assignedClasses = classRepository.findActiveClassesByAssignedTeacher(
                 teacher.getId(), today);
 
-        for (ClassEntity assignedClass : assignedClasses) {
-            List<Session> assignedSessions = sessionRepository.findByClassEntityIdOrderByDateAsc(
-                    assignedClass.getId());
-
-            for (Session targetSession : targetSessions) {
-                for (Session assignedSession : assignedSessions) {
-                    if (isSessionConflict(targetSession, assignedSession)) {
-                        conflicts.add(buildConflictDetail(assignedClass, assignedSession, "Đang dạy"));
-                    }
-                }
-            }
-        }
+        List<Long> assignedClassIds = assignedClasses.stream().map(ClassEntity::getId).toList();
+        scheduleConflictService.loadClassOccupancy(teacher.getId(), assignedClassIds, targetSessions)
+                .findConflicts(teacher.getId(), targetSessions)
+                .forEach(conflict -> conflicts.add(buildConflictDetail(conflict.occupied(), "Đang dạy")));
 
         // 2. Check với các lớp mà teacher đã đăng ký (PENDING) nhưng chưa được duyệt
         List<TeacherClassRegistration> pendingRegistrations = registrationRepository
                 .findByTeacherIdAndStatusOrderByRegisteredAtDesc(teacher.getId(), RegistrationStatus.PENDING);
 
-        for (TeacherClassRegistration registration : pendingRegistrations) {
-            ClassEntity registeredClass = registration.getClassEntity();
-            // Skip lớp đang check (tránh check với chính nó)
-            if (registeredClass.getId().equals(classId))
-                continue;
-
-            List<Session> registeredSessions = sessionRepository.findByClassEntityIdOrderByDateAsc(
-                    registeredClass.getId());
-
-            for (Session targetSession : targetSessions) {
-                for (Session registeredSession : registeredSessions) {
-                    if (isSessionConflict(targetSession, registeredSession)) {
-                        conflicts.add(buildConflictDetail(registeredClass, registeredSession, "Đã đăng ký"));
-                    }
-                }
-            }
-        }
+        // Skip lớp đang check (tránh check với chính nó)
+        List<Long> registeredClassIds = pendingRegistrations.stream()
+                .map(registration -> registration.getClassEntity().getId())
+                .filter(registeredClassId -> !registeredClassId.equals(classId))
+                .toList();
+        scheduleConflictService.loadClassOccupancy(teacher.getId(), registeredClassIds, targetSessions)
+                .findConflicts(teacher.getId(), targetSessions)
+                .forEach(conflict -> conflicts.add(buildConflictDetail(conflict.occupied(), "Đã đăng ký")));
 
         return ScheduleConflictDTO.builder()
                 .hasConflict(!conflicts.isEmpty())
@@ -227,44 +221,16 @@ public class TeacherClassRegistrationService {
                 .build();
     }
 
-    // Kiểm tra 2 session có xung đột không (cùng ngày + khung giờ overlap)
-    private boolean isSessionConflict(Session session1, Session session2) {
-        // Phải cùng ngày
-        if (!session1.getDate().equals(session2.getDate())) {
-            return false;
-        }
-
-        // Check time overlap
-        TimeSlotTemplate slot1 = session1.getTimeSlotTemplate();
-        TimeSlotTemplate slot2 = session2.getTimeSlotTemplate();
-
-        if (slot1 == null || slot2 == null) {
-            return false;
-        }
-
-        LocalTime start1 = slot1.getStartTime();
-        LocalTime end1 = slot1.getEndTime();
-        LocalTime start2 = slot2.getStartTime();
-        LocalTime end2 = slot2.getEndTime();
-
-        // Overlap if: start1 < end2 AND start2 < end1
-        return start1.isBefore(end2) && start2.isBefore(end1);
-    }
-
-    private ScheduleConflictDTO.ConflictDetail buildConflictDetail(ClassEntity classEntity, Session session,
+    private ScheduleConflictDTO.ConflictDetail buildConflictDetail(TeacherScheduleConflictService.OccupiedSlot occupied,
             String conflictType) {
-        String dayOfWeek = getDayOfWeekVietnamese(session.getDate().getDayOfWeek().getValue());
-        String timeSlot = "";
-        if (session.getTimeSlotTemplate() != null) {
-            TimeSlotTemplate slot = session.getTimeSlotTemplate();
-            timeSlot = slot.getStartTime().toString() + " - " + slot.getEndTime().toString();
-        }
+        String dayOfWeek = getDayOfWeekVietnamese(occupied.date().getDayOfWeek().getValue());
+        String timeSlot = occupied.startTime().toString() + " - " + occupied.endTime().toString();
 
         return ScheduleConflictDTO.ConflictDetail.builder()
-                .conflictingClassId(classEntity.getId())
-                .conflictingClassName(classEntity.getName())
-                .conflictingClassCode(classEntity.getCode())
-                .conflictDate(session.getDate().format(DateTimeFormatter.ofPattern("dd/MM/yyyy")))
+                .conflictingClassId(occupied.classId())
+                .conflictingClassName(occupied.className())
+                .conflictingClassCode(occupied.classCode())
+                .conflictDate(occupied.date().format(DateTimeFormatter.ofPattern("dd/MM/yyyy")))
                 .conflictDayOfWeek(dayOfWeek)
                 .conflictTimeSlot(timeSlot)
                 .conflictType(conflictType)
@@ -385,15 +351,11 @@ public class TeacherClassRegistrationService {
                 }
             }
 
-            // Get class sessions for conflict detection
+            // Get class sessions + lịch bận của tất cả giáo viên trong branch (1 query) for conflict detection
             List<Session> targetSessions = sessionRepository.findByClassEntityId(classEntity.getId());
             log.info("Notification check: class {} has {} sessions", classCode, targetSessions.size());
-            for (Session s : targetSessions) {
-                log.info("  Target session: date={}, time={}-{}",
-                        s.getDate(),
-                        s.getTimeSlotTemplate().getStartTime(),
-                        s.getTimeSlotTemplate().getEndTime());
-            }
+            TeacherScheduleConflictService.OccupancyIndex occupancy = scheduleConflictService.loadAssignedOccupancy(
+                    teacherIds, targetSessions);
 
             final String finalCurriculumCode = curriculumCode;
             final String finalCurriculumLanguage = curriculumLanguage;
@@ -419,36 +381,7 @@ public class TeacherClassRegistrationService {
                         }
 
                         // Check schedule conflict
-                        log.info("Checking conflicts for teacher {} (ID={}), has {} assigned classes",
-                                teacher.getEmployeeCode(), teacher.getId(), teacher.getAssignedClasses().size());
-                        for (ClassEntity assignedClass : teacher.getAssignedClasses()) {
-                            log.info("  Assigned class: {} (ID={}, status={})",
-                                    assignedClass.getName(), assignedClass.getId(), assignedClass.getStatus());
-                            if (assignedClass.getStatus() == ClassStatus.COMPLETED ||
-                                    assignedClass.getStatus() == ClassStatus.CANCELLED) {
-                                continue;
-                            }
-
-                            List<Session> assignedSessions = sessionRepository
-                                    .findByClassEntityId(assignedClass.getId());
-                            log.info("    Assigned class has {} sessions", assignedSessions.size());
-                            for (Session targetSession : targetSessions) {
-                                for (Session assignedSession : assignedSessions) {
-                                    if (targetSession.getDate().equals(assignedSession.getDate())) {
-                                        LocalTime targetStart = targetSession.getTimeSlotTemplate().getStartTime();
-                                        LocalTime targetEnd = targetSession.getTimeSlotTemplate().getEndTime();
-                                        LocalTime assignedStart = assignedSession.getTimeSlotTemplate().getStartTime();
-                                        LocalTime assignedEnd = assignedSession.getTimeSlotTemplate().getEndTime();
-
-                                        if (targetStart.isBefore(assignedEnd) && assignedStart.isBefore(targetEnd)) {
-                                            return false; // Has conflict
-                                        }
-                                    }
-                                }
-                            }
-                        }
-
-                        return true; // Qualified
+                        return !occupancy.hasConflict(teacher.getId(), targetSessions); // Qualified
                     })
                     .map(t -> t.getUserAccount().getId())
                     .collect(Collectors.toList());
@@ -722,49 +655,18 @@ public class TeacherClassRegistrationService {
 
         // Validate schedule conflict (check thời gian overlap)
         List<Session> targetSessions = sessionRepository.findByClassEntityId(classEntity.getId());
-
-        for (ClassEntity assignedClass : teacher.getAssignedClasses()) {
-            if (assignedClass.getStatus() == ClassStatus.COMPLETED ||
-                    assignedClass.getStatus() == ClassStatus.CANCELLED) {
-                continue;
-            }
-
-            List<Session> assignedSessions = sessionRepository.findByClassEntityId(assignedClass.getId());
-
-            for (Session targetSession : targetSessions) {
-                if (targetSession.getDate() == null || targetSession.getTimeSlotTemplate() == null) {
-                    continue;
-                }
-
-                LocalTime targetStart = targetSession.getTimeSlotTemplate().getStartTime();
-                LocalTime targetEnd = targetSession.getTimeSlotTemplate().getEndTime();
-
-                for (Session assignedSession : assignedSessions) {
-                    if (assignedSession.getDate() == null || assignedSession.getTimeSlotTemplate() == null) {
-                        continue;
-                    }
-
-                    // Check same date
-                    if (!targetSession.getDate().equals(assignedSession.getDate())) {
-                        continue;
-                    }
-
-                    LocalTime assignedStart = assignedSession.getTimeSlotTemplate().getStartTime();
-                    LocalTime assignedEnd = assignedSession.getTimeSlotTemplate().getEndTime();
-
-                    // Check time overlap: (start1 < end2) AND (start2 < end1)
-                    boolean hasOverlap = targetStart.isBefore(assignedEnd) && assignedStart.isBefore(targetEnd);
-
-                    if (hasOverlap) {
-                        throw new CustomException(ErrorCode.INVALID_INPUT,
-                                String.format("Giáo viên có lịch trùng với lớp %s: Ngày %s - %s~%s overlap với %s~%s",
-                                        assignedClass.getName(),
-                                        targetSession.getDate(),
-                                        targetStart, targetEnd,
-                                        assignedStart, assignedEnd));
-                    }
-                }
-            }
+        List<TeacherScheduleConflictService.Conflict> conflicts = scheduleConflictService
+                .loadAssignedOccupancy(List.of(teacher.getId()), targetSessions)
+                .findConflicts(teacher.getId(), targetSessions);
+
+        if (!conflicts.isEmpty()) {
+            TeacherScheduleConflictService.Conflict conflict = conflicts.get(0);
+            throw new CustomException(ErrorCode.INVALID_INPUT,
+                    String.format("Giáo viên có lịch trùng với lớp %s: Ngày %s - %s~%s overlap với %s~%s",
+                            conflict.occupied().className(),
+                            conflict.targetSession().getDate(),
+                            conflict.targetStart(), conflict.targetEnd(),
+                            conflict.occupied().startTime(), conflict.occupied().endTime()));
         }
 
         // Gán teacher vào class
@@ -902,49 +804,18 @@ public class TeacherClassRegistrationService {
 
         // Kiểm tra schedule conflict với các lớp đang dạy (check thời gian overlap)
         List<Session> targetSessions = sessionRepository.findByClassEntityId(classEntity.getId());
-
-        for (ClassEntity assignedClass : teacher.getAssignedClasses()) {
-            if (assignedClass.getStatus() == ClassStatus.COMPLETED ||
-                    assignedClass.getStatus() == ClassStatus.CANCELLED) {
-                continue;
-            }
-
-            List<Session> assignedSessions = sessionRepository.findByClassEntityId(assignedClass.getId());
-
-            for (Session targetSession : targetSessions) {
-                if (targetSession.getDate() == null || targetSession.getTimeSlotTemplate() == null) {
-                    continue;
-                }
-
-                LocalTime targetStart = targetSession.getTimeSlotTemplate().getStartTime();
-                LocalTime targetEnd = targetSession.getTimeSlotTemplate().getEndTime();
-
-                for (Session assignedSession : assignedSessions) {
-                    if (assignedSession.getDate() == null || assignedSession.getTimeSlotTemplate() == null) {
-                        continue;
-                    }
-
-                    // Check same date
-                    if (!targetSession.getDate().equals(assignedSession.getDate())) {
-                        continue;
-                    }
-
-                    LocalTime assignedStart = assignedSession.getTimeSlotTemplate().getStartTime();
-                    LocalTime assignedEnd = assignedSession.getTimeSlotTemplate().getEndTime();
-
-                    // Check time overlap: (start1 < end2) AND (start2 < end1)
-                    boolean hasOverlap = targetStart.isBefore(assignedEnd) && assignedStart.isBefore(targetEnd);
-
-                    if (hasOverlap) {
-                        throw new CustomException(ErrorCode.INVALID_INPUT,
-                                String.format("Lịch dạy trùng với lớp %s: Ngày %s - %s~%s overlap với %s~%s",
-                                        assignedClass.getName(),
-                                        targetSession.getDate(),
-                                        targetStart, targetEnd,
-                                        assignedStart, assignedEnd));
-                    }
-                }
-            }
+        List<TeacherScheduleConflictService.Conflict> conflicts = scheduleConflictService
+                .loadAssignedOccupancy(List.of(teacher.getId()), targetSessions)
+                .findConflicts(teacher.getId(), targetSessions);
+
+        if (!conflicts.isEmpty()) {
+            TeacherScheduleConflictService.Conflict conflict = conflicts.get(0);
+            throw new CustomException(ErrorCode.INVALID_INPUT,
+                    String.format("Lịch dạy trùng với lớp %s: Ngày %s - %s~%s overlap với %s~%s",
+                            conflict.occupied().className(),
+                            conflict.targetSession().getDate(),
+                            conflict.targetStart(), conflict.targetEnd(),
+                            conflict.occupied().startTime(), conflict.occupied().endTime()));
         }
     }
 
@@ -974,7 +845,8 @@ public class TeacherClassRegistrationService {
     // ==================== MAPPING METHODS ====================
 
     private AvailableClassDTO mapToAvailableClassDTO(ClassEntity c, Teacher teacher,
-            Set<String> teacherSpecializations, Set<String> teacherLanguages, OffsetDateTime now) {
+            Set<String> teacherSpecializations, Set<String> teacherLanguages, OffsetDateTime now,
+            List<Session> sessions, TeacherScheduleConflictService.OccupancyIndex occupancy) {
         Long teacherId = teacher.getId();
         int totalRegistrations = (int) registrationRepository.countByClassEntityIdAndStatus(
                 c.getId(), RegistrationStatus.PENDING);
@@ -1014,9 +886,6 @@ public class TeacherClassRegistrationService {
             }
         }
 
-        // Get sessions for this class
-        List<Session> sessions = sessionRepository.findByClassEntityId(c.getId());
-
         // Get time slot from first session (legacy - for backward compatibility)
         String timeSlotStart = null;
         String timeSlotEnd = null;
@@ -1030,63 +899,22 @@ public class TeacherClassRegistrationService {
         Map<String, String> timeSlotsByDay = calculateTimeSlotsByDay(sessions);
 
         // Check schedule conflict with teacher's assigned classes (time overlap check)
-        boolean hasConflict = false;
+        // Mỗi lớp trùng chỉ liệt kê lần trùng đầu tiên
+        Map<Long, TeacherScheduleConflictService.Conflict> conflictsByClass = occupancy
+                .firstConflictPerClass(teacherId, sessions);
+        boolean hasConflict = !conflictsByClass.isEmpty();
         StringBuilder conflictBuilder = new StringBuilder();
 
-        for (ClassEntity assignedClass : teacher.getAssignedClasses()) {
-            // Skip completed/cancelled classes
-            if (assignedClass.getStatus() == ClassStatus.COMPLETED ||
-                    assignedClass.getStatus() == ClassStatus.CANCELLED) {
-                continue;
-            }
-
-            // Get sessions of assigned class
-            List<Session> assignedSessions = sessionRepository.findByClassEntityId(assignedClass.getId());
-            boolean foundConflictWithThisClass = false;
-
-            for (Session targetSession : sessions) {
-                if (targetSession.getDate() == null || targetSession.getTimeSlotTemplate() == null) {
-                    continue;
-                }
-
-                LocalTime targetStart = targetSession.getTimeSlotTemplate().getStartTime();
-                LocalTime targetEnd = targetSession.getTimeSlotTemplate().getEndTime();
-
-                for (Session assignedSession : assignedSessions) {
-                    if (assignedSession.getDate() == null || assignedSession.getTimeSlotTemplate() == null) {
-                        continue;
-                    }
-
-                    // Check same date
-                    if (!targetSession.getDate().equals(assignedSession.getDate())) {
-                        continue;
-                    }
-
-                    LocalTime assignedStart = assignedSession.getTimeSlotTemplate().getStartTime();
-                    LocalTime assignedEnd = assignedSession.getTimeSlotTemplate().getEndTime();
-
-                    // Check time overlap: (start1 < end2) AND (start2 < end1)
-                    boolean hasOverlap = targetStart.isBefore(assignedEnd) && assignedStart.isBefore(targetEnd);
-
-                    if (hasOverlap) {
-                        hasConflict = true;
-                        foundConflictWithThisClass = true;
-                        if (conflictBuilder.length() == 0) {
-                            conflictBuilder.append("Trùng lịch với: ");
-                        }
-                        conflictBuilder.append(assignedClass.getName())
-                                .append(" (").append(targetSession.getDate())
-                                .append(" ").append(targetStart).append("-").append(targetEnd)
-                                .append(" vs ").append(assignedStart).append("-").append(assignedEnd)
-                                .append("); ");
-                        break;
-                    }
-                }
-
-                if (foundConflictWithThisClass) {
-                    break; // Found conflict with this class, move to next class
-                }
+        for (TeacherScheduleConflictService.Conflict conflict : conflictsByClass.values()) {
+            if (conflictBuilder.length() == 0) {
+                conflictBuilder.append("Trùng lịch với: ");
             }
+            conflictBuilder.append(conflict.occupied().className())
+                    .append(" (").append(conflict.targetSession().getDate())
+                    .append(" ").append(conflict.targetStart()).append("-").append(conflict.targetEnd())
+                    .append(" vs ").append(conflict.occupied().startTime()).append("-")
+                    .append(conflict.occupied().endTime())
+                    .append("); ");
         }
 
         return AvailableClassDTO.builder()
@@ -1395,8 +1223,10 @@ public class TeacherClassRegistrationService {
         final String finalCurriculumCode = curriculumCode;
         final String finalCurriculumLanguage = curriculumLanguage;
 
-        // Get target class sessions for schedule conflict detection
+        // Get target class sessions + lịch bận của tất cả giáo viên (1 query) for schedule conflict detection
         List<Session> targetClassSessions = sessionRepository.findByClassEntityId(classId);
+        TeacherScheduleConflictService.OccupancyIndex occupancy = scheduleConflictService.loadAssignedOccupancy(
+                teacherIds, targetClassSessions);
 
         // Map to DTOs with match scoring, workload, and schedule conflict
         // FILTER: Only include teachers who teach the curriculum language
@@ -1444,69 +1274,16 @@ public class TeacherClassRegistrationService {
                             List.of(ClassStatus.SCHEDULED, ClassStatus.ONGOING));
 
                     // Check schedule conflict with assigned classes (time overlap check)
-                    boolean hasConflict = false;
+                    Map<Long, TeacherScheduleConflictService.Conflict> conflictsByClass = occupancy
+                            .firstConflictPerClass(teacher.getId(), targetClassSessions);
+                    boolean hasConflict = !conflictsByClass.isEmpty();
                     StringBuilder conflictBuilder = new StringBuilder();
 
-                    // Debug logging
-                    Set<ClassEntity> assignedClasses = teacher.getAssignedClasses();
-                    log.info("Teacher {} (ID={}) has {} assigned classes, workload count={}",
-                            teacher.getEmployeeCode(), teacher.getId(),
-                            assignedClasses != null ? assignedClasses.size() : "null", workload);
-
-                    for (ClassEntity assignedClass : assignedClasses) {
-                        log.info("  - Assigned class: {} (ID={}, status={})",
-                                assignedClass.getName(), assignedClass.getId(), assignedClass.getStatus());
-                        // Skip completed/cancelled classes
-                        if (assignedClass.getStatus() == ClassStatus.COMPLETED ||
-                                assignedClass.getStatus() == ClassStatus.CANCELLED) {
-                            continue;
-                        }
-
-                        // Get sessions of assigned class
-                        List<Session> assignedSessions = sessionRepository.findByClassEntityId(assignedClass.getId());
-                        boolean foundConflictWithThisClass = false;
-
-                        for (Session targetSession : targetClassSessions) {
-                            if (targetSession.getDate() == null || targetSession.getTimeSlotTemplate() == null) {
-                                continue;
-                            }
-
-                            LocalTime targetStart = targetSession.getTimeSlotTemplate().getStartTime();
-                            LocalTime targetEnd = targetSession.getTimeSlotTemplate().getEndTime();
-
-                            for (Session assignedSession : assignedSessions) {
-                                if (assignedSession.getDate() == null
-                                        || assignedSession.getTimeSlotTemplate() == null) {
-                                    continue;
-                                }
-
-                                // Check same date
-                                if (!targetSession.getDate().equals(assignedSession.getDate())) {
-                                    continue;
-                                }
-
-                                LocalTime assignedStart = assignedSession.getTimeSlotTemplate().getStartTime();
-                                LocalTime assignedEnd = assignedSession.getTimeSlotTemplate().getEndTime();
-
-                                // Check time overlap: (start1 < end2) AND (start2 < end1)
-                                boolean hasOverlap = targetStart.isBefore(assignedEnd)
-                                        && assignedStart.isBefore(targetEnd);
-
-                                if (hasOverlap) {
-                                    hasConflict = true;
-                                    foundConflictWithThisClass = true;
-                                    if (conflictBuilder.length() == 0) {
-                                        conflictBuilder.append("Trùng lịch với: ");
-                                    }
-                                    conflictBuilder.append(assignedClass.getName()).append("; ");
-                                    break;
-                                }
-                            }
-
-                            if (foundConflictWithThisClass) {
-                                break;
-                            }
+                    for (TeacherScheduleConflictService.Conflict conflict : conflictsByClass.values()) {
+                        if (conflictBuilder.length() == 0) {
+                            conflictBuilder.append("Trùng lịch với: ");
                         }
+                        conflictBuilder.append(conflict.occupied().className()).append("; ");
                     }
 
                     return QualifiedTeacherDTO.builder()
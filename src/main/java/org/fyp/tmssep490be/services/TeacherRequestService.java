@@ -89,6 +89,8 @@ public class TeacherRequestService {
     private final QAReportRepository qaReportRepository;
     private final NotificationService notificationService;
     private final EmailService emailService;
+    private final ReplacementCandidateFinder replacementCandidateFinder;
+    private final AttendanceMatrixEngine attendanceMatrixEngine;
 
     private static final int MIN_REASON_LENGTH = 10;
     private static final boolean REQUIRE_RESOURCE_FOR_MODALITY_CHANGE = true;
@@ -1695,7 +1697,7 @@ public class TeacherRequestService {
                 .append("Vui lòng vào hệ thống để xác nhận hoặc từ chối yêu cầu này.<br/><br/>")
                 .append("Trân trọng,<br/>Hệ thống TMS");
 
-            emailService.sendEmailAsync(email, subject, body.toString());
+            emailService.queueEmail(email, subject, body.toString());
         } catch (Exception e) {
             log.error("Lỗi khi gửi replacement invitation email cho request {}: {}", request.getId(), e.getMessage());
         }
@@ -1861,7 +1863,7 @@ public class TeacherRequestService {
                 .append("Hệ thống sẽ thông báo khi yêu cầu được xử lý.<br/><br/>")
                 .append("Trân trọng,<br/>Hệ thống TMS");
 
-            emailService.sendEmailAsync(email, subject, body.toString());
+            emailService.queueEmail(email, subject, body.toString());
         } catch (Exception e) {
             log.error("Lỗi khi gửi created email cho teacher về request {}: {}", request.getId(), e.getMessage());
         }
@@ -2329,9 +2331,9 @@ public class TeacherRequestService {
         return false;
     }
 
-    //Gợi ý giáo viên dạy thay cho REPLACEMENT request (cho teacher)
+    //Gợi ý giáo viên dạy thay cho REPLACEMENT request (cho teacher), phân trang theo page/size (size <= 0: tất cả)
     @Transactional(readOnly = true)
-    public List<ReplacementCandidateDTO> suggestReplacementCandidates(Long sessionId, Long userId) {
+    public List<ReplacementCandidateDTO> suggestReplacementCandidates(Long sessionId, Long userId, int page, int size) {
         log.info("Suggesting replacement candidates for session {} by teacher {}", sessionId, userId);
 
         // Lấy teacher hiện tại
@@ -2355,129 +2357,15 @@ public class TeacherRequestService {
             return List.of();
         }
 
-        org.fyp.tmssep490be.entities.Subject subject = classEntity.getSubject();
-
         // Lấy branch của giáo viên tạo yêu cầu
         List<Long> requestingTeacherBranchIds = userBranchesRepository.findBranchIdsByUserId(requestingTeacher.getUserAccount().getId());
-        
-        // Lấy các giáo viên cùng branch với giáo viên tạo yêu cầu (trừ teacher hiện tại)
-        List<Teacher> candidateTeachers;
-        if (requestingTeacherBranchIds.isEmpty()) {
-            candidateTeachers = List.of();
-        } else {
-            candidateTeachers = teacherRepository.findByBranchIds(requestingTeacherBranchIds).stream()
-                    .filter(teacher -> !teacher.getId().equals(requestingTeacher.getId()))
-                    .collect(Collectors.toList());
-        }
-
-        // Loại trừ các teacher đã từ chối request này (nếu có requestId)
 
         // Lấy skills yêu cầu của session từ SubjectSession
         Set<org.fyp.tmssep490be.entities.enums.Skill> sessionRequiredSkills = getSessionRequiredSkills(session);
 
-        // Filter teachers có conflict về thời gian
-        LocalDate sessionDate = session.getDate();
-        TimeSlotTemplate sessionTimeSlot = session.getTimeSlotTemplate();
-        List<Teacher> availableTeachers = candidateTeachers.stream()
-                .filter(teacher -> !hasTeacherTimeConflict(teacher.getId(), sessionDate, sessionTimeSlot, session.getId()))
-                .collect(Collectors.toList());
-
-        // Map sang DTO và sắp xếp theo skill phù hợp, sau đó theo tên
-        final Set<org.fyp.tmssep490be.entities.enums.Skill> finalSessionRequiredSkills = sessionRequiredSkills;
-        return availableTeachers.stream()
-                .map(teacher -> mapToReplacementCandidateDTO(teacher, subject, session))
-                .filter(dto -> dto != null)
-                .sorted((a, b) -> {
-                    // 1. Ưu tiên teacher có skills phù hợp với skills yêu cầu của session
-                    boolean aHasMatchingSkills = hasMatchingSkills(a, finalSessionRequiredSkills);
-                    boolean bHasMatchingSkills = hasMatchingSkills(b, finalSessionRequiredSkills);
-                    
-                    if (aHasMatchingSkills && !bHasMatchingSkills) {
-                        return -1; // a được ưu tiên
-                    }
-                    if (!aHasMatchingSkills && bHasMatchingSkills) {
-                        return 1; // b được ưu tiên
-                    }
-                    
-                    // 2. Nếu cả hai đều có hoặc không có matching skills, sắp xếp theo số lượng skills (nhiều hơn = phù hợp hơn)
-                    int aSkillCount = a.getSkills() != null ? a.getSkills().size() : 0;
-                    int bSkillCount = b.getSkills() != null ? b.getSkills().size() : 0;
-                    if (aSkillCount != bSkillCount) {
-                        return Integer.compare(bSkillCount, aSkillCount); // Giảm dần
-                    }
-                    
-                    // 3. Cuối cùng sắp xếp theo tên tăng dần
-                    String nameA = a.getFullName() != null ? a.getFullName() : "";
-                    String nameB = b.getFullName() != null ? b.getFullName() : "";
-                    return nameA.compareToIgnoreCase(nameB);
-                })
-                .collect(Collectors.toList());
-    }
-
-    //Map Teacher entity sang ReplacementCandidateDTO
-    private ReplacementCandidateDTO mapToReplacementCandidateDTO(
-            Teacher teacher, org.fyp.tmssep490be.entities.Subject subject, Session session) {
-        UserAccount userAccount = teacher.getUserAccount();
-        if (userAccount == null) {
-            return null;
-        }
-
-        // Lấy skills
-        List<ReplacementCandidateSkillDTO> skills = teacher.getTeacherSkills().stream()
-                .map(ts -> ReplacementCandidateSkillDTO.builder()
-                        .id(ts.getId() != null ? ts.getId().getSkill() != null ? (long) ts.getId().getSkill().ordinal() : null : null)
-                        .name(ts.getId() != null && ts.getId().getSkill() != null ? ts.getId().getSkill().name() : null)
-                        .skillName(ts.getId() != null && ts.getId().getSkill() != null ? ts.getId().getSkill().name() : null)
-                        .level(ts.getLevel() != null ? ts.getLevel().toString() : null)
-                        .skillLevel(ts.getLevel() != null ? ts.getLevel().toString() : null)
-                        .description(ts.getSpecialization())
-                        .build())
-                .collect(Collectors.toList());
-
-        // Tạo skill summary
-        String skillSummary = teacher.getTeacherSkills().stream()
-                .map(ts -> ts.getId() != null && ts.getId().getSkill() != null ? ts.getId().getSkill().name() : "")
-                .filter(s -> !s.isEmpty())
-                .collect(Collectors.joining(", "));
-
-        return ReplacementCandidateDTO.builder()
-                .teacherId(teacher.getId())
-                .fullName(userAccount.getFullName())
-                .displayName(userAccount.getFullName())
-                .email(userAccount.getEmail())
-                .phone(userAccount.getPhone())
-                .skills(skills)
-                .skillSummary(skillSummary)
-                .specialization(teacher.getTeacherSkills().stream()
-                        .map(org.fyp.tmssep490be.entities.TeacherSkill::getSpecialization)
-                        .filter(s -> s != null && !s.isEmpty())
-                        .findFirst()
-                        .orElse(null))
-                .note(teacher.getNote())
-                .build();
-    }
-
-    //Kiểm tra xem teacher có skills phù hợp với skills yêu cầu của session không
-    private boolean hasMatchingSkills(ReplacementCandidateDTO candidate, Set<org.fyp.tmssep490be.entities.enums.Skill> sessionRequiredSkills) {
-        if (sessionRequiredSkills.isEmpty() || candidate.getSkills() == null || candidate.getSkills().isEmpty()) {
-            return false;
-        }
-
-        // Lấy danh sách skills của candidate
-        Set<org.fyp.tmssep490be.entities.enums.Skill> candidateSkills = candidate.getSkills().stream()
-                .filter(skill -> skill.getName() != null)
-                .map(skill -> {
-                    try {
-                        return org.fyp.tmssep490be.entities.enums.Skill.valueOf(skill.getName());
-                    } catch (IllegalArgumentException e) {
-                        return null;
-                    }
-                })
-                .filter(skill -> skill != null)
-                .collect(Collectors.toSet());
-
-        // Kiểm tra xem có skill nào trùng với skills yêu cầu của session không
-        return candidateSkills.stream().anyMatch(sessionRequiredSkills::contains);
+        // Giáo viên cùng branch (trừ teacher hiện tại), không trùng lịch, đã chấm điểm và sắp xếp
+        return replacementCandidateFinder.findCandidates(session, requestingTeacherBranchIds,
+                Set.of(requestingTeacher.getId()), sessionRequiredSkills, page, size);
     }
 
     //Lấy danh sách skills yêu cầu của session từ SubjectSession
@@ -2995,6 +2883,13 @@ public class TeacherRequestService {
         oldSession.setStatus(SessionStatus.CANCELLED);
         sessionRepository.save(oldSession);
 
+        // Ma trận điểm danh của lớp (buổi cũ huỷ, buổi mới cùng lớp) và của các lớp học bù có bản ghi vừa đổi buổi gốc
+        attendanceMatrixEngine.invalidate(oldSession.getClassEntity().getId());
+        makeupSessions.stream()
+                .map(makeupSession -> makeupSession.getSession().getClassEntity().getId())
+                .distinct()
+                .forEach(attendanceMatrixEngine::invalidate);
+
         // Lưu lại session mới vào request (để tracking)
         request.setNewSession(newSession);
 
@@ -3212,7 +3107,7 @@ public class TeacherRequestService {
     //Gợi ý giáo viên dạy thay cho REPLACEMENT request (cho academic staff)
     //Loại trừ các teacher đã từ chối request này
     @Transactional(readOnly = true)
-    public List<ReplacementCandidateDTO> suggestReplacementCandidatesForStaff(Long requestId, Long academicStaffUserId) {
+    public List<ReplacementCandidateDTO> suggestReplacementCandidatesForStaff(Long requestId, Long academicStaffUserId, int page, int size) {
         log.info("Suggesting replacement candidates for request {} by academic staff {}", requestId, academicStaffUserId);
 
         // Lấy request
@@ -3247,22 +3142,9 @@ public class TeacherRequestService {
             return List.of();
         }
 
-        org.fyp.tmssep490be.entities.Subject subject = classEntity.getSubject();
-
         // Lấy skills yêu cầu của session từ SubjectSession
         Set<org.fyp.tmssep490be.entities.enums.Skill> sessionRequiredSkills = getSessionRequiredSkills(session);
 
-        // Lấy branch của giáo viên được tạo yêu cầu hộ
-        List<Long> requestTeacherBranchIds = teacherBranches;
-        
-        // Lấy các giáo viên cùng branch với giáo viên được tạo yêu cầu hộ
-        List<Teacher> branchTeachers;
-        if (requestTeacherBranchIds.isEmpty()) {
-            branchTeachers = List.of();
-        } else {
-            branchTeachers = teacherRepository.findByBranchIds(requestTeacherBranchIds);
-        }
-        
         // Lấy danh sách teacher IDs đã từ chối request này
         // Parse note để lấy các teacher ID đã từ chối
         Set<Long> declinedTeacherIds = new java.util.HashSet<>();
@@ -3306,52 +3188,15 @@ public class TeacherRequestService {
             excludedTeacherIds.add(request.getReplacementTeacher().getId());
         }
 
-        // Filter teachers có conflict về thời gian
-        LocalDate sessionDate = session.getDate();
-        TimeSlotTemplate sessionTimeSlot = session.getTimeSlotTemplate();
-
-        // Lọc candidates từ giáo viên cùng branch
-        List<Teacher> candidateTeachers = branchTeachers.stream()
-                .filter(teacher -> !excludedTeacherIds.contains(teacher.getId()))
-                .filter(teacher -> !hasTeacherTimeConflict(teacher.getId(), sessionDate, sessionTimeSlot, session.getId()))
-                .collect(Collectors.toList());
-
-        // Map sang DTO và sắp xếp
-        final Set<org.fyp.tmssep490be.entities.enums.Skill> finalSessionRequiredSkills = sessionRequiredSkills;
-        return candidateTeachers.stream()
-                .map(teacher -> mapToReplacementCandidateDTO(teacher, subject, session))
-                .filter(dto -> dto != null)
-                .sorted((a, b) -> {
-                    // 1. Ưu tiên teacher có skills phù hợp với skills yêu cầu của session
-                    boolean aHasMatchingSkills = hasMatchingSkills(a, finalSessionRequiredSkills);
-                    boolean bHasMatchingSkills = hasMatchingSkills(b, finalSessionRequiredSkills);
-                    
-                    if (aHasMatchingSkills && !bHasMatchingSkills) {
-                        return -1;
-                    }
-                    if (!aHasMatchingSkills && bHasMatchingSkills) {
-                        return 1;
-                    }
-                    
-                    // 2. Sắp xếp theo số lượng skills
-                    int aSkillCount = a.getSkills() != null ? a.getSkills().size() : 0;
-                    int bSkillCount = b.getSkills() != null ? b.getSkills().size() : 0;
-                    if (aSkillCount != bSkillCount) {
-                        return Integer.compare(bSkillCount, aSkillCount);
-                    }
-                    
-                    // 3. Cuối cùng sắp xếp theo tên
-                    String nameA = a.getFullName() != null ? a.getFullName() : "";
-                    String nameB = b.getFullName() != null ? b.getFullName() : "";
-                    return nameA.compareToIgnoreCase(nameB);
-                })
-                .collect(Collectors.toList());
+        // Giáo viên cùng branch với giáo viên được tạo yêu cầu hộ, không trùng lịch, đã chấm điểm và sắp xếp
+        return replacementCandidateFinder.findCandidates(session, teacherBranches,
+                excludedTeacherIds, sessionRequiredSkills, page, size);
     }
 
     //Gợi ý giáo viên dạy thay cho REPLACEMENT request (cho academic staff - từ sessionId khi tạo request mới)
     @Transactional(readOnly = true)
     public List<ReplacementCandidateDTO> suggestReplacementCandidatesForStaffBySession(
-            Long sessionId, Long teacherId, Long academicStaffUserId) {
+            Long sessionId, Long teacherId, Long academicStaffUserId, int page, int size) {
         log.info("Suggesting replacement candidates for session {} and teacher {} by academic staff {}",
                 sessionId, teacherId, academicStaffUserId);
 
@@ -3392,66 +3237,15 @@ public class TeacherRequestService {
             return List.of();
         }
 
-        org.fyp.tmssep490be.entities.Subject subject = classEntity.getSubject();
-
         // Lấy skills yêu cầu của session từ SubjectSession
         Set<org.fyp.tmssep490be.entities.enums.Skill> sessionRequiredSkills = getSessionRequiredSkills(session);
 
         // Lấy branch của giáo viên được tạo yêu cầu hộ
         List<Long> teacherBranchIds = userBranchesRepository.findBranchIdsByUserId(teacher.getUserAccount().getId());
         
-        // Lấy các giáo viên cùng branch với giáo viên được tạo yêu cầu hộ (trừ teacher hiện tại)
-        List<Teacher> branchTeachers;
-        if (teacherBranchIds.isEmpty()) {
-            branchTeachers = List.of();
-        } else {
-            branchTeachers = teacherRepository.findByBranchIds(teacherBranchIds);
-        }
-
-        // Loại trừ teacher hiện tại
-        Set<Long> excludedTeacherIds = new java.util.HashSet<>();
-        excludedTeacherIds.add(teacher.getId());
-
-        // Filter teachers có conflict về thời gian
-        LocalDate sessionDate = session.getDate();
-        TimeSlotTemplate sessionTimeSlot = session.getTimeSlotTemplate();
-
-        // Lọc candidates
-        List<Teacher> candidateTeachers = branchTeachers.stream()
-                .filter(t -> !excludedTeacherIds.contains(t.getId()))
-                .filter(t -> !hasTeacherTimeConflict(t.getId(), sessionDate, sessionTimeSlot, session.getId()))
-                .collect(Collectors.toList());
-
-        // Map sang DTO và sắp xếp
-        final Set<org.fyp.tmssep490be.entities.enums.Skill> finalSessionRequiredSkills = sessionRequiredSkills;
-        return candidateTeachers.stream()
-                .map(t -> mapToReplacementCandidateDTO(t, subject, session))
-                .filter(dto -> dto != null)
-                .sorted((a, b) -> {
-                    // 1. Ưu tiên teacher có skills phù hợp với skills yêu cầu của session
-                    boolean aHasMatchingSkills = hasMatchingSkills(a, finalSessionRequiredSkills);
-                    boolean bHasMatchingSkills = hasMatchingSkills(b, finalSessionRequiredSkills);
-
-                    if (aHasMatchingSkills && !bHasMatchingSkills) {
-                        return -1;
-                    }
-                    if (!aHasMatchingSkills && bHasMatchingSkills) {
-                        return 1;
-                    }
-
-                    // 2. Sắp xếp theo số lượng skills
-                    int aSkillCount = a.getSkills() != null ? a.getSkills().size() : 0;
-                    int bSkillCount = b.getSkills() != null ? b.getSkills().size() : 0;
-                    if (aSkillCount != bSkillCount) {
-                        return Integer.compare(bSkillCount, aSkillCount);
-                    }
-
-                    // 3. Cuối cùng sắp xếp theo tên
-                    String nameA = a.getFullName() != null ? a.getFullName() : "";
-                    String nameB = b.getFullName() != null ? b.getFullName() : "";
-                    return nameA.compareToIgnoreCase(nameB);
-                })
-                .collect(Collectors.toList());
+        // Giáo viên cùng branch (trừ teacher hiện tại), không trùng lịch, đã chấm điểm và sắp xếp
+        return replacementCandidateFinder.findCandidates(session, teacherBranchIds,
+                Set.of(teacher.getId()), sessionRequiredSkills, page, size);
     }
 
     //Academic staff chọn lại replacement teacher khi request ở PENDING (sau khi bị từ chối)
@@ -0,0 +1,164 @@
+package org.fyp.tmssep490be.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.entities.Session;
+import org.fyp.tmssep490be.entities.TimeSlotTemplate;
+import org.fyp.tmssep490be.entities.enums.ClassStatus;
+import org.fyp.tmssep490be.repositories.SessionRepository;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Phát hiện trùng lịch dạy của giáo viên.
+ *
+ * Thay vì query sessions từng lớp đã gán rồi so sánh lồng nhau (target x assigned),
+ * service nạp lịch bận của nhiều giáo viên bằng một query (chỉ trong khoảng ngày của lớp cần kiểm tra)
+ * và dựng chỉ mục (giáo viên -> ngày -> khung giờ). Mỗi buổi của lớp cần kiểm tra chỉ so với
+ * các khung giờ bận cùng ngày.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TeacherScheduleConflictService {
+
+    // Lớp đã kết thúc/hủy không còn chiếm lịch giáo viên
+    private static final List<ClassStatus> INACTIVE_CLASS_STATUSES = List.of(ClassStatus.COMPLETED, ClassStatus.CANCELLED);
+
+    private final SessionRepository sessionRepository;
+
+    // Khung giờ bận của giáo viên (một buổi học của lớp đang dạy/đã đăng ký)
+    public record OccupiedSlot(Long teacherId, Long classId, String className, String classCode,
+                               LocalDate date, LocalTime startTime, LocalTime endTime) {
+    }
+
+    // Một cặp trùng lịch: buổi của lớp cần kiểm tra và khung giờ bận
+    public record Conflict(Session targetSession, OccupiedSlot occupied) {
+
+        public LocalTime targetStart() {
+            return targetSession.getTimeSlotTemplate().getStartTime();
+        }
+
+        public LocalTime targetEnd() {
+            return targetSession.getTimeSlotTemplate().getEndTime();
+        }
+    }
+
+    /**
+     * Chỉ mục lịch bận: teacherId -> ngày -> danh sách khung giờ bận.
+     */
+    public static final class OccupancyIndex {
+
+        private final Map<Long, Map<LocalDate, List<OccupiedSlot>>> slotsByTeacher = new HashMap<>();
+
+        private void add(OccupiedSlot slot) {
+            slotsByTeacher
+                    .computeIfAbsent(slot.teacherId(), k -> new HashMap<>())
+                    .computeIfAbsent(slot.date(), k -> new ArrayList<>())
+                    .add(slot);
+        }
+
+        public List<Conflict> findConflicts(Long teacherId, Collection<Session> targetSessions) {
+            Map<LocalDate, List<OccupiedSlot>> byDate = slotsByTeacher.get(teacherId);
+            if (byDate == null || targetSessions == null) {
+                return List.of();
+            }
+
+            List<Conflict> conflicts = new ArrayList<>();
+            for (Session target : targetSessions) {
+                TimeSlotTemplate slot = target.getTimeSlotTemplate();
+                if (target.getDate() == null || slot == null) {
+                    continue;
+                }
+                for (OccupiedSlot occupied : byDate.getOrDefault(target.getDate(), List.of())) {
+                    // Overlap nếu: start1 < end2 AND start2 < end1
+                    if (slot.getStartTime().isBefore(occupied.endTime())
+                            && occupied.startTime().isBefore(slot.getEndTime())) {
+                        conflicts.add(new Conflict(target, occupied));
+                    }
+                }
+            }
+            return conflicts;
+        }
+
+        public boolean hasConflict(Long teacherId, Collection<Session> targetSessions) {
+            return !findConflicts(teacherId, targetSessions).isEmpty();
+        }
+
+        // Trùng lịch đầu tiên với mỗi lớp (giữ thứ tự xuất hiện)
+        public Map<Long, Conflict> firstConflictPerClass(Long teacherId, Collection<Session> targetSessions) {
+            Map<Long, Conflict> result = new LinkedHashMap<>();
+            for (Conflict conflict : findConflicts(teacherId, targetSessions)) {
+                result.putIfAbsent(conflict.occupied().classId(), conflict);
+            }
+            return result;
+        }
+    }
+
+    // Lịch bận từ các lớp được gán (trừ COMPLETED/CANCELLED) của các giáo viên, trong khoảng ngày của target
+    public OccupancyIndex loadAssignedOccupancy(Collection<Long> teacherIds, Collection<Session> targetSessions) {
+        LocalDate[] range = dateRange(targetSessions);
+        return loadAssignedOccupancy(teacherIds, range == null ? null : range[0], range == null ? null : range[1]);
+    }
+
+    public OccupancyIndex loadAssignedOccupancy(Collection<Long> teacherIds, LocalDate fromDate, LocalDate toDate) {
+        OccupancyIndex index = new OccupancyIndex();
+        if (teacherIds == null || teacherIds.isEmpty() || fromDate == null || toDate == null) {
+            return index;
+        }
+
+        List<Object[]> rows = sessionRepository.findOccupiedSlotsByAssignedTeacherIds(
+                List.copyOf(teacherIds), INACTIVE_CLASS_STATUSES, fromDate, toDate);
+        for (Object[] row : rows) {
+            index.add(new OccupiedSlot(
+                    (Long) row[0], (Long) row[1], (String) row[2], (String) row[3],
+                    (LocalDate) row[4], (LocalTime) row[5], (LocalTime) row[6]));
+        }
+        log.debug("Loaded {} occupied slots for {} teachers ({} -> {})", rows.size(), teacherIds.size(), fromDate, toDate);
+        return index;
+    }
+
+    // Lịch bận từ một tập lớp cụ thể (vd: lớp đang dạy hoặc đã đăng ký PENDING), gán cho teacherId
+    public OccupancyIndex loadClassOccupancy(Long teacherId, Collection<Long> classIds, Collection<Session> targetSessions) {
+        OccupancyIndex index = new OccupancyIndex();
+        LocalDate[] range = dateRange(targetSessions);
+        if (classIds == null || classIds.isEmpty() || range == null) {
+            return index;
+        }
+
+        for (Object[] row : sessionRepository.findOccupiedSlotsByClassIds(List.copyOf(classIds), range[0], range[1])) {
+            index.add(new OccupiedSlot(
+                    teacherId, (Long) row[0], (String) row[1], (String) row[2],
+                    (LocalDate) row[3], (LocalTime) row[4], (LocalTime) row[5]));
+        }
+        return index;
+    }
+
+    // [min, max] ngày của các buổi có khung giờ, null nếu không có buổi nào
+    public static LocalDate[] dateRange(Collection<Session> sessions) {
+        LocalDate min = null;
+        LocalDate max = null;
+        if (sessions != null) {
+            for (Session session : sessions) {
+                if (session.getDate() == null || session.getTimeSlotTemplate() == null) {
+                    continue;
+                }
+                if (min == null || session.getDate().isBefore(min)) {
+                    min = session.getDate();
+                }
+                if (max == null || session.getDate().isAfter(max)) {
+                    max = session.getDate();
+                }
+            }
+        }
+        return min == null ? null : new LocalDate[] { min, max };
+    }
+}
@@ -35,6 +35,7 @@ public class TeacherScheduleService {
     private final TeacherRequestRepository teacherRequestRepository;
     private final QAReportRepository qaReportRepository;
     private final ObjectMapper objectMapper;
+    private final WeeklyTimetableCache timetableCache;
 
     public LocalDate getCurrentWeekStart() {
         LocalDate today = LocalDate.now();
@@ -50,6 +51,11 @@ public class TeacherScheduleService {
             throw new CustomException(ErrorCode.INVALID_INPUT, "weekStart must be a Monday");
         }
 
+        return timetableCache.get(WeeklyTimetableCache.Viewer.TEACHER, teacherId, weekStart, classId, branchId,
+                () -> loadWeeklySchedule(teacherId, weekStart, classId, branchId));
+    }
+
+    private WeeklyScheduleResponseDTO loadWeeklySchedule(Long teacherId, LocalDate weekStart, Long classId, Long branchId) {
         // 2. Tính phạm vi tuần
         LocalDate weekEnd = weekStart.plusDays(6);
 
@@ -66,14 +72,23 @@ public class TeacherScheduleService {
         // 5. Lấy toàn bộ khung giờ của các cơ sở mà giáo viên có lớp
         List<TimeSlotDTO> timeSlots = getAllTimeSlotsForTeacher(teacherId);
 
-        // 6. Gom nhóm theo ngày trong tuần
+        // 6. QA report đã nộp và request đã duyệt của cả tuần: mỗi loại một query
+        List<Long> sessionIds = sessions.stream().map(Session::getId).toList();
+        Set<Long> reportedSessionIds = sessionIds.isEmpty()
+                ? Collections.emptySet()
+                : new HashSet<>(qaReportRepository.findSessionIdsWithSubmittedReports(sessionIds));
+        Map<Long, String> approvedRequestTypes = findApprovedRequestTypes(sessionIds);
+
+        // 7. Gom nhóm theo ngày trong tuần
         Map<DayOfWeek, List<SessionSummaryDTO>> scheduleMap = sessions.stream()
                 .collect(Collectors.groupingBy(
                         s -> s.getDate().getDayOfWeek(),
-                        Collectors.mapping(this::mapToSessionSummaryDTO, Collectors.toList())
+                        Collectors.mapping(
+                                s -> mapToSessionSummaryDTO(s, reportedSessionIds, approvedRequestTypes),
+                                Collectors.toList())
                 ));
 
-        // 7. Đảm bảo đủ 7 ngày trong map (kể cả rỗng)
+        // 8. Đảm bảo đủ 7 ngày trong map (kể cả rỗng)
         for (DayOfWeek day : DayOfWeek.values()) {
             scheduleMap.putIfAbsent(day, new ArrayList<>());
         }
@@ -83,7 +98,7 @@ public class TeacherScheduleService {
                 scheduleMap.values().stream().mapToInt(List::size).sum(),
                 scheduleMap.values().stream().filter(list -> !list.isEmpty()).count());
 
-        // 8. Xây dựng response
+        // 9. Xây dựng response
         return WeeklyScheduleResponseDTO.builder()
                 .weekStart(weekStart)
                 .weekEnd(weekEnd)
@@ -328,12 +343,8 @@ public class TeacherScheduleService {
         // Dò phiên dạy trong dải ngày rộng để gom đủ chi nhánh
         LocalDate fromDate = LocalDate.now().minusYears(1);
         LocalDate toDate = LocalDate.now().plusYears(1);
-        List<Session> allSessions = sessionRepository.findWeeklySessionsForTeacher(
-                teacherId, fromDate, toDate, null, null);
-        
-        Set<Long> branchIds = allSessions.stream()
-                .map(s -> s.getClassEntity().getBranch().getId())
-                .collect(Collectors.toSet());
+        Set<Long> branchIds = new HashSet<>(
+                sessionRepository.findBranchIdsWithTeacherSessions(teacherId, fromDate, toDate));
 
         if (branchIds.isEmpty()) {
             log.warn("Teacher {} has no sessions. Returning empty time slot list.", teacherId);
@@ -390,7 +401,26 @@ public class TeacherScheduleService {
         return mergedTimeSlots;
     }
 
-    private SessionSummaryDTO mapToSessionSummaryDTO(Session session) {
+    // sessionId -> loại request đã duyệt (theo session gốc hoặc session mới tạo từ reschedule)
+    private Map<Long, String> findApprovedRequestTypes(List<Long> sessionIds) {
+        if (sessionIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Set<Long> weekSessionIds = new HashSet<>(sessionIds);
+        Map<Long, String> requestTypes = new HashMap<>();
+        for (Object[] row : teacherRequestRepository.findApprovedRequestTypesBySessionIds(sessionIds)) {
+            String requestType = ((Enum<?>) row[2]).name();
+            for (Object id : new Object[] { row[0], row[1] }) {
+                if (id != null && weekSessionIds.contains((Long) id)) {
+                    requestTypes.putIfAbsent((Long) id, requestType);
+                }
+            }
+        }
+        return requestTypes;
+    }
+
+    private SessionSummaryDTO mapToSessionSummaryDTO(Session session, Set<Long> reportedSessionIds,
+                                                     Map<Long, String> approvedRequestTypes) {
         ClassEntity classEntity = session.getClassEntity();
         SubjectSession subjectSession = session.getSubjectSession();
         TimeSlotTemplate timeSlot = session.getTimeSlotTemplate();
@@ -431,17 +461,15 @@ public class TeacherScheduleService {
         // Kiểm tra xem đã có báo cáo được nộp chưa:
         // 1. Có QA report SUBMITTED, HOẶC
         // 2. Session status = DONE và có teacherNote (teacher đã nộp báo cáo)
-        boolean reportSubmitted = qaReportRepository.countSubmittedReportsBySessionId(session.getId()) > 0
+        boolean reportSubmitted = reportedSessionIds.contains(session.getId())
                 || (session.getStatus() == SessionStatus.DONE && session.getTeacherNote() != null && !session.getTeacherNote().trim().isEmpty());
 
         // Lấy request type đã approved cho session này
         // Vì giáo viên chỉ được tạo 1 request cho 1 session, nên chỉ có tối đa 1 request approved
-        List<String> pendingRequestTypes = teacherRequestRepository
-                .findBySessionIdAndApprovedStatus(session.getId())
-                .stream()
-                .findFirst()
-                .map(tr -> List.of(tr.getRequestType().name()))
-                .orElse(Collections.emptyList());
+        String approvedRequestType = approvedRequestTypes.get(session.getId());
+        List<String> pendingRequestTypes = approvedRequestType != null
+                ? List.of(approvedRequestType)
+                : Collections.emptyList();
 
         return SessionSummaryDTO.builder()
                 .sessionId(session.getId())
@@ -0,0 +1,84 @@
+package org.fyp.tmssep490be.services;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.entities.Enrollment;
+import org.fyp.tmssep490be.entities.QAReport;
+import org.fyp.tmssep490be.entities.Session;
+import org.fyp.tmssep490be.entities.SessionResource;
+import org.fyp.tmssep490be.entities.StudentSession;
+import org.fyp.tmssep490be.entities.TeacherRequest;
+import org.fyp.tmssep490be.entities.TeachingSlot;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+
+/**
+ * JPA listener cho các entity hiển thị trên lịch tuần (buổi học, phân công dạy, điểm danh, ghi danh,
+ * phòng học, yêu cầu giáo viên, QA report): bỏ các lịch liên quan trong WeeklyTimetableCache.
+ * Chỉ đọc id (của proxy hoặc khoá ghép), không khởi tạo lazy association.
+ */
+@Component
+@Slf4j
+public class TimetableCacheListener {
+
+    private final ObjectProvider<WeeklyTimetableCache> timetableCache;
+
+    public TimetableCacheListener(ObjectProvider<WeeklyTimetableCache> timetableCache) {
+        this.timetableCache = timetableCache;
+    }
+
+    @PostPersist
+    public void onPersist(Object entity) {
+        onChange(entity, true);
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void onUpdateOrRemove(Object entity) {
+        onChange(entity, false);
+    }
+
+    private void onChange(Object entity, boolean persisted) {
+        WeeklyTimetableCache cache = timetableCache.getIfAvailable();
+        if (cache == null) {
+            return;
+        }
+        try {
+            if (entity instanceof Session session) {
+                // Lịch đang chứa buổi học có tag buổi học. Buổi mới hoặc dời sang ngày khác thì lịch của tuần
+                // đích chưa chứa buổi này nên phải bỏ theo tuần; sửa khác (ghi chú, trạng thái...) chỉ bỏ theo buổi
+                cache.invalidateSession(session.getId());
+                if (persisted || !Objects.equals(session.getPersistedDate(), session.getDate())) {
+                    cache.invalidateWeekOf(session.getDate());
+                }
+            } else if (entity instanceof TeachingSlot slot) {
+                if (slot.getId() != null) {
+                    cache.invalidateTeacher(slot.getId().getTeacherId());
+                    cache.invalidateSession(slot.getId().getSessionId());
+                }
+            } else if (entity instanceof StudentSession studentSession) {
+                if (studentSession.getId() != null) {
+                    cache.invalidateStudent(studentSession.getId().getStudentId());
+                    cache.invalidateSession(studentSession.getId().getSessionId());
+                }
+            } else if (entity instanceof SessionResource sessionResource) {
+                cache.invalidateSession(sessionResource.getId() != null ? sessionResource.getId().getSessionId() : null);
+            } else if (entity instanceof Enrollment enrollment) {
+                cache.invalidateStudent(enrollment.getStudentId());
+            } else if (entity instanceof TeacherRequest request) {
+                cache.invalidateTeacher(request.getTeacher() != null ? request.getTeacher().getId() : null);
+                cache.invalidateTeacher(request.getReplacementTeacher() != null ? request.getReplacementTeacher().getId() : null);
+                cache.invalidateSession(request.getSession() != null ? request.getSession().getId() : null);
+            } else if (entity instanceof QAReport report) {
+                cache.invalidateSession(report.getSession() != null ? report.getSession().getId() : null);
+            }
+        } catch (Exception e) {
+            log.warn("Could not resolve timetable cache tags, invalidating all: {}", e.getMessage());
+            cache.invalidateAll();
+        }
+    }
+}
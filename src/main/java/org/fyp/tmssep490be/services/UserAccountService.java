@@ -6,6 +6,7 @@ import org.fyp.tmssep490be.dtos.user.CreateUserRequest;
 import org.fyp.tmssep490be.dtos.user.UpdateUserRequest;
 import org.fyp.tmssep490be.entities.enums.UserStatus;
 import org.fyp.tmssep490be.repositories.UserAccountRepository;
+import org.fyp.tmssep490be.security.UserPrincipalCache;
 import org.fyp.tmssep490be.dtos.user.UserResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -43,6 +44,7 @@ public class UserAccountService {
     private final EmailService emailService;
     private final TeacherRepository teacherRepository;
     private final StudentRepository studentRepository;
+    private final UserPrincipalCache userPrincipalCache;
 
     @Transactional
     public UserResponse createUser(CreateUserRequest request) {
@@ -260,6 +262,9 @@ public class UserAccountService {
             log.info("No branchIds provided, keeping existing branches for user {}", user.getId());
         }
 
+        // Trạng thái/role có thể đã đổi -> bỏ principal đã cache
+        userPrincipalCache.evict(user.getId());
+
         log.info("User updated successfully with ID: {}", user.getId());
 
         // Không cần refresh entity nữa vì đã sync memory
@@ -319,6 +324,7 @@ public class UserAccountService {
 
         user.setStatus(newStatus);
         userAccountRepository.save(user);
+        userPrincipalCache.evict(userId);
 
         return mapToResponse(user);
     }
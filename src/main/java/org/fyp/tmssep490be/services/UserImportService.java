@@ -20,6 +20,9 @@ import org.fyp.tmssep490be.repositories.TeacherRepository;
 import org.fyp.tmssep490be.repositories.StudentRepository;
 import org.fyp.tmssep490be.entities.Teacher;
 import org.fyp.tmssep490be.entities.Student;
+import org.fyp.tmssep490be.exceptions.CustomException;
+import org.fyp.tmssep490be.exceptions.ErrorCode;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -29,8 +32,12 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
@@ -48,29 +55,72 @@ public class UserImportService {
     private final TeacherRepository teacherRepository;
     private final StudentRepository studentRepository;
 
+    // Số dòng tối đa của một lần preview import (response preview trả về toàn bộ các dòng)
+    @Value("${tms.import.preview-max-rows:1000}")
+    private int previewMaxRows;
+
     public UserImportPreview previewUserImport(MultipartFile file) {
-        List<UserImportData> users = excelParserService.parseUserImport(file);
-        int validCount = 0;
-        int errorCount = 0;
-
-        for (UserImportData user : users) {
-            validateUserImportData(user);
-            if (user.isValid()) {
-                validCount++;
-            } else {
-                errorCount++;
+        // Role/chi nhánh ít và cố định trong một lần import -> nạp một lần
+        Map<String, Role> rolesByCode = new HashMap<>();
+        roleRepository.findAll().forEach(role -> rolesByCode.put(role.getCode(), role));
+        Set<String> branchCodes = new HashSet<>();
+        branchRepository.findAll().forEach(branch -> branchCodes.add(branch.getCode()));
+
+        List<UserImportData> users = new ArrayList<>();
+        int[] counts = new int[2]; // [valid, error]
+
+        // Đọc file theo lô, kiểm tra email/số điện thoại đã tồn tại bằng một query cho mỗi lô
+        excelParserService.streamUserImport(file, ExcelParserService.DEFAULT_CHUNK_SIZE, chunk -> {
+            // Vượt giới hạn thì dừng đọc file ngay, không tra cứu thêm lô nào
+            if (users.size() + chunk.size() > previewMaxRows) {
+                throw new CustomException(ErrorCode.TOO_MANY_ROWS_IN_FILE,
+                        String.format("File chứa hơn %d dòng, vượt quá giới hạn %d dòng cho một lần import",
+                                previewMaxRows, previewMaxRows));
             }
-        }
+            ImportLookup lookup = loadLookup(chunk, rolesByCode, branchCodes);
+            for (UserImportData user : chunk) {
+                validateUserImportData(user, lookup);
+                if (user.isValid()) {
+                    counts[0]++;
+                } else {
+                    counts[1]++;
+                }
+            }
+            users.addAll(chunk);
+        });
 
         return UserImportPreview.builder()
                 .users(users)
                 .totalCount(users.size())
-                .validCount(validCount)
-                .errorCount(errorCount)
+                .validCount(counts[0])
+                .errorCount(counts[1])
                 .build();
     }
 
-    private void validateUserImportData(UserImportData user) {
+    // Dữ liệu tra cứu cho một lô dòng import
+    private record ImportLookup(Set<String> existingEmails, Set<String> existingPhones,
+                                Map<String, Role> rolesByCode, Set<String> branchCodes) {
+    }
+
+    private ImportLookup loadLookup(List<UserImportData> chunk, Map<String, Role> rolesByCode, Set<String> branchCodes) {
+        Set<String> emails = new HashSet<>();
+        Set<String> phones = new HashSet<>();
+        for (UserImportData user : chunk) {
+            if (user.getEmail() != null && !user.getEmail().isEmpty()) {
+                emails.add(user.getEmail());
+            }
+            if (user.getPhone() != null && !user.getPhone().trim().isEmpty()) {
+                phones.add(user.getPhone().trim());
+            }
+        }
+        Set<String> existingEmails = emails.isEmpty()
+                ? Set.of() : new HashSet<>(userAccountRepository.findExistingEmails(emails));
+        Set<String> existingPhones = phones.isEmpty()
+                ? Set.of() : new HashSet<>(userAccountRepository.findExistingPhones(phones));
+        return new ImportLookup(existingEmails, existingPhones, rolesByCode, branchCodes);
+    }
+
+    private void validateUserImportData(UserImportData user, ImportLookup lookup) {
         // Bỏ qua nếu đã có lỗi từ lúc parse
         if ("ERROR".equals(user.getStatus())) {
             user.setValid(false);
@@ -82,7 +132,7 @@ public class UserImportService {
         // 1. Kiểm tra Email
         if (user.getEmail() == null || user.getEmail().isEmpty()) {
             errorMsg.append("Email là bắt buộc. ");
-        } else if (userAccountRepository.existsByEmail(user.getEmail())) {
+        } else if (lookup.existingEmails().contains(user.getEmail())) {
             errorMsg.append("Email đã tồn tại. ");
         }
 
@@ -90,8 +140,7 @@ public class UserImportService {
         if (user.getRole() == null || user.getRole().isEmpty()) {
             errorMsg.append("Vai trò là bắt buộc. ");
         } else {
-            Optional<Role> role = roleRepository.findByCode(user.getRole().toUpperCase());
-            if (role.isEmpty()) {
+            if (!lookup.rolesByCode().containsKey(user.getRole().toUpperCase())) {
                 errorMsg.append("Vai trò không hợp lệ: ").append(user.getRole()).append(". ");
             }
         }
@@ -109,8 +158,7 @@ public class UserImportService {
             for (String code : branchCodes) {
                 String trimmedCode = code.trim();
                 if (!trimmedCode.isEmpty()) {
-                    Optional<Branch> branch = branchRepository.findByCode(trimmedCode);
-                    if (branch.isEmpty()) {
+                    if (!lookup.branchCodes().contains(trimmedCode)) {
                         errorMsg.append("Mã chi nhánh không tồn tại: ").append(trimmedCode).append(". ");
                     }
                 }
@@ -123,7 +171,7 @@ public class UserImportService {
             // Validate format: SĐT Việt Nam 10 số, bắt đầu bằng 0(3|5|7|8|9)
             if (!phone.matches("^(0[35789])[0-9]{8}$")) {
                 errorMsg.append("Số điện thoại không hợp lệ. ");
-            } else if (userAccountRepository.existsByPhone(phone)) {
+            } else if (lookup.existingPhones().contains(phone)) {
                 errorMsg.append("Số điện thoại đã tồn tại trong hệ thống. ");
             }
         }
@@ -6,8 +6,10 @@ import org.springframework.stereotype.Service;
 import java.time.LocalDate;
 import java.time.MonthDay;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Service to check Vietnam public holidays.
@@ -48,6 +50,9 @@ public class VietnamHolidayService {
     // Giỗ tổ Hùng Vương (10/3 âm lịch) pre-calculated
     private static final Map<Integer, LocalDate> HUNG_KINGS_DAY = new HashMap<>();
 
+    // All holidays per year, built on first use by getHolidaysInYear
+    private static final Map<Integer, Set<LocalDate>> HOLIDAYS_BY_YEAR = new ConcurrentHashMap<>();
+
     static {
         // Tết Nguyên đán 2025: 29/01/2025 (Mùng 1)
         // Nghỉ từ 28/01 đến 02/02/2025 (29 Tết đến Mùng 5)
@@ -154,6 +159,28 @@ public class VietnamHolidayService {
         return false;
     }
 
+    /**
+     * Get all holidays of a year, computed once and cached.
+     * Used when many dates are checked in one go (e.g. generating sessions for a class).
+     *
+     * @param year the year
+     * @return unmodifiable set of holiday dates in that year
+     */
+    public Set<LocalDate> getHolidaysInYear(int year) {
+        return HOLIDAYS_BY_YEAR.computeIfAbsent(year, y -> {
+            Set<LocalDate> holidays = new HashSet<>();
+            for (MonthDay monthDay : FIXED_HOLIDAYS) {
+                holidays.add(monthDay.atYear(y));
+            }
+            holidays.addAll(TET_HOLIDAYS.getOrDefault(y, Set.of()));
+            LocalDate hungKingsDay = HUNG_KINGS_DAY.get(y);
+            if (hungKingsDay != null) {
+                holidays.add(hungKingsDay);
+            }
+            return Set.copyOf(holidays);
+        });
+    }
+
     /**
      * Get the name of the holiday for a given date.
      *
@@ -0,0 +1,200 @@
+package org.fyp.tmssep490be.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.fyp.tmssep490be.dtos.schedule.SessionSummaryDTO;
+import org.fyp.tmssep490be.dtos.schedule.WeeklyScheduleResponseDTO;
+import org.fyp.tmssep490be.utils.BoundedTtlCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Lịch tuần đã dựng sẵn của học viên / giáo viên, key là (người xem, tuần, bộ lọc lớp, chi nhánh).
+ *
+ * Mỗi bản ghi được gắn tag: người xem, tuần, các lớp và các buổi học có trong lịch. Khi buổi học đổi lịch,
+ * huỷ, đổi giáo viên, điểm danh hoặc ghi danh thay đổi, TimetableCacheListener và các service ghi bằng
+ * bulk query gọi invalidate theo tag tương ứng. Bản ghi cũng hết hạn theo TTL và khi sang ngày mới
+ * (lịch học viên hiển thị buổi đã qua chưa điểm danh là vắng).
+ *
+ * Response trả về được dùng chung giữa các request, nơi gọi không được sửa.
+ */
+@Component
+@Slf4j
+public class WeeklyTimetableCache {
+
+    public enum Viewer { STUDENT, TEACHER }
+
+    private enum TagType { STUDENT, TEACHER, WEEK, CLASS, SESSION }
+
+    private record Tag(TagType type, Object value) {
+    }
+
+    private record Key(Viewer viewer, Long viewerId, LocalDate weekStart, Long classId, Long branchId) {
+    }
+
+    private final BoundedTtlCache<Key, Entry> cache;
+
+    // Tăng mỗi lần invalidate: lịch nạp xong sau một lần invalidate xen giữa thì không đưa vào cache
+    private final AtomicLong generation = new AtomicLong();
+
+    // Tag đã hẹn xoá khi transaction hiện tại kết thúc (tránh quét cache lặp lại khi saveAll nhiều entity)
+    private final Object pendingResourceKey = new Object();
+
+    public WeeklyTimetableCache(
+            @Value("${tms.timetable-cache.ttl-seconds:300}") long ttlSeconds,
+            @Value("${tms.timetable-cache.max-size:5000}") int maxSize) {
+        this.cache = new BoundedTtlCache<>(ttlSeconds * 1000, maxSize);
+    }
+
+    public WeeklyScheduleResponseDTO get(Viewer viewer, Long viewerId, LocalDate weekStart, Long classId, Long branchId,
+                                         Supplier<WeeklyScheduleResponseDTO> loader) {
+        Key key = new Key(viewer, viewerId, weekStart, classId, branchId);
+        Entry entry = cache.get(key);
+        if (entry != null) {
+            return entry.schedule;
+        }
+
+        long loadGeneration = generation.get();
+        WeeklyScheduleResponseDTO schedule = loader.get();
+        if (cache.isEnabled() && generation.get() == loadGeneration && !hasPendingEvictions()) {
+            Entry loaded = new Entry(schedule, tagsOf(key, schedule));
+            // Hết hạn theo TTL hoặc khi sang ngày mới, tuỳ mốc nào đến trước
+            cache.put(key, loaded, startOfTomorrowMillis());
+            // invalidate tăng generation trước khi quét cache: nếu nó chen vào giữa lần kiểm tra trên và put
+            // thì generation đã đổi, bỏ bản ghi vừa đưa vào (chỉ khi chưa bị bản ghi khác thay thế)
+            if (generation.get() != loadGeneration) {
+                cache.remove(key, loaded);
+            }
+        }
+        return schedule;
+    }
+
+    public void invalidateStudent(Long studentId) {
+        evict(TagType.STUDENT, studentId);
+    }
+
+    public void invalidateTeacher(Long teacherId) {
+        evict(TagType.TEACHER, teacherId);
+    }
+
+    public void invalidateClass(Long classId) {
+        evict(TagType.CLASS, classId);
+    }
+
+    public void invalidateSession(Long sessionId) {
+        evict(TagType.SESSION, sessionId);
+    }
+
+    // Buổi học mới / dời sang ngày khác: lịch của tuần đó chưa chứa buổi học nên không có tag lớp
+    public void invalidateWeekOf(LocalDate date) {
+        if (date != null) {
+            evict(TagType.WEEK, date.with(DayOfWeek.MONDAY));
+        }
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    // Xoá ngay và khi transaction kết thúc, để không giữ lại lịch nạp trước khi commit
+    private void evict(TagType type, Object value) {
+        if (value == null) {
+            return;
+        }
+        Tag tag = new Tag(type, value);
+        generation.incrementAndGet();
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            removeTagged(Set.of(tag));
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Set<Tag> pending = (Set<Tag>) TransactionSynchronizationManager.getResource(pendingResourceKey);
+        if (pending == null) {
+            Set<Tag> tags = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(pendingResourceKey, tags);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(pendingResourceKey);
+                    generation.incrementAndGet();
+                    removeTagged(tags);
+                }
+            });
+            pending = tags;
+        }
+        if (pending.add(tag)) {
+            removeTagged(Set.of(tag));
+        }
+    }
+
+    // Transaction đang ghi lịch: lịch đọc trong transaction này chưa phản ánh dữ liệu đã commit
+    private boolean hasPendingEvictions() {
+        return TransactionSynchronizationManager.isSynchronizationActive()
+                && TransactionSynchronizationManager.hasResource(pendingResourceKey);
+    }
+
+    private void removeTagged(Set<Tag> tags) {
+        if (!tags.isEmpty()) {
+            cache.removeIf(entry -> entry.hasAnyTag(tags));
+        }
+    }
+
+    private static long startOfTomorrowMillis() {
+        return LocalDate.now().plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static Set<Tag> tagsOf(Key key, WeeklyScheduleResponseDTO schedule) {
+        Set<Tag> tags = new HashSet<>();
+        tags.add(new Tag(key.viewer() == Viewer.STUDENT ? TagType.STUDENT : TagType.TEACHER, key.viewerId()));
+        tags.add(new Tag(TagType.WEEK, key.weekStart()));
+        if (key.classId() != null) {
+            tags.add(new Tag(TagType.CLASS, key.classId()));
+        }
+        if (schedule.getSchedule() != null) {
+            for (List<SessionSummaryDTO> day : schedule.getSchedule().values()) {
+                for (SessionSummaryDTO session : day) {
+                    if (session.getClassId() != null) {
+                        tags.add(new Tag(TagType.CLASS, session.getClassId()));
+                    }
+                    if (session.getSessionId() != null) {
+                        tags.add(new Tag(TagType.SESSION, session.getSessionId()));
+                    }
+                }
+            }
+        }
+        return tags;
+    }
+
+    private static final class Entry {
+
+        private final WeeklyScheduleResponseDTO schedule;
+        private final Set<Tag> tags;
+
+        private Entry(WeeklyScheduleResponseDTO schedule, Set<Tag> tags) {
+            this.schedule = schedule;
+            this.tags = tags;
+        }
+
+        private boolean hasAnyTag(Set<Tag> candidates) {
+            for (Tag tag : candidates) {
+                if (tags.contains(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
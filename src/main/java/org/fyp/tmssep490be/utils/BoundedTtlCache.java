@@ -0,0 +1,105 @@
+package org.fyp.tmssep490be.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Cache trong bộ nhớ có TTL và giới hạn số entry, dùng chung cho các cache nội bộ của service
+ * (principal đã resolve, snapshot đọc nhiều...).
+ *
+ * Entry được giữ theo thứ tự truy cập: khi đầy thì bỏ entry lâu nhất chưa được dùng (LRU), O(1), không quét
+ * toàn bộ cache trên thread của request. Entry hết hạn bị bỏ khi đọc tới hoặc khi bị đẩy ra theo LRU.
+ * ttlMillis <= 0 hoặc maxSize <= 0 thì không giữ gì (luôn nạp lại).
+ *
+ * Mọi thao tác khoá trên cache; loader của {@link #get(Object, Supplier)} chạy ngoài khoá.
+ */
+public class BoundedTtlCache<K, V> {
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+
+    private final long ttlMillis;
+    private final int maxSize;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    public BoundedTtlCache(long ttlMillis, int maxSize) {
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > BoundedTtlCache.this.maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return ttlMillis > 0 && maxSize > 0;
+    }
+
+    // Giá trị còn hạn của key, null nếu chưa có hoặc đã hết hạn
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt() < System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value();
+    }
+
+    // Giá trị còn hạn của key; chưa có thì nạp bằng loader và giữ lại
+    public V get(K key, Supplier<V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        value = loader.get();
+        put(key, value);
+        return value;
+    }
+
+    public void put(K key, V value) {
+        put(key, value, Long.MAX_VALUE);
+    }
+
+    // Giữ đến expiresAt (epoch millis) nhưng không quá TTL
+    public synchronized void put(K key, V value, long expiresAt) {
+        if (!isEnabled() || value == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long ttlExpiresAt = ttlMillis > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + ttlMillis;
+        entries.put(key, new Entry<>(value, Math.min(expiresAt, ttlExpiresAt)));
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    // Chỉ bỏ nếu key vẫn đang giữ đúng value này (không bỏ nhầm giá trị mới hơn do thread khác đưa vào)
+    public synchronized void remove(K key, V value) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && Objects.equals(entry.value(), value)) {
+            entries.remove(key);
+        }
+    }
+
+    // Bỏ theo điều kiện trên giá trị (vd. theo tag); quét toàn bộ nên chỉ dùng ở đường ghi / invalidate
+    public synchronized void removeIf(Predicate<? super V> predicate) {
+        entries.values().removeIf(entry -> predicate.test(entry.value()));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
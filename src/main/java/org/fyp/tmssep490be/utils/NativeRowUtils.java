@@ -0,0 +1,40 @@
+package org.fyp.tmssep490be.utils;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * Chuyển giá trị cột của các query projection (Object[]) sang java.time.
+ * Native query có thể trả về java.sql.Date / java.sql.Time, JPQL trả về LocalDate / LocalTime.
+ */
+public final class NativeRowUtils {
+
+    private NativeRowUtils() {
+    }
+
+    public static LocalDate toLocalDate(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof LocalDate localDate) {
+            return localDate;
+        }
+        if (value instanceof java.sql.Date sqlDate) {
+            return sqlDate.toLocalDate();
+        }
+        return LocalDate.parse(value.toString());
+    }
+
+    public static LocalTime toLocalTime(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof LocalTime localTime) {
+            return localTime;
+        }
+        if (value instanceof java.sql.Time sqlTime) {
+            return sqlTime.toLocalTime();
+        }
+        return LocalTime.parse(value.toString());
+    }
+}
@@ -39,6 +39,9 @@ DROP TABLE IF EXISTS replacement_skill_assessment CASCADE;
 DROP TABLE IF EXISTS feedback_question CASCADE;
 DROP TABLE IF EXISTS student_feedback_response CASCADE;
 DROP TABLE IF EXISTS notification CASCADE;
+DROP TABLE IF EXISTS email_outbox CASCADE;
+DROP TABLE IF EXISTS job_run CASCADE;
+DROP TABLE IF EXISTS job_lease CASCADE;
 
 -- Drop existing enum types (to ensure clean recreation)
 DROP TYPE IF EXISTS session_status_enum CASCADE;
@@ -641,6 +644,47 @@ CREATE TABLE notification (
   CONSTRAINT chk_notification_status CHECK (status IN ('UNREAD', 'READ', 'ARCHIVED'))
 );
 
+-- Email chờ gửi (ghi cùng transaction nghiệp vụ, job gửi theo lô)
+CREATE TABLE email_outbox (
+  id BIGSERIAL PRIMARY KEY,
+  recipient VARCHAR(255) NOT NULL,
+  subject VARCHAR(500) NOT NULL,
+  template_name VARCHAR(255),
+  template_data TEXT, -- JSON dữ liệu template
+  html_content TEXT, -- nội dung HTML dựng sẵn (khi không dùng template)
+  status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+  attempts INTEGER NOT NULL DEFAULT 0,
+  last_error TEXT,
+  next_attempt_at TIMESTAMPTZ NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  created_at TIMESTAMPTZ DEFAULT CURRENT_TIMESTAMP NOT NULL,
+  sent_at TIMESTAMPTZ,
+  CONSTRAINT chk_email_outbox_status CHECK (status IN ('PENDING', 'SENDING', 'SENT', 'FAILED')),
+  CONSTRAINT chk_email_outbox_content CHECK (template_name IS NOT NULL OR html_content IS NOT NULL)
+);
+
+-- Lease của scheduled job: chỉ instance giữ lease còn hạn mới chạy job (xem JobCoordinator)
+CREATE TABLE job_lease (
+  job_name VARCHAR(100) PRIMARY KEY,
+  owner VARCHAR(255) NOT NULL,
+  locked_at TIMESTAMPTZ NOT NULL,
+  lease_until TIMESTAMPTZ NOT NULL
+);
+
+-- Lịch sử chạy scheduled job (thời lượng, số bản ghi xử lý, partition lỗi)
+CREATE TABLE job_run (
+  id BIGSERIAL PRIMARY KEY,
+  job_name VARCHAR(100) NOT NULL,
+  owner VARCHAR(255) NOT NULL,
+  status VARCHAR(20) NOT NULL,
+  started_at TIMESTAMPTZ NOT NULL,
+  finished_at TIMESTAMPTZ,
+  duration_ms BIGINT,
+  rows_processed INTEGER,
+  failed_partitions INTEGER NOT NULL DEFAULT 0,
+  error_message TEXT,
+  CONSTRAINT chk_job_run_status CHECK (status IN ('RUNNING', 'SUCCESS', 'PARTIAL', 'FAILED'))
+);
+
 -- TIER 7: Requests
 CREATE TABLE student_request (
   id BIGSERIAL PRIMARY KEY,
@@ -815,6 +859,7 @@ CREATE INDEX idx_tcr_status_pending ON teacher_class_registration(status) WHERE
 
 CREATE INDEX idx_notification_recipient_status ON notification(recipient_id, status);
 CREATE INDEX idx_notification_type_created ON notification(type, created_at);
+CREATE INDEX idx_email_outbox_status_next_attempt ON email_outbox(status, next_attempt_at);
 
 -- Indexes cho các query filter thường dùng (status, date ranges)
 
@@ -895,9 +940,36 @@ CREATE INDEX idx_student_request_submitted_at ON student_request(submitted_at);
 CREATE INDEX idx_teacher_request_submitted_at ON teacher_request(submitted_at);
 CREATE INDEX idx_score_graded_at ON score(graded_at);
 
+-- Lịch sử job: "Các lần chạy gần nhất của job X"
+CREATE INDEX idx_job_run_job_started ON job_run(job_name, started_at DESC);
+
+-- Job tăng dần: "Lớp / buổi học thay đổi từ lần chạy trước"
+CREATE INDEX idx_class_status_updated_at ON "class"(status, updated_at);
+CREATE INDEX idx_session_class_updated_at ON session(class_id, updated_at);
+
 -- Subject and class name search
 CREATE INDEX idx_subject_name_gin ON subject USING gin(to_tsvector('english', name));
 CREATE INDEX idx_class_name_gin ON "class" USING gin(to_tsvector('english', name));
 
 -- User account name search
-CREATE INDEX idx_user_account_fullname_gin ON user_account USING gin(to_tsvector('english', full_name));
\ No newline at end of file
+CREATE INDEX idx_user_account_fullname_gin ON user_account USING gin(to_tsvector('english', full_name));
+-- Search không phân biệt hoa thường / dấu tiếng Việt (LIKE '%từ khóa%' và typeahead)
+-- unaccent() không IMMUTABLE nên bọc lại để dùng được trong index; query phải gọi đúng tms_search_text(cột)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE EXTENSION IF NOT EXISTS unaccent;
+
+CREATE OR REPLACE FUNCTION tms_search_text(value TEXT) RETURNS TEXT
+  LANGUAGE sql IMMUTABLE PARALLEL SAFE
+  AS $$ SELECT lower(public.unaccent('public.unaccent'::regdictionary, coalesce(value, ''))) $$;
+
+-- Tìm học viên: "Học viên có mã / họ tên / email / SĐT chứa X"
+CREATE INDEX idx_student_code_search_trgm ON student USING gin(tms_search_text(student_code) gin_trgm_ops);
+CREATE INDEX idx_user_account_fullname_search_trgm ON user_account USING gin(tms_search_text(full_name) gin_trgm_ops);
+CREATE INDEX idx_user_account_email_search_trgm ON user_account USING gin(tms_search_text(email) gin_trgm_ops);
+CREATE INDEX idx_user_account_phone_search_trgm ON user_account USING gin(tms_search_text(phone) gin_trgm_ops);
+
+-- Tìm lớp học: "Lớp có mã / tên / tên môn / tên chi nhánh chứa X"
+CREATE INDEX idx_class_code_search_trgm ON "class" USING gin(tms_search_text(code) gin_trgm_ops);
+CREATE INDEX idx_class_name_search_trgm ON "class" USING gin(tms_search_text(name) gin_trgm_ops);
+CREATE INDEX idx_subject_name_search_trgm ON subject USING gin(tms_search_text(name) gin_trgm_ops);
+CREATE INDEX idx_branch_name_search_trgm ON branch USING gin(tms_search_text(name) gin_trgm_ops);
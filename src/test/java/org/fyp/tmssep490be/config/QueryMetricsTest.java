@@ -0,0 +1,85 @@
+package org.fyp.tmssep490be.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QueryMetricsTest {
+
+    @Mock private DataSource dataSource;
+    @Mock private Connection connection;
+    @Mock private PreparedStatement preparedStatement;
+
+    private QueryStats stats;
+
+    @AfterEach
+    void tearDown() {
+        QueryStats.end(stats);
+    }
+
+    @Test
+    void wrappedDataSource_countsStatementsAndRepeatedSql() throws Exception {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        stats = QueryStats.begin();
+        DataSource wrapped = QueryCountingDataSource.wrap(dataSource);
+        assertSame(wrapped, QueryCountingDataSource.wrap(wrapped));
+
+        Connection conn = wrapped.getConnection();
+        for (int i = 0; i < 12; i++) {
+            conn.prepareStatement("SELECT * FROM teaching_slot WHERE session_id = ?").executeQuery();
+        }
+        conn.prepareStatement("SELECT 1").execute();
+
+        assertEquals(13, stats.getStatements());
+        assertEquals(1, stats.getConnections());
+        assertEquals(12, stats.mostRepeatedStatement().getValue());
+        verify(preparedStatement, times(12)).executeQuery();
+    }
+
+    @Test
+    void recorder_flagsBudgetAndRepeatedStatements() throws Exception {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QueryMetricsRecorder recorder = new QueryMetricsRecorder(registry, 5, 100, 10);
+
+        stats = QueryStats.begin();
+        Connection conn = QueryCountingDataSource.wrap(dataSource).getConnection();
+        for (int i = 0; i < 10; i++) {
+            conn.prepareStatement("SELECT COUNT(*) FROM session WHERE class_id = ?").executeQuery();
+        }
+        recorder.record(QueryMetricsRecorder.SCOPE_HTTP, "GET /api/v1/qa/classes", stats);
+
+        assertEquals(10.0, registry.get("tms.db.statements").tag("name", "GET /api/v1/qa/classes")
+                .summary().totalAmount());
+        assertEquals(1.0, registry.get("tms.db.statement.budget.exceeded").counter().count());
+        assertEquals(1.0, registry.get("tms.db.repeated.statements").counter().count());
+    }
+
+    @Test
+    void statementsOutsideScope_areNotCounted() throws Exception {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        QueryCountingDataSource.wrap(dataSource).getConnection().prepareStatement("SELECT 1").executeQuery();
+
+        // Không có scope nào bị mở ngầm; scope mở sau đó bắt đầu từ 0
+        assertNull(QueryStats.current());
+        stats = QueryStats.begin();
+        assertEquals(0, stats.getStatements());
+        assertNull(stats.mostRepeatedStatement());
+    }
+}
@@ -0,0 +1,116 @@
+package org.fyp.tmssep490be.scheduler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JobCoordinatorTest {
+
+    @Mock private JdbcTemplate jdbcTemplate;
+    @Mock private PlatformTransactionManager transactionManager;
+
+    private JobCoordinator coordinator;
+
+    @BeforeEach
+    void setUp() {
+        // Executor chạy ngay trên thread gọi để kết quả partition xác định
+        coordinator = new JobCoordinator(jdbcTemplate, transactionManager, Runnable::run);
+        ReflectionTestUtils.setField(coordinator, "leaseEnabled", true);
+        ReflectionTestUtils.setField(coordinator, "leaseMinSeconds", 60L);
+        ReflectionTestUtils.setField(coordinator, "leaseMaxSeconds", 7200L);
+        ReflectionTestUtils.setField(coordinator, "historyRetentionDays", 90);
+        ReflectionTestUtils.setField(coordinator, "incrementalOverlapMinutes", 60L);
+        ReflectionTestUtils.setField(coordinator, "incrementalFullScanDay", LocalDate.now().plusDays(1).getDayOfWeek());
+    }
+
+    private void stubLease(int acquired) {
+        when(jdbcTemplate.update(contains("INSERT INTO job_lease"), eq("SessionAutoUpdate"), anyString(), eq(7200L)))
+                .thenReturn(acquired);
+    }
+
+    @Test
+    void runExclusive_leaseHeldByAnotherInstance_skipsJob() {
+        stubLease(0);
+        AtomicBoolean ran = new AtomicBoolean();
+
+        assertFalse(coordinator.runExclusive("SessionAutoUpdate", () -> ran.set(true)));
+
+        assertFalse(ran.get());
+        verify(jdbcTemplate, never()).queryForObject(anyString(), eq(Long.class), any(), any());
+    }
+
+    @Test
+    void runExclusive_recordsRunHistoryAndKeepsLeaseForMinimumTime() {
+        stubLease(1);
+        when(jdbcTemplate.queryForObject(contains("INSERT INTO job_run"), eq(Long.class), eq("SessionAutoUpdate"), anyString()))
+                .thenReturn(5L);
+
+        assertTrue(coordinator.runExclusive("SessionAutoUpdate", () -> coordinator.recordRows(7)));
+
+        verify(jdbcTemplate).update(contains("UPDATE job_run"), eq("SUCCESS"), anyLong(), eq(7), eq(0), isNull(), eq(5L));
+        verify(jdbcTemplate).update(contains("UPDATE job_lease"), eq(60L), eq("SessionAutoUpdate"), anyString());
+    }
+
+    @Test
+    void runPartitioned_failedPartitionMarksRunPartial() {
+        stubLease(1);
+        when(jdbcTemplate.queryForObject(contains("INSERT INTO job_run"), eq(Long.class), eq("SessionAutoUpdate"), anyString()))
+                .thenReturn(5L);
+        int[] total = new int[1];
+
+        coordinator.runExclusive("SessionAutoUpdate", () -> {
+            total[0] = coordinator.runPartitioned("attendance", List.of(1, 2, 3), partition -> {
+                if (partition == 2) {
+                    throw new IllegalStateException("deadlock");
+                }
+                return partition * 10;
+            });
+            coordinator.recordRows(total[0]);
+        });
+
+        assertEquals(40, total[0]);
+        verify(jdbcTemplate).update(contains("UPDATE job_run"), eq("PARTIAL"), anyLong(), eq(40), eq(1), isNull(), eq(5L));
+    }
+
+    @Test
+    void changedSince_usesLastSuccessfulRunMinusOverlap() {
+        OffsetDateTime lastSuccess = OffsetDateTime.parse("2026-03-02T02:00:00+07:00");
+        when(jdbcTemplate.queryForObject(contains("FROM job_run"), eq(OffsetDateTime.class), eq("ClassStatusAutoUpdate")))
+                .thenReturn(lastSuccess, (OffsetDateTime) null);
+
+        assertEquals(lastSuccess.minusMinutes(60), coordinator.changedSince("ClassStatusAutoUpdate"));
+        // Chưa có lần chạy thành công: quét toàn bộ
+        assertNull(coordinator.changedSince("ClassStatusAutoUpdate"));
+    }
+
+    @Test
+    void changedSince_fullScanDay_returnsNullWithoutQuery() {
+        ReflectionTestUtils.setField(coordinator, "incrementalFullScanDay", LocalDate.now().getDayOfWeek());
+
+        assertNull(coordinator.changedSince("ClassStatusAutoUpdate"));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void runPartitioned_allPartitionsFail_throws() {
+        assertThrows(IllegalStateException.class, () -> coordinator.runPartitioned("attendance", List.of(1, 2),
+                partition -> {
+                    throw new IllegalStateException("down");
+                }));
+    }
+}
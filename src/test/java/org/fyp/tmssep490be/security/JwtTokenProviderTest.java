@@ -0,0 +1,53 @@
+package org.fyp.tmssep490be.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtTokenProviderTest {
+
+    private static final String SECRET = "ThisIsAVerySecretKeyForJWTTokenGenerationPleaseChangeInProduction123456789";
+
+    private final JwtTokenProvider provider = new JwtTokenProvider(SECRET, 900000, 604800000, 100);
+
+    @Test
+    void verify_parsesOnceAndReusesVerifiedClaims() {
+        String token = provider.generateAccessToken(7L, "a@x.vn", "ROLE_TEACHER,QA");
+
+        VerifiedJwt first = provider.verify(token);
+        VerifiedJwt second = provider.verify(token);
+
+        assertNotNull(first);
+        assertSame(first, second);
+        assertTrue(first.isAccessToken());
+        assertEquals(7L, first.userId());
+        assertEquals("a@x.vn", first.subject());
+        assertEquals(List.of("TEACHER", "QA"), first.roles());
+        assertTrue(provider.validateAccessToken(token));
+        assertFalse(provider.validateRefreshToken(token));
+        assertEquals(List.of("TEACHER", "QA"), provider.getRolesFromJwt(token));
+    }
+
+    @Test
+    void verify_tamperedOrExpiredToken_returnsNull() {
+        String token = provider.generateRefreshToken(7L, "a@x.vn");
+        assertTrue(provider.validateRefreshToken(token));
+        assertNull(provider.verify(token.substring(0, token.length() - 2) + "xx"));
+
+        JwtTokenProvider expiring = new JwtTokenProvider(SECRET, -1000, -1000, 100);
+        String expired = expiring.generateAccessToken(7L, "a@x.vn", "QA");
+        assertNull(expiring.verify(expired));
+        assertNull(expiring.verify(""));
+    }
+
+    @Test
+    void passwordResetToken_isNotAcceptedAsAccessToken() {
+        String token = provider.generatePasswordResetToken(9L);
+
+        assertEquals(9L, provider.validatePasswordResetToken(token));
+        assertFalse(provider.validateAccessToken(token));
+        assertNull(provider.validatePasswordResetToken(provider.generateRefreshToken(9L, "a@x.vn")));
+    }
+}
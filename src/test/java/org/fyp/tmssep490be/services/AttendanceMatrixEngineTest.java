@@ -0,0 +1,96 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.entities.enums.AttendanceStatus;
+import org.fyp.tmssep490be.entities.enums.HomeworkStatus;
+import org.fyp.tmssep490be.repositories.ClassRepository;
+import org.fyp.tmssep490be.repositories.EnrollmentRepository;
+import org.fyp.tmssep490be.repositories.SessionRepository;
+import org.fyp.tmssep490be.repositories.StudentSessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AttendanceMatrixEngineTest {
+
+    @Mock private ClassRepository classRepository;
+    @Mock private SessionRepository sessionRepository;
+    @Mock private StudentSessionRepository studentSessionRepository;
+    @Mock private EnrollmentRepository enrollmentRepository;
+
+    private AttendanceMatrixEngine engine;
+
+    private static final Long CLASS_ID = 1L;
+    private final LocalDate pastDay = LocalDate.now().minusDays(7);
+    private final LocalDate futureDay = LocalDate.now().plusDays(7);
+
+    @BeforeEach
+    void setUp() {
+        engine = new AttendanceMatrixEngine(classRepository, sessionRepository, studentSessionRepository,
+                enrollmentRepository, 120, 100);
+        lenient().when(classRepository.findClassHeaderById(CLASS_ID))
+                .thenReturn(List.<Object[]>of(new Object[] { "C01", "Class 1", "IELTS" }));
+        lenient().when(sessionRepository.findAttendanceMatrixSessions(CLASS_ID)).thenReturn(List.of(
+                new Object[] { 10L, pastDay, "DONE", LocalTime.of(8, 0), LocalTime.of(10, 0) },
+                new Object[] { 11L, futureDay, "PLANNED", LocalTime.of(8, 0), LocalTime.of(10, 0) }
+        ));
+        lenient().when(enrollmentRepository.findEnrolledStudentRowsByClassId(CLASS_ID)).thenReturn(List.of(
+                new Object[] { 100L, "S100", "Student A" },
+                new Object[] { 101L, "S101", "Student B" }
+        ));
+        // Học viên 102 đã rời lớp nhưng vẫn tính vào tỷ lệ của lớp
+        lenient().when(studentSessionRepository.findAttendanceTuplesByClassId(CLASS_ID)).thenReturn(List.of(
+                new Object[] { 10L, 100L, "PRESENT", "COMPLETED", false },
+                new Object[] { 10L, 101L, "EXCUSED", null, false },
+                new Object[] { 10L, 102L, "ABSENT", null, false },
+                new Object[] { 11L, 100L, "PLANNED", null, false }
+        ));
+        lenient().when(studentSessionRepository.findMakeupTuplesByOriginalClassId(CLASS_ID)).thenReturn(List.<Object[]>of(
+                new Object[] { 10L, 101L, "PRESENT", pastDay.plusDays(1), LocalTime.of(10, 0) }
+        ));
+    }
+
+    @Test
+    void forClass_buildsCellsAndClassRate() {
+        AttendanceMatrixEngine.ClassAttendance matrix = engine.forClass(CLASS_ID);
+        LocalDateTime now = LocalDateTime.now();
+
+        assertEquals("C01", matrix.getClassCode());
+        assertEquals(2, matrix.sessionCount());
+        assertEquals(2, matrix.enrolledStudents().size());
+
+        int studentA = matrix.enrolledStudents().get(0).ordinal();
+        int studentB = matrix.enrolledStudents().get(1).ordinal();
+        assertEquals(AttendanceStatus.PRESENT, matrix.attendanceStatus(studentA, 0));
+        assertEquals(HomeworkStatus.COMPLETED, matrix.homeworkStatus(studentA, 0));
+        assertFalse(matrix.hasRecord(studentB, 1));
+        assertTrue(matrix.hasMakeupCompleted(studentB, 0));
+        assertTrue(matrix.isSessionEnded(0, now));
+        assertTrue(matrix.isFutureSession(1, LocalDate.now()));
+
+        // PRESENT + EXCUSED có học bù PRESENT + ABSENT -> 2/3
+        assertEquals(2.0 / 3, matrix.classAttendanceRate(now), 1e-9);
+        assertEquals(1, matrix.absentCountUpTo(2, LocalDate.now()));
+    }
+
+    @Test
+    void forClass_reusesSnapshotUntilInvalidated() {
+        engine.forClass(CLASS_ID);
+        engine.forClass(CLASS_ID);
+        verify(studentSessionRepository, times(1)).findAttendanceTuplesByClassId(CLASS_ID);
+
+        engine.invalidate(CLASS_ID);
+        engine.forClass(CLASS_ID);
+        verify(studentSessionRepository, times(2)).findAttendanceTuplesByClassId(CLASS_ID);
+    }
+}
@@ -0,0 +1,104 @@
+package org.fyp.tmssep490be.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttendanceReminderScheduleTest {
+
+    private AttendanceReminderSchedule schedule;
+    private final LocalDateTime endAt = LocalDateTime.of(2026, 3, 2, 10, 0);
+
+    @BeforeEach
+    void setUp() {
+        schedule = new AttendanceReminderSchedule(10);
+    }
+
+    @Test
+    void pollDue_returnsOnlyDueRemindersOnce() {
+        schedule.schedule(1L, endAt, endAt.minusDays(1));
+        assertEquals(7, schedule.size());
+
+        List<AttendanceReminderSchedule.Reminder> due = schedule.pollDue(endAt.plusHours(1));
+        assertEquals(List.of(AttendanceReminderSchedule.ENDING_SOON, 1),
+                due.stream().map(AttendanceReminderSchedule.Reminder::hoursAfterEnd).toList());
+        assertTrue(schedule.pollDue(endAt.plusHours(1)).isEmpty());
+        assertEquals(5, schedule.size());
+    }
+
+    @Test
+    void schedule_sameEndTimeIsIdempotent_changedEndTimeReplaces() {
+        schedule.schedule(1L, endAt, endAt.minusDays(1));
+        schedule.pollDue(endAt.plusHours(1));
+
+        // Nạp lại với cùng giờ kết thúc: không lên lịch lại các mốc đã gửi
+        schedule.schedule(1L, endAt, endAt.minusDays(1));
+        assertEquals(5, schedule.size());
+
+        // Buổi học bị đổi giờ: lịch cũ bị thay thế
+        schedule.schedule(1L, endAt.plusDays(1), endAt);
+        assertEquals(7, schedule.size());
+        assertTrue(schedule.pollDue(endAt.plusHours(3)).isEmpty());
+    }
+
+    @Test
+    void schedule_skipsRemindersDueBeforeNotBefore() {
+        schedule.schedule(1L, endAt, endAt.plusHours(2));
+
+        assertEquals(5, schedule.size());
+    }
+
+    @Test
+    void cancel_removesPendingReminders() {
+        schedule.schedule(1L, endAt, endAt.minusDays(1));
+        schedule.schedule(2L, endAt, endAt.minusDays(1));
+
+        schedule.cancelEndingSoon(1L);
+        schedule.cancel(2L);
+
+        List<AttendanceReminderSchedule.Reminder> due = schedule.pollDue(endAt);
+        assertTrue(due.isEmpty());
+        assertEquals(6, schedule.size());
+
+        // Buổi đã huỷ nhắc không bị lên lịch lại khi nạp lại
+        schedule.schedule(2L, endAt, endAt.minusDays(1));
+        assertEquals(6, schedule.size());
+    }
+
+    @Test
+    void requeueOnRollback_putsRemindersBackOnlyWhenSendRolledBack() {
+        schedule.schedule(1L, endAt, endAt.minusDays(1));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            List<AttendanceReminderSchedule.Reminder> due = schedule.pollDue(endAt.plusHours(1));
+            schedule.requeueOnRollback(due);
+            assertFalse(schedule.hasDue(endAt.plusHours(1)));
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertTrue(schedule.hasDue(endAt.plusHours(1)));
+        assertEquals(2, schedule.pollDue(endAt.plusHours(1)).size());
+    }
+
+    @Test
+    void evictEndedBefore_dropsRemindersLeftBehindOnInstancesWithoutLease() {
+        schedule.schedule(1L, endAt, endAt.minusDays(1));
+        schedule.schedule(2L, endAt.plusDays(3), endAt);
+
+        schedule.evictEndedBefore(endAt.plusDays(1));
+
+        assertEquals(7, schedule.size());
+        assertTrue(schedule.pollDue(endAt.plusDays(2)).isEmpty());
+    }
+}
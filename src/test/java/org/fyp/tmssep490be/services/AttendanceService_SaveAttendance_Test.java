@@ -0,0 +1,150 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.dtos.attendance.AttendanceRecordDTO;
+import org.fyp.tmssep490be.dtos.attendance.AttendanceSaveRequestDTO;
+import org.fyp.tmssep490be.dtos.attendance.AttendanceSaveResponseDTO;
+import org.fyp.tmssep490be.entities.ClassEntity;
+import org.fyp.tmssep490be.entities.Session;
+import org.fyp.tmssep490be.entities.enums.AttendanceStatus;
+import org.fyp.tmssep490be.entities.enums.HomeworkStatus;
+import org.fyp.tmssep490be.entities.enums.SessionStatus;
+import org.fyp.tmssep490be.exceptions.ResourceNotFoundException;
+import org.fyp.tmssep490be.repositories.SessionRepository;
+import org.fyp.tmssep490be.repositories.StudentSessionRepository;
+import org.fyp.tmssep490be.repositories.TeachingSlotRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AttendanceService_SaveAttendance_Test {
+
+    @Mock private TeachingSlotRepository teachingSlotRepository;
+    @Mock private StudentSessionRepository studentSessionRepository;
+    @Mock private SessionRepository sessionRepository;
+    @Mock private AttendanceReminderSchedule attendanceReminderSchedule;
+    @Mock private JdbcTemplate jdbcTemplate;
+    @Mock private AttendanceMatrixEngine attendanceMatrixEngine;
+    @Mock private WeeklyTimetableCache timetableCache;
+
+    @InjectMocks
+    private AttendanceService attendanceService;
+
+    private static final Long TEACHER_ID = 7L;
+    private static final Long SESSION_ID = 100L;
+    private static final Long CLASS_ID = 20L;
+
+    @BeforeEach
+    void setUp() {
+        when(teachingSlotRepository.existsByIdSessionIdAndIdTeacherIdAndStatusIn(eq(SESSION_ID), eq(TEACHER_ID), anyList()))
+                .thenReturn(true);
+        Session session = Session.builder()
+                .id(SESSION_ID)
+                .date(LocalDate.now())
+                .status(SessionStatus.PLANNED)
+                .classEntity(ClassEntity.builder().id(CLASS_ID).build())
+                .build();
+        when(sessionRepository.findById(SESSION_ID)).thenReturn(Optional.of(session));
+    }
+
+    private AttendanceRecordDTO record(long studentId, AttendanceStatus status) {
+        return AttendanceRecordDTO.builder()
+                .studentId(studentId)
+                .attendanceStatus(status)
+                .homeworkStatus(HomeworkStatus.COMPLETED)
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubUpdate(long updated, long others, long othersPresent) {
+        when(jdbcTemplate.queryForObject(anyString(), any(RowMapper.class), any(Object[].class)))
+                .thenReturn(new long[] { updated, others, othersPresent });
+    }
+
+    @Test
+    void saveAttendance_updatesAllRecordsInOneStatement_summaryFromRecords() {
+        stubUpdate(3, 2, 1);
+        AttendanceSaveRequestDTO request = AttendanceSaveRequestDTO.builder()
+                .records(List.of(
+                        record(1L, AttendanceStatus.PRESENT),
+                        record(2L, AttendanceStatus.ABSENT),
+                        record(3L, AttendanceStatus.PRESENT)))
+                .build();
+
+        AttendanceSaveResponseDTO response = attendanceService.saveAttendance(TEACHER_ID, SESSION_ID, request);
+
+        assertEquals(5, response.getSummary().getTotalStudents());
+        assertEquals(3, response.getSummary().getPresentCount());
+        assertEquals(2, response.getSummary().getAbsentCount());
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(1)).queryForObject(sql.capture(), any(RowMapper.class), any(Object[].class));
+        assertTrue(sql.getValue().contains("UPDATE student_session"));
+        verify(studentSessionRepository, never()).findById(any());
+        verify(studentSessionRepository, never()).findBySessionId(any());
+        verify(attendanceReminderSchedule).cancelEndingSoon(SESSION_ID);
+        verify(attendanceMatrixEngine).invalidate(CLASS_ID);
+        verify(timetableCache).invalidateSession(SESSION_ID);
+    }
+
+    @Test
+    void saveAttendance_duplicateStudent_lastRecordWins() {
+        stubUpdate(1, 0, 0);
+        AttendanceSaveRequestDTO request = AttendanceSaveRequestDTO.builder()
+                .records(List.of(
+                        record(1L, AttendanceStatus.ABSENT),
+                        record(1L, AttendanceStatus.PRESENT)))
+                .build();
+
+        AttendanceSaveResponseDTO response = attendanceService.saveAttendance(TEACHER_ID, SESSION_ID, request);
+
+        assertEquals(1, response.getSummary().getTotalStudents());
+        assertEquals(1, response.getSummary().getPresentCount());
+    }
+
+    @Test
+    void saveAttendance_makeupStudents_invalidatesTheirOriginalClasses() {
+        stubUpdate(2, 0, 0);
+        when(studentSessionRepository.findOriginalClassIdsOfMakeupsBySessionId(SESSION_ID)).thenReturn(List.of(31L, 32L));
+        AttendanceSaveRequestDTO request = AttendanceSaveRequestDTO.builder()
+                .records(List.of(
+                        record(1L, AttendanceStatus.PRESENT),
+                        record(2L, AttendanceStatus.PRESENT)))
+                .build();
+
+        attendanceService.saveAttendance(TEACHER_ID, SESSION_ID, request);
+
+        verify(attendanceMatrixEngine).invalidate(CLASS_ID);
+        verify(attendanceMatrixEngine).invalidate(31L);
+        verify(attendanceMatrixEngine).invalidate(32L);
+    }
+
+    @Test
+    void saveAttendance_studentNotInSession_throws() {
+        stubUpdate(1, 0, 0);
+        AttendanceSaveRequestDTO request = AttendanceSaveRequestDTO.builder()
+                .records(List.of(
+                        record(1L, AttendanceStatus.PRESENT),
+                        record(99L, AttendanceStatus.PRESENT)))
+                .build();
+
+        assertThrows(ResourceNotFoundException.class,
+                () -> attendanceService.saveAttendance(TEACHER_ID, SESSION_ID, request));
+        verify(attendanceReminderSchedule, never()).cancelEndingSoon(any());
+        verify(attendanceMatrixEngine, never()).invalidate(any());
+    }
+}
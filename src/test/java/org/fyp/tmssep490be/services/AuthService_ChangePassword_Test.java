@@ -8,6 +8,7 @@ import org.fyp.tmssep490be.dtos.auth.ChangePasswordRequest;
 import org.fyp.tmssep490be.dtos.auth.ChangePasswordResponse;
 import org.fyp.tmssep490be.entities.UserAccount;
 import org.fyp.tmssep490be.exceptions.BusinessRuleException;
+import org.fyp.tmssep490be.security.UserPrincipalCache;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
@@ -29,6 +30,7 @@ class AuthService_ChangePassword_Test {
 
     @Mock private UserAccountRepository repo;
     @Mock private PasswordEncoder encoder;
+    @Mock private UserPrincipalCache principalCache;
 
 
     // -------------------------------------------------------------
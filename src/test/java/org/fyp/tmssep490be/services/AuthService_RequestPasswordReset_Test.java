@@ -12,10 +12,13 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.util.Map;
 import java.util.Optional;
 
 @ExtendWith(MockitoExtension.class)
@@ -27,6 +30,7 @@ class AuthService_RequestPasswordReset_Test {
     @Mock private UserAccountRepository repo;
     @Mock private JwtTokenProvider tokenProvider;
     @Mock private EmailService emailService;
+    @Mock private EmailOutboxService emailOutboxService;
 
 
     // ------------------------------------------------------------
@@ -179,4 +183,47 @@ class AuthService_RequestPasswordReset_Test {
 
         assertEquals("Không thể xử lý yêu cầu đặt lại mật khẩu. Vui lòng thử lại sau.", ex.getMessage());
     }
+
+
+    // ------------------------------------------------------------
+    // TC06 — Outbox enabled (tms.email.outbox.enabled mặc định true)
+    // Preconditions:
+    //  - Email exists, user ACTIVE
+    //  - EmailService thật, ghi email vào outbox
+    // Confirm:
+    //  - Email đặt lại mật khẩu được enqueue vào outbox
+    //  - Transaction của requestPasswordReset không readOnly (INSERT email_outbox chạy trong đó)
+    // ------------------------------------------------------------
+    @Test
+    void TC06_requestPasswordReset_outboxEnabled_enqueuesInWritableTransaction() throws Exception {
+        String email = "user@gmail.com";
+        ForgotPasswordRequest req = new ForgotPasswordRequest(email);
+
+        UserAccount user = new UserAccount();
+        user.setId(10L);
+        user.setEmail(email);
+        user.setFullName("User");
+        user.setStatus(UserStatus.ACTIVE);
+
+        EmailService outboxEmailService = new EmailService();
+        ReflectionTestUtils.setField(outboxEmailService, "emailOutboxService", emailOutboxService);
+        ReflectionTestUtils.setField(authService, "emailService", outboxEmailService);
+
+        when(repo.findByEmailAndStatus(email, UserStatus.ACTIVE))
+                .thenReturn(Optional.of(user));
+        when(tokenProvider.generatePasswordResetToken(10L))
+                .thenReturn("reset-token");
+
+        ForgotPasswordResponse res = authService.requestPasswordReset(req);
+
+        assertTrue(res.isEmailSent());
+        verify(emailOutboxService).enqueue(eq(email), anyString(), eq("emails/password-reset"),
+                argThat((Map<String, Object> data) -> String.valueOf(data.get("resetLink")).contains("reset-token")));
+
+        Transactional tx = AuthService.class
+                .getMethod("requestPasswordReset", ForgotPasswordRequest.class)
+                .getAnnotation(Transactional.class);
+        assertNotNull(tx);
+        assertFalse(tx.readOnly());
+    }
 }
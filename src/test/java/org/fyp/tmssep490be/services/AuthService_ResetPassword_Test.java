@@ -9,6 +9,7 @@ import org.fyp.tmssep490be.exceptions.InvalidTokenException;
 
 import org.fyp.tmssep490be.repositories.UserAccountRepository;
 import org.fyp.tmssep490be.security.JwtTokenProvider;
+import org.fyp.tmssep490be.security.UserPrincipalCache;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -33,6 +34,7 @@ class AuthService_ResetPassword_Test {
     @Mock private JwtTokenProvider tokenProvider;
     @Mock private UserAccountRepository repo;
     @Mock private PasswordEncoder encoder;
+    @Mock private UserPrincipalCache principalCache;
 
 
     // -----------------------------------------------------------------
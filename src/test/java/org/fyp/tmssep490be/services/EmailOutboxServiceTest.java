@@ -0,0 +1,179 @@
+package org.fyp.tmssep490be.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.fyp.tmssep490be.config.EmailConfig;
+import org.fyp.tmssep490be.entities.EmailOutbox;
+import org.fyp.tmssep490be.entities.enums.EmailOutboxStatus;
+import org.fyp.tmssep490be.repositories.EmailOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmailOutboxServiceTest {
+
+    @Mock private EmailOutboxRepository emailOutboxRepository;
+    @Mock private ObjectProvider<JavaMailSender> mailSenderProvider;
+    @Mock private JavaMailSender mailSender;
+    @Mock private TemplateEngine templateEngine;
+    @Mock private EmailConfig emailConfig;
+    @Mock private TransactionTemplate transactionTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private EmailOutboxService emailOutboxService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(RateLimiterConfig.custom()
+                .limitForPeriod(100)
+                .limitRefreshPeriod(Duration.ofSeconds(1))
+                .timeoutDuration(Duration.ZERO)
+                .build());
+
+        emailOutboxService = new EmailOutboxService(emailOutboxRepository, mailSenderProvider, templateEngine,
+                emailConfig, new ObjectMapper(), transactionTemplate, rateLimiterRegistry, meterRegistry,
+                50, 1, 3, 60, 300);
+
+        lenient().when(transactionTemplate.execute(any()))
+                .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().when(emailOutboxRepository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
+        lenient().when(emailOutboxRepository.save(any(EmailOutbox.class))).thenAnswer(inv -> inv.getArgument(0));
+        lenient().when(mailSender.createMimeMessage()).thenAnswer(inv -> new MimeMessage((Session) null));
+        lenient().when(emailConfig.getFromName()).thenReturn("TMS");
+        lenient().when(emailConfig.getFromEmail()).thenReturn("noreply@tms.com");
+        lenient().when(templateEngine.process(anyString(), any(Context.class))).thenReturn("<p>hello</p>");
+    }
+
+    private EmailOutbox pending(long id, String recipient, int attempts) {
+        return EmailOutbox.builder()
+                .id(id)
+                .recipient(recipient)
+                .subject("Subject " + id)
+                .templateName("emails/class-enrollment")
+                .templateData("{\"studentName\":\"An\"}")
+                .attempts(attempts)
+                .nextAttemptAt(OffsetDateTime.now().minusMinutes(1))
+                .build();
+    }
+
+    @Test
+    void enqueue_storesTemplateDataAsJson() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("studentName", "An");
+
+        emailOutboxService.enqueue("a@x.com", "Hello", "emails/class-enrollment", data);
+
+        ArgumentCaptor<EmailOutbox> captor = ArgumentCaptor.forClass(EmailOutbox.class);
+        verify(emailOutboxRepository).save(captor.capture());
+        EmailOutbox saved = captor.getValue();
+        assertEquals("a@x.com", saved.getRecipient());
+        assertEquals(EmailOutboxStatus.PENDING, saved.getStatus());
+        assertEquals("{\"studentName\":\"An\"}", saved.getTemplateData());
+        assertNotNull(saved.getNextAttemptAt());
+        verifyNoInteractions(mailSender);
+    }
+
+    @Test
+    void dispatchPending_sendsWholeBatchInOneCall() {
+        when(mailSenderProvider.getIfAvailable()).thenReturn(mailSender);
+        EmailOutbox first = pending(1L, "a@x.com", 0);
+        EmailOutbox second = pending(2L, "b@x.com", 0);
+        when(emailOutboxRepository.lockDueBatch(any(), eq(50))).thenReturn(List.of(first, second));
+
+        int sent = emailOutboxService.dispatchPending();
+
+        assertEquals(2, sent);
+        verify(mailSender, times(1)).send(any(MimeMessage[].class));
+        assertEquals(EmailOutboxStatus.SENT, first.getStatus());
+        assertEquals(EmailOutboxStatus.SENT, second.getStatus());
+        assertNotNull(first.getSentAt());
+        assertEquals(1, first.getAttempts());
+        assertEquals(2.0, meterRegistry.counter("tms.email.sent").count());
+    }
+
+    @Test
+    void dispatchPending_failedMessageIsRescheduled() {
+        when(mailSenderProvider.getIfAvailable()).thenReturn(mailSender);
+        EmailOutbox ok = pending(1L, "a@x.com", 0);
+        EmailOutbox broken = pending(2L, "b@x.com", 0);
+        when(emailOutboxRepository.lockDueBatch(any(), eq(50))).thenReturn(List.of(ok, broken));
+
+        doAnswer(inv -> {
+            Object[] messages = inv.getArguments();
+            Map<Object, Exception> failed = new HashMap<>();
+            failed.put(messages[1], new RuntimeException("Mailbox unavailable"));
+            throw new MailSendException(failed);
+        }).when(mailSender).send(any(MimeMessage[].class));
+
+        int sent = emailOutboxService.dispatchPending();
+
+        assertEquals(1, sent);
+        assertEquals(EmailOutboxStatus.SENT, ok.getStatus());
+        assertEquals(EmailOutboxStatus.PENDING, broken.getStatus());
+        assertEquals("Mailbox unavailable", broken.getLastError());
+        assertTrue(broken.getNextAttemptAt().isAfter(OffsetDateTime.now().plusSeconds(30)));
+        assertEquals(1.0, meterRegistry.counter("tms.email.failed", "outcome", "retry").count());
+    }
+
+    @Test
+    void dispatchPending_lastAttemptFails_markedFailed() {
+        when(mailSenderProvider.getIfAvailable()).thenReturn(mailSender);
+        EmailOutbox email = pending(1L, "a@x.com", 2);
+        when(emailOutboxRepository.lockDueBatch(any(), eq(50))).thenReturn(List.of(email));
+        doThrow(new MailSendException("Connection refused")).when(mailSender).send(any(MimeMessage[].class));
+
+        int sent = emailOutboxService.dispatchPending();
+
+        assertEquals(0, sent);
+        assertEquals(EmailOutboxStatus.FAILED, email.getStatus());
+        assertEquals(3, email.getAttempts());
+        assertEquals(1.0, meterRegistry.counter("tms.email.failed", "outcome", "dropped").count());
+    }
+
+    @Test
+    void dispatchPending_templateError_failsWithoutSending() {
+        when(mailSenderProvider.getIfAvailable()).thenReturn(mailSender);
+        EmailOutbox email = pending(1L, "a@x.com", 0);
+        when(emailOutboxRepository.lockDueBatch(any(), eq(50))).thenReturn(List.of(email));
+        when(templateEngine.process(anyString(), any(Context.class))).thenThrow(new RuntimeException("Template not found"));
+
+        emailOutboxService.dispatchPending();
+
+        assertEquals(EmailOutboxStatus.FAILED, email.getStatus());
+        verify(mailSender, never()).send(any(MimeMessage[].class));
+    }
+
+    @Test
+    void dispatchPending_mailSenderNotConfigured_doesNothing() {
+        when(mailSenderProvider.getIfAvailable()).thenReturn(null);
+
+        assertEquals(0, emailOutboxService.dispatchPending());
+        verifyNoInteractions(emailOutboxRepository);
+    }
+}
@@ -0,0 +1,117 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.dtos.enrollment.EnrollmentResult;
+import org.fyp.tmssep490be.entities.ClassEntity;
+import org.fyp.tmssep490be.entities.Session;
+import org.fyp.tmssep490be.entities.Student;
+import org.fyp.tmssep490be.entities.UserAccount;
+import org.fyp.tmssep490be.entities.enums.EnrollmentStatus;
+import org.fyp.tmssep490be.entities.enums.SessionStatus;
+import org.fyp.tmssep490be.exceptions.CustomException;
+import org.fyp.tmssep490be.exceptions.ErrorCode;
+import org.fyp.tmssep490be.repositories.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EnrollmentService_EnrollStudents_Test {
+
+    @Mock private EnrollmentRepository enrollmentRepository;
+    @Mock private ClassRepository classRepository;
+    @Mock private StudentRepository studentRepository;
+    @Mock private SessionRepository sessionRepository;
+    @Mock private StudentSessionRepository studentSessionRepository;
+    @Mock private ScoreRepository scoreRepository;
+    @Mock private AttendanceMatrixEngine attendanceMatrixEngine;
+    @Mock private WeeklyTimetableCache timetableCache;
+    @Mock private NotificationService notificationService;
+    @Mock private EmailService emailService;
+
+    @InjectMocks
+    private EnrollmentService service;
+
+    private static final Long CLASS_ID = 10L;
+    private final LocalDate day1 = LocalDate.now().plusDays(3);
+
+    private Student student(Long id) {
+        return Student.builder()
+                .id(id)
+                .userAccount(UserAccount.builder().id(id + 100).email("s" + id + "@x.vn").build())
+                .build();
+    }
+
+    @BeforeEach
+    void setUp() {
+        ClassEntity classEntity = new ClassEntity();
+        classEntity.setId(CLASS_ID);
+        classEntity.setCode("C10");
+        classEntity.setStartDate(LocalDate.now().plusDays(1));
+        when(classRepository.findById(CLASS_ID)).thenReturn(Optional.of(classEntity));
+        when(sessionRepository.findByClassEntityIdAndDateGreaterThanEqualAndStatusOrderByDateAsc(
+                eq(CLASS_ID), any(), eq(SessionStatus.PLANNED)))
+                .thenReturn(List.of(
+                        Session.builder().id(501L).date(day1).build(),
+                        Session.builder().id(502L).date(day1.plusDays(2)).build()));
+    }
+
+    // ---------------------------------------------------------------
+    // TC1 — Trùng lịch / đã ghi danh được kiểm tra cho cả lô; học viên lỗi không làm hỏng lô
+    // ---------------------------------------------------------------
+    @Test
+    void enrollStudents_rejectsPerStudentAndBulkInsertsTheRest() {
+        List<Long> ids = List.of(1L, 2L, 3L);
+        when(studentRepository.findAllById(ids)).thenReturn(List.of(student(1L), student(2L), student(3L)));
+        when(enrollmentRepository.findStudentIdsByClassIdAndStatusAndStudentIdIn(CLASS_ID, EnrollmentStatus.ENROLLED, ids))
+                .thenReturn(List.of(2L));
+        when(enrollmentRepository.findScheduleConflictRows(eq(CLASS_ID), eq(ids), any()))
+                .thenReturn(List.<Object[]>of(new Object[] { 3L, day1, LocalTime.of(8, 0), LocalTime.of(10, 0), "C99" }));
+        when(studentSessionRepository.insertPlannedForStudents(List.of(1L), List.of(501L, 502L))).thenReturn(2);
+
+        EnrollmentResult result = service.enrollStudents(CLASS_ID, ids, 7L, false, null);
+
+        assertEquals(1, result.getEnrolledCount());
+        assertEquals(2, result.getTotalStudentSessionsCreated());
+        assertEquals(2, result.getFailures().size());
+        assertEquals("ENROLLMENT_ALREADY_EXISTS", result.getFailures().get(0).getErrorCode());
+        assertEquals("ENROLLMENT_SCHEDULE_CONFLICT", result.getFailures().get(1).getErrorCode());
+        assertTrue(result.getFailures().get(1).getMessage().contains("C99"));
+
+        verify(enrollmentRepository).saveAll(argThat(list -> ((List<?>) list).size() == 1));
+        verify(scoreRepository).insertMissingForClassStudents(CLASS_ID, List.of(1L));
+        verify(attendanceMatrixEngine).invalidate(CLASS_ID);
+        verify(studentSessionRepository, never()).saveAll(any());
+        verify(enrollmentRepository, never()).existsByClassIdAndStudentIdAndStatus(any(), any(), any());
+    }
+
+    // ---------------------------------------------------------------
+    // TC2 — Không học viên nào hợp lệ → báo lỗi như khi ghi danh một người
+    // ---------------------------------------------------------------
+    @Test
+    void enrollStudents_allRejected_throwsFirstFailure() {
+        List<Long> ids = List.of(2L);
+        when(studentRepository.findAllById(ids)).thenReturn(List.of(student(2L)));
+        when(enrollmentRepository.findStudentIdsByClassIdAndStatusAndStudentIdIn(CLASS_ID, EnrollmentStatus.ENROLLED, ids))
+                .thenReturn(List.of(2L));
+        when(enrollmentRepository.findScheduleConflictRows(eq(CLASS_ID), eq(ids), any())).thenReturn(List.of());
+
+        CustomException ex = assertThrows(CustomException.class,
+                () -> service.enrollStudents(CLASS_ID, ids, 7L, false, null));
+
+        assertEquals(ErrorCode.ENROLLMENT_ALREADY_EXISTS, ex.getErrorCode());
+        verify(enrollmentRepository, never()).saveAll(any());
+        verifyNoInteractions(studentSessionRepository, scoreRepository);
+    }
+}
@@ -0,0 +1,105 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.dtos.notification.NotificationStatsDTO;
+import org.fyp.tmssep490be.entities.enums.NotificationStatus;
+import org.fyp.tmssep490be.entities.enums.NotificationType;
+import org.fyp.tmssep490be.repositories.NotificationRepository;
+import org.fyp.tmssep490be.repositories.UserAccountRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationService_GetStats_Test {
+
+    @Mock private NotificationRepository notificationRepository;
+    @Mock private UserAccountRepository userAccountRepository;
+    @Mock private SimpMessagingTemplate messagingTemplate;
+    @Mock private NotificationFanoutService notificationFanout;
+    @Mock private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private NotificationService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new NotificationService(notificationRepository, userAccountRepository, messagingTemplate,
+                new NotificationUnreadCounter(300, 100), notificationFanout, jdbcTemplate);
+    }
+
+    // ----------------------------------------------------------------------
+    // TC1 — User stats built from one grouped query
+    // ----------------------------------------------------------------------
+    @Test
+    void getUserNotificationStats_aggregatesGroupedRows() {
+        Long userId = 5L;
+        when(notificationRepository.aggregateStatsByRecipientId(eq(userId), any(), any(), any()))
+                .thenReturn(List.of(
+                        new Object[] { NotificationStatus.UNREAD, NotificationType.REQUEST, 3L, 1L, 2L, 3L },
+                        new Object[] { NotificationStatus.UNREAD, NotificationType.SYSTEM, 2L, 0L, 1L, 2L },
+                        new Object[] { NotificationStatus.READ, NotificationType.REQUEST, 4L, 4L, 4L, 4L },
+                        new Object[] { NotificationStatus.ARCHIVED, NotificationType.REMINDER, 1L, null, null, null }
+                ));
+
+        NotificationStatsDTO stats = service.getUserNotificationStats(userId);
+
+        assertEquals(10L, stats.getTotalCount());
+        assertEquals(5L, stats.getUnreadCount());
+        assertEquals(4L, stats.getReadCount());
+        assertEquals(1L, stats.getArchivedCount());
+        // Theo thời gian chỉ tính UNREAD
+        assertEquals(1L, stats.getTodayCount());
+        assertEquals(3L, stats.getThisWeekCount());
+        assertEquals(5L, stats.getThisMonthCount());
+        assertEquals(7L, stats.getCountsByType().get("REQUEST"));
+        assertEquals(2L, stats.getCountsByType().get("SYSTEM"));
+        assertEquals(1L, stats.getCountsByType().get("REMINDER"));
+        assertEquals(0L, stats.getCountsByType().get("NOTIFICATION"));
+        assertEquals(NotificationType.values().length, stats.getCountsByType().size());
+        verify(notificationRepository, never()).countByRecipientIdAndType(anyLong(), any());
+    }
+
+    // ----------------------------------------------------------------------
+    // TC2 — System stats no longer load every notification
+    // ----------------------------------------------------------------------
+    @Test
+    void getSystemNotificationStats_usesGroupByStatus() {
+        when(notificationRepository.countGroupByStatus()).thenReturn(List.of(
+                new Object[] { NotificationStatus.UNREAD, 7L },
+                new Object[] { NotificationStatus.READ, 3L }
+        ));
+
+        NotificationStatsDTO stats = service.getSystemNotificationStats();
+
+        assertEquals(10L, stats.getTotalCount());
+        assertEquals(7L, stats.getUnreadCount());
+        assertEquals(0L, stats.getArchivedCount());
+        verify(notificationRepository, never()).findAll();
+    }
+
+    // ----------------------------------------------------------------------
+    // TC3 — Unread badge is counted once, then served from memory
+    // ----------------------------------------------------------------------
+    @Test
+    void getUnreadCount_countsOnceThenTracksChanges() {
+        Long userId = 5L;
+        when(notificationRepository.countByRecipientIdAndStatus(userId, NotificationStatus.UNREAD)).thenReturn(4L);
+
+        assertEquals(4L, service.getUnreadCount(userId));
+        assertEquals(4L, service.getUnreadCount(userId));
+
+        service.markAllAsRead(userId);
+        assertEquals(0L, service.getUnreadCount(userId));
+
+        verify(notificationRepository, times(1)).countByRecipientIdAndStatus(userId, NotificationStatus.UNREAD);
+    }
+}
@@ -0,0 +1,91 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.dtos.notification.NotificationDTO;
+import org.fyp.tmssep490be.entities.enums.NotificationType;
+import org.fyp.tmssep490be.repositories.NotificationRepository;
+import org.fyp.tmssep490be.repositories.UserAccountRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationService_SendBulkNotifications_Test {
+
+    @Mock private NotificationRepository notificationRepository;
+    @Mock private UserAccountRepository userAccountRepository;
+    @Mock private SimpMessagingTemplate messagingTemplate;
+    @Mock private NotificationFanoutService notificationFanout;
+    @Mock private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private NotificationService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new NotificationService(notificationRepository, userAccountRepository, messagingTemplate,
+                new NotificationUnreadCounter(300, 100), notificationFanout, jdbcTemplate);
+    }
+
+    private NotificationDTO saved(long id, long recipientId) {
+        return NotificationDTO.builder().id(id).recipientId(recipientId).type(NotificationType.REQUEST).build();
+    }
+
+    // ----------------------------------------------------------------------
+    // TC1 — Insert in one statement, hand all rows to the fan-out stage
+    // ----------------------------------------------------------------------
+    @Test
+    void sendBulkNotifications_insertsOnceAndFansOut() {
+        List<NotificationDTO> rows = List.of(saved(1L, 10L), saved(2L, 11L));
+        when(jdbcTemplate.query(anyString(), any(MapSqlParameterSource.class),
+                ArgumentMatchers.<RowMapper<NotificationDTO>>any())).thenReturn(rows);
+
+        service.sendBulkNotifications(List.of(10L, 11L, 10L), NotificationType.REQUEST, "Title", "Message");
+
+        ArgumentCaptor<MapSqlParameterSource> params = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+        verify(jdbcTemplate, times(1)).query(anyString(), params.capture(),
+                ArgumentMatchers.<RowMapper<NotificationDTO>>any());
+        assertEquals(List.of(10L, 11L), params.getValue().getValue("recipientIds"));
+        verify(notificationFanout).sendToUsers(rows);
+        verifyNoInteractions(messagingTemplate);
+    }
+
+    // ----------------------------------------------------------------------
+    // TC2 — Empty recipients → nothing stored or sent
+    // ----------------------------------------------------------------------
+    @Test
+    void sendBulkNotifications_emptyRecipients_doesNothing() {
+        service.sendBulkNotifications(List.of(), NotificationType.REQUEST, "Title", "Message");
+
+        verifyNoInteractions(jdbcTemplate, notificationFanout);
+    }
+
+    // ----------------------------------------------------------------------
+    // TC3 — Role broadcast falls back to per-user sends while topic broadcast is off
+    // ----------------------------------------------------------------------
+    @Test
+    void sendRoleBroadcast_topicDisabled_sendsPerUser() {
+        List<NotificationDTO> rows = List.of(saved(1L, 10L));
+        when(userAccountRepository.findUserIdsByRoleCodeAndBranchId("CENTER_HEAD", 3L)).thenReturn(List.of(10L));
+        when(jdbcTemplate.query(anyString(), any(MapSqlParameterSource.class),
+                ArgumentMatchers.<RowMapper<NotificationDTO>>any())).thenReturn(rows);
+
+        int sent = service.sendRoleBroadcast("CENTER_HEAD", 3L, NotificationType.REQUEST, "Title", "Message");
+
+        assertEquals(1, sent);
+        verify(notificationFanout).sendToUsers(rows);
+        verify(notificationFanout, never()).sendToTopic(anyString(), any());
+    }
+}
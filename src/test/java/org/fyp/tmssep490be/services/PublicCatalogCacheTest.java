@@ -0,0 +1,61 @@
+package org.fyp.tmssep490be.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PublicCatalogCacheTest {
+
+    private PublicCatalogCache cache;
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Supplier<Object> loader = () -> Map.of("data", List.of("IELTS", "TOEIC"), "version", loads.incrementAndGet());
+
+    @BeforeEach
+    void setUp() {
+        cache = new PublicCatalogCache(new ObjectMapper(), 600, 100);
+    }
+
+    @Test
+    void respond_servesSameSnapshotWithValidators() {
+        ResponseEntity<byte[]> first = cache.respond("subjects", loader);
+        ResponseEntity<byte[]> second = cache.respond("subjects", loader);
+
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertEquals(1, loads.get());
+        assertSame(first.getBody(), second.getBody());
+        assertNotNull(first.getHeaders().getETag());
+        assertEquals(first.getHeaders().getETag(), second.getHeaders().getETag());
+        assertTrue(first.getHeaders().getLastModified() > 0);
+        assertTrue(first.getHeaders().getCacheControl().contains("no-cache"));
+    }
+
+    @Test
+    void invalidateAll_rebuildsSnapshotWithNewEtag() {
+        String etag = cache.respond("subjects", loader).getHeaders().getETag();
+
+        cache.invalidateAll();
+        String rebuilt = cache.respond("subjects", loader).getHeaders().getETag();
+
+        assertEquals(2, loads.get());
+        assertNotEquals(etag, rebuilt);
+    }
+
+    @Test
+    void get_loaderFailureIsNotCached() {
+        assertThrows(RuntimeException.class, () -> cache.get("subjects/1", () -> {
+            throw new RuntimeException("Subject not available");
+        }));
+
+        cache.get("subjects/1", loader);
+        assertEquals(1, loads.get());
+    }
+}
@@ -0,0 +1,69 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.dtos.qa.QAClassListItemDTO;
+import org.fyp.tmssep490be.entities.ClassEntity;
+import org.fyp.tmssep490be.repositories.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QAService_GetQAClasses_Test {
+
+    @Mock private ClassRepository classRepository;
+    @Mock private QAReportRepository qaReportRepository;
+    @Mock private SessionRepository sessionRepository;
+    @Mock private StudentSessionRepository studentSessionRepository;
+    @Mock private UserBranchesRepository userBranchesRepository;
+
+    @InjectMocks
+    private QAService service;
+
+    private ClassEntity classEntity(Long id) {
+        ClassEntity c = new ClassEntity();
+        c.setId(id);
+        c.setCode("C" + id);
+        c.setName("Class " + id);
+        return c;
+    }
+
+    // ---------------------------------------------------------------
+    // TC1 — Chỉ số của cả trang lấy từ một query gộp, không query theo từng lớp
+    // ---------------------------------------------------------------
+    @Test
+    void getQAClasses_loadsPageMetricsInOneQuery() {
+        PageRequest pageable = PageRequest.of(0, 10);
+        when(classRepository.findClassesForAcademicAffairs(eq(List.of(1L)), isNull(), isNull(), isNull(), isNull(),
+                isNull(), eq(pageable)))
+                .thenReturn(new PageImpl<>(List.of(classEntity(10L), classEntity(11L)), pageable, 2));
+        when(classRepository.findQAMetricsByClassIds(eq(List.of(10L, 11L)), any()))
+                .thenReturn(List.<Object[]>of(new Object[] { 10L, 24L, 12L, 3L, 9L, 10L, 1L, 4L }));
+
+        Page<QAClassListItemDTO> page = service.getQAClasses(List.of(1L), null, null, pageable, 99L);
+
+        QAClassListItemDTO first = page.getContent().get(0);
+        assertEquals(24, first.getTotalSessions());
+        assertEquals(12, first.getCompletedSessions());
+        assertEquals(3, first.getQaReportCount());
+        assertEquals(90.0, first.getAttendanceRate(), 1e-9);
+        assertEquals(25.0, first.getHomeworkCompletionRate(), 1e-9);
+
+        // Lớp không có dòng chỉ số -> 0
+        QAClassListItemDTO second = page.getContent().get(1);
+        assertEquals(0, second.getTotalSessions());
+        assertEquals(0.0, second.getAttendanceRate(), 1e-9);
+
+        verifyNoInteractions(sessionRepository, qaReportRepository, studentSessionRepository);
+    }
+}
@@ -0,0 +1,90 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.dtos.teacherrequest.ReplacementCandidateDTO;
+import org.fyp.tmssep490be.entities.Session;
+import org.fyp.tmssep490be.entities.TimeSlotTemplate;
+import org.fyp.tmssep490be.entities.enums.Skill;
+import org.fyp.tmssep490be.repositories.TeacherRepository;
+import org.fyp.tmssep490be.repositories.TeacherSkillRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReplacementCandidateFinderTest {
+
+    @Mock private TeacherRepository teacherRepository;
+    @Mock private TeacherSkillRepository teacherSkillRepository;
+
+    @InjectMocks
+    private ReplacementCandidateFinder finder;
+
+    private final LocalDate date = LocalDate.now().plusDays(2);
+
+    private Session session() {
+        return Session.builder()
+                .id(100L)
+                .date(date)
+                .timeSlotTemplate(TimeSlotTemplate.builder()
+                        .startTime(LocalTime.of(8, 0))
+                        .endTime(LocalTime.of(10, 0))
+                        .build())
+                .build();
+    }
+
+    @Test
+    void findCandidates_oneRankingQueryAndOneSkillQueryPerPage() {
+        when(teacherRepository.findReplacementCandidateRows(eq(List.of(1L)), eq(List.of(7L)), anyCollection(),
+                eq(true), eq(date), eq(LocalTime.of(8, 0)), eq(LocalTime.of(10, 0)), eq(100L), eq(10), eq(20)))
+                .thenReturn(List.of(
+                        new Object[] { 3L, "Alice", "a@x.vn", "090", null, 2L, 1L },
+                        new Object[] { 4L, "Bob", "b@x.vn", null, "note", 0L, 0L }
+                ));
+        when(teacherSkillRepository.findSkillDetailsByTeacherIds(List.of(3L, 4L)))
+                .thenReturn(List.<Object[]>of(
+                        new Object[] { 3L, Skill.READING, "IELTS", (short) 7, "English" },
+                        new Object[] { 3L, Skill.WRITING, null, null, "English" }
+                ));
+
+        List<ReplacementCandidateDTO> candidates = finder.findCandidates(session(), List.of(1L), Set.of(7L),
+                Set.of(Skill.READING, Skill.SPEAKING), 2, 10);
+
+        assertEquals(2, candidates.size());
+        ReplacementCandidateDTO alice = candidates.get(0);
+        assertEquals(3L, alice.getTeacherId());
+        assertEquals("READING, WRITING", alice.getSkillSummary());
+        assertEquals("IELTS", alice.getSpecialization());
+        assertEquals("7", alice.getSkills().get(0).getLevel());
+        assertEquals(0.5, alice.getMatchScore(), 1e-9);
+        assertTrue(candidates.get(1).getSkills().isEmpty());
+        verifyNoMoreInteractions(teacherRepository);
+    }
+
+    @Test
+    void findCandidates_noTimeSlot_skipsConflictCheck() {
+        Session session = Session.builder().id(100L).date(date).build();
+        when(teacherRepository.findReplacementCandidateRows(anyCollection(), anyCollection(), eq(List.of("")),
+                eq(false), any(), any(), any(), eq(100L), eq(Integer.MAX_VALUE), eq(0)))
+                .thenReturn(List.of());
+
+        assertTrue(finder.findCandidates(session, List.of(1L), Set.of(7L), Set.of(), 0, 0).isEmpty());
+        verifyNoInteractions(teacherSkillRepository);
+    }
+
+    @Test
+    void findCandidates_noBranches_returnsEmptyWithoutQuery() {
+        assertTrue(finder.findCandidates(session(), List.of(), Set.of(7L), Set.of(), 0, 0).isEmpty());
+        verifyNoInteractions(teacherRepository, teacherSkillRepository);
+    }
+}
@@ -0,0 +1,79 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.repositories.SessionResourceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResourceOccupancyIndexTest {
+
+    @Mock private SessionResourceRepository sessionResourceRepository;
+
+    private ResourceOccupancyIndex index;
+    private final LocalDate day = LocalDate.now().plusDays(3);
+
+    @BeforeEach
+    void setUp() {
+        index = new ResourceOccupancyIndex(sessionResourceRepository, 300, 7);
+        lenient().when(sessionResourceRepository.findBranchResourceBookings(eq(1L), any(), anyList()))
+                .thenReturn(List.<Object[]>of(
+                        new Object[] { 10L, day, LocalTime.of(8, 0), LocalTime.of(10, 0), 100L },
+                        new Object[] { 11L, day, LocalTime.of(8, 0), LocalTime.of(10, 0), 200L }
+                ));
+    }
+
+    private ResourceOccupancyIndex.Slot slot(LocalDate date, int fromHour, int toHour) {
+        return new ResourceOccupancyIndex.Slot(date, LocalTime.of(fromHour, 0), LocalTime.of(toHour, 0));
+    }
+
+    @Test
+    void countConflicts_overlappingSlotOfOtherClass() {
+        ResourceOccupancyIndex.BranchOccupancy occupancy = index.forBranch(1L);
+
+        assertEquals(1, occupancy.countConflicts(10L, List.of(slot(day, 9, 11)), 999L));
+        // Khung giờ liền kề không tính là trùng
+        assertEquals(0, occupancy.countConflicts(10L, List.of(slot(day, 10, 12)), 999L));
+        // Buổi của chính lớp đang xếp không tính là trùng
+        assertEquals(0, occupancy.countConflicts(10L, List.of(slot(day, 8, 10)), 100L));
+        assertEquals(0, occupancy.countConflicts(12L, List.of(slot(day, 8, 10)), 999L));
+    }
+
+    @Test
+    void forBranch_reusesSnapshotUntilInvalidated() {
+        index.forBranch(1L);
+        index.forBranch(1L);
+        verify(sessionResourceRepository, times(1)).findBranchResourceBookings(eq(1L), any(), anyList());
+
+        index.invalidateResource(11L);
+        index.forBranch(1L);
+        verify(sessionResourceRepository, times(2)).findBranchResourceBookings(eq(1L), any(), anyList());
+    }
+
+    @Test
+    void invalidateClass_reloadsBranchOfKnownClass() {
+        index.forBranch(1L);
+
+        index.invalidateClass(200L);
+        index.forBranch(1L);
+        verify(sessionResourceRepository, times(2)).findBranchResourceBookings(eq(1L), any(), anyList());
+    }
+
+    @Test
+    void covers_rejectsDatesBeforeLookback() {
+        ResourceOccupancyIndex.BranchOccupancy occupancy = index.forBranch(1L);
+
+        assertTrue(occupancy.covers(List.of(slot(day, 8, 10))));
+        assertFalse(occupancy.covers(List.of(slot(LocalDate.now().minusDays(30), 8, 10))));
+    }
+}
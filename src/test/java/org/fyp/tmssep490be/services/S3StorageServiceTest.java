@@ -0,0 +1,122 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.exceptions.CustomException;
+import org.fyp.tmssep490be.utils.BoundedTtlCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.CompletedUpload;
+import software.amazon.awssdk.transfer.s3.model.Upload;
+import software.amazon.awssdk.transfer.s3.model.UploadRequest;
+
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class S3StorageServiceTest {
+
+    @Mock private S3Presigner presigner;
+    @Mock private S3TransferManager transferManager;
+
+    private S3StorageService service;
+    private ExecutorService uploadExecutor;
+
+    private static final String PREFIX = "https://bucket.s3.ap-southeast-1.amazonaws.com/";
+
+    @BeforeEach
+    void setUp() {
+        service = new S3StorageService();
+        uploadExecutor = Executors.newSingleThreadExecutor();
+        ReflectionTestUtils.setField(service, "bucketName", "bucket");
+        ReflectionTestUtils.setField(service, "region", "ap-southeast-1");
+        ReflectionTestUtils.setField(service, "presignDurationMinutes", 60L);
+        ReflectionTestUtils.setField(service, "presignCacheTtlSeconds", 300L);
+        ReflectionTestUtils.setField(service, "presignCacheMaxSize", 100);
+        ReflectionTestUtils.setField(service, "presignBatchMaxSize", 3);
+        ReflectionTestUtils.setField(service, "presignedUrlCache", new BoundedTtlCache<String, String>(300_000, 100));
+        ReflectionTestUtils.setField(service, "presigner", presigner);
+        ReflectionTestUtils.setField(service, "transferManager", transferManager);
+        ReflectionTestUtils.setField(service, "uploadExecutor", uploadExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploadExecutor.shutdownNow();
+    }
+
+    private void stubPresign() throws Exception {
+        PresignedGetObjectRequest presigned = mock(PresignedGetObjectRequest.class);
+        when(presigned.url()).thenReturn(new URL(PREFIX + "a.pdf?X-Amz-Signature=abc"));
+        when(presigner.presignGetObject(any(GetObjectPresignRequest.class))).thenReturn(presigned);
+    }
+
+    @Test
+    void generatePresignedUrl_reusesSignedUrlForSameKey() throws Exception {
+        stubPresign();
+
+        String first = service.generatePresignedUrl(PREFIX + "a.pdf");
+        String second = service.generatePresignedUrl("a.pdf");
+
+        assertEquals(first, second);
+        verify(presigner, times(1)).presignGetObject(any(GetObjectPresignRequest.class));
+    }
+
+    @Test
+    void generatePresignedUrls_signsEachKeyOnceAndKeepsExternalUrls() throws Exception {
+        stubPresign();
+
+        Map<String, String> urls = service.generatePresignedUrls(
+                List.of(PREFIX + "a.pdf", "a.pdf", "https://youtube.com/watch?v=1"));
+
+        assertEquals(3, urls.size());
+        assertEquals("https://youtube.com/watch?v=1", urls.get("https://youtube.com/watch?v=1"));
+        assertTrue(urls.get("a.pdf").contains("X-Amz-Signature"));
+        verify(presigner, times(1)).presignGetObject(any(GetObjectPresignRequest.class));
+    }
+
+    @Test
+    void generatePresignedUrls_rejectsOversizedBatch() {
+        assertThrows(CustomException.class, () -> service.generatePresignedUrls(
+                List.of("a.pdf", "b.pdf", "c.pdf", "d.pdf")));
+        verifyNoInteractions(presigner);
+    }
+
+    @Test
+    void uploadFileAsync_streamsBodyWithoutTempFile() {
+        Upload upload = mock(Upload.class);
+        CompletedUpload completed = CompletedUpload.builder()
+                .response(PutObjectResponse.builder().eTag("etag").build())
+                .build();
+        when(upload.completionFuture()).thenReturn(CompletableFuture.completedFuture(completed));
+        when(transferManager.upload(any(UploadRequest.class))).thenReturn(upload);
+
+        MockMultipartFile file = new MockMultipartFile("file", "slides.pdf", null, new byte[] { 1, 2, 3 });
+        String url = service.uploadFileAsync(file).join();
+
+        ArgumentCaptor<UploadRequest> captor = ArgumentCaptor.forClass(UploadRequest.class);
+        verify(transferManager).upload(captor.capture());
+        assertEquals("application/pdf", captor.getValue().putObjectRequest().contentType());
+        assertEquals(3L, captor.getValue().putObjectRequest().contentLength());
+        assertEquals(3L, captor.getValue().requestBody().contentLength().orElse(-1L));
+        assertTrue(url.startsWith(PREFIX) && url.endsWith("_slides.pdf"));
+    }
+}
@@ -27,6 +27,7 @@ class StudentRequestService_ApproveRequest_Test {
     @Mock private UserAccountRepository userAccountRepository;
     @Mock private ClassRepository classRepository;
     @Mock private StudentSessionRepository studentSessionRepository;
+    @Mock private AttendanceMatrixEngine attendanceMatrixEngine;
 
     @Spy
     @InjectMocks
@@ -49,7 +50,11 @@ class StudentRequestService_ApproveRequest_Test {
                 .status(RequestStatus.PENDING)
                 .requestType(StudentRequestType.ABSENCE)
                 .student(Student.builder().id(1L).build())
-                .targetSession(Session.builder().id(999L).date(LocalDate.now()).build())
+                .targetSession(Session.builder()
+                        .id(999L)
+                        .date(LocalDate.now())
+                        .classEntity(ClassEntity.builder().id(20L).build())
+                        .build())
                 .build();
 
         dto = new ApprovalDTO();
@@ -108,6 +113,7 @@ class StudentRequestService_ApproveRequest_Test {
         StudentRequestResponseDTO result = service.approveRequest(100L, 200L, dto);
 
         assertEquals("APPROVED", result.getStatus());
+        verify(attendanceMatrixEngine).invalidate(20L);
     }
 
     // ----------------------------------------------------------------
@@ -157,6 +163,8 @@ class StudentRequestService_ApproveRequest_Test {
         StudentRequestResponseDTO result = service.approveRequest(100L, 200L, dto);
 
         assertEquals("APPROVED", result.getStatus());
+        verify(attendanceMatrixEngine).invalidate(20L);
+        verify(attendanceMatrixEngine).invalidate(777L);
     }
 
 
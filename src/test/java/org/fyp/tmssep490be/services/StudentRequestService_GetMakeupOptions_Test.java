@@ -0,0 +1,114 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.dtos.studentrequest.MakeupOptionsResponseDTO;
+import org.fyp.tmssep490be.entities.*;
+import org.fyp.tmssep490be.entities.enums.*;
+import org.fyp.tmssep490be.repositories.SessionRepository;
+import org.fyp.tmssep490be.repositories.StudentSessionRepository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import org.mockito.*;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StudentRequestService_GetMakeupOptions_Test {
+
+    @Mock private SessionRepository sessionRepository;
+    @Mock private StudentSessionRepository studentSessionRepository;
+    @Mock private MakeupCandidateIndex makeupCandidateIndex;
+
+    @InjectMocks
+    private StudentRequestService service;
+
+    private final Long studentId = 1L;
+    private final Long targetSessionId = 100L;
+    private final LocalDate missedDate = LocalDate.now().plusDays(1);
+
+    private final Branch branch = Branch.builder().id(5L).name("HN").build();
+    private final SubjectSession subjectSession = SubjectSession.builder().id(50L).build();
+    private final TimeSlotTemplate morning = TimeSlotTemplate.builder()
+            .id(1L).startTime(LocalTime.of(8, 0)).endTime(LocalTime.of(10, 0)).build();
+
+    private Session session(Long id, Long classId, LocalDate date, Modality modality) {
+        return Session.builder()
+                .id(id)
+                .date(date)
+                .status(SessionStatus.PLANNED)
+                .subjectSession(subjectSession)
+                .timeSlotTemplate(morning)
+                .sessionResources(new HashSet<>())
+                .classEntity(ClassEntity.builder()
+                        .id(classId)
+                        .code("C" + classId)
+                        .branch(branch)
+                        .modality(modality)
+                        .maxCapacity(20)
+                        .build())
+                .build();
+    }
+
+    private MakeupCandidateIndex.Candidate candidate(Long sessionId, Long classId, LocalDate date) {
+        return new MakeupCandidateIndex.Candidate(sessionId, classId, date, LocalTime.of(8, 0), LocalTime.of(10, 0));
+    }
+
+    @BeforeEach
+    void setUp() {
+        when(sessionRepository.findById(targetSessionId))
+                .thenReturn(Optional.of(session(targetSessionId, 10L, missedDate, Modality.OFFLINE)));
+    }
+
+    // ---------------------------------------------------------------
+    // TC1 — Buổi trùng lịch bị loại trong bộ nhớ, sĩ số đếm bằng một query
+    // ---------------------------------------------------------------
+    @Test
+    void getMakeupOptions_filtersConflictsAndCountsSeatsOnce() {
+        LocalDate day1 = missedDate.plusDays(1);
+        LocalDate day2 = missedDate.plusDays(2);
+        when(makeupCandidateIndex.candidates(5L, 50L, missedDate, missedDate.plusWeeks(2), targetSessionId))
+                .thenReturn(List.of(candidate(201L, 20L, day1), candidate(202L, 21L, day2)));
+        // Học viên đã có lịch 9h-11h ngày day1
+        when(sessionRepository.findStudentTimetableRows(eq(studentId), any(), any()))
+                .thenReturn(List.<Object[]>of(new Object[] { day1, LocalTime.of(9, 0), LocalTime.of(11, 0) }));
+        when(studentSessionRepository.countBySessionIds(List.of(202L)))
+                .thenReturn(List.<Object[]>of(new Object[] { 202L, 5L }));
+        when(sessionRepository.findMakeupOptionDetails(List.of(202L)))
+                .thenReturn(List.of(session(202L, 21L, day2, Modality.OFFLINE)));
+
+        MakeupOptionsResponseDTO response = service.getMakeupOptionsForStudent(studentId, targetSessionId);
+
+        assertEquals(1, response.getTotalOptions());
+        assertEquals(202L, response.getMakeupOptions().get(0).getSessionId());
+        assertEquals(15, response.getMakeupOptions().get(0).getAvailableSlots());
+        assertTrue(response.getMakeupOptions().get(0).getMatchScore().getModalityMatch());
+        verify(studentSessionRepository, never()).countBySessionId(any());
+        verify(sessionRepository, never()).findSessionsForStudentByDate(any(), any());
+    }
+
+    // ---------------------------------------------------------------
+    // TC2 — Không có ứng viên → không query thêm
+    // ---------------------------------------------------------------
+    @Test
+    void getMakeupOptions_noCandidates() {
+        when(makeupCandidateIndex.candidates(anyLong(), anyLong(), any(), any(), anyLong()))
+                .thenReturn(List.of());
+
+        MakeupOptionsResponseDTO response = service.getMakeupOptionsForStudent(studentId, targetSessionId);
+
+        assertEquals(0, response.getTotalOptions());
+        verifyNoInteractions(studentSessionRepository);
+        verify(sessionRepository, never()).findStudentTimetableRows(any(), any(), any());
+    }
+}
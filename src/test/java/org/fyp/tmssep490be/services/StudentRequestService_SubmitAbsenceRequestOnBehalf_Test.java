@@ -35,6 +35,7 @@ class StudentRequestService_SubmitAbsenceRequestOnBehalf_Test {
     @Mock private ClassRepository classRepository;
     @Mock private UserAccountRepository userAccountRepository;
     @Mock private StudentRequestRepository studentRequestRepository;
+    @Mock private AttendanceMatrixEngine attendanceMatrixEngine;
 
     @Spy
     @InjectMocks
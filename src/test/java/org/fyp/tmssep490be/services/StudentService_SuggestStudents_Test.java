@@ -0,0 +1,52 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.dtos.studentmanagement.StudentSuggestionDTO;
+import org.fyp.tmssep490be.repositories.StudentRepository;
+import org.fyp.tmssep490be.repositories.UserBranchesRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StudentService_SuggestStudents_Test {
+
+    @Mock private StudentRepository studentRepository;
+    @Mock private UserBranchesRepository userBranchesRepository;
+
+    @InjectMocks
+    private StudentService studentService;
+
+    // ---------------------------------------------------------------
+    // TC1 — Gợi ý lấy theo chi nhánh của user, giữ thứ tự xếp hạng của query, giới hạn số dòng
+    // ---------------------------------------------------------------
+    @Test
+    void suggestStudents_mapsRankedRowsWithinUserBranches() {
+        when(userBranchesRepository.findBranchIdsByUserId(5L)).thenReturn(List.of(1L, 2L));
+        when(studentRepository.findStudentSuggestions(List.of(1L, 2L), "nguyen", StudentService.MAX_SUGGESTIONS))
+                .thenReturn(List.of(
+                        new Object[] { 10L, "ST010", "Nguyễn An", "an@x.vn", null },
+                        new Object[] { 11L, "ST011", "Trần Nguyên", "nguyen@x.vn", "090" }));
+
+        List<StudentSuggestionDTO> suggestions = studentService.suggestStudents("  nguyen ", 100, 5L);
+
+        assertEquals(2, suggestions.size());
+        assertEquals("ST010", suggestions.get(0).getStudentCode());
+        assertEquals("Trần Nguyên", suggestions.get(1).getFullName());
+    }
+
+    // ---------------------------------------------------------------
+    // TC2 — Từ khóa quá ngắn: không query
+    // ---------------------------------------------------------------
+    @Test
+    void suggestStudents_shortTerm_returnsEmptyWithoutQuery() {
+        assertTrue(studentService.suggestStudents(" n ", 10, 5L).isEmpty());
+        verifyNoInteractions(studentRepository, userBranchesRepository);
+    }
+}
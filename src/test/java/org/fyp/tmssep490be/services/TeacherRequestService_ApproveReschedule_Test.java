@@ -0,0 +1,137 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.dtos.teacherrequest.TeacherRequestApproveDTO;
+import org.fyp.tmssep490be.entities.*;
+import org.fyp.tmssep490be.entities.enums.*;
+import org.fyp.tmssep490be.repositories.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit Test for approveRequest() — RESCHEDULE
+ */
+@ExtendWith(MockitoExtension.class)
+class TeacherRequestService_ApproveReschedule_Test {
+
+    @InjectMocks
+    private TeacherRequestService service;
+
+    @Mock private TeacherRequestRepository teacherRequestRepository;
+    @Mock private SessionRepository sessionRepository;
+    @Mock private UserAccountRepository userAccountRepository;
+    @Mock private UserBranchesRepository userBranchesRepository;
+    @Mock private ResourceRepository resourceRepository;
+    @Mock private TimeSlotTemplateRepository timeSlotTemplateRepository;
+    @Mock private SessionResourceRepository sessionResourceRepository;
+    @Mock private TeachingSlotRepository teachingSlotRepository;
+    @Mock private StudentSessionRepository studentSessionRepository;
+    @Mock private StudentRequestRepository studentRequestRepository;
+    @Mock private NotificationService notificationService;
+    @Mock private EmailService emailService;
+    @Mock private AttendanceMatrixEngine attendanceMatrixEngine;
+
+    private ClassEntity classEntity(Long id) {
+        ClassEntity c = new ClassEntity();
+        c.setId(id);
+        c.setCode("C" + id);
+        c.setName("Class " + id);
+        c.setModality(Modality.OFFLINE);
+        return c;
+    }
+
+    private TimeSlotTemplate timeSlot(Long id) {
+        TimeSlotTemplate ts = new TimeSlotTemplate();
+        ts.setId(id);
+        ts.setStartTime(LocalTime.of(8, 0));
+        ts.setEndTime(LocalTime.of(10, 0));
+        return ts;
+    }
+
+    private Session session(Long id, ClassEntity classEntity) {
+        Session s = new Session();
+        s.setId(id);
+        s.setDate(LocalDate.now().plusDays(2));
+        s.setStatus(SessionStatus.PLANNED);
+        s.setTimeSlotTemplate(timeSlot(1L));
+        s.setClassEntity(classEntity);
+        return s;
+    }
+
+    /**
+     * Đổi lịch buổi có học viên đã được duyệt học bù ở lớp khác:
+     * ma trận điểm danh của lớp và của lớp học bù đều bị bỏ cache
+     */
+    @Test
+    void approveReschedule_invalidatesClassAndMakeupClassMatrices() {
+        UserAccount teacherAccount = new UserAccount();
+        teacherAccount.setId(20L);
+        Teacher teacher = new Teacher();
+        teacher.setId(2L);
+        teacher.setUserAccount(teacherAccount);
+
+        Session oldSession = session(500L, classEntity(100L));
+        Session makeupTarget = session(900L, classEntity(300L));
+
+        TeacherRequest request = new TeacherRequest();
+        request.setId(1L);
+        request.setTeacher(teacher);
+        request.setSession(oldSession);
+        request.setRequestType(TeacherRequestType.RESCHEDULE);
+        request.setStatus(RequestStatus.PENDING);
+
+        Student student = new Student();
+        student.setId(7L);
+        StudentSession excused = StudentSession.builder()
+                .student(student).session(oldSession).attendanceStatus(AttendanceStatus.EXCUSED).build();
+        StudentSession makeup = StudentSession.builder()
+                .id(new StudentSession.StudentSessionId(7L, 900L))
+                .student(student).session(makeupTarget).originalSession(oldSession)
+                .attendanceStatus(AttendanceStatus.PLANNED).isMakeup(true).build();
+
+        Resource resource = new Resource();
+        resource.setId(11L);
+        resource.setResourceType(ResourceType.ROOM);
+
+        when(teacherRequestRepository.findByIdWithTeacherAndSession(1L)).thenReturn(Optional.of(request));
+        when(userBranchesRepository.findBranchIdsByUserId(any())).thenReturn(List.of(1L));
+        when(userAccountRepository.findById(30L)).thenReturn(Optional.of(new UserAccount()));
+        when(resourceRepository.findById(11L)).thenReturn(Optional.of(resource));
+        when(timeSlotTemplateRepository.findById(2L)).thenReturn(Optional.of(timeSlot(2L)));
+        when(sessionRepository.findById(500L)).thenReturn(Optional.of(oldSession));
+        when(sessionRepository.save(any(Session.class))).thenAnswer(inv -> {
+            Session saved = inv.getArgument(0);
+            if (saved.getId() == null) {
+                saved.setId(501L);
+            }
+            return saved;
+        });
+        when(studentSessionRepository.findAll()).thenReturn(List.of(excused));
+        when(studentSessionRepository.findMakeupSessionsByOriginalSessionIds(List.of(500L))).thenReturn(List.of(makeup));
+        when(teacherRequestRepository.save(any(TeacherRequest.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        TeacherRequestApproveDTO dto = new TeacherRequestApproveDTO();
+        dto.setNewResourceId(11L);
+        dto.setNewTimeSlotId(2L);
+        dto.setNewDate(LocalDate.now().plusDays(3));
+
+        service.approveRequest(1L, dto, 30L);
+
+        assertEquals(RequestStatus.APPROVED, request.getStatus());
+        assertEquals(SessionStatus.CANCELLED, oldSession.getStatus());
+        assertEquals(501L, makeup.getOriginalSession().getId());
+        verify(attendanceMatrixEngine).invalidate(100L);
+        verify(attendanceMatrixEngine).invalidate(300L);
+    }
+}
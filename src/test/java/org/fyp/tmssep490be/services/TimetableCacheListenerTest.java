@@ -0,0 +1,67 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.entities.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TimetableCacheListenerTest {
+
+    private static final LocalDate DATE = LocalDate.of(2026, 3, 4);
+
+    @Mock private ObjectProvider<WeeklyTimetableCache> cacheProvider;
+    @Mock private WeeklyTimetableCache cache;
+
+    private TimetableCacheListener listener;
+
+    @BeforeEach
+    void setUp() {
+        when(cacheProvider.getIfAvailable()).thenReturn(cache);
+        listener = new TimetableCacheListener(cacheProvider);
+    }
+
+    private Session loadedSession() {
+        Session session = Session.builder().id(500L).date(DATE).build();
+        ReflectionTestUtils.setField(session, "persistedDate", DATE);
+        return session;
+    }
+
+    @Test
+    void sessionUpdateWithoutDateChange_evictsOnlyThatSession() {
+        Session session = loadedSession();
+        session.setTeacherNote("Đã dạy xong");
+
+        listener.onUpdateOrRemove(session);
+
+        verify(cache).invalidateSession(500L);
+        verify(cache, never()).invalidateWeekOf(any());
+    }
+
+    @Test
+    void sessionMovedToAnotherDay_alsoEvictsTargetWeek() {
+        Session session = loadedSession();
+        session.setDate(DATE.plusDays(7));
+
+        listener.onUpdateOrRemove(session);
+
+        verify(cache).invalidateSession(500L);
+        verify(cache).invalidateWeekOf(DATE.plusDays(7));
+    }
+
+    @Test
+    void newSession_evictsItsWeek() {
+        listener.onPersist(Session.builder().id(501L).date(DATE).build());
+
+        verify(cache).invalidateWeekOf(DATE);
+    }
+}
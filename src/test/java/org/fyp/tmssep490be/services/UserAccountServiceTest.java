@@ -8,6 +8,7 @@ import org.fyp.tmssep490be.dtos.user.UserResponse;
 import org.fyp.tmssep490be.entities.*;
 import org.fyp.tmssep490be.entities.enums.UserStatus;
 import org.fyp.tmssep490be.repositories.*;
+import org.fyp.tmssep490be.security.UserPrincipalCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
@@ -29,6 +30,7 @@ class UserAccountServiceTest {
     @Mock private UserRoleRepository userRoleRepository;
     @Mock private UserBranchesRepository userBranchesRepository;
     @Mock private EmailService emailService;
+    @Mock private UserPrincipalCache userPrincipalCache;
     @InjectMocks
     private UserAccountService userAccountService;
 
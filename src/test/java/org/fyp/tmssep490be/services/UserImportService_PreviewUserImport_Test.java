@@ -0,0 +1,69 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.dtos.user.UserImportData;
+import org.fyp.tmssep490be.exceptions.CustomException;
+import org.fyp.tmssep490be.exceptions.ErrorCode;
+import org.fyp.tmssep490be.repositories.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit Test for previewUserImport() — giới hạn số dòng của một lần preview
+ */
+@ExtendWith(MockitoExtension.class)
+class UserImportService_PreviewUserImport_Test {
+
+    @InjectMocks
+    private UserImportService service;
+
+    @Mock private ExcelParserService excelParserService;
+    @Mock private UserAccountRepository userAccountRepository;
+    @Mock private RoleRepository roleRepository;
+    @Mock private BranchRepository branchRepository;
+
+    @Mock private MultipartFile file;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "previewMaxRows", 2);
+    }
+
+    private UserImportData user(int i) {
+        return UserImportData.builder()
+                .fullName("User " + i)
+                .email("user" + i + "@tms.edu.vn")
+                .role("TEACHER")
+                .build();
+    }
+
+    /**
+     * File có nhiều dòng hơn giới hạn: dừng ngay ở lô vượt giới hạn, không tra cứu email/số điện thoại
+     */
+    @Test
+    void previewUserImport_tooManyRows_rejectsBeforeLookup() {
+        when(excelParserService.streamUserImport(any(), anyInt(), any())).thenAnswer(inv -> {
+            Consumer<List<UserImportData>> consumer = inv.getArgument(2);
+            consumer.accept(List.of(user(1), user(2), user(3)));
+            return 3;
+        });
+
+        CustomException ex = assertThrows(CustomException.class, () -> service.previewUserImport(file));
+
+        assertEquals(ErrorCode.TOO_MANY_ROWS_IN_FILE, ex.getErrorCode());
+        verifyNoInteractions(userAccountRepository);
+    }
+}
@@ -0,0 +1,83 @@
+package org.fyp.tmssep490be.services;
+
+import org.fyp.tmssep490be.dtos.schedule.SessionSummaryDTO;
+import org.fyp.tmssep490be.dtos.schedule.WeeklyScheduleResponseDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WeeklyTimetableCacheTest {
+
+    private static final LocalDate WEEK = LocalDate.of(2026, 3, 2);
+
+    private final WeeklyTimetableCache cache = new WeeklyTimetableCache(300, 100);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Supplier<WeeklyScheduleResponseDTO> loader = () -> {
+        loads.incrementAndGet();
+        return WeeklyScheduleResponseDTO.builder()
+                .weekStart(WEEK)
+                .schedule(Map.of(DayOfWeek.WEDNESDAY, List.of(
+                        SessionSummaryDTO.builder().sessionId(500L).classId(20L).build())))
+                .build();
+    };
+
+    @AfterEach
+    void clearSynchronization() {
+        TransactionSynchronizationManager.clear();
+    }
+
+    private WeeklyScheduleResponseDTO studentWeek() {
+        return cache.get(WeeklyTimetableCache.Viewer.STUDENT, 7L, WEEK, null, null, loader);
+    }
+
+    @Test
+    void get_servesCachedScheduleUntilMatchingTagIsInvalidated() {
+        WeeklyScheduleResponseDTO first = studentWeek();
+        assertSame(first, studentWeek());
+
+        cache.invalidateStudent(8L);
+        cache.invalidateTeacher(7L);
+        cache.invalidateClass(21L);
+        assertSame(first, studentWeek());
+        assertEquals(1, loads.get());
+
+        cache.invalidateClass(20L);
+        studentWeek();
+        cache.invalidateSession(500L);
+        studentWeek();
+        cache.invalidateWeekOf(WEEK.plusDays(4));
+        studentWeek();
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void invalidateInsideTransaction_doesNotCacheUntilCompletion() {
+        studentWeek();
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.invalidateStudent(7L);
+        studentWeek();
+        studentWeek();
+        assertEquals(3, loads.get());
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        assertEquals(1, synchronizations.size());
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+        studentWeek();
+        studentWeek();
+        assertEquals(4, loads.get());
+    }
+}
@@ -0,0 +1,62 @@
+package org.fyp.tmssep490be.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedTtlCacheTest {
+
+    @Test
+    void put_whenFull_evictsLeastRecentlyUsed() {
+        BoundedTtlCache<String, Integer> cache = new BoundedTtlCache<>(60_000, 2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+
+        cache.put("c", 3);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(3, cache.get("c"));
+    }
+
+    @Test
+    void get_expiredEntry_isDroppedAndReloaded() {
+        BoundedTtlCache<String, Integer> cache = new BoundedTtlCache<>(60_000, 10);
+        cache.put("a", 1, System.currentTimeMillis() - 1);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+
+        AtomicInteger loads = new AtomicInteger();
+        assertEquals(7, cache.get("a", () -> 7 + loads.getAndIncrement()));
+        assertEquals(7, cache.get("a", () -> 7 + loads.getAndIncrement()));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void removeWithValue_keepsNewerValue() {
+        BoundedTtlCache<String, String> cache = new BoundedTtlCache<>(60_000, 10);
+        cache.put("k", "new");
+
+        cache.remove("k", "old");
+        assertEquals("new", cache.get("k"));
+
+        cache.removeIf("new"::equals);
+        assertNull(cache.get("k"));
+    }
+
+    @Test
+    void disabledCache_keepsNothing() {
+        BoundedTtlCache<String, Integer> cache = new BoundedTtlCache<>(0, 10);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("a", loads::incrementAndGet);
+        cache.get("a", loads::incrementAndGet);
+
+        assertFalse(cache.isEnabled());
+        assertEquals(2, loads.get());
+    }
+}